@@ -0,0 +1,133 @@
+package it.alf.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import it.alf.codec.BinaryDeserializer;
+import it.alf.codec.BinarySerializer;
+import it.alf.codec.DtoCodecs;
+import it.alf.codec.InMemorySchemaRegistry;
+import it.alf.codec.RecordCodec;
+import it.alf.dto.GenericEvent;
+import it.alf.dto.Notification;
+import it.alf.dto.Order;
+import it.alf.dto.User;
+
+/**
+ * Confronto tra il percorso JSON attuale (JsonSerializer/JsonDeserializer di Spring Kafka) e il codec binario
+ * per ogni DTO: nanosecondi per serializzazione/deserializzazione e byte per record.
+ *
+ * I benchmark di serializzazione riportano due metriche secondarie, {@code bytes} (byte prodotti) e
+ * {@code records} (record serializzati): JMH le somma su tutte le iterazioni, quindi i byte per record sono
+ * {@code bytes / records}, indipendentemente dal numero di iterazioni.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+    private static final String TOPIC = "benchmark-topic";
+
+    @Param({"user", "order", "notification", "event"})
+    public String dto;
+
+    private Object value;
+    private Serializer<Object> jsonSerializer;
+    private Deserializer<?> jsonDeserializer;
+    private Serializer<Object> binarySerializer;
+    private Deserializer<?> binaryDeserializer;
+    private byte[] jsonBytes;
+    private byte[] binaryBytes;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class RecordSize {
+        public long bytes;
+        public long records;
+
+        void add(byte[] record) {
+            bytes += record.length;
+            records++;
+        }
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            records = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        switch (dto) {
+            case "user" -> init(Samples.user(123), User.class, DtoCodecs.USER);
+            case "order" -> init(Samples.order(456), Order.class, DtoCodecs.ORDER);
+            case "notification" -> init(Samples.notification(789), Notification.class, DtoCodecs.NOTIFICATION);
+            case "event" -> init(Samples.event(321), GenericEvent.class, DtoCodecs.EVENT);
+            default -> throw new IllegalArgumentException(dto);
+        }
+        jsonBytes = jsonSerializer.serialize(TOPIC, value);
+        binaryBytes = binarySerializer.serialize(TOPIC, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void init(T sample, Class<T> type, RecordCodec<T> codec) {
+        var registry = new InMemorySchemaRegistry();
+        value = sample;
+        jsonSerializer = new JsonSerializer<>();
+        jsonDeserializer = new JsonDeserializer<>(type, false);
+        binarySerializer = (Serializer<Object>) new BinarySerializer<>(codec, registry, TOPIC);
+        binaryDeserializer = new BinaryDeserializer<>(codec, registry, new JsonDeserializer<>(type, false));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        jsonSerializer.close();
+        jsonDeserializer.close();
+        binaryDeserializer.close();
+    }
+
+    @Benchmark
+    public byte[] jsonSerialize(RecordSize size) {
+        var bytes = jsonSerializer.serialize(TOPIC, value);
+        size.add(bytes);
+        return bytes;
+    }
+
+    @Benchmark
+    public Object jsonDeserialize() {
+        return jsonDeserializer.deserialize(TOPIC, jsonBytes);
+    }
+
+    @Benchmark
+    public byte[] binarySerialize(RecordSize size) {
+        var bytes = binarySerializer.serialize(TOPIC, value);
+        size.add(bytes);
+        return bytes;
+    }
+
+    @Benchmark
+    public Object binaryDeserialize() {
+        return binaryDeserializer.deserialize(TOPIC, binaryBytes);
+    }
+}
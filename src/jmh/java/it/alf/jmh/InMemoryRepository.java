@@ -0,0 +1,58 @@
+package it.alf.jmh;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Repository Spring Data in memoria per i benchmark dei listener.
+ *
+ * Le interfacce {@code JpaRepository} dell'applicazione vengono implementate con un proxy dinamico su una
+ * {@link HashMap}: sono supportati solo i metodi usati dal percorso di persistenza ({@code save}, {@code saveAll},
+ * {@code findById}, {@code count}, {@code deleteAll}), gli altri lanciano {@link UnsupportedOperationException}.
+ * In questo modo il benchmark misura mapping, batching e logica del listener senza il costo di JPA/JDBC.
+ */
+final class InMemoryRepository<E> implements InvocationHandler {
+    private final Map<String, E> rows = new HashMap<>();
+    private final Function<E, String> idOf;
+
+    private InMemoryRepository(Function<E, String> idOf) {
+        this.idOf = idOf;
+    }
+
+    static <R, E> R create(Class<R> repositoryType, Function<E, String> idOf) {
+        return repositoryType.cast(Proxy.newProxyInstance(repositoryType.getClassLoader(),
+                new Class<?>[]{repositoryType}, new InMemoryRepository<>(idOf)));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "save" -> {
+                var entity = (E) args[0];
+                rows.put(idOf.apply(entity), entity);
+                yield entity;
+            }
+            case "saveAll" -> {
+                var entities = (Iterable<E>) args[0];
+                entities.forEach(e -> rows.put(idOf.apply(e), e));
+                yield entities;
+            }
+            case "findById" -> Optional.ofNullable(rows.get((String) args[0]));
+            case "count" -> (long) rows.size();
+            case "deleteAll" -> {
+                rows.clear();
+                yield null;
+            }
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            case "toString" -> "InMemoryRepository" + rows.keySet();
+            default -> throw new UnsupportedOperationException(method.getName());
+        };
+    }
+}
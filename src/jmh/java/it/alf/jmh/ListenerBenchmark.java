@@ -0,0 +1,146 @@
+package it.alf.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import ch.qos.logback.classic.Logger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.alf.codec.RawEvent;
+import it.alf.config.CacheConfig;
+import it.alf.config.EventStorageProperties;
+import it.alf.config.KafkaTopicsProperties;
+import it.alf.consumer.BatchPersister;
+import it.alf.consumer.EventListener;
+import it.alf.consumer.NotificationListener;
+import it.alf.consumer.OrderConfirmationProcessor;
+import it.alf.consumer.OrderListener;
+import it.alf.consumer.OrderParallelProcessor;
+import it.alf.consumer.UserListener;
+import it.alf.consumer.VirtualThreadDispatcher;
+import it.alf.consumer.WriteBehindPersister;
+import it.alf.dto.Notification;
+import it.alf.dto.Order;
+import it.alf.dto.User;
+import it.alf.entity.GenericEventEntity;
+import it.alf.entity.NotificationEntity;
+import it.alf.entity.OrderEntity;
+import it.alf.entity.UserEntity;
+import it.alf.journal.EventJournalSink;
+import it.alf.metrics.KafkaMetrics;
+import it.alf.repository.GenericEventRepository;
+import it.alf.repository.NotificationRepository;
+import it.alf.repository.OrderRepository;
+import it.alf.repository.UserRepository;
+import it.alf.service.UserQueryService;
+
+/**
+ * Invocazione completa dei listener su un poll di {@code batchSize} record: mapping, {@link BatchPersister}
+ * e, per gli utenti, aggiornamento della cache. I repository sono sostituiti da {@link InMemoryRepository},
+ * quindi il tempo misurato (microsecondi per poll) è quello del codice applicativo, senza JPA e database.
+ *
+ * Il livello di log è portato a WARN: il log INFO per poll resta nel percorso misurato ma non viene scritto
+ * sulla console di JMH.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ListenerBenchmark {
+
+    @Param({"1", "100", "500"})
+    public int batchSize;
+
+    private UserListener userListener;
+    private OrderListener orderListener;
+    private NotificationListener notificationListener;
+    private EventListener eventListener;
+    private VirtualThreadDispatcher dispatcher;
+
+    private List<ConsumerRecord<String, User>> users;
+    private List<ConsumerRecord<String, Order>> orders;
+    private List<ConsumerRecord<String, Notification>> notifications;
+    private List<ConsumerRecord<String, RawEvent>> events;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(ch.qos.logback.classic.Level.WARN);
+
+        var topics = new KafkaTopicsProperties();
+        dispatcher = new VirtualThreadDispatcher(64);
+        // deduplicazione disattivata (default dei topic): il DedupeStore non viene usato
+        var persister = new BatchPersister(topics, dispatcher, new KafkaMetrics(new SimpleMeterRegistry()), null, null);
+
+        UserRepository userRepository = InMemoryRepository.create(UserRepository.class, UserEntity::getId);
+        var userQueryService = new UserQueryService(userRepository, new ConcurrentMapCacheManager(CacheConfig.USERS_CACHE));
+        userListener = new UserListener(userRepository, persister, userQueryService, noWriteBehind());
+        orderListener = new OrderListener(InMemoryRepository.create(OrderRepository.class, OrderEntity::getId), persister,
+                new StaticListableBeanFactory().getBeanProvider(OrderParallelProcessor.class),
+                new StaticListableBeanFactory().getBeanProvider(OrderConfirmationProcessor.class), noWriteBehind());
+        notificationListener = new NotificationListener(
+                InMemoryRepository.create(NotificationRepository.class, NotificationEntity::getId), persister, noWriteBehind());
+        eventListener = new EventListener(InMemoryRepository.create(GenericEventRepository.class, GenericEventEntity::getId),
+                new EventStorageProperties(), persister, noWriteBehind(), noJournal());
+
+        users = Samples.batch("users-topic", batchSize, Samples::user);
+        orders = Samples.batch("orders-topic", batchSize, Samples::order);
+        notifications = Samples.batch("notifications-topic", batchSize, Samples::notification);
+        events = Samples.batch("events-topic", batchSize, i -> Samples.rawEvent(Samples.event(i)));
+    }
+
+    /**
+     * Nessun write-behind: il listener salva il poll sul thread del benchmark.
+     */
+    private static ObjectProvider<WriteBehindPersister> noWriteBehind() {
+        return new StaticListableBeanFactory().getBeanProvider(WriteBehindPersister.class);
+    }
+
+    private static ObjectProvider<EventJournalSink> noJournal() {
+        return new StaticListableBeanFactory().getBeanProvider(EventJournalSink.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dispatcher.destroy();
+    }
+
+    @Benchmark
+    public void users() {
+        userListener.listen(users);
+    }
+
+    @Benchmark
+    public void orders() {
+        orderListener.listen(orders, null);
+    }
+
+    @Benchmark
+    public void notifications() {
+        notificationListener.listen(notifications);
+    }
+
+    @Benchmark
+    public void events() {
+        eventListener.listen(events);
+    }
+}
@@ -0,0 +1,156 @@
+package it.alf.jmh;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.alf.codec.InMemorySchemaRegistry;
+import it.alf.codec.RawEvent;
+import it.alf.codec.RawEventDeserializer;
+import it.alf.config.EventStorageProperties;
+import it.alf.consumer.EventListener;
+import it.alf.consumer.NotificationListener;
+import it.alf.consumer.OrderListener;
+import it.alf.consumer.UserListener;
+import it.alf.consumer.WriteBehindPersister;
+import it.alf.dto.GenericEvent;
+import it.alf.dto.Notification;
+import it.alf.dto.Order;
+import it.alf.dto.User;
+import it.alf.entity.GenericEventEntity;
+import it.alf.entity.NotificationEntity;
+import it.alf.entity.OrderEntity;
+import it.alf.entity.UserEntity;
+import it.alf.journal.EventJournalSink;
+
+/**
+ * Costo del mapping DTO→entità eseguito da ogni listener per ogni record consumato.
+ *
+ * Per gli eventi generici, con payload di {@code payloadFields} campi, si confrontano i due percorsi del consumer:
+ * quello attuale ({@code eventRawDeserialize}, lettura del record con {@link RawEventDeserializer} che copia i byte
+ * del payload, poi {@code eventToEntity}/{@code eventToEntityDeflate}) e quello precedente, in cui il record veniva
+ * deserializzato in {@link GenericEvent} ({@code eventJsonDeserialize}) e il payload riserializzato con
+ * {@code ObjectMapper.writeValueAsString} ({@code eventPayloadJson}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MappingBenchmark {
+    private User user;
+    private Order order;
+    private Notification notification;
+
+    /** stato dei soli benchmark sugli eventi, parametrizzato sulla dimensione del payload */
+    @State(Scope.Thread)
+    public static class Events {
+        @Param({"4", "32"})
+        public int payloadFields;
+
+        private Map<String, Object> payload;
+        private byte[] record;
+        private ConsumerRecord<String, RawEvent> rawRecord;
+        private ObjectMapper objectMapper;
+        private RawEventDeserializer rawDeserializer;
+        private JsonDeserializer<GenericEvent> jsonDeserializer;
+        private EventListener eventListener;
+        private EventListener deflateEventListener;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            payload = Samples.payload(1, payloadFields);
+            var event = new GenericEvent("event-000001", "user.signup", payload);
+            try (var serializer = new JsonSerializer<GenericEvent>()) {
+                record = serializer.serialize("events-topic", event);
+            }
+            objectMapper = new ObjectMapper();
+            rawDeserializer = new RawEventDeserializer(List.of("userId"), new InMemorySchemaRegistry());
+            jsonDeserializer = new JsonDeserializer<>(GenericEvent.class, false);
+            rawRecord = new ConsumerRecord<>("events-topic", 0, 0L, event.getId(), rawDeserializer.deserialize("events-topic", record));
+            // il repository e il BatchPersister non sono usati da toEntity
+            eventListener = new EventListener(null, new EventStorageProperties(), null,
+                    new StaticListableBeanFactory().getBeanProvider(WriteBehindPersister.class),
+                    new StaticListableBeanFactory().getBeanProvider(EventJournalSink.class));
+            var deflate = new EventStorageProperties();
+            deflate.setCompression("deflate");
+            deflate.setCompressionMinBytes(0);
+            deflateEventListener = new EventListener(null, deflate, null, new StaticListableBeanFactory().getBeanProvider(WriteBehindPersister.class),
+                    new StaticListableBeanFactory().getBeanProvider(EventJournalSink.class));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            jsonDeserializer.close();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        user = Samples.user(1);
+        order = Samples.order(1);
+        notification = Samples.notification(1);
+    }
+
+    @Benchmark
+    public UserEntity userToEntity() {
+        return UserListener.toEntity(user);
+    }
+
+    @Benchmark
+    public OrderEntity orderToEntity() {
+        return OrderListener.toEntity(order);
+    }
+
+    @Benchmark
+    public NotificationEntity notificationToEntity() {
+        return NotificationListener.toEntity(notification);
+    }
+
+    @Benchmark
+    public GenericEventEntity eventToEntity(Events events) {
+        return events.eventListener.toEntity(events.rawRecord);
+    }
+
+    @Benchmark
+    public GenericEventEntity eventToEntityDeflate(Events events) {
+        return events.deflateEventListener.toEntity(events.rawRecord);
+    }
+
+    @Benchmark
+    public RawEvent eventRawDeserialize(Events events) {
+        return events.rawDeserializer.deserialize("events-topic", events.record);
+    }
+
+    @Benchmark
+    public GenericEvent eventJsonDeserialize(Events events) {
+        return events.jsonDeserializer.deserialize("events-topic", events.record);
+    }
+
+    @Benchmark
+    public String eventPayloadJson(Events events) throws JsonProcessingException {
+        return events.objectMapper.writeValueAsString(events.payload);
+    }
+}
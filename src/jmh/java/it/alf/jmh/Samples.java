@@ -0,0 +1,89 @@
+package it.alf.jmh;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import it.alf.codec.InMemorySchemaRegistry;
+import it.alf.codec.RawEvent;
+import it.alf.codec.RawEventDeserializer;
+
+import it.alf.dto.GenericEvent;
+import it.alf.dto.Notification;
+import it.alf.dto.Order;
+import it.alf.dto.User;
+
+/**
+ * DTO di esempio condivisi dai benchmark, con dimensioni tipiche dei messaggi dell'applicazione.
+ */
+final class Samples {
+    private Samples() {
+    }
+
+    static User user(int i) {
+        return new User(String.format("user-%06d", i), "Alice Smith", "alice.smith" + i + "@example.com");
+    }
+
+    static Order order(int i) {
+        return new Order(String.format("order-%06d", i), String.format("user-%06d", i % 1000), "Mechanical keyboard", 129.90);
+    }
+
+    static Notification notification(int i) {
+        return new Notification(String.format("notification-%06d", i), "Your order has been shipped", "INFO");
+    }
+
+    static GenericEvent event(int i) {
+        return new GenericEvent(String.format("event-%06d", i), "user.signup", payload(i, 4));
+    }
+
+    /**
+     * Payload annidato di {@code fields} campi scalari più un oggetto e una lista, come gli eventi di dominio reali.
+     */
+    static Map<String, Object> payload(int i, int fields) {
+        var payload = new LinkedHashMap<String, Object>();
+        payload.put("userId", String.format("user-%06d", i));
+        for (int f = 1; f < fields; f++) {
+            payload.put("field" + f, f % 2 == 0 ? "value-" + f : f * 10);
+        }
+        payload.put("context", Map.of("ip", "10.0.0." + (i % 255), "agent", "Mozilla/5.0"));
+        payload.put("tags", List.of("web", "eu-west-1"));
+        return payload;
+    }
+
+    /**
+     * L'evento come lo riceve {@code EventListener}: serializzato dal producer in JSON e letto con {@link RawEventDeserializer}.
+     */
+    static RawEvent rawEvent(GenericEvent event) {
+        try (var serializer = new JsonSerializer<GenericEvent>()) {
+            return new RawEventDeserializer(List.of("userId"), new InMemorySchemaRegistry())
+                    .deserialize("events-topic", serializer.serialize("events-topic", event));
+        }
+    }
+
+    static Object dto(String dto, int i) {
+        return switch (dto) {
+            case "user" -> user(i);
+            case "order" -> order(i);
+            case "notification" -> notification(i);
+            case "event" -> event(i);
+            default -> throw new IllegalArgumentException(dto);
+        };
+    }
+
+    /**
+     * Un poll di {@code size} record sul topic indicato, su un'unica partizione e con offset consecutivi.
+     */
+    static <V> List<ConsumerRecord<String, V>> batch(String topic, int size, IntFunction<V> value) {
+        var records = new ArrayList<ConsumerRecord<String, V>>(size);
+        for (int i = 0; i < size; i++) {
+            var v = value.apply(i);
+            records.add(new ConsumerRecord<>(topic, 0, i, String.valueOf(i), v));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,300 @@
+package it.alf.backpressure;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.alf.config.BackpressureProperties;
+import it.alf.consumer.OrderParallelProcessor;
+import it.alf.consumer.WriteBehindPersister;
+import it.alf.dto.BackpressureStatus;
+import it.alf.metrics.KafkaMetrics;
+
+@Component
+/**
+ * Pausa e ripresa dei listener container per consumer group, tramite il {@link KafkaListenerEndpointRegistry}.
+ *
+ * Un gruppo è in pausa finché almeno un motivo lo richiede: {@link #pause} e {@link #resume} aggiungono e tolgono un
+ * motivo, e i container vengono messi in pausa o ripresi solo quando l'insieme dei motivi passa da vuoto a non vuoto
+ * e viceversa. Così il buffer write-behind ({@code write-behind}) e le soglie di saturazione ({@code saturation})
+ * non si riprendono a vicenda i container.
+ *
+ * Con {@code app.kafka.backpressure.enabled=true}, ogni {@code interval} vengono campionati per ogni gruppo:
+ * - l'attesa media di una connessione del pool (timer {@code hikaricp.connections.acquire}), uguale per tutti i gruppi
+ * - la durata media dei salvataggi dei topic del gruppo (timer {@code kafka.persist}, vedi {@link KafkaMetrics})
+ * - i record consumati e non ancora salvati: il buffer write-behind per i gruppi che vi accodano e gli ordini in volo
+ *   nel motore parallelo per {@code orders-group}
+ * Le medie sono calcolate sui soli salvataggi e attese dell'ultimo intervallo; senza campioni il segnale vale zero.
+ * Il gruppo va in pausa quando un segnale supera la soglia di pausa e riprende, dopo almeno {@code min-pause}, quando
+ * tutti i segnali sono sotto la soglia di ripresa (vedi {@link BackpressureProperties}).
+ *
+ * Un container in pausa continua a fare poll senza ricevere record, quindi resta nel gruppo; il poll in corso al
+ * momento della pausa viene completato. Lo stato è pubblicato su {@code /actuator/backpressure}
+ * ({@link BackpressureEndpoint}) e nel gauge {@code kafka.backpressure.paused}.
+ */
+public class BackpressureController implements DisposableBean {
+    public static final String SATURATION = "saturation";
+
+    private final Logger logger = LoggerFactory.getLogger(BackpressureController.class);
+    private final BackpressureProperties properties;
+    private final ObjectProvider<KafkaListenerEndpointRegistry> registry;
+    private final ObjectProvider<WriteBehindPersister> writeBehind;
+    private final ObjectProvider<OrderParallelProcessor> parallel;
+    private final MeterRegistry meterRegistry;
+    private final KafkaMetrics kafkaMetrics;
+    private final Map<String, Group> groups = new ConcurrentHashMap<>();
+    private ScheduledExecutorService sampler;
+    /** usato solo dal thread di campionamento */
+    private Window poolWait = Window.EMPTY;
+
+    public BackpressureController(BackpressureProperties properties, ObjectProvider<KafkaListenerEndpointRegistry> registry,
+                                  ObjectProvider<WriteBehindPersister> writeBehind, ObjectProvider<OrderParallelProcessor> parallel,
+                                  MeterRegistry meterRegistry, KafkaMetrics kafkaMetrics) {
+        properties.validate();
+        this.properties = properties;
+        this.registry = registry;
+        this.writeBehind = writeBehind;
+        this.parallel = parallel;
+        this.meterRegistry = meterRegistry;
+        this.kafkaMetrics = kafkaMetrics;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!properties.isEnabled() || sampler != null) {
+            return;
+        }
+        long interval = properties.getInterval().toMillis();
+        sampler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("backpressure").daemon().factory());
+        sampler.scheduleWithFixedDelay(() -> {
+            try {
+                sample(Instant.now());
+            } catch (RuntimeException e) {
+                logger.warn("Backpressure sampling failed: {}", e.getMessage(), e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        logger.info("Backpressure enabled, sampling every {}", properties.getInterval());
+    }
+
+    /**
+     * Mette in pausa i container dei gruppi per il motivo indicato (se non lo sono già per un altro motivo).
+     */
+    public void pause(Collection<String> groupIds, String reason) {
+        groupIds.forEach(groupId -> update(groupId, reason, true));
+    }
+
+    /**
+     * Toglie il motivo di pausa: i container riprendono se non resta nessun altro motivo.
+     */
+    public void resume(Collection<String> groupIds, String reason) {
+        groupIds.forEach(groupId -> update(groupId, reason, false));
+    }
+
+    public boolean isPaused(String groupId) {
+        var group = groups.get(groupId);
+        synchronized (this) {
+            return group != null && !group.reasons.isEmpty();
+        }
+    }
+
+    public synchronized List<BackpressureStatus> status() {
+        var status = new ArrayList<BackpressureStatus>();
+        for (var group : new TreeMap<>(groups).values()) {
+            var signals = group.signals;
+            status.add(new BackpressureStatus(group.groupId, !group.reasons.isEmpty(), List.copyOf(group.reasons), group.cause,
+                    group.pausedAt, millis(signals.poolWait()), millis(signals.persistLatency()), signals.inFlight(), signals.sampledAt()));
+        }
+        return status;
+    }
+
+    /**
+     * Campiona i segnali di tutti i gruppi con container registrati e applica le soglie.
+     */
+    void sample(Instant now) {
+        var listenerRegistry = registry.getIfAvailable();
+        if (listenerRegistry == null) {
+            return;
+        }
+        var topicsByGroup = new TreeMap<String, Set<String>>();
+        for (var container : listenerRegistry.getListenerContainers()) {
+            var groupId = container.getGroupId();
+            var topics = container.getContainerProperties().getTopics();
+            if (groupId != null) {
+                topicsByGroup.computeIfAbsent(groupId, g -> new HashSet<>()).addAll(topics != null ? List.of(topics) : List.of());
+            }
+        }
+        // i segnali vengono letti fuori dal lock: il buffer write-behind chiama pause() tenendo il proprio lock
+        poolWait = poolWait.next(meterRegistry.find("hikaricp.connections.acquire").timers());
+        topicsByGroup.forEach((groupId, topics) -> {
+            var group = group(groupId);
+            var persist = new ArrayList<Timer>();
+            topics.forEach(topic -> persist.addAll(meterRegistry.find("kafka.persist").tag("topic", topic).timers()));
+            group.persist = group.persist.next(persist);
+            var signals = new Signals(poolWait.mean(), group.persist.mean(), inFlight(groupId), now);
+            evaluate(group, signals);
+        });
+    }
+
+    private synchronized void evaluate(Group group, Signals signals) {
+        group.signals = signals;
+        var limits = properties.thresholds(group.groupId);
+        if (!group.reasons.contains(SATURATION)) {
+            var cause = exceeded(signals, limits);
+            if (cause != null) {
+                logger.warn("Pausing {}: {}", group.groupId, cause);
+                group.cause = cause;
+                group.saturatedAt = signals.sampledAt();
+                update(group.groupId, SATURATION, true);
+            }
+        } else if (!signals.sampledAt().isBefore(group.saturatedAt.plus(properties.getMinPause())) && belowResume(signals, limits)) {
+            logger.info("Resuming {}: pool wait {} ms, persist latency {} ms, {} in flight", group.groupId,
+                    format(signals.poolWait()), format(signals.persistLatency()), signals.inFlight());
+            group.cause = null;
+            update(group.groupId, SATURATION, false);
+        }
+    }
+
+    private static String exceeded(Signals signals, BackpressureProperties.Thresholds limits) {
+        if (limits.getPoolWaitPause().isPositive() && signals.poolWait().compareTo(limits.getPoolWaitPause()) > 0) {
+            return "pool wait " + format(signals.poolWait()) + " ms > " + format(limits.getPoolWaitPause()) + " ms";
+        }
+        if (limits.getPersistLatencyPause().isPositive() && signals.persistLatency().compareTo(limits.getPersistLatencyPause()) > 0) {
+            return "persist latency " + format(signals.persistLatency()) + " ms > " + format(limits.getPersistLatencyPause()) + " ms";
+        }
+        if (limits.getInFlightPause() > 0 && signals.inFlight() > limits.getInFlightPause()) {
+            return signals.inFlight() + " records in flight > " + limits.getInFlightPause();
+        }
+        return null;
+    }
+
+    private static boolean belowResume(Signals signals, BackpressureProperties.Thresholds limits) {
+        return (!limits.getPoolWaitPause().isPositive() || signals.poolWait().compareTo(limits.getPoolWaitResume()) <= 0)
+                && (!limits.getPersistLatencyPause().isPositive() || signals.persistLatency().compareTo(limits.getPersistLatencyResume()) <= 0)
+                && (limits.getInFlightPause() <= 0 || signals.inFlight() <= limits.getInFlightResume());
+    }
+
+    private int inFlight(String groupId) {
+        int inFlight = 0;
+        var persister = writeBehind.getIfAvailable();
+        if (persister != null && WriteBehindPersister.GROUP_IDS.contains(groupId)) {
+            inFlight += persister.buffered();
+        }
+        var processor = parallel.getIfAvailable();
+        if (processor != null && OrderParallelProcessor.GROUP_ID.equals(groupId)) {
+            inFlight += processor.inFlight();
+        }
+        return inFlight;
+    }
+
+    private synchronized void update(String groupId, String reason, boolean add) {
+        var group = group(groupId);
+        boolean wasPaused = !group.reasons.isEmpty();
+        if (!(add ? group.reasons.add(reason) : group.reasons.remove(reason))) {
+            return;
+        }
+        boolean paused = !group.reasons.isEmpty();
+        if (paused == wasPaused) {
+            return;
+        }
+        group.pausedAt = paused ? Instant.now() : null;
+        var listenerRegistry = registry.getIfAvailable();
+        if (listenerRegistry == null) {
+            return;
+        }
+        for (var container : listenerRegistry.getListenerContainers()) {
+            if (groupId.equals(container.getGroupId())) {
+                if (paused) {
+                    container.pause();
+                } else {
+                    container.resume();
+                }
+            }
+        }
+    }
+
+    private Group group(String groupId) {
+        return groups.computeIfAbsent(groupId, id -> {
+            var group = new Group(id);
+            kafkaMetrics.backpressureGauge(id, () -> isPaused(id) ? 1 : 0);
+            return group;
+        });
+    }
+
+    private static double millis(Duration duration) {
+        return duration.toNanos() / 1_000_000.0;
+    }
+
+    private static String format(Duration duration) {
+        return String.format(Locale.ROOT, "%.3f", millis(duration));
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+        }
+    }
+
+    private static final class Group {
+        private final String groupId;
+        /** motivi di pausa, protetti dal lock del controller */
+        private final Set<String> reasons = new LinkedHashSet<>();
+        private Window persist = Window.EMPTY;
+        private volatile Signals signals = new Signals(Duration.ZERO, Duration.ZERO, 0, null);
+        private String cause;
+        private Instant pausedAt;
+        private Instant saturatedAt;
+
+        private Group(String groupId) {
+            this.groupId = groupId;
+        }
+    }
+
+    private record Signals(Duration poolWait, Duration persistLatency, int inFlight, Instant sampledAt) {
+    }
+
+    /**
+     * Totali cumulativi di un insieme di timer e differenza rispetto al campione precedente.
+     */
+    private record Window(long count, double totalNanos, long deltaCount, double deltaNanos) {
+        static final Window EMPTY = new Window(0, 0, 0, 0);
+
+        Window next(Collection<Timer> timers) {
+            long count = 0;
+            double total = 0;
+            for (var timer : timers) {
+                count += timer.count();
+                total += timer.totalTime(TimeUnit.NANOSECONDS);
+            }
+            // un timer rimosso dal registro fa scendere i totali: si riparte dal nuovo valore
+            return count >= this.count ? new Window(count, total, count - this.count, total - totalNanos) : new Window(count, total, 0, 0);
+        }
+
+        Duration mean() {
+            return deltaCount > 0 ? Duration.ofNanos((long) (deltaNanos / deltaCount)) : Duration.ZERO;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package it.alf.backpressure;
+
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import it.alf.dto.BackpressureStatus;
+
+@Component
+@Endpoint(id = "backpressure")
+/**
+ * Endpoint Actuator {@code /actuator/backpressure}: per ogni consumer group se è in pausa, per quali motivi e i
+ * segnali dell'ultimo campione (vedi {@link BackpressureController}).
+ */
+public class BackpressureEndpoint {
+    private final BackpressureController controller;
+
+    public BackpressureEndpoint(BackpressureController controller) {
+        this.controller = controller;
+    }
+
+    @ReadOperation
+    public List<BackpressureStatus> groups() {
+        return controller.status();
+    }
+}
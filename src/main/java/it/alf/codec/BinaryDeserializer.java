@@ -0,0 +1,37 @@
+package it.alf.codec;
+
+import org.apache.kafka.common.serialization.Deserializer;
+
+/**
+ * Deserializer Kafka per il formato binario.
+ *
+ * I record che non iniziano con {@link RecordCodec#MAGIC} sono JSON scritti prima del passaggio al formato
+ * binario e vengono letti con il deserializer JSON ricevuto: un topic può cambiare codec senza svuotarlo.
+ */
+public class BinaryDeserializer<T> implements Deserializer<T> {
+    private final RecordCodec<T> codec;
+    private final SchemaRegistry registry;
+    private final Deserializer<T> jsonFallback;
+
+    public BinaryDeserializer(RecordCodec<T> codec, SchemaRegistry registry, Deserializer<T> jsonFallback) {
+        this.codec = codec;
+        this.registry = registry;
+        this.jsonFallback = jsonFallback;
+    }
+
+    @Override
+    public T deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (data.length > 0 && data[0] != RecordCodec.MAGIC) {
+            return jsonFallback.deserialize(topic, data);
+        }
+        return codec.decode(data, registry);
+    }
+
+    @Override
+    public void close() {
+        jsonFallback.close();
+    }
+}
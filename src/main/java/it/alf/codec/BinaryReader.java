@@ -0,0 +1,102 @@
+package it.alf.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import org.apache.kafka.common.errors.SerializationException;
+
+/**
+ * Lettura del formato scritto da {@link BinaryWriter}.
+ */
+final class BinaryReader {
+    private final byte[] buffer;
+    private int position;
+
+    BinaryReader(byte[] buffer, int offset) {
+        this.buffer = buffer;
+        this.position = offset;
+    }
+
+    int readByte() {
+        require(1);
+        return buffer[position++] & 0xFF;
+    }
+
+    long readFixedLong() {
+        require(8);
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (buffer[position++] & 0xFF);
+        }
+        return value;
+    }
+
+    long readVarint() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new SerializationException("Malformed varint at position " + position);
+    }
+
+    long readLong() {
+        long raw = readVarint();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    double readDouble() {
+        return Double.longBitsToDouble(readFixedLong());
+    }
+
+    String readString() {
+        long length = readVarint();
+        if (length == 0) {
+            return null;
+        }
+        int size = Math.toIntExact(length - 1);
+        require(size);
+        var value = new String(buffer, position, size, StandardCharsets.UTF_8);
+        position += size;
+        return value;
+    }
+
+    Object readValue() {
+        int tag = readByte();
+        return switch (tag) {
+            case BinaryWriter.TAG_NULL -> null;
+            case BinaryWriter.TAG_STRING -> readString();
+            case BinaryWriter.TAG_LONG -> readLong();
+            case BinaryWriter.TAG_DOUBLE -> readDouble();
+            case BinaryWriter.TAG_TRUE -> Boolean.TRUE;
+            case BinaryWriter.TAG_FALSE -> Boolean.FALSE;
+            case BinaryWriter.TAG_MAP -> {
+                int size = Math.toIntExact(readVarint());
+                var map = new LinkedHashMap<String, Object>(Math.max(4, size * 4 / 3 + 1));
+                for (int i = 0; i < size; i++) {
+                    map.put(readString(), readValue());
+                }
+                yield map;
+            }
+            case BinaryWriter.TAG_LIST -> {
+                int size = Math.toIntExact(readVarint());
+                var list = new ArrayList<Object>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue());
+                }
+                yield list;
+            }
+            default -> throw new SerializationException("Unknown value tag " + tag + " at position " + (position - 1));
+        };
+    }
+
+    private void require(int bytes) {
+        if (position + bytes > buffer.length) {
+            throw new SerializationException("Truncated record: needed " + bytes + " bytes at position " + position);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package it.alf.codec;
+
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * Serializer Kafka per il formato binario: registra lo schema corrente del DTO alla creazione
+ * (subject {@code <topic>-value}) e scrive ogni record con {@link RecordCodec#encode(Object)}.
+ */
+public class BinarySerializer<T> implements Serializer<T> {
+    private final RecordCodec<T> codec;
+
+    public BinarySerializer(RecordCodec<T> codec, SchemaRegistry registry, String topic) {
+        this.codec = codec;
+        registry.register(topic + "-value", codec.schema());
+    }
+
+    @Override
+    public byte[] serialize(String topic, T data) {
+        return data == null ? null : codec.encode(data);
+    }
+}
@@ -0,0 +1,134 @@
+package it.alf.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffer di scrittura del formato binario: interi a lunghezza variabile (zig-zag per i valori con segno),
+ * double a 8 byte, stringhe UTF-8 precedute dalla lunghezza.
+ */
+final class BinaryWriter {
+    // tag dei valori dinamici (campi di tipo VALUE, es. GenericEvent.payload)
+    static final int TAG_NULL = 0;
+    static final int TAG_STRING = 1;
+    static final int TAG_LONG = 2;
+    static final int TAG_DOUBLE = 3;
+    static final int TAG_TRUE = 4;
+    static final int TAG_FALSE = 5;
+    static final int TAG_MAP = 6;
+    static final int TAG_LIST = 7;
+
+    private byte[] buffer;
+    private int position;
+
+    BinaryWriter(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    void writeFixedLong(long value) {
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (value >>> shift);
+        }
+    }
+
+    void writeVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    void writeLong(long value) {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    void writeDouble(double value) {
+        writeFixedLong(Double.doubleToLongBits(value));
+    }
+
+    /**
+     * Lunghezza + 1 seguita dai byte UTF-8; 0 rappresenta null.
+     */
+    void writeString(String value) {
+        if (value == null) {
+            writeVarint(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length + 1L);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    /**
+     * Valore dinamico con tag di tipo: null, stringhe, numeri, booleani, mappe e liste annidate (il modello
+     * prodotto da Jackson per un JSON generico). Gli interi diventano long, gli altri numeri double,
+     * qualsiasi altro tipo viene scritto come stringa.
+     */
+    void writeValue(Object value) {
+        switch (value) {
+            case null -> writeByte(TAG_NULL);
+            case String s -> {
+                writeByte(TAG_STRING);
+                writeString(s);
+            }
+            case Integer i -> {
+                writeByte(TAG_LONG);
+                writeLong(i);
+            }
+            case Long l -> {
+                writeByte(TAG_LONG);
+                writeLong(l);
+            }
+            case Short s -> {
+                writeByte(TAG_LONG);
+                writeLong(s);
+            }
+            case Number n -> {
+                writeByte(TAG_DOUBLE);
+                writeDouble(n.doubleValue());
+            }
+            case Boolean b -> writeByte(b ? TAG_TRUE : TAG_FALSE);
+            case Map<?, ?> map -> {
+                writeByte(TAG_MAP);
+                writeVarint(map.size());
+                for (var entry : map.entrySet()) {
+                    writeString(String.valueOf(entry.getKey()));
+                    writeValue(entry.getValue());
+                }
+            }
+            case List<?> list -> {
+                writeByte(TAG_LIST);
+                writeVarint(list.size());
+                for (var item : list) {
+                    writeValue(item);
+                }
+            }
+            default -> {
+                writeByte(TAG_STRING);
+                writeString(value.toString());
+            }
+        }
+    }
+
+    private void ensureCapacity(int additional) {
+        if (position + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + additional));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package it.alf.codec;
+
+import java.util.Map;
+
+import it.alf.dto.GenericEvent;
+import it.alf.dto.Notification;
+import it.alf.dto.Order;
+import it.alf.dto.User;
+
+/**
+ * Codec binari dei DTO di {@code it.alf.dto}.
+ *
+ * Per evolvere un DTO si aggiungono (o rimuovono) campi e si incrementa la versione: i record scritti con
+ * la versione precedente restano leggibili, purché nessun campo esistente cambi tipo (verificato dal
+ * {@link SchemaRegistry} alla registrazione).
+ */
+public final class DtoCodecs {
+
+    public static final RecordCodec<User> USER = RecordCodec.builder(User.class, 1, User::new)
+            .string("id", User::getId, User::setId)
+            .string("name", User::getName, User::setName)
+            .string("email", User::getEmail, User::setEmail)
+            .build();
+
+    public static final RecordCodec<Order> ORDER = RecordCodec.builder(Order.class, 1, Order::new)
+            .string("id", Order::getId, Order::setId)
+            .string("userId", Order::getUserId, Order::setUserId)
+            .string("product", Order::getProduct, Order::setProduct)
+            .doubleField("amount", Order::getAmount, Order::setAmount)
+            .build();
+
+    public static final RecordCodec<Notification> NOTIFICATION = RecordCodec.builder(Notification.class, 1, Notification::new)
+            .string("id", Notification::getId, Notification::setId)
+            .string("message", Notification::getMessage, Notification::setMessage)
+            .string("level", Notification::getLevel, Notification::setLevel)
+            .build();
+
+    public static final RecordCodec<GenericEvent> EVENT = RecordCodec.builder(GenericEvent.class, 1, GenericEvent::new)
+            .string("id", GenericEvent::getId, GenericEvent::setId)
+            .string("type", GenericEvent::getType, GenericEvent::setType)
+            .<Map<String, Object>>value("payload", GenericEvent::getPayload, GenericEvent::setPayload)
+            .build();
+
+    private DtoCodecs() {
+    }
+}
@@ -0,0 +1,21 @@
+package it.alf.codec;
+
+/**
+ * Tipi dei campi supportati dal formato binario.
+ */
+public enum FieldType {
+    /** stringa UTF-8 nullable */
+    STRING,
+    /** double a 8 byte */
+    DOUBLE,
+    /** valore dinamico con tag di tipo (mappe/liste annidate, come un JSON generico) */
+    VALUE;
+
+    void skip(BinaryReader reader) {
+        switch (this) {
+            case STRING -> reader.readString();
+            case DOUBLE -> reader.readDouble();
+            case VALUE -> reader.readValue();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package it.alf.codec;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Registry su file system: uno schema per file in {@code <dir>/<subject>/<id esadecimale>.json}.
+ *
+ * Più processi possono condividere la stessa directory (un consumer trova anche gli schemi registrati da un
+ * producer in un altro processo) e gli schemi delle versioni precedenti restano disponibili dopo un riavvio,
+ * quindi i record già presenti nei topic restano leggibili.
+ */
+public class FileSchemaRegistry implements SchemaRegistry {
+    private final Path directory;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Long, Schema> cache = new ConcurrentHashMap<>();
+
+    public FileSchemaRegistry(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create schema registry directory " + directory, e);
+        }
+    }
+
+    @Override
+    public synchronized long register(String subject, Schema schema) {
+        long id = schema.fingerprint();
+        var subjectDir = directory.resolve(subject);
+        var file = subjectDir.resolve(fileName(id));
+        try {
+            if (!Files.exists(file)) {
+                InMemorySchemaRegistry.checkCompatible(subject, read(subjectDir), schema);
+                Files.createDirectories(subjectDir);
+                // scrittura atomica: un altro processo non vede mai un file parziale
+                var tmp = Files.createTempFile(subjectDir, "schema", ".tmp");
+                objectMapper.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), schema);
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot register schema " + schema.canonicalForm() + " for subject " + subject, e);
+        }
+        cache.put(id, schema);
+        return id;
+    }
+
+    @Override
+    public Schema lookup(long id) {
+        var schema = cache.get(id);
+        if (schema != null) {
+            return schema;
+        }
+        try (var subjects = Files.list(directory)) {
+            for (var subjectDir : subjects.toList()) {
+                var file = subjectDir.resolve(fileName(id));
+                if (Files.exists(file)) {
+                    schema = objectMapper.readValue(file.toFile(), Schema.class);
+                    cache.put(id, schema);
+                    return schema;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read schema " + Long.toHexString(id) + " from " + directory, e);
+        }
+        return null;
+    }
+
+    private List<Schema> read(Path subjectDir) throws IOException {
+        var schemas = new ArrayList<Schema>();
+        if (!Files.isDirectory(subjectDir)) {
+            return schemas;
+        }
+        try (var files = Files.list(subjectDir)) {
+            for (var file : files.filter(f -> f.getFileName().toString().endsWith(".json")).toList()) {
+                schemas.add(objectMapper.readValue(file.toFile(), Schema.class));
+            }
+        }
+        return schemas;
+    }
+
+    private static String fileName(long id) {
+        return String.format("%016x.json", id);
+    }
+}
@@ -0,0 +1,45 @@
+package it.alf.codec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry in memoria: adatto a test e sviluppo, o quando producer e consumer girano nello stesso processo.
+ * Dopo un riavvio contiene solo gli schemi registrati dal processo corrente.
+ */
+public class InMemorySchemaRegistry implements SchemaRegistry {
+    private final Map<Long, Schema> schemas = new ConcurrentHashMap<>();
+    private final Map<String, List<Schema>> subjects = new ConcurrentHashMap<>();
+
+    @Override
+    public synchronized long register(String subject, Schema schema) {
+        long id = schema.fingerprint();
+        var versions = subjects.computeIfAbsent(subject, s -> new ArrayList<>());
+        if (!versions.contains(schema)) {
+            checkCompatible(subject, versions, schema);
+            versions.add(schema);
+        }
+        schemas.putIfAbsent(id, schema);
+        return id;
+    }
+
+    @Override
+    public Schema lookup(long id) {
+        return schemas.get(id);
+    }
+
+    static void checkCompatible(String subject, List<Schema> versions, Schema candidate) {
+        for (var existing : versions) {
+            for (var field : candidate.fields()) {
+                var previous = existing.field(field.name());
+                if (previous != null && previous.type() != field.type()) {
+                    throw new IncompatibleSchemaException("Subject " + subject + ": field '" + field.name() + "' changes type from "
+                            + previous.type() + " (version " + existing.version() + ") to " + field.type()
+                            + " (version " + candidate.version() + ")");
+                }
+            }
+        }
+    }
+}
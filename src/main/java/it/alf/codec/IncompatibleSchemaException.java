@@ -0,0 +1,11 @@
+package it.alf.codec;
+
+/**
+ * Schema non compatibile con le versioni già registrate per lo stesso subject.
+ */
+public class IncompatibleSchemaException extends RuntimeException {
+
+    public IncompatibleSchemaException(String message) {
+        super(message);
+    }
+}
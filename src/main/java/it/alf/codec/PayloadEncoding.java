@@ -0,0 +1,70 @@
+package it.alf.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Formato con cui il payload di un evento è memorizzato: JSON così come ricevuto oppure JSON compresso con Deflate.
+ *
+ * Deflate ha un costo fisso di circa 10 µs per payload (inizializzazione di zlib) indipendente dalla dimensione:
+ * conviene solo sopra qualche centinaio di byte, da cui la soglia {@code app.events.storage.compression-min-bytes}.
+ */
+public enum PayloadEncoding {
+    JSON {
+        @Override
+        public byte[] encode(byte[] json) {
+            return json;
+        }
+
+        @Override
+        public byte[] decode(byte[] stored) {
+            return stored;
+        }
+    },
+    DEFLATE {
+        @Override
+        public byte[] encode(byte[] json) {
+            var deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(json);
+                deflater.finish();
+                var out = new ByteArrayOutputStream(json.length / 2 + 16);
+                var buffer = new byte[4096];
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+                return out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        public byte[] decode(byte[] stored) {
+            var inflater = new Inflater();
+            try {
+                inflater.setInput(stored);
+                var out = new ByteArrayOutputStream(stored.length * 4);
+                var buffer = new byte[4096];
+                while (!inflater.finished()) {
+                    int n = inflater.inflate(buffer);
+                    if (n == 0 && inflater.needsInput()) {
+                        throw new IllegalStateException("Truncated deflate payload");
+                    }
+                    out.write(buffer, 0, n);
+                }
+                return out.toByteArray();
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("Corrupted deflate payload", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    };
+
+    public abstract byte[] encode(byte[] json);
+
+    public abstract byte[] decode(byte[] stored);
+}
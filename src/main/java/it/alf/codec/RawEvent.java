@@ -0,0 +1,26 @@
+package it.alf.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+/**
+ * Evento generico letto da Kafka senza materializzare il payload: {@code payload} contiene i byte JSON del payload
+ * così come sono arrivati nel record, {@code keys} i valori delle chiavi del payload da indicizzare.
+ *
+ * Serializzato in JSON (ad esempio dal {@code DeadLetterPublishingRecoverer}) ha la stessa forma di
+ * {@link it.alf.dto.GenericEvent}: il payload viene riscritto così com'è, senza passare da Jackson.
+ */
+@JsonPropertyOrder({"id", "type", "payload"})
+public record RawEvent(String id, String type, @JsonIgnore byte[] payload, @JsonIgnore Map<String, String> keys) {
+
+    @JsonProperty("payload")
+    @JsonRawValue
+    public String payloadJson() {
+        return payload == null ? null : new String(payload, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,129 @@
+package it.alf.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.alf.dto.GenericEvent;
+
+/**
+ * Deserializer degli eventi generici che non ricostruisce il payload.
+ *
+ * Per i record JSON il parser scorre i token senza creare oggetti: {@code id} e {@code type} vengono letti,
+ * il payload viene copiato byte per byte dal record (da '{' a '}') e dei suoi campi di primo livello vengono
+ * conservati solo i valori scalari delle chiavi in {@code indexedKeys}. I record nel formato binario
+ * ({@link DtoCodecs#EVENT}) vengono invece decodificati e il payload convertito in JSON.
+ */
+public class RawEventDeserializer implements Deserializer<RawEvent> {
+    /** lunghezza massima di un valore indicizzato: i valori più lunghi non vengono estratti */
+    public static final int MAX_KEY_VALUE_LENGTH = 255;
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Set<String> indexedKeys;
+    private final SchemaRegistry registry;
+
+    public RawEventDeserializer(Collection<String> indexedKeys, SchemaRegistry registry) {
+        this.indexedKeys = Set.copyOf(indexedKeys);
+        this.registry = registry;
+    }
+
+    @Override
+    public RawEvent deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (data.length > 0 && data[0] == RecordCodec.MAGIC) {
+            return fromBinary(DtoCodecs.EVENT.decode(data, registry));
+        }
+        try (JsonParser parser = JSON.createParser(data)) {
+            return fromJson(parser, data);
+        } catch (IOException e) {
+            throw new SerializationException("Invalid event JSON on topic " + topic, e);
+        }
+    }
+
+    private RawEvent fromJson(JsonParser parser, byte[] data) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new SerializationException("Event must be a JSON object");
+        }
+        String id = null;
+        String type = null;
+        byte[] payload = null;
+        Map<String, String> keys = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id" -> id = parser.getValueAsString();
+                case "type" -> type = parser.getValueAsString();
+                case "payload" -> {
+                    if (value == JsonToken.VALUE_NULL) {
+                        break;
+                    }
+                    int start = (int) parser.currentTokenLocation().getByteOffset();
+                    if (value == JsonToken.START_OBJECT) {
+                        readKeys(parser, keys);
+                    } else {
+                        parser.skipChildren();
+                    }
+                    payload = Arrays.copyOfRange(data, start, (int) parser.currentLocation().getByteOffset());
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        return new RawEvent(id, type, payload, keys);
+    }
+
+    /**
+     * Legge i campi di primo livello del payload fino alla '}' di chiusura, conservando quelli da indicizzare.
+     */
+    private void readKeys(JsonParser parser, Map<String, String> keys) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value.isScalarValue() && value != JsonToken.VALUE_NULL && indexedKeys.contains(name)) {
+                put(keys, name, parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private RawEvent fromBinary(GenericEvent event) {
+        Map<String, String> keys = new HashMap<>();
+        byte[] payload = null;
+        if (event.getPayload() != null) {
+            try {
+                payload = MAPPER.writeValueAsBytes(event.getPayload());
+            } catch (JsonProcessingException e) {
+                throw new SerializationException("Unable to convert binary event payload to JSON", e);
+            }
+            event.getPayload().forEach((name, value) -> {
+                if (indexedKeys.contains(name) && (value instanceof CharSequence || value instanceof Number || value instanceof Boolean)) {
+                    put(keys, name, value.toString());
+                }
+            });
+        }
+        return new RawEvent(event.getId(), event.getType(), payload, keys);
+    }
+
+    private static void put(Map<String, String> keys, String name, String value) {
+        if (value.length() <= MAX_KEY_VALUE_LENGTH) {
+            keys.put(name, value);
+        }
+    }
+}
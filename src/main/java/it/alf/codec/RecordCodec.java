@@ -0,0 +1,156 @@
+package it.alf.codec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+import org.apache.kafka.common.errors.SerializationException;
+
+/**
+ * Codec binario di un DTO, definito campo per campo con getter/setter espliciti (nessuna reflection).
+ *
+ * Formato di un record: byte {@link #MAGIC}, id dello schema dello scrittore (8 byte), valori dei campi
+ * nell'ordine dello schema, senza nomi. In lettura, se lo schema dello scrittore è diverso da quello corrente
+ * i campi vengono associati per nome: i campi sconosciuti vengono saltati, quelli mancanti restano al valore
+ * di default del DTO. Così producer e consumer con versioni diverse dello schema continuano a interoperare.
+ */
+public final class RecordCodec<T> {
+    /** primo byte di ogni record binario: un record JSON inizia sempre con un carattere stampabile */
+    public static final byte MAGIC = 0x00;
+    static final int HEADER_SIZE = 9;
+
+    private final Class<T> type;
+    private final Supplier<T> factory;
+    private final List<Accessor<T>> accessors;
+    private final Schema schema;
+    private final long schemaId;
+    // per ogni schema dello scrittore: indice dell'accessor del lettore per ciascun campo scritto (-1 = da saltare)
+    private final Map<Long, int[]> resolutions = new ConcurrentHashMap<>();
+
+    private RecordCodec(Class<T> type, int version, Supplier<T> factory, List<Accessor<T>> accessors) {
+        this.type = type;
+        this.factory = factory;
+        this.accessors = List.copyOf(accessors);
+        this.schema = new Schema(type.getName(), version, accessors.stream().map(a -> new Schema.Field(a.name, a.type)).toList());
+        this.schemaId = schema.fingerprint();
+    }
+
+    public static <T> Builder<T> builder(Class<T> type, int version, Supplier<T> factory) {
+        return new Builder<>(type, version, factory);
+    }
+
+    public Class<T> type() {
+        return type;
+    }
+
+    public Schema schema() {
+        return schema;
+    }
+
+    public byte[] encode(T value) {
+        var writer = new BinaryWriter(64);
+        writer.writeByte(MAGIC);
+        writer.writeFixedLong(schemaId);
+        for (var accessor : accessors) {
+            accessor.writer.accept(writer, value);
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * @param registry usato solo se il record è stato scritto con uno schema diverso da quello corrente
+     */
+    public T decode(byte[] data, SchemaRegistry registry) {
+        if (data.length < HEADER_SIZE || data[0] != MAGIC) {
+            throw new SerializationException("Not a binary " + type.getSimpleName() + " record");
+        }
+        var reader = new BinaryReader(data, 1);
+        long writerId = reader.readFixedLong();
+        var value = factory.get();
+        if (writerId == schemaId) {
+            for (var accessor : accessors) {
+                accessor.reader.accept(reader, value);
+            }
+            return value;
+        }
+        var writerSchema = registry.lookup(writerId);
+        if (writerSchema == null) {
+            throw new SerializationException("Unknown schema id " + Long.toHexString(writerId) + " for " + type.getSimpleName());
+        }
+        int[] resolution = resolutions.computeIfAbsent(writerId, id -> resolve(writerSchema));
+        for (int i = 0; i < resolution.length; i++) {
+            if (resolution[i] >= 0) {
+                accessors.get(resolution[i]).reader.accept(reader, value);
+            } else {
+                writerSchema.fields().get(i).type().skip(reader);
+            }
+        }
+        return value;
+    }
+
+    private int[] resolve(Schema writerSchema) {
+        int[] resolution = new int[writerSchema.fields().size()];
+        Arrays.fill(resolution, -1);
+        for (int i = 0; i < resolution.length; i++) {
+            var field = writerSchema.fields().get(i);
+            for (int j = 0; j < accessors.size(); j++) {
+                if (accessors.get(j).name.equals(field.name()) && accessors.get(j).type == field.type()) {
+                    resolution[i] = j;
+                }
+            }
+        }
+        return resolution;
+    }
+
+    private record Accessor<T>(String name, FieldType type, BiConsumer<BinaryWriter, T> writer, BiConsumer<BinaryReader, T> reader) {
+    }
+
+    public static final class Builder<T> {
+        private final Class<T> type;
+        private final int version;
+        private final Supplier<T> factory;
+        private final List<Accessor<T>> accessors = new ArrayList<>();
+
+        private Builder(Class<T> type, int version, Supplier<T> factory) {
+            this.type = type;
+            this.version = version;
+            this.factory = factory;
+        }
+
+        public Builder<T> string(String name, Function<T, String> getter, BiConsumer<T, String> setter) {
+            accessors.add(new Accessor<>(name, FieldType.STRING,
+                    (out, value) -> out.writeString(getter.apply(value)),
+                    (in, value) -> setter.accept(value, in.readString())));
+            return this;
+        }
+
+        public Builder<T> doubleField(String name, ToDoubleFunction<T> getter, ObjDoubleConsumer<T> setter) {
+            accessors.add(new Accessor<>(name, FieldType.DOUBLE,
+                    (out, value) -> out.writeDouble(getter.applyAsDouble(value)),
+                    (in, value) -> setter.accept(value, in.readDouble())));
+            return this;
+        }
+
+        public <V> Builder<T> value(String name, Function<T, V> getter, BiConsumer<T, V> setter) {
+            accessors.add(new Accessor<>(name, FieldType.VALUE,
+                    (out, value) -> out.writeValue(getter.apply(value)),
+                    (in, value) -> {
+                        @SuppressWarnings("unchecked")
+                        V decoded = (V) in.readValue();
+                        setter.accept(value, decoded);
+                    }));
+            return this;
+        }
+
+        public RecordCodec<T> build() {
+            return new RecordCodec<>(type, version, factory, accessors);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package it.alf.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Schema di un record binario: nome del tipo, versione e campi nell'ordine in cui vengono scritti.
+ *
+ * L'identificativo scritto in ogni record è il {@link #fingerprint()}, un CRC-64 (lo stesso polinomio di
+ * Avro) della forma canonica {@code nome{campo:TIPO,...}}: schemi con gli stessi campi hanno lo stesso id
+ * in qualunque processo, senza coordinare l'assegnazione con il registry.
+ */
+public record Schema(String name, int version, List<Field> fields) {
+    private static final long EMPTY = 0xc15d213aa4d7a795L;
+    private static final long[] FINGERPRINT_TABLE = new long[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            long fp = i;
+            for (int j = 0; j < 8; j++) {
+                fp = (fp >>> 1) ^ (EMPTY & -(fp & 1L));
+            }
+            FINGERPRINT_TABLE[i] = fp;
+        }
+    }
+
+    public Schema {
+        fields = List.copyOf(fields);
+    }
+
+    public record Field(String name, FieldType type) {
+    }
+
+    public String canonicalForm() {
+        return name + fields.stream().map(f -> f.name() + ":" + f.type()).collect(Collectors.joining(",", "{", "}"));
+    }
+
+    public long fingerprint() {
+        long fp = EMPTY;
+        for (byte b : canonicalForm().getBytes(StandardCharsets.UTF_8)) {
+            fp = (fp >>> 8) ^ FINGERPRINT_TABLE[(int) (fp ^ b) & 0xff];
+        }
+        return fp;
+    }
+
+    public Field field(String fieldName) {
+        for (var field : fields) {
+            if (field.name().equals(fieldName)) {
+                return field;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,23 @@
+package it.alf.codec;
+
+/**
+ * Registro locale degli schemi binari (sostituto offline di uno schema registry remoto).
+ *
+ * I producer registrano lo schema corrente di ogni subject all'avvio; i consumer risolvono lo schema con
+ * cui è stato scritto un record a partire dall'id (fingerprint) contenuto nel record. La registrazione
+ * verifica la compatibilità con le versioni precedenti del subject: un campo non può cambiare tipo.
+ */
+public interface SchemaRegistry {
+
+    /**
+     * Registra lo schema per il subject (idempotente) e restituisce il suo id.
+     *
+     * @throws IncompatibleSchemaException se un campo esistente cambia tipo rispetto a una versione già registrata
+     */
+    long register(String subject, Schema schema);
+
+    /**
+     * @return lo schema con l'id indicato, o null se sconosciuto
+     */
+    Schema lookup(long id);
+}
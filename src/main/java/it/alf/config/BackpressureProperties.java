@@ -0,0 +1,96 @@
+package it.alf.config;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Backpressure dei listener container, letta da {@code app.kafka.backpressure.*}
+ * (vedi {@link it.alf.backpressure.BackpressureController}).
+ *
+ * Ogni {@code interval} vengono campionati, per ogni consumer group, il tempo medio di attesa di una connessione del
+ * pool Hikari, la latenza media dei salvataggi dei suoi topic (timer {@code kafka.persist}) e i record consumati ma
+ * non ancora salvati. Il gruppo va in pausa quando un segnale supera la sua soglia {@code *-pause} e riprende solo
+ * quando tutti i segnali sono scesi sotto le soglie {@code *-resume}, dopo almeno {@code min-pause}.
+ *
+ * Le soglie di {@code thresholds} valgono per tutti i gruppi; {@code groups.<group-id>} ridefinisce solo quelle
+ * indicate. Una soglia {@code *-pause} a zero disattiva il segnale.
+ */
+@Data
+@ConfigurationProperties(prefix = "app.kafka.backpressure")
+public class BackpressureProperties {
+    private boolean enabled = false;
+    private Duration interval = Duration.ofSeconds(1);
+    private Duration minPause = Duration.ofSeconds(5);
+    private Thresholds thresholds = new Thresholds(Duration.ofMillis(200), Duration.ofMillis(50),
+            Duration.ofSeconds(2), Duration.ofMillis(500), 10_000, 5_000);
+    private Map<String, Thresholds> groups = new LinkedHashMap<>();
+
+    /**
+     * Soglie del gruppo: quelle di {@code groups.<group-id>} e, per i valori non indicati, quelle di {@code thresholds}.
+     */
+    public Thresholds thresholds(String groupId) {
+        var group = groups.get(groupId);
+        if (group == null) {
+            return thresholds;
+        }
+        return new Thresholds(
+                group.poolWaitPause != null ? group.poolWaitPause : thresholds.poolWaitPause,
+                group.poolWaitResume != null ? group.poolWaitResume : thresholds.poolWaitResume,
+                group.persistLatencyPause != null ? group.persistLatencyPause : thresholds.persistLatencyPause,
+                group.persistLatencyResume != null ? group.persistLatencyResume : thresholds.persistLatencyResume,
+                group.inFlightPause != null ? group.inFlightPause : thresholds.inFlightPause,
+                group.inFlightResume != null ? group.inFlightResume : thresholds.inFlightResume);
+    }
+
+    public void validate() {
+        if (!interval.isPositive() || minPause.isNegative()) {
+            throw new IllegalStateException("app.kafka.backpressure.interval must be positive and min-pause must not be negative");
+        }
+        if (thresholds.poolWaitPause == null || thresholds.poolWaitResume == null || thresholds.persistLatencyPause == null
+                || thresholds.persistLatencyResume == null || thresholds.inFlightPause == null || thresholds.inFlightResume == null) {
+            throw new IllegalStateException("app.kafka.backpressure.thresholds must define every threshold");
+        }
+        thresholds.validate("thresholds");
+        groups.keySet().forEach(group -> thresholds(group).validate("groups." + group));
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Thresholds {
+        /** attesa media di una connessione del pool */
+        private Duration poolWaitPause;
+        private Duration poolWaitResume;
+        /** durata media di un salvataggio dei topic del gruppo */
+        private Duration persistLatencyPause;
+        private Duration persistLatencyResume;
+        /** record consumati e non ancora salvati (buffer write-behind, ordini in volo nel motore parallelo) */
+        private Integer inFlightPause;
+        private Integer inFlightResume;
+
+        void validate(String path) {
+            // isteresi: la soglia di ripresa deve stare sotto quella di pausa, altrimenti il gruppo oscilla a ogni campione
+            if (poolWaitPause.isNegative() || poolWaitResume.isNegative() || persistLatencyPause.isNegative()
+                    || persistLatencyResume.isNegative() || inFlightPause < 0 || inFlightResume < 0) {
+                throw new IllegalStateException("app.kafka.backpressure." + path + " thresholds must not be negative");
+            }
+            if (enabled(poolWaitPause) && poolWaitResume.compareTo(poolWaitPause) >= 0
+                    || enabled(persistLatencyPause) && persistLatencyResume.compareTo(persistLatencyPause) >= 0
+                    || inFlightPause > 0 && inFlightResume >= inFlightPause) {
+                throw new IllegalStateException("app.kafka.backpressure." + path + ": every *-resume threshold must be "
+                        + "lower than the matching *-pause threshold");
+            }
+        }
+
+        private static boolean enabled(Duration pause) {
+            return pause.isPositive();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package it.alf.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Abilita la cache Spring. Il provider (Caffeine), le cache e i limiti di dimensione/TTL sono configurati
+ * in {@code spring.cache.*}; le metriche vengono registrate su Micrometer da Spring Boot.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+    /** cache degli utenti letti da {@code GET /api/users/{id}}, mantenuta aggiornata da {@code UserListener} */
+    public static final String USERS_CACHE = "users";
+}
@@ -0,0 +1,34 @@
+package it.alf.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Deduplicazione dei record consumati, letta da {@code app.kafka.dedupe.*} (vedi {@link it.alf.dedupe.DedupeStore}).
+ *
+ * La modalità si sceglie per topic con {@code app.kafka.topics.<key>.dedupe}; qui si dimensiona il filtro di Bloom
+ * condiviso ({@code expected-keys} chiavi con probabilità di falso positivo {@code false-positive-rate}) e si indica
+ * per quanto tempo le chiavi restano nella tabella {@code processed_records}.
+ */
+@Data
+@ConfigurationProperties(prefix = "app.kafka.dedupe")
+public class DedupeProperties {
+    private long expectedKeys = 1_000_000;
+    private double falsePositiveRate = 0.01;
+    private Duration retention = Duration.ofDays(7);
+
+    public void validate() {
+        if (expectedKeys < 1) {
+            throw new IllegalStateException("app.kafka.dedupe.expected-keys must be >= 1, was " + expectedKeys);
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalStateException("app.kafka.dedupe.false-positive-rate must be between 0 and 1, was " + falsePositiveRate);
+        }
+        if (retention.isNegative() || retention.isZero()) {
+            throw new IllegalStateException("app.kafka.dedupe.retention must be positive, was " + retention);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package it.alf.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Consultazione e replay della DLQ, letti da {@code app.kafka.dlq.*} (vedi {@link it.alf.dlq.DeadLetterService}).
+ *
+ * {@code replay-rate} e {@code replay-parallelism} sono i valori di un replay che non li indica; {@code max-replay-rate}
+ * limita quelli richiesti, per non sovraccaricare il database dei listener. {@code replay-max-in-flight} è il numero
+ * massimo di record inviati ma non ancora confermati dal broker. {@code max-scan} è il numero massimo di record letti
+ * dalla DLQ per una pagina di {@code GET /api/dlq}. {@code replay-producer-profile} è il profilo di
+ * {@code app.kafka.producer.profiles} con cui i record vengono ripubblicati.
+ */
+@Data
+@ConfigurationProperties(prefix = "app.kafka.dlq")
+public class DlqProperties {
+    private int replayRate = 500;
+    private int maxReplayRate = 10_000;
+    private int replayParallelism = 4;
+    private int replayMaxInFlight = 1000;
+    private int maxScan = 100_000;
+    private String replayProducerProfile = "durable";
+
+    public void validate() {
+        if (replayRate < 1 || replayRate > maxReplayRate) {
+            throw new IllegalStateException("app.kafka.dlq.replay-rate must be between 1 and max-replay-rate (" + maxReplayRate
+                    + "), was " + replayRate);
+        }
+        if (replayParallelism < 1 || replayMaxInFlight < 1 || maxScan < 1) {
+            throw new IllegalStateException("app.kafka.dlq.replay-parallelism, replay-max-in-flight and max-scan must be >= 1");
+        }
+    }
+}
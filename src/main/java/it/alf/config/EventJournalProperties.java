@@ -0,0 +1,49 @@
+package it.alf.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import lombok.Data;
+
+/**
+ * Journal locale degli eventi generici, letto da {@code app.events.journal.*} (vedi {@link it.alf.journal.EventJournalSink}).
+ *
+ * Con {@code enabled: true} gli eventi vengono appesi ai segmenti mappati in memoria in {@code dir}, di
+ * {@code segment-size} byte ciascuno, con una voce dell'indice sparso ogni {@code index-interval} byte; con
+ * {@code keep-database: true} vengono salvati anche nel database come senza journal. {@code force} forza su disco
+ * ogni poll prima del commit degli offset. I segmenti chiusi vengono eliminati quando sono più vecchi di
+ * {@code retention} o quando il journal supera {@code retention-size} (0 disattiva il limite).
+ */
+@Data
+@ConfigurationProperties(prefix = "app.events.journal")
+public class EventJournalProperties {
+    /** i segmenti sono mappati con un unico buffer, quindi restano sotto i 2 GB */
+    private static final DataSize MAX_SEGMENT_SIZE = DataSize.ofGigabytes(1);
+
+    private boolean enabled = false;
+    private boolean keepDatabase = false;
+    private String dir = "journal";
+    private DataSize segmentSize = DataSize.ofMegabytes(64);
+    private DataSize indexInterval = DataSize.ofKilobytes(4);
+    private boolean force = true;
+    private Duration retention = Duration.ofDays(7);
+    private DataSize retentionSize = DataSize.ofGigabytes(10);
+
+    public void validate() {
+        if (dir == null || dir.isBlank()) {
+            throw new IllegalStateException("app.events.journal.dir must not be blank");
+        }
+        if (segmentSize.toBytes() < 1024 || segmentSize.compareTo(MAX_SEGMENT_SIZE) > 0) {
+            throw new IllegalStateException("app.events.journal.segment-size must be between 1KB and 1GB, was " + segmentSize);
+        }
+        if (indexInterval.toBytes() < 1 || indexInterval.compareTo(segmentSize) > 0) {
+            throw new IllegalStateException("app.events.journal.index-interval must be between 1B and segment-size, was "
+                    + indexInterval);
+        }
+        if (retention.isNegative() || retentionSize.isNegative()) {
+            throw new IllegalStateException("app.events.journal.retention and retention-size must not be negative");
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package it.alf.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Memorizzazione degli eventi generici, letta da {@code app.events.storage.*}.
+ *
+ * Il payload viene salvato con i byte JSON ricevuti da Kafka; con {@code compression: deflate} i payload di almeno
+ * {@code compression-min-bytes} byte vengono compressi (solo se il risultato è più piccolo). I valori delle chiavi
+ * di primo livello elencate in {@code indexed-keys} vengono copiati nella tabella indicizzata {@code event_keys},
+ * così le ricerche per chiave non devono leggere i payload.
+ */
+@Data
+@ConfigurationProperties(prefix = "app.events.storage")
+public class EventStorageProperties {
+    /** none oppure deflate */
+    private String compression = "none";
+    private int compressionMinBytes = 512;
+    private List<String> indexedKeys = new ArrayList<>(List.of("userId"));
+
+    public boolean isCompressed() {
+        return "deflate".equals(compression);
+    }
+
+    public void validate() {
+        if (!"none".equals(compression) && !"deflate".equals(compression)) {
+            throw new IllegalStateException("app.events.storage.compression must be 'none' or 'deflate', was " + compression);
+        }
+        if (compressionMinBytes < 0) {
+            throw new IllegalStateException("app.events.storage.compression-min-bytes must be >= 0, was " + compressionMinBytes);
+        }
+        for (var key : indexedKeys) {
+            if (key == null || key.isBlank() || key.length() > 64) {
+                throw new IllegalStateException("app.events.storage.indexed-keys entries must be 1 to 64 characters, was '" + key + "'");
+            }
+        }
+    }
+}
@@ -3,57 +3,120 @@ package it.alf.config;
 import it.alf.dto.Order;
 import it.alf.dto.User;
 import it.alf.dto.Notification;
-import it.alf.dto.GenericEvent;
+import it.alf.codec.BinaryDeserializer;
+import it.alf.codec.BinarySerializer;
+import it.alf.codec.DtoCodecs;
+import it.alf.codec.FileSchemaRegistry;
+import it.alf.codec.InMemorySchemaRegistry;
+import it.alf.codec.RawEvent;
+import it.alf.codec.RawEventDeserializer;
+import it.alf.codec.RecordCodec;
+import it.alf.codec.SchemaRegistry;
+import it.alf.consumer.OrderParallelProcessor;
+import it.alf.consumer.WriteBehindPersister;
+import it.alf.metrics.KafkaMetrics;
 import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.*;
+import org.springframework.kafka.support.serializer.DelegatingByTopicSerializer;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.kafka.listener.CompositeBatchInterceptor;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultAfterRollbackProcessor;
 import org.springframework.kafka.listener.DefaultErrorHandler;
 import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
 import org.springframework.util.backoff.FixedBackOff;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 @Configuration
+@EnableConfigurationProperties({KafkaTopicsProperties.class, KafkaProducerProperties.class, EventStorageProperties.class,
+        DedupeProperties.class, DlqProperties.class, WriteBehindProperties.class, BackpressureProperties.class,
+        EventJournalProperties.class})
 /**
  * Kafka configuration centralizzata per l'applicazione.
  *
  * Contiene:
- * - ProducerFactory e KafkaTemplate per inviare messaggi JSON
- * - ConsumerFactory tipizzate per ogni DTO (User, Order, Notification, GenericEvent)
- * - ConcurrentKafkaListenerContainerFactory per creare listener container configurati
- * - DefaultErrorHandler con DeadLetterPublishingRecoverer per inoltrare i messaggi falliti sulla DLQ
+ * - ProducerFactory e KafkaTemplate per inviare messaggi JSON, con un template per ogni profilo del producer
+ *   ({@code app.kafka.producer.profiles.*}: linger, batch.size, compressione, acks, idempotenza)
+ * - ConsumerFactory tipizzate per ogni DTO (User, Order, Notification); gli eventi generici vengono letti come
+ *   {@link RawEvent}, con il payload lasciato in byte (vedi {@link RawEventDeserializer})
+ * - ConcurrentKafkaListenerContainerFactory per creare listener container configurati (in modalità batch:
+ *   ogni listener riceve l'intero poll, fino a {@code app.kafka.consumer.max-poll-records} record)
+ * - DefaultErrorHandler con DeadLetterPublishingRecoverer per inoltrare i messaggi falliti sulla DLQ, oppure, per i
+ *   topic con {@code retry.mode: topics}, sul primo topic di ritardo senza retry nel container
+ *   (vedi {@link it.alf.consumer.RetryTopicContainers})
+ * - NewTopic con partizioni/repliche e concorrenza dei listener definite per topic in {@code app.kafka.topics.*},
+ *   compresi i topic di ritardo (con le partizioni del topic di origine), creati secondo
+ *   {@code app.kafka.topics.provisioning} (vedi {@link TopicProvisioner})
+ * - metriche Micrometer ({@link KafkaMetrics}): client dei consumer, retry e DLQ, tag topic/gruppo sul timer dei listener
+ * - con {@code app.kafka.topics.orders.confirmations.exactly-once} un producer transazionale
+ *   ({@link KafkaTransactions}) e il container degli ordini in transazione, una per poll
+ * - con {@code app.kafka.write-behind.enabled} i container dei listener in {@code AckMode.MANUAL}, con gli offset
+ *   committati da {@link WriteBehindPersister} dopo la scrittura dei record
  *
  * Note:
- * - I JSON vengono serializzati/deserializzati tramite i serializer di Spring Kafka
+ * - I valori vengono serializzati in JSON tramite i serializer di Spring Kafka, oppure nel formato binario di
+ *   {@link it.alf.codec.DtoCodecs} per i topic con {@code codec: binary} (il serializer viene scelto in base al topic)
  * - TRUSTED_PACKAGES è impostato su "it.alf,*" per consentire la deserializzazione dei DTO locali
+ * - I consumer tipizzati leggono in {@code read_committed}: i record di transazioni annullate non vengono mai
+ *   consegnati (per i record scritti senza transazione non cambia nulla)
  */
 public class KafkaConfig {
 
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
-    @Value("${app.kafka.topics.users}")
-    private String usersTopic;
+    private final KafkaTopicsProperties topics;
+    private final KafkaProducerProperties producerProperties;
+    private final KafkaMetrics kafkaMetrics;
+    private final EventStorageProperties eventStorage;
 
-    @Value("${app.kafka.topics.orders}")
-    private String ordersTopic;
+    @Value("${app.kafka.consumer.max-poll-records:500}")
+    private int maxPollRecords;
 
-    @Value("${app.kafka.topics.notifications}")
-    private String notificationsTopic;
+    @Value("${app.kafka.codec.registry:in-memory}")
+    private String schemaRegistryType;
 
-    @Value("${app.kafka.topics.events}")
-    private String eventsTopic;
+    @Value("${app.kafka.codec.registry-dir:schemas}")
+    private String schemaRegistryDir;
 
-    @Value("${app.kafka.topics.deadletter}")
-    private String dlqTopic;
+    @Value("${app.kafka.codec.allow-in-memory-registry:false}")
+    private boolean allowInMemorySchemaRegistry;
+
+    public KafkaConfig(KafkaTopicsProperties topics, KafkaProducerProperties producerProperties, KafkaMetrics kafkaMetrics,
+                       EventStorageProperties eventStorage) {
+        this.topics = topics;
+        this.producerProperties = producerProperties;
+        this.kafkaMetrics = kafkaMetrics;
+        this.eventStorage = eventStorage;
+        // concorrenza, partizioni e profili del producer vengono verificati all'avvio, prima di creare topic e container
+        topics.validate();
+        producerProperties.validate();
+        eventStorage.validate();
+        for (var key : new String[] {"users", "orders", "notifications", "events"}) {
+            producerProperties.get(topics.get(key).getProducerProfile());
+        }
+    }
 
     @Bean
     public Map<String, Object> producerConfigs() {
@@ -61,12 +124,79 @@ public class KafkaConfig {
         props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
         props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        props.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, producerProperties.getMaxBlockMs());
         return props;
     }
 
     @Bean
     public ProducerFactory<String, Object> producerFactory() {
-        return new DefaultKafkaProducerFactory<>(producerConfigs());
+        return new DefaultKafkaProducerFactory<>(profileConfigs(producerProperties.getDefaultProfile()), new StringSerializer(), valueSerializer());
+    }
+
+    /**
+     * Registro degli schemi del formato binario: {@code in-memory} oppure {@code file} (directory
+     * {@code app.kafka.codec.registry-dir}, condivisibile tra processi e persistente tra i riavvii).
+     * Con {@code in-memory} gli schemi scritti prima di un riavvio non sono più risolvibili, per cui un topic con
+     * {@code codec: binary} fa fallire l'avvio salvo {@code app.kafka.codec.allow-in-memory-registry: true}.
+     */
+    @Bean
+    public SchemaRegistry schemaRegistry() {
+        return switch (schemaRegistryType) {
+            case "in-memory" -> {
+                for (var key : new String[] {"users", "orders", "notifications", "events"}) {
+                    if (topics.get(key).isBinary() && !allowInMemorySchemaRegistry) {
+                        throw new IllegalStateException("app.kafka.topics." + key + ".codec is binary with the in-memory schema registry:"
+                                + " records written before a restart could not be decoded; set app.kafka.codec.registry=file"
+                                + " or app.kafka.codec.allow-in-memory-registry=true");
+                    }
+                }
+                yield new InMemorySchemaRegistry();
+            }
+            case "file" -> new FileSchemaRegistry(Path.of(schemaRegistryDir));
+            default -> throw new IllegalStateException("app.kafka.codec.registry must be 'in-memory' or 'file', was " + schemaRegistryType);
+        };
+    }
+
+    /**
+     * Serializer dei valori scelto per topic: binario per i topic con {@code codec: binary}, JSON per tutti gli altri
+     * (compresa la DLQ e qualsiasi topic non configurato).
+     */
+    private Serializer<Object> valueSerializer() {
+        var byTopic = new LinkedHashMap<Pattern, Serializer<?>>();
+        for (var key : new String[] {"users", "orders", "notifications", "events"}) {
+            var topic = topics.get(key);
+            if (topic.isBinary()) {
+                byTopic.put(Pattern.compile(Pattern.quote(topic.getName())), new BinarySerializer<>(codec(key), schemaRegistry(), topic.getName()));
+            }
+        }
+        if (byTopic.isEmpty()) {
+            return new JsonSerializer<>();
+        }
+        return new DelegatingByTopicSerializer(byTopic, new JsonSerializer<>());
+    }
+
+    /**
+     * Deserializer dei valori del topic: JSON, oppure binario con ripiego su JSON per i record scritti prima
+     * del cambio di codec.
+     */
+    private <T> Deserializer<T> valueDeserializer(String key, Class<T> type) {
+        var json = new JsonDeserializer<>(type, false);
+        if (!topics.get(key).isBinary()) {
+            return json;
+        }
+        @SuppressWarnings("unchecked")
+        var codec = (RecordCodec<T>) codec(key);
+        return new BinaryDeserializer<>(codec, schemaRegistry(), json);
+    }
+
+    private static RecordCodec<?> codec(String key) {
+        return switch (key) {
+            case "users" -> DtoCodecs.USER;
+            case "orders" -> DtoCodecs.ORDER;
+            case "notifications" -> DtoCodecs.NOTIFICATION;
+            case "events" -> DtoCodecs.EVENT;
+            default -> throw new IllegalArgumentException("No binary codec for topic key " + key);
+        };
     }
 
     @Bean
@@ -74,6 +204,32 @@ public class KafkaConfig {
         return new KafkaTemplate<>(producerFactory());
     }
 
+    /**
+     * Un KafkaTemplate per ogni profilo del producer. Il profilo di default riusa il {@link #kafkaTemplate()},
+     * gli altri hanno una propria ProducerFactory (e quindi un proprio producer e propri batch).
+     */
+    @Bean
+    public ProducerProfiles producerProfiles() {
+        var templates = new HashMap<String, KafkaTemplate<String, Object>>();
+        var factories = new HashMap<String, DefaultKafkaProducerFactory<String, Object>>();
+        for (var profile : producerProperties.getProfiles().keySet()) {
+            if (profile.equals(producerProperties.getDefaultProfile())) {
+                templates.put(profile, kafkaTemplate());
+                continue;
+            }
+            var factory = new DefaultKafkaProducerFactory<String, Object>(profileConfigs(profile), new StringSerializer(), valueSerializer());
+            factories.put(profile, factory);
+            templates.put(profile, new KafkaTemplate<>(factory));
+        }
+        return new ProducerProfiles(templates, factories);
+    }
+
+    private Map<String, Object> profileConfigs(String profile) {
+        var props = new HashMap<>(producerConfigs());
+        props.putAll(producerProperties.get(profile).toProducerConfig());
+        return props;
+    }
+
     /**
      * Configurazione di base per il producer: bootstrap servers e serializer JSON.
      * Usato per creare il {@link KafkaTemplate} iniettato nei producer/controller.
@@ -91,81 +247,200 @@ public class KafkaConfig {
     }
 
     // Specific consumer factories for typed DTOs
-    @Bean
-    public ConsumerFactory<String, User> userConsumerFactory() {
+    private Map<String, Object> typedConsumerProps() {
         var props = new HashMap<String, Object>();
         props.put(org.apache.kafka.clients.consumer.ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(org.apache.kafka.clients.consumer.ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        props.put(org.apache.kafka.clients.consumer.ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
         props.put(JsonDeserializer.TRUSTED_PACKAGES, "it.alf,*");
-        return new DefaultKafkaConsumerFactory<>(props, new org.apache.kafka.common.serialization.StringDeserializer(), new JsonDeserializer<>(User.class, false));
+        return props;
+    }
+
+    private <V> ConsumerFactory<String, V> withMetrics(DefaultKafkaConsumerFactory<String, V> factory) {
+        factory.addListener(kafkaMetrics.consumerListener());
+        return factory;
+    }
+
+    /**
+     * Aggiunge al timer {@code spring.kafka.listener} di ogni container i tag {@code topic} e {@code group}
+     * e registra i gauge di lag per partizione.
+     */
+    private <V> void listenerMetrics(ConcurrentKafkaListenerContainerFactory<String, V> factory) {
+        factory.setBatchInterceptor(kafkaMetrics.lagInterceptor());
+        factory.setContainerCustomizer(container -> container.getContainerProperties().setMicrometerTags(Map.of(
+                "topic", String.join(",", container.getContainerProperties().getTopics()),
+                "group", container.getGroupId())));
+    }
+
+    @Bean
+    public ConsumerFactory<String, User> userConsumerFactory() {
+        return withMetrics(new DefaultKafkaConsumerFactory<>(typedConsumerProps(), new StringDeserializer(), valueDeserializer("users", User.class)));
     }
 
     @Bean
     public ConsumerFactory<String, Order> orderConsumerFactory() {
-        var props = new HashMap<String, Object>();
-        props.put(org.apache.kafka.clients.consumer.ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        props.put(JsonDeserializer.TRUSTED_PACKAGES, "it.alf,*");
-        return new DefaultKafkaConsumerFactory<>(props, new org.apache.kafka.common.serialization.StringDeserializer(), new JsonDeserializer<>(Order.class, false));
+        return withMetrics(new DefaultKafkaConsumerFactory<>(typedConsumerProps(), new StringDeserializer(), valueDeserializer("orders", Order.class)));
     }
 
     @Bean
     public ConsumerFactory<String, Notification> notificationConsumerFactory() {
-        var props = new HashMap<String, Object>();
-        props.put(org.apache.kafka.clients.consumer.ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        props.put(JsonDeserializer.TRUSTED_PACKAGES, "it.alf,*");
-        return new DefaultKafkaConsumerFactory<>(props, new org.apache.kafka.common.serialization.StringDeserializer(), new JsonDeserializer<>(Notification.class, false));
+        return withMetrics(new DefaultKafkaConsumerFactory<>(typedConsumerProps(), new StringDeserializer(), valueDeserializer("notifications", Notification.class)));
     }
 
     @Bean
-    public ConsumerFactory<String, GenericEvent> eventConsumerFactory() {
-        var props = new HashMap<String, Object>();
-        props.put(org.apache.kafka.clients.consumer.ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        props.put(JsonDeserializer.TRUSTED_PACKAGES, "it.alf,*");
-        return new DefaultKafkaConsumerFactory<>(props, new org.apache.kafka.common.serialization.StringDeserializer(), new JsonDeserializer<>(GenericEvent.class, false));
+    public ConsumerFactory<String, RawEvent> eventConsumerFactory() {
+        return withMetrics(new DefaultKafkaConsumerFactory<>(typedConsumerProps(), new StringDeserializer(),
+                new RawEventDeserializer(eventStorage.getIndexedKeys(), schemaRegistry())));
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, User> userListenerContainerFactory(KafkaTemplate<String, Object> template) {
+    public ConcurrentKafkaListenerContainerFactory<String, User> userListenerContainerFactory(DefaultErrorHandler defaultErrorHandler,
+                                                                                             DeadLetterPublishingRecoverer recoverer,
+                                                                                             ObjectProvider<WriteBehindPersister> writeBehind) {
         var factory = new ConcurrentKafkaListenerContainerFactory<String, User>();
         factory.setConsumerFactory(userConsumerFactory());
-        factory.setCommonErrorHandler(defaultErrorHandler(template));
+        factory.setBatchListener(true);
+        factory.setConcurrency(topics.getUsers().getConcurrency());
+        factory.setCommonErrorHandler(errorHandler("users", defaultErrorHandler, recoverer));
+        listenerMetrics(factory);
+        writeBehind(factory, writeBehind);
         return factory;
     }
 
     /**
      * Crea un ConcurrentKafkaListenerContainerFactory tipizzato per {@link it.alf.dto.User}.
-     * Il factory imposta anche l'error handler comune che pubblica su DLQ in caso di errori non recuperabili.
+     * Il factory lavora in modalità batch e imposta l'error handler comune che pubblica su DLQ in caso di errori
+     * non recuperabili (il record fallito è indicato dalla BatchListenerFailedException lanciata dal listener).
      */
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, Order> orderListenerContainerFactory(KafkaTemplate<String, Object> template) {
+    public ConcurrentKafkaListenerContainerFactory<String, Order> orderListenerContainerFactory(DefaultErrorHandler defaultErrorHandler,
+                                                                                               DeadLetterPublishingRecoverer recoverer,
+                                                                                               ObjectProvider<OrderParallelProcessor> parallelProcessor,
+                                                                                               ObjectProvider<KafkaTransactions> orderTransactions,
+                                                                                               ObjectProvider<WriteBehindPersister> writeBehind) {
         var factory = new ConcurrentKafkaListenerContainerFactory<String, Order>();
         factory.setConsumerFactory(orderConsumerFactory());
-        factory.setCommonErrorHandler(defaultErrorHandler(template));
+        factory.setBatchListener(true);
+        factory.setConcurrency(topics.getOrders().getConcurrency());
+        var transactions = orderTransactions.getIfAvailable();
+        if (transactions != null) {
+            transactional(factory, transactions);
+        } else {
+            factory.setCommonErrorHandler(errorHandler("orders", defaultErrorHandler, recoverer));
+        }
+        listenerMetrics(factory);
+        writeBehind(factory, writeBehind);
+        parallelProcessor.ifAvailable(processor -> {
+            // gli offset vengono committati dal motore parallelo solo fino all'ultimo record completato in modo contiguo
+            factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+            factory.getContainerProperties().setConsumerRebalanceListener(processor);
+            factory.getContainerProperties().setIdleEventInterval(1000L);
+        });
         return factory;
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, Notification> notificationListenerContainerFactory(KafkaTemplate<String, Object> template) {
+    public ConcurrentKafkaListenerContainerFactory<String, Notification> notificationListenerContainerFactory(DefaultErrorHandler defaultErrorHandler,
+                                                                                                             DeadLetterPublishingRecoverer recoverer,
+                                                                                                             ObjectProvider<WriteBehindPersister> writeBehind) {
         var factory = new ConcurrentKafkaListenerContainerFactory<String, Notification>();
         factory.setConsumerFactory(notificationConsumerFactory());
-        factory.setCommonErrorHandler(defaultErrorHandler(template));
+        factory.setBatchListener(true);
+        factory.setConcurrency(topics.getNotifications().getConcurrency());
+        factory.setCommonErrorHandler(errorHandler("notifications", defaultErrorHandler, recoverer));
+        listenerMetrics(factory);
+        writeBehind(factory, writeBehind);
         return factory;
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, GenericEvent> eventListenerContainerFactory(KafkaTemplate<String, Object> template) {
-        var factory = new ConcurrentKafkaListenerContainerFactory<String, GenericEvent>();
+    public ConcurrentKafkaListenerContainerFactory<String, RawEvent> eventListenerContainerFactory(DefaultErrorHandler defaultErrorHandler,
+                                                                                                   DeadLetterPublishingRecoverer recoverer,
+                                                                                                   ObjectProvider<WriteBehindPersister> writeBehind) {
+        var factory = new ConcurrentKafkaListenerContainerFactory<String, RawEvent>();
         factory.setConsumerFactory(eventConsumerFactory());
-        factory.setCommonErrorHandler(defaultErrorHandler(template));
+        factory.setBatchListener(true);
+        factory.setConcurrency(topics.getEvents().getConcurrency());
+        factory.setCommonErrorHandler(errorHandler("events", defaultErrorHandler, recoverer));
+        listenerMetrics(factory);
+        writeBehind(factory, writeBehind);
         return factory;
     }
 
+    /**
+     * Container in write-behind: il listener accoda il poll e restituisce subito il controllo, quindi il container non
+     * committa nulla ({@code AckMode.MANUAL}); gli offset dei record scritti vengono committati da
+     * {@link WriteBehindPersister} prima di ogni poll consegnato, quando il container è inattivo e alla revoca.
+     */
+    private <V> void writeBehind(ConcurrentKafkaListenerContainerFactory<String, V> factory, ObjectProvider<WriteBehindPersister> writeBehind) {
+        writeBehind.ifAvailable(persister -> {
+            factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+            factory.getContainerProperties().setConsumerRebalanceListener(persister);
+            factory.getContainerProperties().setIdleEventInterval(1000L);
+            factory.setBatchInterceptor(new CompositeBatchInterceptor<>(kafkaMetrics.lagInterceptor(), persister.<V>interceptor()));
+        });
+    }
+
+    /**
+     * Producer transazionale per le notifiche degli ordini in modalità exactly-once, con il profilo del topic delle
+     * notifiche; le transazioni richiedono comunque il producer idempotente.
+     */
     @Bean
-    public DefaultErrorHandler defaultErrorHandler(KafkaTemplate<String, Object> template) {
-        var recoverer = new DeadLetterPublishingRecoverer(template, (r, e) -> new org.apache.kafka.common.TopicPartition(dlqTopic, r.partition()));
+    @ConditionalOnProperty(name = "app.kafka.topics.orders.confirmations.exactly-once", havingValue = "true")
+    public KafkaTransactions orderTransactions() {
+        var props = profileConfigs(topics.getNotifications().getProducerProfile());
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, Math.min((int) props.get(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION), 5));
+        var factory = new DefaultKafkaProducerFactory<String, Object>(props, new StringSerializer(), valueSerializer());
+        factory.setTransactionIdPrefix(topics.getOrders().getConfirmations().getTransactionIdPrefix());
+        var template = new KafkaTemplate<>(factory);
+        return new KafkaTransactions(factory, deadLetterRecoverer(template), template);
+    }
+
+    /**
+     * Container degli ordini in transazione: il listener batch riceve un poll per volta, quindi ogni poll è una
+     * transazione con le notifiche, i record inoltrati e gli offset. Senza CommonErrorHandler un'eccezione del
+     * listener annulla la transazione e passa all'AfterRollbackProcessor, che ritenta il poll (3 volte a 1s) e poi
+     * pubblica i suoi record sul topic di ritardo o sulla DLQ committandone gli offset in una nuova transazione.
+     */
+    private void transactional(ConcurrentKafkaListenerContainerFactory<String, Order> factory, KafkaTransactions transactions) {
+        factory.getContainerProperties().setKafkaAwareTransactionManager(transactions.transactionManager());
+        // anche il commit della posizione iniziale all'assegnazione passa da una transazione
+        factory.getContainerProperties().setAssignmentCommitOption(ContainerProperties.AssignmentCommitOption.LATEST_ONLY);
+        factory.getContainerProperties().setBatchRecoverAfterRollback(true);
+        factory.setAfterRollbackProcessor(new DefaultAfterRollbackProcessor<>(transactions.recoverer(), new FixedBackOff(1000L, 3L),
+                transactions.template(), true));
+    }
+
+    @Bean
+    public DeadLetterPublishingRecoverer deadLetterPublishingRecoverer(KafkaTemplate<String, Object> template) {
+        return deadLetterRecoverer(template);
+    }
+
+    private DeadLetterPublishingRecoverer deadLetterRecoverer(KafkaOperations<String, Object> template) {
+        // DLQ oppure il topic di ritardo successivo, sullo stesso numero di partizione
+        return new DeadLetterPublishingRecoverer(template, (r, e) -> new org.apache.kafka.common.TopicPartition(topics.retryDestination(r.topic()), r.partition())) {
+            @Override
+            protected void publish(ProducerRecord<Object, Object> outRecord, KafkaOperations<Object, Object> kafkaTemplate, ConsumerRecord<?, ?> inRecord) {
+                super.publish(outRecord, kafkaTemplate, inRecord);
+                if (outRecord.topic().equals(topics.getDeadletter().getName())) {
+                    kafkaMetrics.countDeadLetter(inRecord);
+                } else {
+                    kafkaMetrics.countRetryTopic(inRecord, outRecord.topic());
+                }
+            }
+        };
+    }
+
+    @Bean
+    public DefaultErrorHandler defaultErrorHandler(DeadLetterPublishingRecoverer deadLetterPublishingRecoverer) {
         // retry 3 times with 1s backoff
         var backOff = new FixedBackOff(1000L, 3L);
-        return new DefaultErrorHandler(recoverer, backOff);
+        var errorHandler = new DefaultErrorHandler(deadLetterPublishingRecoverer, backOff);
+        errorHandler.setRetryListeners(kafkaMetrics.retryListener());
+        return errorHandler;
     }
 
     /**
@@ -173,28 +448,57 @@ public class KafkaConfig {
      * Cambiare la strategia di backoff o il recoverer per adattarsi a policy di produzione diverse.
      */
 
+    /**
+     * Error handler del topic: con {@code retry.mode: topics} il record fallito viene pubblicato subito sul primo
+     * topic di ritardo (nessun retry nel container, la partizione non si ferma), altrimenti {@link #defaultErrorHandler}.
+     * I bean arrivano come parametri dei factory: un metodo {@code @Bean} con argomenti chiamato direttamente non è
+     * supportato dalle classi generate da Spring AOT (profilo {@code aot}).
+     */
+    private DefaultErrorHandler errorHandler(String key, DefaultErrorHandler defaultErrorHandler, DeadLetterPublishingRecoverer recoverer) {
+        if (!topics.get(key).isRetryTopics()) {
+            return defaultErrorHandler;
+        }
+        var errorHandler = new DefaultErrorHandler(recoverer, new FixedBackOff(0L, 0L));
+        errorHandler.setRetryListeners(kafkaMetrics.retryListener());
+        return errorHandler;
+    }
+
     @Bean
     public NewTopic usersTopic() {
-        return new NewTopic(usersTopic, 1, (short) 1);
+        return newTopic(topics.getUsers());
     }
 
     @Bean
     public NewTopic ordersTopic() {
-        return new NewTopic(ordersTopic, 1, (short) 1);
+        return newTopic(topics.getOrders());
     }
 
     @Bean
     public NewTopic notificationsTopic() {
-        return new NewTopic(notificationsTopic, 1, (short) 1);
+        return newTopic(topics.getNotifications());
     }
 
     @Bean
     public NewTopic eventsTopic() {
-        return new NewTopic(eventsTopic, 1, (short) 1);
+        return newTopic(topics.getEvents());
     }
 
     @Bean
     public NewTopic dlqTopic() {
-        return new NewTopic(dlqTopic, 1, (short) 1);
+        return newTopic(topics.getDeadletter());
+    }
+
+    @Bean
+    public KafkaAdmin.NewTopics retryTopics() {
+        var retryTopics = new ArrayList<NewTopic>();
+        for (var key : new String[] {"users", "orders", "notifications", "events"}) {
+            var topic = topics.get(key);
+            topic.retryTopics().forEach(name -> retryTopics.add(new NewTopic(name, topic.getPartitions(), topic.getReplicas())));
+        }
+        return new KafkaAdmin.NewTopics(retryTopics.toArray(NewTopic[]::new));
+    }
+
+    private static NewTopic newTopic(KafkaTopicsProperties.Topic topic) {
+        return new NewTopic(topic.getName(), topic.getPartitions(), topic.getReplicas());
     }
 }
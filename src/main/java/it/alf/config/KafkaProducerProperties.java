@@ -0,0 +1,75 @@
+package it.alf.config;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Profili del producer letti da {@code app.kafka.producer.*}.
+ *
+ * Ogni profilo raggruppa le impostazioni che determinano il compromesso latenza/throughput/durabilità
+ * (linger, batch.size, compressione, acks, idempotenza, richieste in volo). Ogni producer applicativo
+ * sceglie il proprio profilo con {@code app.kafka.topics.<key>.producer-profile}; il {@code KafkaTemplate}
+ * di default (usato anche per la DLQ) usa {@code default-profile}.
+ */
+@Data
+@ConfigurationProperties(prefix = "app.kafka.producer")
+public class KafkaProducerProperties {
+    private static final Set<String> COMPRESSION_TYPES = Set.of("none", "gzip", "snappy", "lz4", "zstd");
+
+    private String defaultProfile = "durable";
+    /** attesa massima dentro {@code send()} per metadata o buffer pieno: limita il blocco del thread chiamante */
+    private long maxBlockMs = 5000;
+    private Map<String, Profile> profiles = new LinkedHashMap<>();
+
+    public Profile get(String name) {
+        var profile = profiles.get(name);
+        if (profile == null) {
+            throw new IllegalStateException("Unknown producer profile '" + name + "', available: " + profiles.keySet());
+        }
+        return profile;
+    }
+
+    public void validate() {
+        get(defaultProfile);
+        profiles.forEach((name, profile) -> profile.validate(name));
+    }
+
+    @Data
+    public static class Profile {
+        private int lingerMs = 0;
+        private int batchSize = 16384;
+        private String compression = "none";
+        private String acks = "all";
+        private boolean idempotence = true;
+        private int maxInFlight = 5;
+
+        void validate(String name) {
+            if (!COMPRESSION_TYPES.contains(compression)) {
+                throw new IllegalStateException("app.kafka.producer.profiles." + name + ".compression must be one of " + COMPRESSION_TYPES);
+            }
+            // vincoli del producer idempotente: acks=all e al massimo 5 richieste in volo per connessione
+            if (idempotence && ((!"all".equals(acks) && !"-1".equals(acks)) || maxInFlight > 5)) {
+                throw new IllegalStateException("app.kafka.producer.profiles." + name
+                        + ": idempotence requires acks=all and max-in-flight <= 5");
+            }
+        }
+
+        public Map<String, Object> toProducerConfig() {
+            var props = new HashMap<String, Object>();
+            props.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+            props.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+            props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compression);
+            props.put(ProducerConfig.ACKS_CONFIG, acks);
+            props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, idempotence);
+            props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, maxInFlight);
+            return props;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package it.alf.config;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Configurazione dei topic letta da {@code app.kafka.topics.*}.
+ *
+ * Per ogni topic si definiscono nome, numero di partizioni, fattore di replica e concorrenza
+ * del listener container (numero di consumer/thread nel gruppo). La concorrenza non può superare
+ * il numero di partizioni: i consumer in eccesso resterebbero senza assegnazione, per cui
+ * la configurazione viene validata all'avvio. La DLQ deve avere almeno tante partizioni quanto il topic
+ * più partizionato, perché i record falliti vengono pubblicati sullo stesso numero di partizione.
+ * Con {@code virtual-threads: true} il listener del topic elabora i record su virtual thread
+ * (vedi {@link it.alf.consumer.VirtualThreadDispatcher}); con {@code parallel.enabled: true} i record con chiavi
+ * diverse della stessa partizione vengono elaborati in parallelo (vedi {@link it.alf.consumer.OrderParallelProcessor}).
+ * {@code codec} sceglie il formato dei valori sul topic: {@code json} oppure {@code binary} (vedi {@link it.alf.codec.RecordCodec}).
+ * {@code dedupe} salta i record già elaborati, riconosciuti per posizione ({@code offset}) o per id ({@code id})
+ * (vedi {@link it.alf.dedupe.DedupeStore}).
+ * {@code retry.mode} sceglie dove vengono ritentati i record falliti: {@code in-place} nel container del topic
+ * (la partizione resta ferma durante i tentativi), {@code topics} su una serie di topic di ritardo
+ * {@code <name>-retry-<n>} con backoff esponenziale, mentre il listener principale prosegue
+ * (vedi {@link it.alf.consumer.RetryTopicContainers}).
+ * Con {@code confirmations.enabled: true} il listener degli ordini pubblica una notifica per ogni ordine consumato;
+ * con {@code confirmations.exactly-once: true} le notifiche, i record inoltrati ai topic di ritardo/DLQ e gli offset
+ * di ogni poll vengono scritti in un'unica transazione Kafka (vedi {@link it.alf.consumer.OrderConfirmationProcessor}).
+ * {@code provisioning} sceglie quando vengono creati i topic mancanti: {@code startup} durante l'avvio,
+ * {@code deferred} in background ad applicazione pronta, {@code none} mai (vedi {@link TopicProvisioner}).
+ */
+@Data
+@ConfigurationProperties(prefix = "app.kafka.topics")
+public class KafkaTopicsProperties {
+    private Topic users = new Topic();
+    private Topic orders = new Topic();
+    private Topic notifications = new Topic();
+    private Topic events = new Topic();
+    private Topic deadletter = new Topic();
+    /** startup, deferred oppure none */
+    private String provisioning = "startup";
+
+    /**
+     * Restituisce la configurazione del topic identificato dalla chiave usata in {@code app.kafka.topics.<key>}.
+     */
+    public Topic get(String key) {
+        return switch (key) {
+            case "users" -> users;
+            case "orders" -> orders;
+            case "notifications" -> notifications;
+            case "events" -> events;
+            case "deadletter" -> deadletter;
+            default -> throw new IllegalArgumentException("Unknown topic key: " + key);
+        };
+    }
+
+    /**
+     * Topic su cui pubblicare un record fallito letto da {@code topic}: il primo topic di ritardo per i topic con
+     * {@code retry.mode: topics}, il successivo per un topic di ritardo, la DLQ dopo l'ultimo tentativo
+     * (o subito, in modalità {@code in-place}, a retry nel container esauriti).
+     */
+    public String retryDestination(String topic) {
+        for (var source : new Topic[] {users, orders, notifications, events}) {
+            var retryTopics = source.retryTopics();
+            if (topic.equals(source.name)) {
+                return retryTopics.isEmpty() ? deadletter.name : retryTopics.get(0);
+            }
+            int tier = retryTopics.indexOf(topic);
+            if (tier >= 0) {
+                return tier + 1 < retryTopics.size() ? retryTopics.get(tier + 1) : deadletter.name;
+            }
+        }
+        return deadletter.name;
+    }
+
+    /**
+     * Topic principale di un topic di ritardo; gli altri topic vengono restituiti invariati.
+     */
+    public String sourceTopic(String topic) {
+        for (var source : new Topic[] {users, orders, notifications, events}) {
+            if (source.retryTopics().contains(topic)) {
+                return source.name;
+            }
+        }
+        return topic;
+    }
+
+    public void validate() {
+        users.validate("users");
+        orders.validate("orders");
+        notifications.validate("notifications");
+        events.validate("events");
+        deadletter.validate("deadletter");
+        if (!List.of("startup", "deferred", "none").contains(provisioning)) {
+            throw new IllegalStateException("app.kafka.topics.provisioning must be 'startup', 'deferred' or 'none', was " + provisioning);
+        }
+        // la DLQ riceve i record sullo stesso numero di partizione del topic di origine
+        int maxPartitions = Math.max(Math.max(users.partitions, orders.partitions), Math.max(notifications.partitions, events.partitions));
+        if (deadletter.partitions < maxPartitions) {
+            throw new IllegalStateException("app.kafka.topics.deadletter.partitions must be >= " + maxPartitions
+                    + " (dead letters keep the source partition number), was " + deadletter.partitions);
+        }
+    }
+
+    @Data
+    public static class Topic {
+        private String name;
+        private int partitions = 1;
+        private short replicas = 1;
+        private int concurrency = 1;
+        /** se true i record di ogni poll vengono elaborati su virtual thread, in ordine per chiave */
+        private boolean virtualThreads = false;
+        /** elaborazione parallela ordinata per chiave all'interno della partizione (supportata dal listener degli ordini) */
+        private Parallel parallel = new Parallel();
+        /** profilo di {@code app.kafka.producer.profiles} usato dal producer che scrive sul topic */
+        private String producerProfile = "durable";
+        /** formato dei valori: json (JsonSerializer di Spring) oppure binary (codec compatto con schema versionato) */
+        private String codec = "json";
+        /** none, offset (stesso topic/partizione/offset) oppure id (stesso id dell'entità sul topic) */
+        private String dedupe = "none";
+        /** jpa (save del repository, cioè merge JPA) oppure jdbc (MERGE a batch, vedi {@link it.alf.repository.JdbcUpsertWriter}) */
+        private String writer = "jpa";
+        /** retry dei record falliti nel container ({@code in-place}) oppure su topic di ritardo ({@code topics}) */
+        private Retry retry = new Retry();
+        /** notifica su notifications-topic per ogni ordine consumato (supportata dal listener degli ordini) */
+        private Confirmations confirmations = new Confirmations();
+
+        public DedupeMode dedupeMode() {
+            return DedupeMode.valueOf(dedupe.toUpperCase(Locale.ROOT));
+        }
+
+        public boolean isJdbcWriter() {
+            return "jdbc".equals(writer);
+        }
+
+        public boolean isBinary() {
+            return "binary".equals(codec);
+        }
+
+        public boolean isRetryTopics() {
+            return "topics".equals(retry.mode);
+        }
+
+        /**
+         * Topic di ritardo in ordine di tentativo ({@code <name>-retry-1}, {@code <name>-retry-2}, ...), vuota in
+         * modalità {@code in-place}.
+         */
+        public List<String> retryTopics() {
+            if (!isRetryTopics()) {
+                return List.of();
+            }
+            return IntStream.rangeClosed(1, retry.attempts).mapToObj(tier -> name + "-retry-" + tier).toList();
+        }
+
+        /**
+         * Ritardo del tentativo {@code tier} (da 1): {@code initial-delay * multiplier^(tier-1)}, al massimo {@code max-delay}.
+         */
+        public Duration retryDelay(int tier) {
+            double millis = retry.initialDelay.toMillis() * Math.pow(retry.multiplier, tier - 1);
+            return Duration.ofMillis((long) Math.min(millis, retry.maxDelay.toMillis()));
+        }
+
+        void validate(String key) {
+            if (name == null || name.isBlank()) {
+                throw new IllegalStateException("app.kafka.topics." + key + ".name must be set");
+            }
+            if (partitions < 1) {
+                throw new IllegalStateException("app.kafka.topics." + key + ".partitions must be >= 1, was " + partitions);
+            }
+            if (concurrency < 1 || concurrency > partitions) {
+                throw new IllegalStateException("app.kafka.topics." + key + ".concurrency must be between 1 and the partition count ("
+                        + partitions + "), was " + concurrency);
+            }
+            if (!"json".equals(codec) && !"binary".equals(codec)) {
+                throw new IllegalStateException("app.kafka.topics." + key + ".codec must be 'json' or 'binary', was " + codec);
+            }
+            if (!"none".equals(dedupe) && !"offset".equals(dedupe) && !"id".equals(dedupe)) {
+                throw new IllegalStateException("app.kafka.topics." + key + ".dedupe must be 'none', 'offset' or 'id', was " + dedupe);
+            }
+            if (!"jpa".equals(writer) && !"jdbc".equals(writer)) {
+                throw new IllegalStateException("app.kafka.topics." + key + ".writer must be 'jpa' or 'jdbc', was " + writer);
+            }
+            if (parallel.enabled && !"none".equals(dedupe)) {
+                throw new IllegalStateException("app.kafka.topics." + key + ": dedupe is not supported in parallel mode");
+            }
+            if (!"in-place".equals(retry.mode) && !"topics".equals(retry.mode)) {
+                throw new IllegalStateException("app.kafka.topics." + key + ".retry.mode must be 'in-place' or 'topics', was " + retry.mode);
+            }
+            if (isRetryTopics() && parallel.enabled) {
+                throw new IllegalStateException("app.kafka.topics." + key + ": retry topics are not supported in parallel mode");
+            }
+            if (retry.attempts < 1 || retry.multiplier < 1 || retry.initialDelay.isNegative() || retry.initialDelay.isZero()
+                    || retry.maxDelay.compareTo(retry.initialDelay) < 0) {
+                throw new IllegalStateException("app.kafka.topics." + key + ".retry needs attempts >= 1, multiplier >= 1 and "
+                        + "0 < initial-delay <= max-delay");
+            }
+            if (confirmations.enabled && parallel.enabled) {
+                throw new IllegalStateException("app.kafka.topics." + key + ": confirmations are not supported in parallel mode");
+            }
+            if (confirmations.exactlyOnce && (!confirmations.enabled || virtualThreads)) {
+                // i record elaborati su virtual thread verrebbero inviati fuori dalla transazione del thread del consumer
+                throw new IllegalStateException("app.kafka.topics." + key + ".confirmations.exactly-once requires "
+                        + "confirmations.enabled and is not supported with virtual-threads");
+            }
+            if (confirmations.exactlyOnce && (confirmations.transactionIdPrefix == null || confirmations.transactionIdPrefix.isBlank())) {
+                throw new IllegalStateException("app.kafka.topics." + key + ".confirmations.transaction-id-prefix must be set");
+            }
+            if (parallel.enabled && virtualThreads) {
+                throw new IllegalStateException("app.kafka.topics." + key + ": parallel and virtual-threads modes are mutually exclusive");
+            }
+            if (parallel.enabled && (parallel.maxInFlight < 1 || parallel.maxConcurrency < 1 || parallel.maxAttempts < 1)) {
+                throw new IllegalStateException("app.kafka.topics." + key + ".parallel limits must be >= 1");
+            }
+        }
+    }
+
+    public enum DedupeMode {
+        NONE, OFFSET, ID
+    }
+
+    @Data
+    public static class Retry {
+        private String mode = "in-place";
+        /** tentativi su topic di ritardo prima della DLQ (uno per topic) */
+        private int attempts = 3;
+        private Duration initialDelay = Duration.ofSeconds(1);
+        private double multiplier = 2.0;
+        private Duration maxDelay = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Confirmations {
+        private boolean enabled = false;
+        /** notifiche, inoltri su retry/DLQ e offset di ogni poll in un'unica transazione Kafka */
+        private boolean exactlyOnce = false;
+        /** prefisso dei {@code transactional.id}: deve essere diverso per ogni applicazione che scrive in transazione */
+        private String transactionIdPrefix = "orders-tx-";
+    }
+
+    @Data
+    public static class Parallel {
+        private boolean enabled = false;
+        /** record letti ma non ancora completati; oltre questo limite il consumer smette di fare poll */
+        private int maxInFlight = 1000;
+        /** thread che elaborano chiavi diverse in parallelo */
+        private int maxConcurrency = 16;
+        /** tentativi per record prima dell'invio sulla DLQ */
+        private int maxAttempts = 4;
+        private Duration retryBackoff = Duration.ofSeconds(1);
+        /** attesa massima del completamento dei record in volo quando una partizione viene revocata */
+        private Duration revocationTimeout = Duration.ofSeconds(10);
+    }
+}
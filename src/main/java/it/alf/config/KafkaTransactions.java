@@ -0,0 +1,49 @@
+package it.alf.config;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
+
+/**
+ * Producer transazionale del flusso exactly-once degli ordini ({@code app.kafka.topics.orders.confirmations.exactly-once}).
+ *
+ * Il {@link KafkaTransactionManager} viene impostato solo sul container degli ordini e non è registrato come bean:
+ * un bean {@code TransactionManager} sostituirebbe quello JPA usato da {@code @Transactional}. Il template e il
+ * recoverer partecipano alla transazione aperta dal container sul thread del consumer.
+ */
+public class KafkaTransactions implements DisposableBean {
+    private final DefaultKafkaProducerFactory<String, Object> producerFactory;
+    private final KafkaTemplate<String, Object> template;
+    private final KafkaTransactionManager<String, Object> transactionManager;
+    private final DeadLetterPublishingRecoverer recoverer;
+
+    public KafkaTransactions(DefaultKafkaProducerFactory<String, Object> producerFactory, DeadLetterPublishingRecoverer recoverer,
+                             KafkaTemplate<String, Object> template) {
+        this.producerFactory = producerFactory;
+        this.template = template;
+        this.transactionManager = new KafkaTransactionManager<>(producerFactory);
+        this.recoverer = recoverer;
+    }
+
+    public KafkaTemplate<String, Object> template() {
+        return template;
+    }
+
+    public KafkaTransactionManager<String, Object> transactionManager() {
+        return transactionManager;
+    }
+
+    /**
+     * Pubblica i record falliti sul topic di ritardo successivo o sulla DLQ, nella transazione del poll.
+     */
+    public DeadLetterPublishingRecoverer recoverer() {
+        return recoverer;
+    }
+
+    @Override
+    public void destroy() {
+        producerFactory.destroy();
+    }
+}
@@ -0,0 +1,42 @@
+package it.alf.config;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+
+/**
+ * Registro dei {@link KafkaTemplate} per profilo del producer.
+ *
+ * Ogni profilo ha la propria {@code ProducerFactory}, quindi il proprio producer Kafka con batching e
+ * compressione indipendenti. I producer applicativi ottengono il template con {@link #template(String)}.
+ */
+public class ProducerProfiles implements DisposableBean {
+    private final Map<String, KafkaTemplate<String, Object>> templates;
+    private final Map<String, DefaultKafkaProducerFactory<String, Object>> ownedFactories;
+
+    public ProducerProfiles(Map<String, KafkaTemplate<String, Object>> templates,
+                            Map<String, DefaultKafkaProducerFactory<String, Object>> ownedFactories) {
+        this.templates = Map.copyOf(templates);
+        this.ownedFactories = Map.copyOf(ownedFactories);
+    }
+
+    public KafkaTemplate<String, Object> template(String profile) {
+        var template = templates.get(profile);
+        if (template == null) {
+            throw new IllegalArgumentException("Unknown producer profile '" + profile + "', available: " + templates.keySet());
+        }
+        return template;
+    }
+
+    public Map<String, KafkaTemplate<String, Object>> templates() {
+        return templates;
+    }
+
+    @Override
+    public void destroy() {
+        // le factory dei profili non sono bean Spring: vanno chiuse esplicitamente
+        ownedFactories.values().forEach(DefaultKafkaProducerFactory::destroy);
+    }
+}
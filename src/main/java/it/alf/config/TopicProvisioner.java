@@ -0,0 +1,50 @@
+package it.alf.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.stereotype.Component;
+
+@Component
+/**
+ * Creazione dei topic dichiarati in {@link KafkaConfig} (principali, di ritardo e DLQ), secondo
+ * {@code app.kafka.topics.provisioning}.
+ *
+ * Con {@code startup} (default) il {@link KafkaAdmin} di Spring Boot li crea durante l'avvio, prima che partano i
+ * listener container: l'avvio attende l'admin client e, se il broker non risponde, il timeout delle sue operazioni.
+ * Con {@code deferred} la creazione parte su un thread separato quando l'applicazione è pronta: i container fanno
+ * subito poll e ricevono i record appena i topic esistono. Con {@code none} i topic non vengono mai creati da qui
+ * (ad esempio perché gestiti da chi amministra il cluster), come con {@code spring.kafka.admin.auto-create=false}.
+ */
+public class TopicProvisioner {
+    private final Logger logger = LoggerFactory.getLogger(TopicProvisioner.class);
+    private final KafkaAdmin kafkaAdmin;
+    private final String provisioning;
+
+    public TopicProvisioner(KafkaAdmin kafkaAdmin, KafkaTopicsProperties topics) {
+        topics.validate();
+        this.kafkaAdmin = kafkaAdmin;
+        this.provisioning = topics.getProvisioning();
+        // il KafkaAdmin crea i topic dopo l'istanziazione dei singleton, quindi dopo questo costruttore
+        if (!"startup".equals(provisioning)) {
+            kafkaAdmin.setAutoCreate(false);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        if (!"deferred".equals(provisioning)) {
+            return;
+        }
+        Thread.ofVirtual().name("topic-provisioning").start(() -> {
+            long start = System.nanoTime();
+            if (kafkaAdmin.initialize()) {
+                logger.info("Topics provisioned in {} ms", (System.nanoTime() - start) / 1_000_000);
+            } else {
+                logger.warn("Deferred topic provisioning failed: missing topics must be created on the cluster");
+            }
+        });
+    }
+}
@@ -0,0 +1,79 @@
+package it.alf.config;
+
+import java.util.HashMap;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.kstream.GlobalKTable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.kafka.annotation.EnableKafkaStreams;
+import org.springframework.kafka.annotation.KafkaStreamsDefaultConfiguration;
+import org.springframework.kafka.config.KafkaStreamsConfiguration;
+import org.springframework.kafka.config.StreamsBuilderFactoryBean;
+
+import it.alf.codec.SchemaRegistry;
+import it.alf.dto.User;
+import it.alf.streams.UserViewLookup;
+import it.alf.streams.UserViewTopology;
+
+/**
+ * Vista utenti su Kafka Streams, attiva con {@code app.kafka.streams.user-view.enabled=true}.
+ *
+ * Materializza {@code users-topic} in uno store locale (in-memory o RocksDB, {@code store-type}) e registra
+ * {@link UserViewLookup} come {@code UserLookup} primario: {@code GET /api/users/{id}} non legge più il database.
+ */
+@Configuration
+@EnableKafkaStreams
+@ConditionalOnProperty(prefix = "app.kafka.streams.user-view", name = "enabled", havingValue = "true")
+public class UserViewStreamsConfig {
+
+    @Value("${spring.kafka.bootstrap-servers}")
+    private String bootstrapServers;
+
+    @Value("${app.kafka.topics.users.name}")
+    private String usersTopic;
+
+    @Value("${app.kafka.streams.user-view.application-id}")
+    private String applicationId;
+
+    @Value("${app.kafka.streams.user-view.store-name}")
+    private String storeName;
+
+    @Value("${app.kafka.streams.user-view.store-type}")
+    private String storeType;
+
+    @Value("${app.kafka.streams.user-view.state-dir}")
+    private String stateDir;
+
+    @Bean(name = KafkaStreamsDefaultConfiguration.DEFAULT_STREAMS_CONFIG_BEAN_NAME)
+    public KafkaStreamsConfiguration userViewStreamsConfig() {
+        if (!"in-memory".equals(storeType) && !"rocksdb".equals(storeType)) {
+            throw new IllegalStateException("app.kafka.streams.user-view.store-type must be 'in-memory' or 'rocksdb'");
+        }
+        var props = new HashMap<String, Object>();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, applicationId);
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(StreamsConfig.STATE_DIR_CONFIG, stateDir);
+        props.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.StringSerde.class);
+        return new KafkaStreamsConfiguration(props);
+    }
+
+    @Bean
+    public GlobalKTable<String, User> userView(StreamsBuilder builder, KafkaTopicsProperties topics, SchemaRegistry schemaRegistry) {
+        var serde = topics.getUsers().isBinary()
+                ? UserViewTopology.binarySerde(schemaRegistry, usersTopic)
+                : UserViewTopology.jsonSerde();
+        return UserViewTopology.build(builder, usersTopic, storeName, "rocksdb".equals(storeType), serde);
+    }
+
+    @Bean
+    @Primary
+    public UserViewLookup userViewLookup(StreamsBuilderFactoryBean streamsBuilderFactoryBean) {
+        return new UserViewLookup(streamsBuilderFactoryBean, storeName);
+    }
+}
@@ -0,0 +1,42 @@
+package it.alf.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Persistenza write-behind dei listener, letta da {@code app.kafka.write-behind.*}
+ * (vedi {@link it.alf.consumer.WriteBehindPersister}).
+ *
+ * {@code capacity} è il numero di record consumati ma non ancora salvati oltre il quale i container dei listener
+ * vengono messi in pausa; riprendono quando il buffer scende a metà. Un topic viene scritto quando ha almeno
+ * {@code flush-size} record in attesa, oppure quando il suo record più vecchio attende da {@code flush-interval}.
+ * Una scrittura fallita per un errore del database viene ritentata ogni {@code retry-backoff}; alla revoca delle
+ * partizioni si attende al massimo {@code revocation-timeout} che i loro record vengano scritti.
+ */
+@Data
+@ConfigurationProperties(prefix = "app.kafka.write-behind")
+public class WriteBehindProperties {
+    private boolean enabled = false;
+    private int capacity = 20_000;
+    private int flushSize = 2_000;
+    private Duration flushInterval = Duration.ofMillis(200);
+    private Duration retryBackoff = Duration.ofSeconds(1);
+    private Duration revocationTimeout = Duration.ofSeconds(30);
+
+    public void validate() {
+        if (capacity < 1) {
+            throw new IllegalStateException("app.kafka.write-behind.capacity must be >= 1, was " + capacity);
+        }
+        if (flushSize < 1 || flushSize > capacity) {
+            throw new IllegalStateException("app.kafka.write-behind.flush-size must be between 1 and capacity (" + capacity
+                    + "), was " + flushSize);
+        }
+        if (!flushInterval.isPositive() || !retryBackoff.isPositive() || revocationTimeout.isNegative()) {
+            throw new IllegalStateException("app.kafka.write-behind.flush-interval and retry-backoff must be positive, "
+                    + "revocation-timeout must not be negative");
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package it.alf.consumer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.stereotype.Component;
+
+import it.alf.config.KafkaTopicsProperties;
+import it.alf.config.KafkaTopicsProperties.DedupeMode;
+import it.alf.dedupe.DedupeStore;
+import it.alf.metrics.KafkaMetrics;
+import it.alf.repository.JdbcUpsertWriter;
+
+@Component
+/**
+ * Persistenza a batch condivisa dai listener.
+ *
+ * Ogni poll viene mappato in entità e salvato con un'unica {@code saveAll} (una sola transazione JPA,
+ * insert raggruppati tramite {@code hibernate.jdbc.batch_size}). Se il salvataggio del batch fallisce,
+ * i record vengono salvati uno alla volta per individuare quello problematico: viene quindi lanciata una
+ * {@link BatchListenerFailedException} che indica al {@code DefaultErrorHandler} quale record ritentare
+ * e, a retry esauriti, inoltrare sulla DLQ. I record precedenti restano salvati e i loro offset committati.
+ *
+ * Se per il topic è attiva la modalità {@code virtual-threads}, i record vengono invece salvati singolarmente
+ * su virtual thread tramite {@link VirtualThreadDispatcher}, preservando l'ordine per chiave: è la scelta
+ * adatta quando l'elaborazione di ogni record è lenta e bloccante (I/O verso servizi esterni).
+ *
+ * Con {@code app.kafka.topics.<key>.writer: jdbc} le entità vengono scritte da {@link JdbcUpsertWriter} con
+ * statement {@code MERGE} a batch invece che dal repository JPA, che fa una select per entità prima di ogni insert.
+ *
+ * Con {@code app.kafka.topics.<key>.dedupe} attivo, i record già elaborati vengono scartati prima del salvataggio
+ * e le chiavi dei record salvati vengono registrate nella stessa transazione delle entità (vedi {@link DedupeStore}).
+ *
+ * La durata dei salvataggi viene registrata nel timer {@code kafka.persist} (vedi {@link KafkaMetrics}).
+ */
+public class BatchPersister {
+    private final Logger logger = LoggerFactory.getLogger(BatchPersister.class);
+    private final KafkaTopicsProperties topics;
+    private final VirtualThreadDispatcher virtualThreadDispatcher;
+    private final KafkaMetrics kafkaMetrics;
+    private final DedupeStore dedupeStore;
+    private final JdbcUpsertWriter upsertWriter;
+
+    public BatchPersister(KafkaTopicsProperties topics, VirtualThreadDispatcher virtualThreadDispatcher, KafkaMetrics kafkaMetrics,
+                          DedupeStore dedupeStore, JdbcUpsertWriter upsertWriter) {
+        this.topics = topics;
+        this.virtualThreadDispatcher = virtualThreadDispatcher;
+        this.kafkaMetrics = kafkaMetrics;
+        this.dedupeStore = dedupeStore;
+        this.upsertWriter = upsertWriter;
+    }
+
+    public <V, E> void persist(String pipeline, List<ConsumerRecord<String, V>> records,
+                               Function<V, E> mapper, CrudRepository<E, String> repository) {
+        persistRecords(pipeline, records, record -> mapper.apply(record.value()), repository);
+    }
+
+    /**
+     * Come {@link #persist}, per i listener che salvano anche metadati del record (partizione, offset).
+     */
+    public <V, E> void persistRecords(String pipeline, List<ConsumerRecord<String, V>> records,
+                                      Function<ConsumerRecord<String, V>, E> mapper, CrudRepository<E, String> repository) {
+        if (records.isEmpty()) {
+            return;
+        }
+        String topic = records.get(0).topic();
+        var dedupe = topics.get(pipeline).dedupeMode();
+        boolean jdbc = topics.get(pipeline).isJdbcWriter();
+        long start = System.nanoTime();
+        if (topics.get(pipeline).isVirtualThreads()) {
+            virtualThreadDispatcher.dispatch(pipeline, records, record -> save(dedupe, jdbc, record, mapper.apply(record), repository));
+            kafkaMetrics.recordPersist(topic, "virtual-threads", System.nanoTime() - start);
+            logger.info("Persisted {} {} records on virtual threads", records.size(), pipeline);
+            return;
+        }
+        var entities = new ArrayList<E>(records.size());
+        for (var record : records) {
+            try {
+                entities.add(mapper.apply(record));
+            } catch (RuntimeException e) {
+                logger.error("Error mapping {} record {}: {}", pipeline, record.key(), e.getMessage(), e);
+                throw new BatchListenerFailedException("Unable to map " + pipeline + " record", e, record);
+            }
+        }
+
+        List<String> keys = List.of();
+        if (dedupe != DedupeMode.NONE) {
+            var allKeys = new ArrayList<String>(records.size());
+            for (int i = 0; i < records.size(); i++) {
+                allKeys.add(dedupeStore.key(dedupe, records.get(i), entities.get(i)));
+            }
+            var processed = dedupeStore.findProcessed(allKeys);
+            var newRecords = new ArrayList<ConsumerRecord<String, V>>(records.size());
+            var newEntities = new ArrayList<E>(records.size());
+            keys = new ArrayList<>(records.size());
+            for (int i = 0; i < records.size(); i++) {
+                if (!processed.duplicates()[i]) {
+                    newRecords.add(records.get(i));
+                    newEntities.add(entities.get(i));
+                    keys.add(allKeys.get(i));
+                }
+            }
+            int duplicates = records.size() - newRecords.size();
+            kafkaMetrics.recordDedupe(topic, duplicates, processed.lookups());
+            if (duplicates > 0) {
+                logger.info("Skipped {} already processed {} records", duplicates, pipeline);
+            }
+            if (newRecords.isEmpty()) {
+                return;
+            }
+            records = newRecords;
+            entities = newEntities;
+        }
+
+        start = System.nanoTime();
+        try {
+            saveAll(keys, entities, jdbc, repository);
+            kafkaMetrics.recordPersist(topic, "batch", System.nanoTime() - start);
+            logger.info("Persisted {} {} records", entities.size(), pipeline);
+            return;
+        } catch (RuntimeException e) {
+            // Il batch è stato annullato per intero: si ripiega sul salvataggio record per record
+            logger.warn("Batch save of {} {} records failed, retrying one by one: {}", entities.size(), pipeline, e.getMessage());
+        }
+
+        start = System.nanoTime();
+        for (int i = 0; i < entities.size(); i++) {
+            try {
+                saveAll(keys.isEmpty() ? keys : List.of(keys.get(i)), List.of(entities.get(i)), jdbc, repository);
+            } catch (RuntimeException e) {
+                var record = records.get(i);
+                logger.error("Error saving {} record {}: {}", pipeline, record.key(), e.getMessage(), e);
+                throw new BatchListenerFailedException("Unable to persist " + pipeline + " record", e, record);
+            }
+        }
+        kafkaMetrics.recordPersist(topic, "one-by-one", System.nanoTime() - start);
+        logger.info("Persisted {} {} records one by one", entities.size(), pipeline);
+    }
+
+    /**
+     * Salva le entità e, con la deduplicazione attiva, registra le loro chiavi nella stessa transazione.
+     */
+    private <E> void saveAll(List<String> keys, List<E> entities, boolean jdbc, CrudRepository<E, String> repository) {
+        if (keys.isEmpty()) {
+            write(entities, jdbc, repository);
+        } else {
+            dedupeStore.recordProcessed(keys, () -> {
+                write(entities, jdbc, repository);
+                return null;
+            });
+        }
+    }
+
+    private <E> void write(List<E> entities, boolean jdbc, CrudRepository<E, String> repository) {
+        if (jdbc) {
+            upsertWriter.upsert(entities);
+        } else {
+            repository.saveAll(entities);
+        }
+    }
+
+    private <E> void save(DedupeMode dedupe, boolean jdbc, ConsumerRecord<?, ?> record, E entity, CrudRepository<E, String> repository) {
+        if (dedupe == DedupeMode.NONE) {
+            write(List.of(entity), jdbc, repository);
+            return;
+        }
+        var key = List.of(dedupeStore.key(dedupe, record, entity));
+        var processed = dedupeStore.findProcessed(key);
+        kafkaMetrics.recordDedupe(record.topic(), processed.duplicates()[0] ? 1 : 0, processed.lookups());
+        if (!processed.duplicates()[0]) {
+            dedupeStore.recordProcessed(key, () -> {
+                write(List.of(entity), jdbc, repository);
+                return null;
+            });
+        }
+    }
+}
@@ -1,52 +1,89 @@
 package it.alf.consumer;
 
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import it.alf.dto.GenericEvent;
+import it.alf.codec.PayloadEncoding;
+import it.alf.codec.RawEvent;
+import it.alf.config.EventStorageProperties;
+import it.alf.consumer.writebehind.WriteBehindBuffer;
 import it.alf.entity.GenericEventEntity;
+import it.alf.journal.EventJournalSink;
 import it.alf.repository.GenericEventRepository;
 
 @Service
 /**
  * Consumer per eventi generici (`GenericEvent`).
  *
- * I payload vengono serializzati in JSON e memorizzati nella tabella `generic_event`.
- * Questo è utile come esempio per show-how di un event-bus: il consumer non interpreta
- * il payload, lo conserva come stringa JSON per successiva elaborazione.
+ * Gli eventi arrivano come {@link RawEvent} (vedi {@link it.alf.codec.RawEventDeserializer}): il payload non viene
+ * deserializzato né riserializzato, i suoi byte JSON vengono salvati così come sono, compressi se configurato
+ * ({@code app.events.storage.compression}), insieme ai valori delle chiavi indicizzate del payload, all'istante
+ * di salvataggio e alla partizione/offset del record.
+ * Il consumer non interpreta il payload, lo conserva per successiva elaborazione.
+ * Con {@code app.kafka.write-behind.enabled=true} il salvataggio è affidato a {@link WriteBehindPersister}; con
+ * {@code app.events.journal.enabled=true} gli eventi vanno nel journal locale ({@link EventJournalSink}) invece che
+ * nel database.
  */
 public class EventListener {
     private final Logger logger = LoggerFactory.getLogger(EventListener.class);
     private final GenericEventRepository eventRepository;
-    private final ObjectMapper objectMapper;
+    private final EventStorageProperties storage;
+    private final BatchPersister batchPersister;
+    private final WriteBehindBuffer.Channel<RawEvent> writeBehind;
+    private final EventJournalSink journal;
 
-    public EventListener(GenericEventRepository eventRepository, ObjectMapper objectMapper) {
+    public EventListener(GenericEventRepository eventRepository, EventStorageProperties storage, BatchPersister batchPersister,
+                         ObjectProvider<WriteBehindPersister> writeBehind, ObjectProvider<EventJournalSink> journal) {
         this.eventRepository = eventRepository;
-        this.objectMapper = objectMapper;
+        this.storage = storage;
+        this.batchPersister = batchPersister;
+        this.journal = journal.getIfAvailable();
+        var persister = writeBehind.getIfAvailable();
+        this.writeBehind = persister != null ? persister.channel("events", this::persist) : null;
     }
 
-    @KafkaListener(topics = "${app.kafka.topics.events}", groupId = "events-group", containerFactory = "eventListenerContainerFactory")
-    public void listen(GenericEvent event) {
-        logger.info("Consumed event: {} type={}", event.getId(), event.getType());
-        String payload;
-        try {
-            payload = objectMapper.writeValueAsString(event.getPayload());
-        } catch (JsonProcessingException e) {
-            // In caso di problemi di serializzazione, memorizziamo un payload vuoto per non bloccare l'intero flow
-            payload = "{}";
+    @KafkaListener(topics = "${app.kafka.topics.events.name}", groupId = "events-group", containerFactory = "eventListenerContainerFactory")
+    public void listen(List<ConsumerRecord<String, RawEvent>> records) {
+        logger.info("Consumed {} events", records.size());
+        if (writeBehind != null && writeBehind.accepts(records)) {
+            writeBehind.submit(records);
+            return;
         }
-        try {
-            var entity = new GenericEventEntity(event.getId(), event.getType(), payload);
-            eventRepository.save(entity);
-            logger.info("Event persisted: {}", event.getId());
-        } catch (Exception e) {
-            logger.error("Error saving event {}: {}", event.getId(), e.getMessage(), e);
-            throw e;
+        persist(records);
+    }
+
+    private void persist(List<ConsumerRecord<String, RawEvent>> records) {
+        if (journal != null) {
+            journal.append(records);
+            if (!journal.keepsDatabase()) {
+                return;
+            }
+        }
+        batchPersister.persistRecords("events", records, this::toEntity, eventRepository);
+    }
+
+    public GenericEventEntity toEntity(ConsumerRecord<String, RawEvent> record) {
+        var event = record.value();
+        byte[] payload = event.payload();
+        var encoding = PayloadEncoding.JSON;
+        if (storage.isCompressed() && payload != null && payload.length >= storage.getCompressionMinBytes()) {
+            byte[] compressed = PayloadEncoding.DEFLATE.encode(payload);
+            // i payload poco comprimibili restano in chiaro: si evita di pagare la decompressione in lettura
+            if (compressed.length < payload.length) {
+                payload = compressed;
+                encoding = PayloadEncoding.DEFLATE;
+            }
         }
+        return new GenericEventEntity(event.id(), event.type(), Instant.now().truncatedTo(ChronoUnit.MICROS),
+                record.partition(), record.offset(), payload, encoding, new HashMap<>(event.keys()));
     }
 }
@@ -1,10 +1,15 @@
 package it.alf.consumer;
 
+import java.util.List;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 
+import it.alf.consumer.writebehind.WriteBehindBuffer;
 import it.alf.dto.Notification;
 import it.alf.entity.NotificationEntity;
 import it.alf.repository.NotificationRepository;
@@ -15,25 +20,37 @@ import it.alf.repository.NotificationRepository;
  *
  * I messaggi di notifica vengono persistiti in H2 per scopi dimostrativi. In un sistema reale
  * il consumer potrebbe inoltrare la notifica a un servizio di push/email.
+ * Con {@code app.kafka.write-behind.enabled=true} il salvataggio è affidato a {@link WriteBehindPersister}.
  */
 public class NotificationListener {
     private final Logger logger = LoggerFactory.getLogger(NotificationListener.class);
     private final NotificationRepository notificationRepository;
+    private final BatchPersister batchPersister;
+    private final WriteBehindBuffer.Channel<Notification> writeBehind;
 
-    public NotificationListener(NotificationRepository notificationRepository) {
+    public NotificationListener(NotificationRepository notificationRepository, BatchPersister batchPersister,
+                                ObjectProvider<WriteBehindPersister> writeBehind) {
         this.notificationRepository = notificationRepository;
+        this.batchPersister = batchPersister;
+        var persister = writeBehind.getIfAvailable();
+        this.writeBehind = persister != null ? persister.channel("notifications", this::persist) : null;
     }
 
-    @KafkaListener(topics = "${app.kafka.topics.notifications}", groupId = "notifications-group", containerFactory = "notificationListenerContainerFactory")
-    public void listen(Notification notification) {
-        logger.info("Consumed notification: {} - {}", notification.getId(), notification.getMessage());
-        try {
-            var entity = new NotificationEntity(notification.getId(), notification.getMessage(), notification.getLevel());
-            notificationRepository.save(entity);
-            logger.info("Notification persisted: {}", notification.getId());
-        } catch (Exception e) {
-            logger.error("Error saving notification {}: {}", notification.getId(), e.getMessage(), e);
-            throw e;
+    @KafkaListener(topics = "${app.kafka.topics.notifications.name}", groupId = "notifications-group", containerFactory = "notificationListenerContainerFactory")
+    public void listen(List<ConsumerRecord<String, Notification>> records) {
+        logger.info("Consumed {} notifications", records.size());
+        if (writeBehind != null && writeBehind.accepts(records)) {
+            writeBehind.submit(records);
+            return;
         }
+        persist(records);
+    }
+
+    private void persist(List<ConsumerRecord<String, Notification>> records) {
+        batchPersister.persist("notifications", records, NotificationListener::toEntity, notificationRepository);
+    }
+
+    public static NotificationEntity toEntity(Notification notification) {
+        return new NotificationEntity(notification.getId(), notification.getMessage(), notification.getLevel());
     }
 }
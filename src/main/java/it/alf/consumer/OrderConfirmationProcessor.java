@@ -0,0 +1,133 @@
+package it.alf.consumer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.stereotype.Component;
+
+import it.alf.config.KafkaTopicsProperties;
+import it.alf.config.KafkaTransactions;
+import it.alf.config.ProducerProfiles;
+import it.alf.dto.Notification;
+import it.alf.dto.Order;
+import it.alf.metrics.KafkaMetrics;
+import it.alf.repository.OrderRepository;
+
+@Component
+@ConditionalOnProperty(name = "app.kafka.topics.orders.confirmations.enabled", havingValue = "true")
+/**
+ * Ordini consumati e trasformati in notifiche di conferma su {@code notifications-topic}, attivo con
+ * {@code app.kafka.topics.orders.confirmations.enabled=true}.
+ *
+ * Gli ordini di ogni poll vengono salvati da {@link BatchPersister} e per ciascuno viene pubblicata una
+ * {@link Notification} con id {@code order-<id>}. Le garanzie dipendono da
+ * {@code app.kafka.topics.orders.confirmations.exactly-once}:
+ * <ul>
+ *   <li>{@code false} (at-least-once): le notifiche vengono inviate con il profilo del topic delle notifiche e il
+ *   listener attende gli ack prima di restituire il controllo al container, che committa gli offset dopo. Un errore
+ *   dopo l'invio (o un ribilanciamento prima del commit) fa riconsegnare gli ordini e ripubblicare le notifiche.</li>
+ *   <li>{@code true} (exactly-once): il container apre una transazione Kafka per ogni poll (vedi
+ *   {@link KafkaTransactions}); le notifiche, gli ordini falliti inoltrati al topic di ritardo o alla DLQ e gli offset
+ *   del poll vengono committati insieme, oppure annullati insieme. I consumer in {@code read_committed} non vedono mai
+ *   le notifiche di una transazione annullata, e un ordine riconsegnato dopo un annullamento produce la sua notifica
+ *   una sola volta. Il costo della transazione (registrazione delle partizioni, commit e marker) è uno per poll,
+ *   diviso tra tutti i suoi record.</li>
+ * </ul>
+ * Il salvataggio sul database non fa parte della transazione Kafka: avviene prima del commit, e un ordine riconsegnato
+ * dopo una transazione annullata viene salvato di nuovo con lo stesso id (merge JPA idempotente) o scartato dalla
+ * deduplicazione. La notifica viene invece pubblicata per ogni record consegnato, anche se già salvato.
+ *
+ * In modalità exactly-once un ordine che non si riesce a salvare viene inoltrato da questo componente nella
+ * transazione del poll, e l'elaborazione prosegue con i record successivi.
+ */
+public class OrderConfirmationProcessor {
+    private final Logger logger = LoggerFactory.getLogger(OrderConfirmationProcessor.class);
+    private final BatchPersister batchPersister;
+    private final OrderRepository orderRepository;
+    private final KafkaMetrics kafkaMetrics;
+    private final KafkaTemplate<String, Object> template;
+    private final DeadLetterPublishingRecoverer transactionalRecoverer;
+    private final String topic;
+
+    public OrderConfirmationProcessor(BatchPersister batchPersister, OrderRepository orderRepository, KafkaTopicsProperties topics,
+                                      ProducerProfiles producerProfiles, ObjectProvider<KafkaTransactions> orderTransactions,
+                                      KafkaMetrics kafkaMetrics) {
+        this.batchPersister = batchPersister;
+        this.orderRepository = orderRepository;
+        this.kafkaMetrics = kafkaMetrics;
+        this.topic = topics.getNotifications().getName();
+        var transactions = orderTransactions.getIfAvailable();
+        this.template = transactions != null ? transactions.template() : producerProfiles.template(topics.getNotifications().getProducerProfile());
+        this.transactionalRecoverer = transactions != null ? transactions.recoverer() : null;
+    }
+
+    public void process(List<ConsumerRecord<String, Order>> records) {
+        if (transactionalRecoverer == null) {
+            processAtLeastOnce(records);
+            return;
+        }
+        int from = 0;
+        while (from < records.size()) {
+            var pending = records.subList(from, records.size());
+            try {
+                batchPersister.persist("orders", pending, OrderListener::toEntity, orderRepository);
+                confirm(pending);
+                return;
+            } catch (BatchListenerFailedException e) {
+                int failed = e.getRecord() != null ? pending.indexOf(e.getRecord()) : e.getIndex();
+                if (failed < 0) {
+                    throw e;
+                }
+                confirm(pending.subList(0, failed));
+                // i record precedenti sono già salvati: quello fallito va avanti nella stessa transazione
+                transactionalRecoverer.accept(pending.get(failed), null, e.getCause() instanceof Exception cause ? cause : e);
+                from += failed + 1;
+            }
+        }
+    }
+
+    /**
+     * Notifiche dei record salvati, anche se il poll fallisce a metà: il {@code DefaultErrorHandler} committa gli
+     * offset dei record precedenti a quello fallito, che non verranno riconsegnati.
+     */
+    private void processAtLeastOnce(List<ConsumerRecord<String, Order>> records) {
+        try {
+            batchPersister.persist("orders", records, OrderListener::toEntity, orderRepository);
+            confirm(records).join();
+        } catch (BatchListenerFailedException e) {
+            int failed = e.getRecord() != null ? records.indexOf(e.getRecord()) : e.getIndex();
+            if (failed > 0) {
+                confirm(records.subList(0, failed)).join();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Invia una notifica per ordine. In transazione l'esito degli invii arriva al commit, che fallisce (e annulla la
+     * transazione) se un invio non è andato a buon fine.
+     */
+    private CompletableFuture<Void> confirm(List<ConsumerRecord<String, Order>> records) {
+        var sends = new ArrayList<CompletableFuture<?>>(records.size());
+        for (var record : records) {
+            var notification = toNotification(record.value());
+            sends.add(kafkaMetrics.timeSend(topic, template.send(topic, notification.getId(), notification)));
+        }
+        logger.debug("Sent {} order confirmations", records.size());
+        return CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new));
+    }
+
+    public static Notification toNotification(Order order) {
+        return new Notification("order-" + order.getId(),
+                "Order " + order.getId() + " for " + order.getProduct() + " (" + order.getAmount() + ") received", "INFO");
+    }
+}
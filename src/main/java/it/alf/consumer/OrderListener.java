@@ -1,10 +1,16 @@
 package it.alf.consumer;
 
+import java.util.List;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 
+import it.alf.consumer.writebehind.WriteBehindBuffer;
 import it.alf.dto.Order;
 import it.alf.entity.OrderEntity;
 import it.alf.repository.OrderRepository;
@@ -13,28 +19,57 @@ import it.alf.repository.OrderRepository;
 /**
  * Consumer per messaggi di tipo {@link it.alf.dto.Order}.
  *
- * Elabora l'ordine ricevuto e lo salva come {@link it.alf.entity.OrderEntity} tramite JPA.
+ * Elabora gli ordini ricevuti in batch e li salva come {@link it.alf.entity.OrderEntity} tramite JPA.
  * Le eccezioni non gestite vengono propagate per essere processate dall'error handler centrale
- * (es. invio su DLQ dopo retry).
+ * (es. invio su DLQ dopo retry del solo record fallito).
+ *
+ * Con {@code app.kafka.topics.orders.parallel.enabled=true} il batch viene invece affidato a
+ * {@link OrderParallelProcessor}, che elabora in parallelo ordini con chiavi diverse della stessa partizione.
+ * Con {@code app.kafka.topics.orders.confirmations.enabled=true} lo affida a {@link OrderConfirmationProcessor},
+ * che pubblica anche una notifica per ogni ordine (in transazione con {@code confirmations.exactly-once=true}).
+ * Con {@code app.kafka.write-behind.enabled=true} il salvataggio è affidato a {@link WriteBehindPersister}.
  */
 public class OrderListener {
     private final Logger logger = LoggerFactory.getLogger(OrderListener.class);
     private final OrderRepository orderRepository;
+    private final BatchPersister batchPersister;
+    private final OrderParallelProcessor parallelProcessor;
+    private final OrderConfirmationProcessor confirmationProcessor;
+    private final WriteBehindBuffer.Channel<Order> writeBehind;
 
-    public OrderListener(OrderRepository orderRepository) {
+    public OrderListener(OrderRepository orderRepository, BatchPersister batchPersister, ObjectProvider<OrderParallelProcessor> parallelProcessor,
+                         ObjectProvider<OrderConfirmationProcessor> confirmationProcessor, ObjectProvider<WriteBehindPersister> writeBehind) {
         this.orderRepository = orderRepository;
+        this.batchPersister = batchPersister;
+        this.parallelProcessor = parallelProcessor.getIfAvailable();
+        this.confirmationProcessor = confirmationProcessor.getIfAvailable();
+        var persister = writeBehind.getIfAvailable();
+        this.writeBehind = persister != null ? persister.channel("orders", this::persist) : null;
     }
 
-    @KafkaListener(topics = "${app.kafka.topics.orders}", groupId = "orders-group", containerFactory = "orderListenerContainerFactory")
-    public void listen(Order order) {
-        logger.info("Consumed order: {} for user {} amount={}", order.getId(), order.getUserId(), order.getAmount());
-        try {
-            var entity = new OrderEntity(order.getId(), order.getUserId(), order.getProduct(), order.getAmount());
-            orderRepository.save(entity);
-            logger.info("Order persisted: {}", order.getId());
-        } catch (Exception e) {
-            logger.error("Error saving order {}: {}", order.getId(), e.getMessage(), e);
-            throw e;
+    @KafkaListener(topics = "${app.kafka.topics.orders.name}", groupId = "orders-group", containerFactory = "orderListenerContainerFactory")
+    public void listen(List<ConsumerRecord<String, Order>> records, Consumer<?, ?> consumer) {
+        logger.info("Consumed {} orders", records.size());
+        if (parallelProcessor != null) {
+            parallelProcessor.process(records, consumer);
+            return;
+        }
+        if (confirmationProcessor != null) {
+            confirmationProcessor.process(records);
+            return;
+        }
+        if (writeBehind != null && writeBehind.accepts(records)) {
+            writeBehind.submit(records);
+            return;
         }
+        persist(records);
+    }
+
+    private void persist(List<ConsumerRecord<String, Order>> records) {
+        batchPersister.persist("orders", records, OrderListener::toEntity, orderRepository);
+    }
+
+    public static OrderEntity toEntity(Order order) {
+        return new OrderEntity(order.getId(), order.getUserId(), order.getProduct(), order.getAmount());
     }
 }
@@ -0,0 +1,96 @@
+package it.alf.consumer;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import it.alf.config.KafkaTopicsProperties;
+import it.alf.consumer.parallel.KeyOrderedParallelEngine;
+import it.alf.dto.Order;
+import it.alf.repository.JdbcUpsertWriter;
+import it.alf.repository.OrderRepository;
+
+@Component
+@ConditionalOnProperty(name = "app.kafka.topics.orders.parallel.enabled", havingValue = "true")
+/**
+ * Elaborazione parallela degli ordini all'interno della partizione, attiva con
+ * {@code app.kafka.topics.orders.parallel.enabled=true}.
+ *
+ * Il listener degli ordini consegna ogni poll al {@link KeyOrderedParallelEngine}: ordini con chiavi diverse
+ * vengono salvati in parallelo, quelli con la stessa chiave (la chiave impostata da {@code OrderProducer})
+ * restano in ordine. In questa modalità il container è in {@code AckMode.MANUAL} e gli offset vengono committati
+ * da questo componente: dopo ogni poll, quando il container è inattivo e prima della revoca delle partizioni.
+ * Con {@code writer: jdbc} ogni ordine viene salvato da {@link JdbcUpsertWriter} invece che dal repository.
+ */
+public class OrderParallelProcessor implements ConsumerAwareRebalanceListener, DisposableBean {
+    public static final String GROUP_ID = "orders-group";
+
+    private final Logger logger = LoggerFactory.getLogger(OrderParallelProcessor.class);
+    private final KeyOrderedParallelEngine<String, Order> engine;
+    private final KafkaTopicsProperties.Parallel settings;
+
+    public OrderParallelProcessor(OrderRepository orderRepository, JdbcUpsertWriter upsertWriter, DeadLetterPublishingRecoverer recoverer,
+                                  KafkaTopicsProperties topics) {
+        this.settings = topics.getOrders().getParallel();
+        boolean jdbc = topics.getOrders().isJdbcWriter();
+        this.engine = new KeyOrderedParallelEngine<>("orders", settings.getMaxInFlight(), settings.getMaxConcurrency(),
+                settings.getMaxAttempts(), settings.getRetryBackoff(),
+                record -> {
+                    var entity = OrderListener.toEntity(record.value());
+                    if (jdbc) {
+                        upsertWriter.upsert(List.of(entity));
+                    } else {
+                        orderRepository.save(entity);
+                    }
+                },
+                recoverer::accept);
+    }
+
+    public void process(List<ConsumerRecord<String, Order>> records, Consumer<?, ?> consumer) {
+        try {
+            for (var record : records) {
+                engine.submit(record);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while submitting orders to the parallel engine", e);
+        }
+        engine.commitOffsets(consumer);
+        logger.debug("Submitted {} orders, {} in flight", records.size(), engine.inFlight());
+    }
+
+    @EventListener
+    public void onIdle(ListenerContainerIdleEvent event) {
+        // l'evento viene pubblicato dal thread del consumer: si possono committare gli offset completati nel frattempo
+        if (GROUP_ID.equals(event.getContainer(MessageListenerContainer.class).getGroupId()) && event.getConsumer() != null) {
+            engine.commitOffsets(event.getConsumer());
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        engine.onPartitionsRevoked(consumer, partitions, settings.getRevocationTimeout());
+    }
+
+    public int inFlight() {
+        return engine.inFlight();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        engine.close();
+    }
+}
@@ -0,0 +1,213 @@
+package it.alf.consumer;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.ContainerPostProcessor;
+import org.springframework.kafka.config.KafkaListenerContainerFactory;
+import org.springframework.kafka.config.KafkaListenerEndpoint;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.AbstractMessageListenerContainer;
+import org.springframework.kafka.listener.BatchAcknowledgingMessageListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.TopicPartitionOffset;
+import org.springframework.kafka.support.converter.MessageConverter;
+import org.springframework.stereotype.Component;
+
+import it.alf.codec.RawEvent;
+import it.alf.config.KafkaTopicsProperties;
+import it.alf.dto.Notification;
+import it.alf.dto.Order;
+import it.alf.dto.User;
+
+@Component
+/**
+ * Container dei topic di ritardo per i topic con {@code app.kafka.topics.<key>.retry.mode: topics}.
+ *
+ * Un record che fallisce nel listener principale viene pubblicato subito su {@code <name>-retry-1} dal
+ * {@code DeadLetterPublishingRecoverer} e il listener prosegue con i record successivi della partizione, invece di
+ * ritentarlo sul posto bloccandoli. Ogni topic di ritardo ha un proprio container (gruppo
+ * {@code <key>-group-retry-<n>}) che elabora un record solo dopo il ritardo del suo tentativo
+ * ({@link KafkaTopicsProperties.Topic#retryDelay}) dal momento in cui è stato pubblicato: finché il primo record
+ * del poll non è scaduto, il container committa quelli già elaborati e si mette in pausa ({@code nack}) per il tempo
+ * mancante, continuando a fare poll senza ricevere record. I record di un topic di ritardo hanno tutti lo stesso
+ * ritardo e arrivano in ordine di pubblicazione, quindi scadono in ordine.
+ *
+ * I record scaduti passano dallo stesso listener del topic principale; un record che fallisce di nuovo viene
+ * pubblicato sul topic di ritardo successivo e, dopo l'ultimo, su {@code dlq-topic} (vedi
+ * {@link KafkaTopicsProperties#retryDestination}). I container sono registrati nel
+ * {@link KafkaListenerEndpointRegistry} come quelli dei {@code @KafkaListener}, con la stessa container factory.
+ */
+public class RetryTopicContainers {
+    private static final Pattern TIER = Pattern.compile(".*-retry-(\\d+)$");
+
+    private final Logger logger = LoggerFactory.getLogger(RetryTopicContainers.class);
+    private final KafkaTopicsProperties topics;
+    private final DeadLetterPublishingRecoverer recoverer;
+
+    public RetryTopicContainers(KafkaTopicsProperties topics, KafkaListenerEndpointRegistry registry, DeadLetterPublishingRecoverer recoverer,
+                                UserListener userListener, OrderListener orderListener,
+                                NotificationListener notificationListener, EventListener eventListener,
+                                ConcurrentKafkaListenerContainerFactory<String, User> userListenerContainerFactory,
+                                ConcurrentKafkaListenerContainerFactory<String, Order> orderListenerContainerFactory,
+                                ConcurrentKafkaListenerContainerFactory<String, Notification> notificationListenerContainerFactory,
+                                ConcurrentKafkaListenerContainerFactory<String, RawEvent> eventListenerContainerFactory) {
+        this.topics = topics;
+        this.recoverer = recoverer;
+        register(registry, "users", userListenerContainerFactory, userListener::listen);
+        // la modalità parallela non è ammessa con i topic di ritardo: il consumer non serve
+        this.<Order>register(registry, "orders", orderListenerContainerFactory, records -> orderListener.listen(records, null));
+        register(registry, "notifications", notificationListenerContainerFactory, notificationListener::listen);
+        register(registry, "events", eventListenerContainerFactory, eventListener::listen);
+    }
+
+    private <V> void register(KafkaListenerEndpointRegistry registry, String key, KafkaListenerContainerFactory<?> factory,
+                              Consumer<List<ConsumerRecord<String, V>>> listener) {
+        var topic = topics.get(key);
+        for (var retryTopic : topic.retryTopics()) {
+            int tier = tier(retryTopic);
+            var delay = topic.retryDelay(tier);
+            var endpoint = new RetryEndpoint<>(key + "-retry-" + tier, key + "-group-retry-" + tier, retryTopic,
+                    new DelayedListener<>(delay, listener));
+            // avviati dal registry insieme ai container dei @KafkaListener
+            registry.registerListenerContainer(endpoint, factory, false);
+            logger.info("Retry topic {} for {} with delay {} ms", retryTopic, topic.getName(), delay.toMillis());
+        }
+    }
+
+    private static int tier(String retryTopic) {
+        var matcher = TIER.matcher(retryTopic);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a retry topic: " + retryTopic);
+        }
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    /**
+     * Listener di un topic di ritardo: elabora i record scaduti e rimanda gli altri con un {@code nack}.
+     */
+    private class DelayedListener<V> implements BatchAcknowledgingMessageListener<String, V> {
+        private final long delayMillis;
+        private final Consumer<List<ConsumerRecord<String, V>>> listener;
+
+        DelayedListener(Duration delay, Consumer<List<ConsumerRecord<String, V>>> listener) {
+            this.delayMillis = delay.toMillis();
+            this.listener = listener;
+        }
+
+        @Override
+        public void onMessage(List<ConsumerRecord<String, V>> records, Acknowledgment acknowledgment) {
+            long now = System.currentTimeMillis();
+            int due = 0;
+            while (due < records.size() && records.get(due).timestamp() + delayMillis <= now) {
+                due++;
+            }
+            process(records.subList(0, due));
+            if (due < records.size()) {
+                long wait = records.get(due).timestamp() + delayMillis - now;
+                acknowledgment.nack(due, Duration.ofMillis(wait));
+            } else {
+                acknowledgment.acknowledge();
+            }
+        }
+
+        /**
+         * Passa i record al listener del topic; un record fallito viene inoltrato al topic successivo e l'elaborazione
+         * riprende dal record seguente (quelli precedenti sono già stati salvati da {@link BatchPersister}).
+         */
+        private void process(List<ConsumerRecord<String, V>> records) {
+            int from = 0;
+            while (from < records.size()) {
+                var pending = records.subList(from, records.size());
+                try {
+                    listener.accept(pending);
+                    return;
+                } catch (BatchListenerFailedException e) {
+                    int failed = e.getRecord() != null ? pending.indexOf(e.getRecord()) : e.getIndex();
+                    if (failed < 0) {
+                        throw e;
+                    }
+                    recoverer.accept(pending.get(failed), null, e.getCause() instanceof Exception cause ? cause : e);
+                    from += failed + 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Endpoint con un listener già costruito: topic, gruppo e ack manuale (necessario per il {@code nack}).
+     */
+    private record RetryEndpoint<V>(String id, String groupId, String topic, DelayedListener<V> listener) implements KafkaListenerEndpoint {
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String getGroupId() {
+            return groupId;
+        }
+
+        @Override
+        public String getGroup() {
+            return null;
+        }
+
+        @Override
+        public Collection<String> getTopics() {
+            return List.of(topic);
+        }
+
+        @Override
+        public TopicPartitionOffset[] getTopicPartitionsToAssign() {
+            return null;
+        }
+
+        @Override
+        public Pattern getTopicPattern() {
+            return null;
+        }
+
+        @Override
+        public String getClientIdPrefix() {
+            return null;
+        }
+
+        @Override
+        public Integer getConcurrency() {
+            return 1;
+        }
+
+        @Override
+        public Boolean getAutoStartup() {
+            return null;
+        }
+
+        @Override
+        public void setupListenerContainer(MessageListenerContainer listenerContainer, MessageConverter messageConverter) {
+            listenerContainer.setupMessageListener(listener);
+        }
+
+        @Override
+        public boolean isSplitIterables() {
+            return true;
+        }
+
+        @Override
+        public ContainerPostProcessor<String, V, AbstractMessageListenerContainer<String, V>> getContainerPostProcessor() {
+            return container -> container.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        }
+    }
+}
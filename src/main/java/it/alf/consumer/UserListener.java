@@ -1,13 +1,19 @@
 package it.alf.consumer;
 
+import java.util.List;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 
+import it.alf.consumer.writebehind.WriteBehindBuffer;
 import it.alf.dto.User;
 import it.alf.entity.UserEntity;
 import it.alf.repository.UserRepository;
+import it.alf.service.UserQueryService;
 
 @Service
 /**
@@ -16,31 +22,57 @@ import it.alf.repository.UserRepository;
  * Responsabilità:
  * - deserializzare il payload JSON in {@link it.alf.dto.User}
  * - trasformarlo in {@link it.alf.entity.UserEntity}
- * - salvare l'entità tramite {@link it.alf.repository.UserRepository}
+ * - salvare le entità tramite {@link it.alf.repository.UserRepository}
+ *
+ * Il listener è in modalità batch: riceve l'intero poll e lo persiste con una sola {@code saveAll}
+ * (vedi {@link BatchPersister}). Viene eseguito nel thread del container.
  *
- * Il metodo listener è annotato con {@code @KafkaListener} e viene eseguito nel thread del container.
+ * Dopo il salvataggio aggiorna la cache degli utenti ({@link UserQueryService}); se il batch fallisce
+ * le chiavi del batch vengono invalidate, perché una parte dei record può essere già stata salvata.
+ *
+ * Con {@code app.kafka.write-behind.enabled=true} il poll viene accodato in {@link WriteBehindPersister} e salvato
+ * (con l'aggiornamento della cache) dal suo thread di scrittura.
  */
 public class UserListener {
     private final Logger logger = LoggerFactory.getLogger(UserListener.class);
     private final UserRepository userRepository;
+    private final BatchPersister batchPersister;
+    private final UserQueryService userQueryService;
+    private final WriteBehindBuffer.Channel<User> writeBehind;
 
-    public UserListener(UserRepository userRepository) {
+    public UserListener(UserRepository userRepository, BatchPersister batchPersister, UserQueryService userQueryService,
+                        ObjectProvider<WriteBehindPersister> writeBehind) {
         this.userRepository = userRepository;
+        this.batchPersister = batchPersister;
+        this.userQueryService = userQueryService;
+        var persister = writeBehind.getIfAvailable();
+        this.writeBehind = persister != null ? persister.channel("users", this::persist) : null;
+    }
+
+    @KafkaListener(topics = "${app.kafka.topics.users.name}", groupId = "users-group", containerFactory = "userListenerContainerFactory")
+    public void listen(List<ConsumerRecord<String, User>> records) {
+        logger.info("Consumed {} users", records.size());
+        if (writeBehind != null && writeBehind.accepts(records)) {
+            writeBehind.submit(records);
+            return;
+        }
+        persist(records);
     }
 
-    @KafkaListener(topics = "${app.kafka.topics.users}", groupId = "users-group", containerFactory = "userListenerContainerFactory")
-    public void listen(User user) {
-        // Log di ricezione e persistenza. Se la save fallisce l'eccezione viene rilanciata e gestita
-        // dal DefaultErrorHandler configurato in KafkaConfig (potenziale invio su DLQ dopo retry).
-        logger.info("Consumed user: {} - {}", user.getId(), user.getEmail());
+    private void persist(List<ConsumerRecord<String, User>> records) {
+        // Se la save fallisce il BatchPersister rilancia una BatchListenerFailedException gestita
+        // dal DefaultErrorHandler configurato in KafkaConfig (retry del record e poi invio su DLQ).
         try {
-            var entity = new UserEntity(user.getId(), user.getName(), user.getEmail());
-            userRepository.save(entity);
-            logger.info("User persisted: {}", user.getId());
-        } catch (Exception e) {
-            logger.error("Error saving user {}: {}", user.getId(), e.getMessage(), e);
-            // Rilancio per permettere all'error handler configurato di gestire il fallimento
+            batchPersister.persist("users", records, UserListener::toEntity, userRepository);
+        } catch (RuntimeException e) {
+            records.stream().filter(r -> r.value() != null).forEach(r -> userQueryService.evict(r.value().getId()));
             throw e;
         }
+        // in ordine di offset: con più record per lo stesso utente vince l'ultimo
+        records.forEach(r -> userQueryService.cache(r.value()));
+    }
+
+    public static UserEntity toEntity(User user) {
+        return new UserEntity(user.getId(), user.getName(), user.getEmail());
     }
 }
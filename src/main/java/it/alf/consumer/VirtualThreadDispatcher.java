@@ -0,0 +1,98 @@
+package it.alf.consumer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.stereotype.Component;
+
+@Component
+/**
+ * Esegue i record di un poll su virtual thread (Java 21) invece che sul thread del container.
+ *
+ * I record vengono raggruppati per chiave (o per partizione se la chiave è null): ogni gruppo è
+ * elaborato in sequenza su un proprio virtual thread, gruppi diversi procedono in parallelo.
+ * In questo modo l'ordine per chiave è preservato e il lavoro bloccante (JPA, invio push/email)
+ * non serializza l'intero poll. Il metodo ritorna solo quando tutti i gruppi sono terminati, quindi
+ * il container committa gli offset del batch solo dopo che tutti i record precedenti sono completati.
+ *
+ * In caso di errore viene segnalato il record fallito con l'indice più basso nel batch: tutti i record
+ * precedenti risultano completati e il {@code DefaultErrorHandler} può committarli e ritentare dal record fallito.
+ */
+public class VirtualThreadDispatcher implements DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(VirtualThreadDispatcher.class);
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("vt-record-", 0).factory());
+    private final Semaphore permits;
+
+    public VirtualThreadDispatcher(@Value("${app.kafka.consumer.virtual-threads.max-concurrency:64}") int maxConcurrency) {
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    public <V> void dispatch(String pipeline, List<ConsumerRecord<String, V>> records, Consumer<ConsumerRecord<String, V>> handler) {
+        var groups = new LinkedHashMap<Object, List<Integer>>();
+        for (int i = 0; i < records.size(); i++) {
+            var record = records.get(i);
+            Object key = record.key() != null ? record.key() : record.partition();
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+        }
+
+        var failures = new ArrayList<CompletableFuture<Failure>>(groups.size());
+        for (var indexes : groups.values()) {
+            failures.add(CompletableFuture.supplyAsync(() -> runGroup(records, indexes, handler), executor));
+        }
+
+        Failure first = null;
+        for (var future : failures) {
+            var failure = future.join();
+            if (failure != null && (first == null || failure.index() < first.index())) {
+                first = failure;
+            }
+        }
+        if (first != null) {
+            var record = records.get(first.index());
+            logger.error("Error processing {} record {} on virtual thread: {}", pipeline, record.key(), first.cause().getMessage(), first.cause());
+            throw new BatchListenerFailedException("Unable to process " + pipeline + " record", first.cause(), record);
+        }
+    }
+
+    private <V> Failure runGroup(List<ConsumerRecord<String, V>> records, List<Integer> indexes, Consumer<ConsumerRecord<String, V>> handler) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Failure(indexes.get(0), e);
+        }
+        try {
+            for (int index : indexes) {
+                try {
+                    handler.accept(records.get(index));
+                } catch (RuntimeException e) {
+                    // i record successivi con la stessa chiave non vengono elaborati per non violare l'ordine
+                    return new Failure(index, e);
+                }
+            }
+            return null;
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    private record Failure(int index, Exception cause) {
+    }
+}
@@ -0,0 +1,115 @@
+package it.alf.consumer;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.BatchInterceptor;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import it.alf.backpressure.BackpressureController;
+import it.alf.config.KafkaTopicsProperties;
+import it.alf.config.WriteBehindProperties;
+import it.alf.consumer.writebehind.WriteBehindBuffer;
+import it.alf.metrics.KafkaMetrics;
+
+@Component
+@ConditionalOnProperty(name = "app.kafka.write-behind.enabled", havingValue = "true")
+/**
+ * Persistenza write-behind dei listener, attiva con {@code app.kafka.write-behind.enabled=true}.
+ *
+ * {@code UserListener}, {@code OrderListener}, {@code NotificationListener} e {@code EventListener} accodano ogni poll
+ * in un unico {@link WriteBehindBuffer} invece di salvarlo sul thread del consumer, che torna subito a fare poll.
+ * Il buffer scrive i record a blocchi tramite {@link BatchPersister} (quindi con deduplicazione e ripiego record per
+ * record), e i record che falliscono vanno al {@link DeadLetterPublishingRecoverer}: sul topic di ritardo con
+ * {@code retry.mode: topics}, altrimenti sulla DLQ senza retry nel container.
+ *
+ * I container dei listener sono in {@code AckMode.MANUAL} e gli offset vengono committati da questo componente, solo
+ * dopo la scrittura dei record: prima di ogni poll consegnato al listener (tramite {@link #interceptor()}), quando il
+ * container è inattivo e prima della revoca delle partizioni. Quando il buffer è pieno i container vengono messi in
+ * pausa dal {@link BackpressureController} (motivo {@code write-behind}): continuano a fare poll senza ricevere record.
+ *
+ * I record dei topic di ritardo vengono salvati subito dai listener, come senza write-behind.
+ */
+public class WriteBehindPersister implements ConsumerAwareRebalanceListener, DisposableBean {
+    public static final Set<String> GROUP_IDS = Set.of("users-group", "orders-group", "notifications-group", "events-group");
+    private static final String REASON = "write-behind";
+
+    private final Logger logger = LoggerFactory.getLogger(WriteBehindPersister.class);
+    private final WriteBehindProperties properties;
+    private final KafkaTopicsProperties topics;
+    private final WriteBehindBuffer buffer;
+
+    public WriteBehindPersister(WriteBehindProperties properties, KafkaTopicsProperties topics, DeadLetterPublishingRecoverer recoverer,
+                                BackpressureController backpressure, KafkaMetrics kafkaMetrics) {
+        properties.validate();
+        var orders = topics.getOrders();
+        if (orders.getParallel().isEnabled() || orders.getConfirmations().isEnabled()) {
+            throw new IllegalStateException("app.kafka.write-behind is not supported with orders parallel or confirmations");
+        }
+        this.properties = properties;
+        this.topics = topics;
+        this.buffer = new WriteBehindBuffer("write-behind", properties.getCapacity(), properties.getFlushSize(),
+                properties.getFlushInterval(), properties.getRetryBackoff(),
+                (record, cause) -> recoverer.accept(record, null, cause),
+                () -> backpressure.pause(GROUP_IDS, REASON), () -> backpressure.resume(GROUP_IDS, REASON));
+        kafkaMetrics.writeBehindGauge(buffer::buffered);
+    }
+
+    /**
+     * Canale del topic principale della pipeline: {@code writer} salva un blocco di record e va chiamato solo dal
+     * thread di scrittura del buffer.
+     */
+    public <V> WriteBehindBuffer.Channel<V> channel(String pipeline, java.util.function.Consumer<List<ConsumerRecord<String, V>>> writer) {
+        return buffer.channel(topics.get(pipeline).getName(), writer);
+    }
+
+    /**
+     * Interceptor dei container dei listener: prima di consegnare un poll committa gli offset dei record già scritti.
+     */
+    public <V> BatchInterceptor<String, V> interceptor() {
+        return (records, consumer) -> {
+            buffer.commitFlushed(consumer);
+            return records;
+        };
+    }
+
+    @EventListener
+    public void onIdle(ListenerContainerIdleEvent event) {
+        // pubblicato dal thread del consumer, anche quando il container è in pausa
+        if (GROUP_IDS.contains(event.getContainer(MessageListenerContainer.class).getGroupId()) && event.getConsumer() != null) {
+            buffer.commitFlushed(event.getConsumer());
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        buffer.onPartitionsRevoked(consumer, partitions, properties.getRevocationTimeout());
+    }
+
+    public int buffered() {
+        return buffer.buffered();
+    }
+
+    public boolean isFull() {
+        return buffer.isFull();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        buffer.close();
+        logger.info("Write-behind buffer closed");
+    }
+}
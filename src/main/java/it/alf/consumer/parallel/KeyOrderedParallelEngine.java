@@ -0,0 +1,204 @@
+package it.alf.consumer.parallel;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Motore di elaborazione parallela ordinata per chiave all'interno di una stessa partizione.
+ *
+ * I record con chiavi diverse vengono elaborati in parallelo sul pool del motore, quelli con la stessa
+ * chiave (o senza chiave, raggruppati per partizione) restano in sequenza. Il numero di record in volo
+ * è limitato da {@code maxInFlight}: quando il limite è raggiunto {@link #submit(ConsumerRecord)} blocca
+ * il thread del consumer, che smette di fare poll finché non si libera spazio.
+ *
+ * Per ogni partizione un {@link PartitionOffsetTracker} calcola il più alto offset completato in modo
+ * contiguo; {@link #commitOffsets(Consumer)} lo committa dal thread del consumer, per cui dopo un riavvio
+ * o un ribilanciamento nessun record non completato viene saltato (semantica at-least-once). Il motore può essere
+ * condiviso dai consumer di un container con concorrenza maggiore di 1: ogni consumer registra, committa e revoca
+ * solo le partizioni che gli sono assegnate.
+ *
+ * I record che falliscono vengono ritentati fino a {@code maxAttempts} volte, poi passati al
+ * {@code recoverer} (tipicamente il {@code DeadLetterPublishingRecoverer}) e considerati completati. Un record
+ * interrotto durante l'attesa tra due tentativi (ad esempio alla chiusura del motore) non è né elaborato né
+ * recuperato: il suo offset resta in sospeso, non viene mai committato e il record viene riconsegnato.
+ */
+public class KeyOrderedParallelEngine<K, V> implements AutoCloseable {
+    private final Logger logger = LoggerFactory.getLogger(KeyOrderedParallelEngine.class);
+
+    private final String name;
+    private final java.util.function.Consumer<ConsumerRecord<K, V>> handler;
+    private final BiConsumer<ConsumerRecord<K, V>, Exception> recoverer;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final Semaphore inFlightPermits;
+    private final ExecutorService executor;
+    private final Map<Object, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, PartitionOffsetTracker> trackers = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public KeyOrderedParallelEngine(String name, int maxInFlight, int maxConcurrency, int maxAttempts, Duration retryBackoff,
+                                    java.util.function.Consumer<ConsumerRecord<K, V>> handler,
+                                    BiConsumer<ConsumerRecord<K, V>, Exception> recoverer) {
+        this.name = name;
+        this.handler = handler;
+        this.recoverer = recoverer;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+        this.inFlightPermits = new Semaphore(maxInFlight);
+        var threadIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(maxConcurrency, r -> {
+            var thread = new Thread(r, name + "-worker-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Accoda il record nella catena della sua chiave. Va chiamato dal thread del consumer,
+     * nell'ordine di lettura dei record della partizione.
+     */
+    public void submit(ConsumerRecord<K, V> record) throws InterruptedException {
+        inFlightPermits.acquire();
+        inFlight.incrementAndGet();
+        var partition = new TopicPartition(record.topic(), record.partition());
+        var tracker = trackers.computeIfAbsent(partition, p -> new PartitionOffsetTracker());
+        tracker.register(record.offset());
+
+        Object key = record.key() != null ? record.key() : partition;
+        var next = tails.compute(key, (k, previous) -> (previous != null ? previous : CompletableFuture.<Void>completedFuture(null))
+                .handleAsync((ignored, error) -> {
+                    process(record, tracker);
+                    return null;
+                }, executor));
+        // la catena viene rimossa quando termina, così la mappa contiene solo le chiavi con record in volo
+        next.whenComplete((ignored, error) -> tails.remove(key, next));
+    }
+
+    /**
+     * {@code tracker} è quello della partizione al momento dell'invio: se la partizione viene revocata e poi
+     * riassegnata, il completamento di un record della vecchia assegnazione non tocca il tracker nuovo.
+     */
+    private void process(ConsumerRecord<K, V> record, PartitionOffsetTracker tracker) {
+        boolean completed = false;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    handler.accept(record);
+                    completed = true;
+                    break;
+                } catch (RuntimeException e) {
+                    if (attempt >= maxAttempts) {
+                        logger.error("[{}] Record {}-{}@{} failed after {} attempts, recovering: {}", name,
+                                record.topic(), record.partition(), record.offset(), attempt, e.getMessage());
+                        recover(record, e);
+                        completed = true;
+                        break;
+                    }
+                    logger.warn("[{}] Attempt {} failed for record {}-{}@{}: {}", name, attempt,
+                            record.topic(), record.partition(), record.offset(), e.getMessage());
+                    Thread.sleep(retryBackoff.toMillis());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("[{}] Interrupted while retrying record {}-{}@{}: left for redelivery", name,
+                    record.topic(), record.partition(), record.offset());
+        } finally {
+            if (completed) {
+                tracker.complete(record.offset());
+            }
+            inFlight.decrementAndGet();
+            inFlightPermits.release();
+        }
+    }
+
+    private void recover(ConsumerRecord<K, V> record, Exception cause) {
+        try {
+            recoverer.accept(record, cause);
+        } catch (RuntimeException e) {
+            logger.error("[{}] Unable to recover record {}-{}@{}: {}", name, record.topic(), record.partition(), record.offset(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Committa, per ogni partizione assegnata al consumer, il più alto offset completato in modo contiguo se è avanzato
+     * dall'ultimo commit. Va chiamato dal thread del consumer.
+     */
+    public void commitOffsets(Consumer<?, ?> consumer) {
+        var offsets = new HashMap<TopicPartition, OffsetAndMetadata>();
+        var committed = new HashMap<TopicPartition, PartitionOffsetTracker>();
+        for (var partition : consumer.assignment()) {
+            var tracker = trackers.get(partition);
+            long offset = tracker != null ? tracker.uncommittedOffset() : -1L;
+            if (offset >= 0) {
+                offsets.put(partition, new OffsetAndMetadata(offset));
+                committed.put(partition, tracker);
+            }
+        }
+        if (offsets.isEmpty()) {
+            return;
+        }
+        consumer.commitSync(offsets);
+        offsets.forEach((partition, offset) -> committed.get(partition).markCommitted(offset.offset()));
+        logger.debug("[{}] Committed offsets {}", name, offsets);
+    }
+
+    /**
+     * Da invocare alla revoca delle partizioni: attende (al massimo {@code timeout}) il completamento dei record
+     * in volo sulle partizioni revocate, committa quanto completato e ne dimentica lo stato.
+     */
+    public void onPartitionsRevoked(Consumer<?, ?> consumer, Collection<TopicPartition> partitions, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        for (var partition : partitions) {
+            var tracker = trackers.get(partition);
+            while (tracker != null && tracker.pendingCount() > 0 && System.nanoTime() < deadline) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        try {
+            commitOffsets(consumer);
+        } catch (RuntimeException e) {
+            logger.warn("[{}] Commit on revocation failed: {}", name, e.getMessage());
+        }
+        partitions.forEach(trackers::remove);
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public long committableOffset(TopicPartition partition) {
+        var tracker = trackers.get(partition);
+        return tracker != null ? tracker.committableOffset() : -1L;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package it.alf.consumer.parallel;
+
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Traccia gli offset di una partizione elaborati fuori ordine.
+ *
+ * Gli offset vengono registrati quando il record entra nel motore e rimossi al completamento.
+ * L'offset committabile è il più basso ancora in elaborazione oppure, se non ce ne sono,
+ * il successivo al più alto registrato: corrisponde quindi al più alto offset completato in modo
+ * contiguo + 1, ovvero la posizione da cui ripartire senza perdere record dopo un riavvio.
+ *
+ * {@link #register(long)} e {@link #committableOffset()} vanno chiamati dal thread del consumer a cui è
+ * assegnata la partizione, {@link #complete(long)} può essere chiamato da qualsiasi thread.
+ */
+public class PartitionOffsetTracker {
+    private final ConcurrentSkipListSet<Long> pending = new ConcurrentSkipListSet<>();
+    private volatile long highestRegistered = -1L;
+    /** scritto dal thread del consumer che possiede la partizione, che cambia a ogni ribilanciamento */
+    private volatile long lastCommitted = -1L;
+
+    public void register(long offset) {
+        pending.add(offset);
+        if (offset > highestRegistered) {
+            highestRegistered = offset;
+        }
+    }
+
+    public void complete(long offset) {
+        pending.remove(offset);
+    }
+
+    /**
+     * @return l'offset da committare (prossimo record da leggere) oppure -1 se nessun record è stato registrato
+     */
+    public long committableOffset() {
+        if (highestRegistered < 0) {
+            return -1L;
+        }
+        Long lowestPending = pending.ceiling(Long.MIN_VALUE);
+        return lowestPending != null ? lowestPending : highestRegistered + 1;
+    }
+
+    /**
+     * @return l'offset committabile se è avanzato rispetto all'ultimo commit confermato, altrimenti -1
+     */
+    long uncommittedOffset() {
+        long committable = committableOffset();
+        return committable > lastCommitted ? committable : -1L;
+    }
+
+    void markCommitted(long offset) {
+        lastCommitted = Math.max(lastCommitted, offset);
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+}
@@ -0,0 +1,462 @@
+package it.alf.consumer.writebehind;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+
+/**
+ * Buffer write-behind condiviso tra più topic: disaccoppia il consumo dei record dalla loro scrittura.
+ *
+ * I record di un poll vengono accodati nel canale del loro topic ({@link Channel#submit}) e il thread del consumer
+ * torna subito a fare poll. Un unico thread di scrittura svuota i canali a blocchi: un canale viene scritto quando ha
+ * almeno {@code flushSize} record in attesa oppure quando il suo poll più vecchio attende da {@code flushInterval}.
+ * Un blocco contiene poll interi, fino a {@code flushSize} record (almeno un poll).
+ *
+ * Gli offset avanzano solo dopo la scrittura del blocco che contiene i record: {@link #commitFlushed(Consumer)}
+ * committa dal thread del consumer, per ogni partizione assegnata, l'offset successivo all'ultimo record scritto.
+ * I poll di un canale vengono scritti nell'ordine di arrivo, quindi i record precedenti della partizione sono già
+ * scritti anche loro.
+ *
+ * Il buffer non blocca mai il consumer: quando i record in attesa raggiungono {@code capacity} viene invocato
+ * {@code onFull} (che mette in pausa i container) e, quando scendono a metà, {@code onDrained}. Il buffer supera
+ * {@code capacity} al più dei poll restituiti ai consumer prima che la pausa abbia effetto.
+ *
+ * Se la scrittura lancia una {@link BatchListenerFailedException}, i record precedenti a quello indicato sono salvati:
+ * il record fallito passa al {@code recoverer} e la scrittura riprende dal successivo; se l'eccezione non indica un
+ * record del blocco, i record rimasti vengono scritti uno alla volta con le stesse regole. Qualsiasi altro errore (ad
+ * esempio database non raggiungibile) fa ritentare l'intero blocco ogni {@code retryBackoff}: nel frattempo il buffer
+ * si riempie e il consumo si ferma.
+ */
+public class WriteBehindBuffer implements AutoCloseable {
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(30);
+
+    private final Logger logger = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+    private final String name;
+    private final int capacity;
+    private final int flushSize;
+    private final long flushIntervalNanos;
+    private final Duration retryBackoff;
+    private final BiConsumer<ConsumerRecord<?, ?>, Exception> recoverer;
+    private final Runnable onFull;
+    private final Runnable onDrained;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final List<Channel<?>> channels = new ArrayList<>();
+    /** record in attesa per partizione, compresi quelli in scrittura */
+    private final Map<TopicPartition, Integer> pending = new HashMap<>();
+    /** offset successivo all'ultimo record scritto, per partizione */
+    private final Map<TopicPartition, Long> flushed = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, Long> committed = new ConcurrentHashMap<>();
+    /** record del blocco in scrittura */
+    private List<? extends ConsumerRecord<?, ?>> writing = List.of();
+    /** partizioni revocate mentre il blocco in scrittura conteneva loro record: il blocco non ne fa avanzare gli offset */
+    private final Set<TopicPartition> revokedWhileWriting = new HashSet<>();
+    private final Thread flusher;
+    private int buffered;
+    private boolean full;
+    private boolean closing;
+    private int nextChannel;
+
+    public WriteBehindBuffer(String name, int capacity, int flushSize, Duration flushInterval, Duration retryBackoff,
+                             BiConsumer<ConsumerRecord<?, ?>, Exception> recoverer, Runnable onFull, Runnable onDrained) {
+        this.name = name;
+        this.capacity = capacity;
+        this.flushSize = flushSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.retryBackoff = retryBackoff;
+        this.recoverer = recoverer;
+        this.onFull = onFull;
+        this.onDrained = onDrained;
+        this.flusher = new Thread(this::runFlusher, name + "-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Registra il canale di un topic: {@code writer} salva un blocco di record e viene invocato solo dal thread di
+     * scrittura, un blocco per volta.
+     */
+    public <V> Channel<V> channel(String topic, java.util.function.Consumer<List<ConsumerRecord<String, V>>> writer) {
+        var channel = new Channel<>(topic, writer);
+        lock.lock();
+        try {
+            channels.add(channel);
+        } finally {
+            lock.unlock();
+        }
+        return channel;
+    }
+
+    private <V> void submit(Channel<V> channel, List<ConsumerRecord<String, V>> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (closing) {
+                throw new IllegalStateException("Write-behind buffer " + name + " is closed");
+            }
+            channel.polls.add(new Poll<>(List.copyOf(records), System.nanoTime()));
+            channel.size += records.size();
+            buffered += records.size();
+            for (var record : records) {
+                pending.merge(new TopicPartition(record.topic(), record.partition()), 1, Integer::sum);
+            }
+            if (!full && buffered >= capacity) {
+                full = true;
+                logger.info("[{}] {} records buffered, pausing consumption", name, buffered);
+                onFull.run();
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runFlusher() {
+        try {
+            while (true) {
+                Channel<?> channel;
+                lock.lock();
+                try {
+                    while ((channel = readyChannel()) == null) {
+                        if (closing && buffered == 0) {
+                            return;
+                        }
+                        changed.awaitNanos(nanosUntilDue());
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                channel.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Primo canale da scrivere, a rotazione tra i canali per non far attendere i topic con meno traffico.
+     */
+    private Channel<?> readyChannel() {
+        long now = System.nanoTime();
+        for (int i = 0; i < channels.size(); i++) {
+            var channel = channels.get((nextChannel + i) % channels.size());
+            if (channel.size > 0 && (closing || channel.size >= flushSize || now - channel.polls.peek().enqueuedAt() >= flushIntervalNanos)) {
+                nextChannel = (nextChannel + i + 1) % channels.size();
+                return channel;
+            }
+        }
+        return null;
+    }
+
+    private long nanosUntilDue() {
+        long now = System.nanoTime();
+        long wait = flushIntervalNanos;
+        for (var channel : channels) {
+            if (channel.size > 0) {
+                wait = Math.min(wait, channel.polls.peek().enqueuedAt() + flushIntervalNanos - now);
+            }
+        }
+        return Math.max(wait, TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    private void recover(ConsumerRecord<?, ?> record, Exception cause) {
+        try {
+            recoverer.accept(record, cause);
+        } catch (RuntimeException e) {
+            logger.error("[{}] Unable to recover record {}-{}@{}: {}", name, record.topic(), record.partition(), record.offset(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Committa, per ogni partizione assegnata al consumer, l'offset successivo all'ultimo record scritto se è avanzato
+     * dall'ultimo commit. Va chiamato dal thread del consumer.
+     */
+    public void commitFlushed(Consumer<?, ?> consumer) {
+        var offsets = new HashMap<TopicPartition, OffsetAndMetadata>();
+        for (var partition : consumer.assignment()) {
+            Long next = flushed.get(partition);
+            if (next != null && next > committed.getOrDefault(partition, -1L)) {
+                offsets.put(partition, new OffsetAndMetadata(next));
+            }
+        }
+        if (offsets.isEmpty()) {
+            return;
+        }
+        consumer.commitSync(offsets);
+        offsets.forEach((partition, offset) -> committed.merge(partition, offset.offset(), Math::max));
+        logger.debug("[{}] Committed offsets {}", name, offsets);
+    }
+
+    /**
+     * Da invocare alla revoca delle partizioni: attende (al massimo {@code timeout}) che i loro record in attesa
+     * vengano scritti, committa quanto scritto e ne dimentica lo stato. I record non scritti entro il timeout
+     * verranno riconsegnati al nuovo assegnatario: quelli ancora in coda vengono scartati, quelli del blocco in
+     * scrittura vengono scritti ma non fanno più avanzare gli offset, così un commit successivo (la partizione può
+     * tornare a questo consumer) non riporta il gruppo a un offset già superato.
+     */
+    public void onPartitionsRevoked(Consumer<?, ?> consumer, Collection<TopicPartition> partitions, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        lock.lock();
+        try {
+            while (partitions.stream().anyMatch(pending::containsKey)) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    logger.warn("[{}] Records of {} still buffered after {} ms, they will be redelivered", name, partitions, timeout.toMillis());
+                    discard(partitions);
+                    break;
+                }
+                changed.awaitNanos(left);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            commitFlushed(consumer);
+        } catch (RuntimeException e) {
+            logger.warn("[{}] Commit on revocation failed: {}", name, e.getMessage());
+        }
+        partitions.forEach(partition -> {
+            flushed.remove(partition);
+            committed.remove(partition);
+        });
+    }
+
+    /**
+     * Scarta i record in coda delle partizioni e sgancia quelli del blocco in scrittura; va chiamato con il lock.
+     */
+    private void discard(Collection<TopicPartition> partitions) {
+        for (var channel : channels) {
+            channel.discard(partitions);
+        }
+        for (var record : writing) {
+            var partition = new TopicPartition(record.topic(), record.partition());
+            if (partitions.contains(partition)) {
+                revokedWhileWriting.add(partition);
+            }
+        }
+        partitions.forEach(pending::remove);
+        drained();
+        changed.signalAll();
+    }
+
+    /**
+     * Riprende il consumo quando i record in attesa scendono a metà della capacità; va chiamato con il lock.
+     */
+    private void drained() {
+        if (full && buffered <= capacity / 2) {
+            full = false;
+            logger.info("[{}] {} records buffered, resuming consumption", name, buffered);
+            onDrained.run();
+        }
+    }
+
+    /**
+     * @return record consumati e non ancora scritti
+     */
+    public int buffered() {
+        lock.lock();
+        try {
+            return buffered;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isFull() {
+        lock.lock();
+        try {
+            return full;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Scrive i record ancora in attesa e ferma il thread di scrittura; dopo 30 secondi il thread viene interrotto e i
+     * record rimasti, non committati, verranno riconsegnati.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        lock.lock();
+        try {
+            closing = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        flusher.join(CLOSE_TIMEOUT.toMillis());
+        if (flusher.isAlive()) {
+            logger.warn("[{}] {} records not written on close", name, buffered());
+            flusher.interrupt();
+            flusher.join();
+        }
+    }
+
+    private record Poll<V>(List<ConsumerRecord<String, V>> records, long enqueuedAt) {
+    }
+
+    /**
+     * Coda dei poll di un topic.
+     */
+    public final class Channel<V> {
+        private final String topic;
+        private final java.util.function.Consumer<List<ConsumerRecord<String, V>>> writer;
+        private final ArrayDeque<Poll<V>> polls = new ArrayDeque<>();
+        /** record accodati e non ancora presi dal thread di scrittura */
+        private int size;
+
+        private Channel(String topic, java.util.function.Consumer<List<ConsumerRecord<String, V>>> writer) {
+            this.topic = topic;
+            this.writer = writer;
+        }
+
+        /**
+         * @return {@code true} se i record sono del topic del canale (i record dei topic di ritardo non lo sono)
+         */
+        public boolean accepts(List<? extends ConsumerRecord<?, ?>> records) {
+            return !records.isEmpty() && topic.equals(records.get(0).topic());
+        }
+
+        /**
+         * Accoda un poll. Va chiamato dal thread del consumer, nell'ordine di lettura dei record.
+         */
+        public void submit(List<ConsumerRecord<String, V>> records) {
+            if (!records.isEmpty() && !accepts(records)) {
+                throw new IllegalArgumentException("Channel " + topic + " cannot buffer records of " + records.get(0).topic());
+            }
+            WriteBehindBuffer.this.submit(this, records);
+        }
+
+        private void flush() throws InterruptedException {
+            var chunk = new ArrayList<ConsumerRecord<String, V>>();
+            lock.lock();
+            try {
+                while (!polls.isEmpty() && (chunk.isEmpty() || chunk.size() + polls.peek().records().size() <= flushSize)) {
+                    chunk.addAll(polls.poll().records());
+                }
+                size -= chunk.size();
+                writing = chunk;
+            } finally {
+                lock.unlock();
+            }
+            write(chunk);
+            completed(chunk);
+        }
+
+        private void write(List<ConsumerRecord<String, V>> records) throws InterruptedException {
+            int from = 0;
+            while (from < records.size()) {
+                var remaining = records.subList(from, records.size());
+                try {
+                    writer.accept(remaining);
+                    return;
+                } catch (BatchListenerFailedException e) {
+                    int failed = e.getRecord() != null ? remaining.indexOf(e.getRecord()) : e.getIndex();
+                    if (failed < 0 || failed >= remaining.size()) {
+                        // il record fallito non è individuabile: ritentare il blocco fallirebbe per sempre
+                        logger.warn("[{}] Writing {} records of {} failed on an unknown record, writing them one by one: {}",
+                                name, remaining.size(), topic, e.getMessage());
+                        writeOneByOne(remaining);
+                        return;
+                    }
+                    // i record precedenti sono salvati: quello fallito va al recoverer e si riprende dal successivo
+                    recover(remaining.get(failed), e.getCause() instanceof Exception cause ? cause : e);
+                    from += failed + 1;
+                } catch (RuntimeException e) {
+                    retryLater(remaining, e);
+                }
+            }
+        }
+
+        private void writeOneByOne(List<ConsumerRecord<String, V>> records) throws InterruptedException {
+            for (var record : records) {
+                while (true) {
+                    try {
+                        writer.accept(List.of(record));
+                        break;
+                    } catch (BatchListenerFailedException e) {
+                        recover(record, e.getCause() instanceof Exception cause ? cause : e);
+                        break;
+                    } catch (RuntimeException e) {
+                        retryLater(List.of(record), e);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Toglie dalla coda i record delle partizioni revocate; va chiamato con il lock.
+         */
+        private void discard(Collection<TopicPartition> partitions) {
+            int discarded = 0;
+            var kept = new ArrayDeque<Poll<V>>();
+            for (var poll : polls) {
+                var records = poll.records().stream()
+                        .filter(record -> !partitions.contains(new TopicPartition(record.topic(), record.partition())))
+                        .toList();
+                discarded += poll.records().size() - records.size();
+                if (records.size() == poll.records().size()) {
+                    kept.add(poll);
+                } else if (!records.isEmpty()) {
+                    kept.add(new Poll<>(records, poll.enqueuedAt()));
+                }
+            }
+            polls.clear();
+            polls.addAll(kept);
+            size -= discarded;
+            buffered -= discarded;
+        }
+
+        private void retryLater(List<ConsumerRecord<String, V>> records, RuntimeException e) throws InterruptedException {
+            logger.warn("[{}] Writing {} records of {} failed, retrying in {} ms: {}", name, records.size(), topic,
+                    retryBackoff.toMillis(), e.getMessage());
+            Thread.sleep(retryBackoff.toMillis());
+        }
+
+        private void completed(List<ConsumerRecord<String, V>> records) {
+            lock.lock();
+            try {
+                for (var record : records) {
+                    var partition = new TopicPartition(record.topic(), record.partition());
+                    if (revokedWhileWriting.contains(partition)) {
+                        continue;
+                    }
+                    flushed.merge(partition, record.offset() + 1, Math::max);
+                    pending.computeIfPresent(partition, (p, count) -> count > 1 ? count - 1 : null);
+                }
+                buffered -= records.size();
+                writing = List.of();
+                revokedWhileWriting.clear();
+                drained();
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package it.alf.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.DatabindException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import it.alf.dto.SendReceipt;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Ingestione bulk per gli endpoint {@code POST /api/<risorsa>/batch}.
+ *
+ * Il corpo (array JSON oppure NDJSON) viene letto un record alla volta con il parser streaming di Jackson
+ * ({@code MappingIterator}) e ogni record è inviato subito con il producer del topic, senza attendere l'ack:
+ * gli invii restano in pipeline nel {@code KafkaTemplate}. Al più {@code app.ingest.batch.max-in-flight} invii
+ * restano in attesa di conferma; oltre, la lettura si ferma sul più vecchio.
+ *
+ * La risposta contiene un {@link SendReceipt} per ogni record, nello stesso ordine dell'input, ed è scritta
+ * in streaming man mano che gli ack arrivano: NDJSON se la richiesta è NDJSON, altrimenti un array JSON.
+ * Un record non mappabile sul DTO produce un esito di errore e la lettura prosegue; un errore di sintassi
+ * JSON interrompe la lettura (non è possibile risincronizzarsi) con un ultimo esito di errore. Ogni altro errore di
+ * I/O (client disconnesso, corpo della richiesta interrotto) interrompe l'ingestione senza leggere oltre.
+ */
+@Component
+class BulkIngest {
+    private final Logger logger = LoggerFactory.getLogger(BulkIngest.class);
+    private final ObjectMapper objectMapper;
+    // niente flush dopo ogni esito: l'output del servlet viene svuotato a blocchi dal buffer del generator
+    private final ObjectWriter receiptWriter;
+    private final int maxInFlight;
+
+    BulkIngest(ObjectMapper objectMapper, @Value("${app.ingest.batch.max-in-flight:10000}") int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalStateException("app.ingest.batch.max-in-flight must be >= 1");
+        }
+        this.objectMapper = objectMapper;
+        this.receiptWriter = objectMapper.writerFor(SendReceipt.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.maxInFlight = maxInFlight;
+    }
+
+    <T> void ingest(HttpServletRequest request, HttpServletResponse response, Class<T> type,
+                    Function<T, String> idOf, Function<T, CompletableFuture<SendResult<String, Object>>> sender) throws IOException {
+        boolean ndjson = request.getContentType() != null
+                && MediaType.APPLICATION_NDJSON.isCompatibleWith(MediaType.parseMediaType(request.getContentType()));
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(ndjson ? MediaType.APPLICATION_NDJSON_VALUE : MediaType.APPLICATION_JSON_VALUE);
+
+        try (InputStream in = request.getInputStream(); OutputStream out = response.getOutputStream();
+             var iterator = objectMapper.readerFor(type).<T>readValues(in);
+             var results = new ResultWriter(objectMapper.getFactory().createGenerator(out), ndjson)) {
+            var pending = new ArrayDeque<Pending>();
+            long records = 0;
+            long failures = 0;
+            while (true) {
+                T value;
+                try {
+                    if (!iterator.hasNextValue()) {
+                        break;
+                    }
+                    value = iterator.nextValue();
+                } catch (JsonParseException e) {
+                    // JSON malformato: impossibile individuare l'inizio del record successivo
+                    pending.add(new Pending(null, CompletableFuture.failedFuture(e)));
+                    records++;
+                    break;
+                } catch (DatabindException e) {
+                    // record sintatticamente valido ma non mappabile sul DTO: lo si scarta e si prosegue
+                    pending.add(new Pending(null, CompletableFuture.failedFuture(e)));
+                    records++;
+                    continue;
+                }
+                if (value == null) {
+                    pending.add(new Pending(null, CompletableFuture.failedFuture(new IllegalArgumentException("null record"))));
+                } else {
+                    pending.add(new Pending(idOf.apply(value), sender.apply(value)));
+                }
+                records++;
+                // scrive gli esiti già disponibili; se la finestra è piena attende il record più vecchio
+                while (!pending.isEmpty() && (pending.size() >= maxInFlight || pending.peek().future().isDone())) {
+                    failures += results.write(pending.poll());
+                }
+            }
+            while (!pending.isEmpty()) {
+                failures += results.write(pending.poll());
+            }
+            logger.info("Bulk ingest of {} completed: {} records, {} failed", type.getSimpleName(), records, failures);
+        }
+    }
+
+    private record Pending(String id, CompletableFuture<SendResult<String, Object>> future) {
+    }
+
+    /**
+     * Scrive gli esiti come NDJSON (un oggetto per riga) oppure come array JSON.
+     */
+    private final class ResultWriter implements AutoCloseable {
+        private final JsonGenerator generator;
+        private final boolean ndjson;
+
+        ResultWriter(JsonGenerator generator, boolean ndjson) throws IOException {
+            this.generator = generator;
+            this.ndjson = ndjson;
+            if (ndjson) {
+                // nessun separatore tra i valori radice: ogni esito è seguito da un newline
+                generator.setPrettyPrinter(new MinimalPrettyPrinter(""));
+            } else {
+                generator.writeStartArray();
+            }
+        }
+
+        /**
+         * @return 1 se l'invio è fallito, 0 altrimenti
+         */
+        int write(Pending pending) throws IOException {
+            SendReceipt receipt;
+            try {
+                var metadata = pending.future().join().getRecordMetadata();
+                receipt = SendReceipt.success(pending.id(), metadata.topic(), metadata.partition(), metadata.offset());
+            } catch (RuntimeException e) {
+                receipt = SendResponses.failure(pending.id(), e);
+            }
+            receiptWriter.writeValue(generator, receipt);
+            if (ndjson) {
+                generator.writeRaw('\n');
+            }
+            return receipt.getError() == null ? 0 : 1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!ndjson) {
+                generator.writeEndArray();
+            }
+            generator.close();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package it.alf.controller;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import it.alf.dlq.DeadLetterFilter;
+import it.alf.dlq.DeadLetterService;
+import it.alf.dto.DeadLetterPage;
+import it.alf.dto.ReplayProgress;
+import it.alf.dto.ReplayRequest;
+
+@RestController
+@RequestMapping("/api/dlq")
+public class DlqController {
+    private final DeadLetterService deadLetterService;
+
+    public DlqController(DeadLetterService deadLetterService) {
+        this.deadLetterService = deadLetterService;
+    }
+
+    /**
+     * Record della DLQ in ordine di offset per partizione, paginati per cursore: {@code after} è il {@code nextCursor}
+     * della pagina precedente, da usare con gli stessi filtri. {@code topic} è il topic di origine, {@code exception} il
+     * nome (completo o semplice) dell'eccezione o della causa; {@code from} (incluso) e {@code to} (escluso) sono istanti
+     * ISO-8601 confrontati con il momento di pubblicazione sulla DLQ.
+     */
+    @GetMapping
+    public DeadLetterPage listDeadLetters(@RequestParam(required = false) String topic,
+                                         @RequestParam(required = false) String exception,
+                                         @RequestParam(required = false) Instant from,
+                                         @RequestParam(required = false) Instant to,
+                                         @RequestParam(required = false) String after,
+                                         @RequestParam(defaultValue = "100") int limit) {
+        return deadLetterService.page(new DeadLetterFilter(topic, exception, from, to), after, limit);
+    }
+
+    /**
+     * Avvia il replay dei record che soddisfano i filtri: risponde subito con 202 e lo stato iniziale, da seguire con
+     * {@code GET /api/dlq/replay/{id}}.
+     */
+    @PostMapping("/replay")
+    public ResponseEntity<ReplayProgress> replay(@RequestBody ReplayRequest request) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(deadLetterService.replay(request));
+    }
+
+    @GetMapping("/replay")
+    public List<ReplayProgress> listReplays() {
+        return deadLetterService.replays();
+    }
+
+    @GetMapping("/replay/{id}")
+    public ResponseEntity<ReplayProgress> getReplay(@PathVariable String id) {
+        return ResponseEntity.of(deadLetterService.progress(id));
+    }
+
+    @DeleteMapping("/replay/{id}")
+    public ResponseEntity<ReplayProgress> cancelReplay(@PathVariable String id) {
+        return ResponseEntity.of(deadLetterService.cancel(id));
+    }
+
+    /**
+     * Filtri, cursore, limite, rate o parallelismo non validi.
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> invalidRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON).body(Map.of("error", e.getMessage()));
+    }
+}
@@ -1,26 +1,116 @@
 package it.alf.controller;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import it.alf.dto.EventPage;
 import it.alf.dto.GenericEvent;
+import it.alf.dto.SendReceipt;
+import it.alf.dto.StoredEvent;
 import it.alf.producer.EventProducer;
+import it.alf.repository.EventFilter;
+import it.alf.service.EventQueryService;
+import it.alf.service.InvalidQueryException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
 @RestController
 @RequestMapping("/api/events")
 public class EventController {
     private final EventProducer producer;
+    private final BulkIngest bulkIngest;
+    private final EventQueryService eventQueryService;
+    private final ObjectMapper objectMapper;
 
-    public EventController(EventProducer producer) {
+    public EventController(EventProducer producer, BulkIngest bulkIngest, EventQueryService eventQueryService,
+                           ObjectMapper objectMapper) {
         this.producer = producer;
+        this.bulkIngest = bulkIngest;
+        this.eventQueryService = eventQueryService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
-    public ResponseEntity<String> sendEvent(@RequestBody GenericEvent event) {
-        producer.send(event);
-        return ResponseEntity.ok("Event sent: " + event.getId());
+    public CompletableFuture<ResponseEntity<SendReceipt>> sendEvent(@RequestBody GenericEvent event) {
+        // la risposta arriva quando il broker conferma il record (200 con partizione/offset) o fallisce l'invio
+        return SendResponses.toResponse(event.getId(), producer.send(event));
+    }
+
+    /**
+     * Invio bulk: array JSON o NDJSON letto in streaming, risposta con un esito per record nello stesso ordine.
+     */
+    @PostMapping(path = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public void sendEvents(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        bulkIngest.ingest(request, response, GenericEvent.class, GenericEvent::getId, producer::send);
+    }
+
+    /**
+     * Eventi salvati in ordine di salvataggio, paginati per keyset: {@code after} è il {@code nextCursor} della pagina
+     * precedente, da usare con gli stessi filtri. {@code from} (incluso) e {@code to} (escluso) sono istanti ISO-8601;
+     * {@code key}/{@code value} filtrano per una chiave indicizzata del payload.
+     */
+    @GetMapping
+    public EventPage listEvents(@RequestParam(required = false) String type,
+                                @RequestParam(required = false) Instant from,
+                                @RequestParam(required = false) Instant to,
+                                @RequestParam(required = false) String key,
+                                @RequestParam(required = false) String value,
+                                @RequestParam(required = false) String after,
+                                @RequestParam(defaultValue = "100") int limit) {
+        return eventQueryService.page(new EventFilter(type, from, to, key, value), after, limit);
+    }
+
+    /**
+     * Tutti gli eventi che soddisfano i filtri in NDJSON, scritti sulla risposta man mano che vengono letti.
+     */
+    @GetMapping(path = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void streamEvents(@RequestParam(required = false) String type,
+                             @RequestParam(required = false) Instant from,
+                             @RequestParam(required = false) Instant to,
+                             @RequestParam(required = false) String key,
+                             @RequestParam(required = false) String value,
+                             HttpServletResponse response) throws IOException {
+        var filter = new EventFilter(type, from, to, key, value);
+        // i filtri non validi vanno segnalati prima di iniziare a scrivere la risposta
+        eventQueryService.validate(filter);
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        var writer = objectMapper.writerFor(StoredEvent.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (var generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.setPrettyPrinter(new MinimalPrettyPrinter(""));
+            eventQueryService.stream(filter, event -> {
+                try {
+                    writer.writeValue(generator, event);
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    // client disconnesso: interrompe la lettura
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Filtri, cursore o limite non validi; le altre eccezioni degli endpoint non sono errori del client.
+     */
+    @ExceptionHandler(InvalidQueryException.class)
+    public ResponseEntity<Map<String, String>> invalidQuery(InvalidQueryException e) {
+        return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON).body(Map.of("error", e.getMessage()));
     }
 }
@@ -1,5 +1,9 @@
 package it.alf.controller;
 
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -7,20 +11,33 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import it.alf.dto.Notification;
+import it.alf.dto.SendReceipt;
 import it.alf.producer.NotificationProducer;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
 @RestController
 @RequestMapping("/api/notifications")
 public class NotificationController {
     private final NotificationProducer producer;
+    private final BulkIngest bulkIngest;
 
-    public NotificationController(NotificationProducer producer) {
+    public NotificationController(NotificationProducer producer, BulkIngest bulkIngest) {
         this.producer = producer;
+        this.bulkIngest = bulkIngest;
     }
 
     @PostMapping
-    public ResponseEntity<String> sendNotification(@RequestBody Notification notification) {
-        producer.send(notification);
-        return ResponseEntity.ok("Notification sent: " + notification.getId());
+    public CompletableFuture<ResponseEntity<SendReceipt>> sendNotification(@RequestBody Notification notification) {
+        // la risposta arriva quando il broker conferma il record (200 con partizione/offset) o fallisce l'invio
+        return SendResponses.toResponse(notification.getId(), producer.send(notification));
+    }
+
+    /**
+     * Invio bulk: array JSON o NDJSON letto in streaming, risposta con un esito per record nello stesso ordine.
+     */
+    @PostMapping(path = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public void sendNotifications(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        bulkIngest.ingest(request, response, Notification.class, Notification::getId, producer::send);
     }
 }
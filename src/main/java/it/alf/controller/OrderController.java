@@ -1,5 +1,9 @@
 package it.alf.controller;
 
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -7,20 +11,33 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import it.alf.dto.Order;
+import it.alf.dto.SendReceipt;
 import it.alf.producer.OrderProducer;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
 @RestController
 @RequestMapping("/api/orders")
 public class OrderController {
     private final OrderProducer producer;
+    private final BulkIngest bulkIngest;
 
-    public OrderController(OrderProducer producer) {
+    public OrderController(OrderProducer producer, BulkIngest bulkIngest) {
         this.producer = producer;
+        this.bulkIngest = bulkIngest;
     }
 
     @PostMapping
-    public ResponseEntity<String> createOrder(@RequestBody Order order) {
-        producer.send(order);
-        return ResponseEntity.ok("Order sent to Kafka: " + order.getId());
+    public CompletableFuture<ResponseEntity<SendReceipt>> createOrder(@RequestBody Order order) {
+        // la risposta arriva quando il broker conferma il record (200 con partizione/offset) o fallisce l'invio
+        return SendResponses.toResponse(order.getId(), producer.send(order));
+    }
+
+    /**
+     * Invio bulk: array JSON o NDJSON letto in streaming, risposta con un esito per record nello stesso ordine.
+     */
+    @PostMapping(path = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public void createOrders(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        bulkIngest.ingest(request, response, Order.class, Order::getId, producer::send);
     }
 }
@@ -0,0 +1,57 @@
+package it.alf.controller;
+
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.springframework.http.HttpStatus;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.DatabindException;
+
+/**
+ * Errore di un invio restituito ai client: codice stabile ({@link #name()}), messaggio fisso e stato HTTP.
+ * Classe e messaggio dell'eccezione restano nel log del server.
+ */
+enum SendError {
+    RECORD_TOO_LARGE(HttpStatus.PAYLOAD_TOO_LARGE, "Record larger than the maximum request size"),
+    SERIALIZATION_FAILED(HttpStatus.BAD_REQUEST, "Record could not be serialized"),
+    SEND_TIMEOUT(HttpStatus.GATEWAY_TIMEOUT, "Kafka did not acknowledge the record in time"),
+    SEND_FAILED(HttpStatus.SERVICE_UNAVAILABLE, "Record could not be sent to Kafka"),
+    INVALID_RECORD(HttpStatus.BAD_REQUEST, "Record does not match the expected fields"),
+    MALFORMED_JSON(HttpStatus.BAD_REQUEST, "Malformed JSON, the rest of the body was not read");
+
+    private final HttpStatus status;
+    private final String message;
+
+    SendError(HttpStatus status, String message) {
+        this.status = status;
+        this.message = message;
+    }
+
+    HttpStatus status() {
+        return status;
+    }
+
+    String message() {
+        return message;
+    }
+
+    static SendError of(Throwable cause) {
+        if (cause instanceof RecordTooLargeException) {
+            return RECORD_TOO_LARGE;
+        }
+        if (cause instanceof SerializationException) {
+            return SERIALIZATION_FAILED;
+        }
+        if (cause instanceof TimeoutException) {
+            return SEND_TIMEOUT;
+        }
+        if (cause instanceof JsonParseException) {
+            return MALFORMED_JSON;
+        }
+        if (cause instanceof DatabindException || cause instanceof IllegalArgumentException) {
+            return INVALID_RECORD;
+        }
+        return SEND_FAILED;
+    }
+}
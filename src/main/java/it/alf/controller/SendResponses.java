@@ -0,0 +1,60 @@
+package it.alf.controller;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.support.SendResult;
+
+import it.alf.dto.SendReceipt;
+
+/**
+ * Converte il future di invio restituito dai producer nella risposta HTTP.
+ *
+ * La risposta viene completata dal thread di callback del producer quando il broker conferma il record,
+ * senza occupare un thread servlet durante l'attesa (Spring MVC gestisce il {@link CompletableFuture}
+ * come richiesta asincrona). Un invio fallito restituisce il codice e il messaggio di {@link SendError}; i dettagli
+ * dell'eccezione vengono solo scritti nel log.
+ */
+final class SendResponses {
+    private static final Logger logger = LoggerFactory.getLogger(SendResponses.class);
+
+    private SendResponses() {
+    }
+
+    static CompletableFuture<ResponseEntity<SendReceipt>> toResponse(String id, CompletableFuture<SendResult<String, Object>> send) {
+        return send.handle((result, error) -> {
+            if (error == null) {
+                var metadata = result.getRecordMetadata();
+                return ResponseEntity.ok(SendReceipt.success(id, metadata.topic(), metadata.partition(), metadata.offset()));
+            }
+            var sendError = SendError.of(rootCause(error));
+            return ResponseEntity.status(sendError.status()).body(failure(id, error));
+        });
+    }
+
+    /**
+     * Esito di errore per il client; la causa completa va nel log.
+     */
+    static SendReceipt failure(String id, Throwable error) {
+        var cause = rootCause(error);
+        var sendError = SendError.of(cause);
+        logger.warn("Send of {} failed with {}: {}", id, sendError, cause.toString());
+        return SendReceipt.failure(id, sendError.name(), sendError.message());
+    }
+
+    /**
+     * Rimuove i wrapper di Spring ({@code KafkaProducerException}, "Send failed") e del future
+     * per arrivare all'eccezione del client Kafka.
+     */
+    static Throwable rootCause(Throwable error) {
+        var cause = error;
+        while ((cause instanceof CompletionException || cause instanceof KafkaException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
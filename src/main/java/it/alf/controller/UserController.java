@@ -1,50 +1,115 @@
 package it.alf.controller;
 
-import java.util.List;
-import java.util.stream.Collectors;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
 
+import org.apache.kafka.streams.errors.InvalidStateStoreException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
 import it.alf.dto.User;
+import it.alf.dto.UserPage;
+import it.alf.dto.SendReceipt;
 import it.alf.producer.UserProducer;
-import it.alf.repository.UserRepository;
+import it.alf.service.UserLookup;
+import it.alf.service.UserQueryService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
 @RestController
 @RequestMapping("/api/users")
 public class UserController {
     private final UserProducer producer;
-    private final UserRepository userRepository;
+    private final UserQueryService userQueryService;
+    private final UserLookup userLookup;
+    private final BulkIngest bulkIngest;
+    private final ObjectMapper objectMapper;
 
-    public UserController(UserProducer producer, UserRepository userRepository) {
+    public UserController(UserProducer producer, UserQueryService userQueryService, UserLookup userLookup,
+                          BulkIngest bulkIngest, ObjectMapper objectMapper) {
         this.producer = producer;
-        this.userRepository = userRepository;
+        this.userQueryService = userQueryService;
+        this.userLookup = userLookup;
+        this.bulkIngest = bulkIngest;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
-    public ResponseEntity<String> createUser(@RequestBody User user) {
-        producer.send(user);
-        return ResponseEntity.ok("User sent to Kafka: " + user.getId());
+    public CompletableFuture<ResponseEntity<SendReceipt>> createUser(@RequestBody User user) {
+        // la risposta arriva quando il broker conferma il record (200 con partizione/offset) o fallisce l'invio
+        return SendResponses.toResponse(user.getId(), producer.send(user));
+    }
+
+    /**
+     * Invio bulk: array JSON o NDJSON letto in streaming, risposta con un esito per record nello stesso ordine.
+     */
+    @PostMapping(path = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public void createUsers(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        bulkIngest.ingest(request, response, User.class, User::getId, producer::send);
     }
 
+    /**
+     * Lookup per id: database con cache, oppure vista Kafka Streams se abilitata (vedi {@link UserLookup}).
+     */
     @GetMapping("/{id}")
     public ResponseEntity<User> getUser(@PathVariable String id) {
-        return userRepository.findById(id)
-                .map(e -> new User(e.getId(), e.getName(), e.getEmail()))
+        return userLookup.findById(id)
                 .map(ResponseEntity::ok)
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
+    /**
+     * Lista paginata per keyset: {@code after} è il {@code nextCursor} della pagina precedente (assente per la prima).
+     */
     @GetMapping
-    public ResponseEntity<List<User>> listUsers() {
-        var list = userRepository.findAll().stream()
-                .map(e -> new User(e.getId(), e.getName(), e.getEmail()))
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(list);
+    public ResponseEntity<UserPage> listUsers(@RequestParam(required = false) String after,
+                                              @RequestParam(defaultValue = "100") int limit) {
+        if (limit < 1 || limit > UserQueryService.MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(userQueryService.page(after, limit));
+    }
+
+    /**
+     * Tutti gli utenti in NDJSON, scritti sulla risposta man mano che vengono letti dal cursore del database.
+     */
+    @GetMapping(path = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void streamUsers(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        var writer = objectMapper.writerFor(User.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (var generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.setPrettyPrinter(new MinimalPrettyPrinter(""));
+            userQueryService.streamAll(user -> {
+                try {
+                    writer.writeValue(generator, user);
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    // client disconnesso: interrompe la lettura e chiude il cursore
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Vista Kafka Streams non ancora interrogabile (avvio o ripristino dello store).
+     */
+    @ExceptionHandler(InvalidStateStoreException.class)
+    public ResponseEntity<Void> userViewUnavailable() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
     }
 }
@@ -0,0 +1,187 @@
+package it.alf.dedupe;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import it.alf.config.DedupeProperties;
+import it.alf.config.KafkaTopicsProperties.DedupeMode;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceUnitUtil;
+
+@Component
+/**
+ * Registro dei record già elaborati, usato da {@link it.alf.consumer.BatchPersister} per saltare i duplicati
+ * (riconsegne dopo un retry del {@code DefaultErrorHandler} o un ribilanciamento, oppure lo stesso id inviato più volte).
+ *
+ * Ogni record elaborato lascia una chiave nella tabella {@code processed_records}, scritta nella stessa transazione
+ * delle entità: o il record è salvato e la sua chiave registrata, o nessuna delle due cose. La chiave è
+ * {@code topic/partizione/offset} in modalità {@code offset} e {@code topic:id} in modalità {@code id}.
+ *
+ * Davanti alla tabella c'è un {@link BloomFilter} in memoria che contiene tutte le chiavi della tabella: la maggior
+ * parte dei record nuovi viene riconosciuta dal filtro senza interrogare il database, e solo le chiavi che il filtro
+ * considera già viste (duplicati veri o falsi positivi) vengono cercate nella tabella con una query per batch.
+ * I duplicati non arrivano quindi mai alla {@code save}/merge JPA.
+ *
+ * Il filtro ha dimensione fissa ({@code app.kafka.dedupe.expected-keys}): viene ricostruito dalla tabella all'avvio
+ * e quando le chiavi aggiunte superano la capacità, dopo aver eliminato quelle più vecchie di
+ * {@code app.kafka.dedupe.retention}. Durante la ricostruzione le elaborazioni restano in attesa.
+ */
+public class DedupeStore {
+    private static final String INSERT = "insert into processed_records (record_key, processed_at) values (?, ?)";
+    /** chiavi cercate nella tabella per query */
+    private static final int LOOKUP_CHUNK = 500;
+
+    private final Logger logger = LoggerFactory.getLogger(DedupeStore.class);
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PersistenceUnitUtil persistenceUnitUtil;
+    private final DedupeProperties properties;
+    /** le elaborazioni condividono il lock in lettura, la ricostruzione del filtro lo prende in scrittura */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile BloomFilter filter;
+    /** chiavi nel filtro oltre le quali va ricostruito: quelle caricate più {@code expected-keys} nuove */
+    private volatile long rebuildAt;
+
+    public DedupeStore(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                       EntityManagerFactory entityManagerFactory, DedupeProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // l'EntityManagerFactory garantisce anche che lo schema (processed_records) esista prima del caricamento
+        this.persistenceUnitUtil = entityManagerFactory.getPersistenceUnitUtil();
+        this.properties = properties;
+        properties.validate();
+        rebuild();
+    }
+
+    /**
+     * Chiave di deduplicazione del record secondo la modalità del topic; in modalità {@code id} è l'id JPA dell'entità.
+     */
+    public String key(DedupeMode mode, ConsumerRecord<?, ?> record, Object entity) {
+        return switch (mode) {
+            case OFFSET -> record.topic() + "/" + record.partition() + "/" + record.offset();
+            case ID -> record.topic() + ":" + persistenceUnitUtil.getIdentifier(entity);
+            case NONE -> throw new IllegalArgumentException("dedupe is disabled");
+        };
+    }
+
+    /**
+     * Individua le chiavi già elaborate. Una chiave ripetuta nella lista è un duplicato dalla seconda occorrenza.
+     */
+    public Result findProcessed(List<String> keys) {
+        var duplicates = new boolean[keys.size()];
+        var candidates = new ArrayList<String>();
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < keys.size(); i++) {
+            var key = keys.get(i);
+            if (!seen.add(key)) {
+                duplicates[i] = true;
+            } else if (filter.mightContain(key)) {
+                candidates.add(key);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return new Result(duplicates, 0);
+        }
+        var stored = lookup(candidates);
+        for (int i = 0; i < keys.size(); i++) {
+            if (stored.contains(keys.get(i))) {
+                duplicates[i] = true;
+            }
+        }
+        return new Result(duplicates, candidates.size());
+    }
+
+    /**
+     * Esegue {@code work} (il salvataggio delle entità) e registra le chiavi nella stessa transazione; dopo il commit
+     * le chiavi vengono aggiunte al filtro.
+     */
+    public <T> T recordProcessed(List<String> keys, Supplier<T> work) {
+        T result;
+        lock.readLock().lock();
+        try {
+            result = transactionTemplate.execute(status -> {
+                T value = work.get();
+                if (keys.isEmpty()) {
+                    return value;
+                }
+                var processedAt = Timestamp.from(Instant.now());
+                jdbcTemplate.batchUpdate(INSERT, keys, keys.size(), (ps, key) -> {
+                    ps.setString(1, key);
+                    ps.setTimestamp(2, processedAt);
+                });
+                return value;
+            });
+            keys.forEach(filter::put);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (filter.insertions() > rebuildAt) {
+            rebuild();
+        }
+        return result;
+    }
+
+    /**
+     * Elimina le chiavi scadute e ricarica il filtro con quelle rimaste, se il filtro ha raggiunto la soglia
+     * di ricostruzione (o non è ancora stato caricato).
+     */
+    private void rebuild() {
+        lock.writeLock().lock();
+        try {
+            if (filter != null && filter.insertions() <= rebuildAt) {
+                return; // già ricostruito da un altro thread
+            }
+            long start = System.nanoTime();
+            int purged = jdbcTemplate.update("delete from processed_records where processed_at < ?",
+                    Timestamp.from(Instant.now().minus(properties.getRetention())));
+            var rebuilt = new BloomFilter(properties.getExpectedKeys(), properties.getFalsePositiveRate());
+            jdbcTemplate.query("select record_key from processed_records", rs -> {
+                rebuilt.put(rs.getString(1));
+            });
+            filter = rebuilt;
+            rebuildAt = rebuilt.insertions() + properties.getExpectedKeys();
+            if (rebuilt.isSaturated()) {
+                logger.warn("Dedupe store holds {} keys, more than app.kafka.dedupe.expected-keys ({}): "
+                        + "false positives will cause more lookups", rebuilt.insertions(), properties.getExpectedKeys());
+            }
+            logger.info("Dedupe filter loaded with {} keys ({} expired keys purged, {} KB, {} hashes) in {} ms",
+                    rebuilt.insertions(), purged, rebuilt.sizeInBytes() / 1024, rebuilt.hashCount(),
+                    (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Set<String> lookup(List<String> keys) {
+        Set<String> found = new HashSet<>();
+        for (int from = 0; from < keys.size(); from += LOOKUP_CHUNK) {
+            var chunk = keys.subList(from, Math.min(from + LOOKUP_CHUNK, keys.size()));
+            var sql = "select record_key from processed_records where record_key in ("
+                    + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")";
+            found.addAll(jdbcTemplate.queryForList(sql, String.class, chunk.toArray()));
+        }
+        return found;
+    }
+
+    /**
+     * @param duplicates per ogni chiave, true se il record è già stato elaborato
+     * @param lookups    chiavi cercate nella tabella perché il filtro le considerava già viste
+     */
+    public record Result(boolean[] duplicates, int lookups) {
+    }
+}
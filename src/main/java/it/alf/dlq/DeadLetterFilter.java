@@ -0,0 +1,33 @@
+package it.alf.dlq;
+
+import java.time.Instant;
+
+/**
+ * Filtri sui record della DLQ; i campi null non filtrano.
+ *
+ * @param topic     topic di origine (il topic principale, anche per i record passati dai topic di ritardo)
+ * @param exception classe dell'eccezione o della sua causa, con o senza package
+ * @param from      pubblicazione sulla DLQ da questo istante (incluso)
+ * @param to        pubblicazione sulla DLQ fino a questo istante (escluso)
+ */
+public record DeadLetterFilter(String topic, String exception, Instant from, Instant to) {
+
+    public static DeadLetterFilter none() {
+        return new DeadLetterFilter(null, null, null, null);
+    }
+
+    boolean matches(DeadLetterRecord deadLetter) {
+        if (topic != null && !topic.equals(deadLetter.originalTopic())) {
+            return false;
+        }
+        if (exception != null && !isClass(deadLetter.exceptionClass()) && !isClass(deadLetter.causeClass())) {
+            return false;
+        }
+        var timestamp = deadLetter.timestamp();
+        return (from == null || !timestamp.isBefore(from)) && (to == null || timestamp.isBefore(to));
+    }
+
+    private boolean isClass(String className) {
+        return className != null && (className.equals(exception) || className.endsWith("." + exception));
+    }
+}
@@ -0,0 +1,125 @@
+package it.alf.dlq;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.stereotype.Component;
+
+import it.alf.config.KafkaTopicsProperties;
+
+@Component
+/**
+ * Lettura della DLQ con consumer assegnati manualmente alle partizioni, senza gruppo né commit e in {@code read_committed}
+ * (i record inoltrati da transazioni annullate non vengono mai letti): ogni lettura parte dalla
+ * posizione indicata e si ferma alla fine delle partizioni com'era all'apertura, così i record che tornano sulla DLQ
+ * durante un replay non vengono riletti. I valori restano in byte (JSON) e non vengono deserializzati.
+ */
+public class DeadLetterReader {
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+
+    private final ConsumerFactory<String, byte[]> consumerFactory;
+    private final KafkaTopicsProperties topics;
+
+    public DeadLetterReader(@Value("${spring.kafka.bootstrap-servers}") String bootstrapServers, KafkaTopicsProperties topics) {
+        this.consumerFactory = new DefaultKafkaConsumerFactory<>(Map.of(
+                ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers,
+                ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false,
+                ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 1000,
+                ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed"),
+                new StringDeserializer(), new ByteArrayDeserializer());
+        this.topics = topics;
+    }
+
+    /**
+     * Numeri di partizione della DLQ.
+     */
+    public List<Integer> partitions() {
+        try (var consumer = consumerFactory.createConsumer()) {
+            return consumer.partitionsFor(topics.getDeadletter().getName()).stream().map(p -> p.partition()).sorted().toList();
+        }
+    }
+
+    /**
+     * Passa a {@code visitor} i record delle partizioni indicate, in ordine di offset per partizione.
+     *
+     * @param start   offset da cui riprendere per partizione (ad esempio da un cursore); le partizioni assenti partono
+     *                dal primo record pubblicato da {@code from} o, senza {@code from}, dall'inizio
+     * @param visitor restituisce false per fermare la lettura: il record non conta come letto
+     * @param stop    interrompe la lettura tra un poll e l'altro (ad esempio un replay annullato)
+     */
+    Scan scan(Collection<Integer> partitions, Map<Integer, Long> start, Instant from,
+              Predicate<DeadLetterRecord> visitor, BooleanSupplier stop) {
+        var positions = new HashMap<Integer, Long>();
+        try (Consumer<String, byte[]> consumer = consumerFactory.createConsumer()) {
+            var assigned = partitions.stream().map(p -> new TopicPartition(topics.getDeadletter().getName(), p)).toList();
+            consumer.assign(assigned);
+            var end = consumer.endOffsets(assigned);
+            var byTime = from == null ? null : consumer.offsetsForTimes(timestamps(assigned, from));
+            for (var partition : assigned) {
+                long offset;
+                if (start.containsKey(partition.partition())) {
+                    offset = start.get(partition.partition());
+                } else if (byTime != null) {
+                    var found = byTime.get(partition);
+                    offset = found != null ? found.offset() : end.get(partition);
+                } else {
+                    offset = consumer.beginningOffsets(List.of(partition)).get(partition);
+                }
+                consumer.seek(partition, offset);
+                positions.put(partition.partition(), offset);
+            }
+
+            while (!stop.getAsBoolean() && !finished(positions, end)) {
+                var records = consumer.poll(POLL_TIMEOUT);
+                for (var partition : records.partitions()) {
+                    for (ConsumerRecord<String, byte[]> record : records.records(partition)) {
+                        if (record.offset() >= end.get(partition)) {
+                            break;
+                        }
+                        if (!visitor.test(DeadLetterRecord.of(record, topics))) {
+                            return new Scan(positions, false);
+                        }
+                        positions.put(partition.partition(), record.offset() + 1);
+                    }
+                }
+                // salta i buchi tra gli offset (marker di transazione, compattazione)
+                for (var partition : assigned) {
+                    positions.put(partition.partition(), Math.min(consumer.position(partition), end.get(partition)));
+                }
+            }
+            return new Scan(positions, finished(positions, end));
+        }
+    }
+
+    private static Map<TopicPartition, Long> timestamps(List<TopicPartition> partitions, Instant from) {
+        var timestamps = new HashMap<TopicPartition, Long>();
+        partitions.forEach(p -> timestamps.put(p, from.toEpochMilli()));
+        return timestamps;
+    }
+
+    private static boolean finished(Map<Integer, Long> positions, Map<TopicPartition, Long> end) {
+        return end.entrySet().stream().allMatch(e -> positions.get(e.getKey().partition()) >= e.getValue());
+    }
+
+    /**
+     * @param positions prossimo offset da leggere per partizione
+     * @param finished  true se tutte le partizioni sono state lette fino alla fine
+     */
+    record Scan(Map<Integer, Long> positions, boolean finished) {
+    }
+}
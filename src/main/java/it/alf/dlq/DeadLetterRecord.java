@@ -0,0 +1,80 @@
+package it.alf.dlq;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Iterator;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.kafka.support.KafkaHeaders;
+
+import it.alf.codec.RecordCodec;
+import it.alf.config.KafkaTopicsProperties;
+import it.alf.dto.DeadLetter;
+
+/**
+ * Record della DLQ con gli header del {@code DeadLetterPublishingRecoverer} già decodificati.
+ *
+ * Un record passato dai topic di ritardo ha un header di origine per ogni passaggio, nell'ordine in cui è stato
+ * pubblicato: l'origine è il primo (topic principale, partizione e offset del record prodotto), l'eccezione è
+ * l'ultima (gli header delle eccezioni precedenti vengono rimossi a ogni passaggio).
+ */
+record DeadLetterRecord(ConsumerRecord<String, byte[]> record, String originalTopic, Integer originalPartition,
+                        Long originalOffset, String exceptionClass, String causeClass, String exceptionMessage) {
+
+    static DeadLetterRecord of(ConsumerRecord<String, byte[]> record, KafkaTopicsProperties topics) {
+        var headers = record.headers();
+        var originalTopic = string(first(headers, KafkaHeaders.DLT_ORIGINAL_TOPIC));
+        var partition = first(headers, KafkaHeaders.DLT_ORIGINAL_PARTITION);
+        var offset = first(headers, KafkaHeaders.DLT_ORIGINAL_OFFSET);
+        return new DeadLetterRecord(record,
+                originalTopic == null ? null : topics.sourceTopic(originalTopic),
+                partition == null ? null : ByteBuffer.wrap(partition.value()).getInt(),
+                offset == null ? null : ByteBuffer.wrap(offset.value()).getLong(),
+                string(headers.lastHeader(KafkaHeaders.DLT_EXCEPTION_FQCN)),
+                string(headers.lastHeader(KafkaHeaders.DLT_EXCEPTION_CAUSE_FQCN)),
+                string(headers.lastHeader(KafkaHeaders.DLT_EXCEPTION_MESSAGE)));
+    }
+
+    Instant timestamp() {
+        return Instant.ofEpochMilli(record.timestamp());
+    }
+
+    DeadLetter toDeadLetter() {
+        var value = record.value();
+        boolean binary = value != null && !json(value);
+        String payload = null;
+        if (value != null) {
+            // il payload viene scritto nella risposta senza escape: i byte binari diventano una stringa JSON base64
+            payload = binary ? "\"" + Base64.getEncoder().encodeToString(value) + "\"" : new String(value, StandardCharsets.UTF_8);
+        }
+        return new DeadLetter(record.partition(), record.offset(), timestamp(), record.key(), originalTopic,
+                originalPartition, originalOffset, causeClass != null ? causeClass : exceptionClass, exceptionMessage,
+                binary ? "binary" : "json", payload);
+    }
+
+    /**
+     * Valore JSON (oggetto o array) oppure no: i record dei topic con {@code codec: binary} iniziano con
+     * {@link RecordCodec#MAGIC}, quelli non deserializzabili possono contenere qualunque byte.
+     */
+    private static boolean json(byte[] value) {
+        for (byte b : value) {
+            if (!Character.isWhitespace(b)) {
+                return b == '{' || b == '[';
+            }
+        }
+        return false;
+    }
+
+    private static Header first(Headers headers, String name) {
+        Iterator<Header> values = headers.headers(name).iterator();
+        return values.hasNext() ? values.next() : null;
+    }
+
+    private static String string(Header header) {
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+}
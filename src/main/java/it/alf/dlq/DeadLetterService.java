@@ -0,0 +1,269 @@
+package it.alf.dlq;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+import it.alf.config.DlqProperties;
+import it.alf.config.KafkaProducerProperties;
+import it.alf.config.KafkaTopicsProperties;
+import it.alf.dto.DeadLetter;
+import it.alf.dto.DeadLetterPage;
+import it.alf.dto.ReplayProgress;
+import it.alf.dto.ReplayRequest;
+
+/**
+ * Consultazione e replay dei record della DLQ.
+ *
+ * {@link #page} legge la DLQ dalla posizione del cursore (o dal primo record pubblicato da {@code from}) e restituisce
+ * i record che soddisfano i filtri; ogni pagina legge al massimo {@code app.kafka.dlq.max-scan} record, quindi con
+ * filtri molto selettivi una pagina può essere vuota ma avere un cursore per continuare.
+ *
+ * {@link #replay} avvia in background la ripubblicazione dei record filtrati sul loro topic di origine, con la stessa
+ * chiave e lo stesso valore, più l'header {@value #REPLAY_HEADER} con l'id del replay. Le partizioni della DLQ vengono
+ * divise tra {@code parallelism} lettori su virtual thread; il limite di {@code rate} record al secondo è condiviso tra
+ * tutti i lettori, così il carico sul database dei listener resta costante qualunque sia il numero di record, e al
+ * massimo {@code app.kafka.dlq.replay-max-in-flight} invii attendono la conferma del broker. Il replay legge la DLQ fino
+ * alla fine com'era all'avvio: i record che falliscono di nuovo e tornano sulla DLQ non vengono ripubblicati in ciclo.
+ * Lo stato dei replay resta in memoria fino al riavvio.
+ */
+@Service
+public class DeadLetterService implements DisposableBean {
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final String REPLAY_HEADER = "dlq-replay-id";
+
+    private final Logger logger = LoggerFactory.getLogger(DeadLetterService.class);
+    private final DeadLetterReader reader;
+    private final KafkaTopicsProperties topics;
+    private final DlqProperties properties;
+    private final DefaultKafkaProducerFactory<String, byte[]> producerFactory;
+    private final KafkaTemplate<String, byte[]> template;
+    private final Map<String, ReplayJob> jobs = new ConcurrentHashMap<>();
+
+    public DeadLetterService(DeadLetterReader reader, KafkaTopicsProperties topics, DlqProperties properties,
+                             KafkaProducerProperties producerProperties, @Value("${spring.kafka.bootstrap-servers}") String bootstrapServers) {
+        this.reader = reader;
+        this.topics = topics;
+        this.properties = properties;
+        properties.validate();
+        var config = new HashMap<String, Object>();
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, producerProperties.getMaxBlockMs());
+        config.putAll(producerProperties.get(properties.getReplayProducerProfile()).toProducerConfig());
+        // il valore della DLQ è già JSON: viene ripubblicato così com'è
+        this.producerFactory = new DefaultKafkaProducerFactory<>(config, new StringSerializer(), new ByteArraySerializer());
+        this.template = new KafkaTemplate<>(producerFactory);
+    }
+
+    /**
+     * @param after cursore della pagina precedente ({@link DeadLetterPage#getNextCursor()}), null per iniziare
+     * @throws IllegalArgumentException se i filtri, il cursore o il limite non sono validi
+     */
+    public DeadLetterPage page(DeadLetterFilter filter, String after, int limit) {
+        validate(filter);
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        var start = after == null ? Map.<Integer, Long>of() : decodeCursor(after);
+        var items = new ArrayList<DeadLetter>();
+        long[] scanned = {0};
+        var scan = reader.scan(reader.partitions(), start, filter.from(), deadLetter -> {
+            if (items.size() == limit || scanned[0] == properties.getMaxScan()) {
+                return false;
+            }
+            scanned[0]++;
+            if (filter.matches(deadLetter)) {
+                items.add(deadLetter.toDeadLetter());
+            }
+            return true;
+        }, () -> false);
+        return new DeadLetterPage(items, scanned[0], scan.finished() ? null : cursor(scan.positions()));
+    }
+
+    /**
+     * Avvia un replay e ne restituisce lo stato iniziale.
+     *
+     * @throws IllegalArgumentException se i filtri, il rate o il parallelismo non sono validi
+     */
+    public ReplayProgress replay(ReplayRequest request) {
+        var filter = new DeadLetterFilter(request.getTopic(), request.getException(), request.getFrom(), request.getTo());
+        validate(filter);
+        int rate = request.getRate() != null ? request.getRate() : properties.getReplayRate();
+        if (rate < 1 || rate > properties.getMaxReplayRate()) {
+            throw new IllegalArgumentException("rate must be between 1 and " + properties.getMaxReplayRate());
+        }
+        int parallelism = request.getParallelism() != null ? request.getParallelism() : properties.getReplayParallelism();
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be >= 1");
+        }
+        var partitions = reader.partitions();
+        // un lettore per gruppo di partizioni: più lettori delle partizioni resterebbero fermi
+        int readers = Math.min(parallelism, partitions.size());
+        var groups = new ArrayList<List<Integer>>();
+        for (int i = 0; i < readers; i++) {
+            groups.add(new ArrayList<>());
+        }
+        for (int i = 0; i < partitions.size(); i++) {
+            groups.get(i % readers).add(partitions.get(i));
+        }
+
+        var job = new ReplayJob(UUID.randomUUID().toString(), filter, rate, readers);
+        jobs.put(job.id, job);
+        Thread.ofVirtual().name("dlq-replay-" + job.id).start(() -> run(job, groups));
+        logger.info("DLQ replay {} started: {} at {} records/s with {} readers", job.id, filter, rate, readers);
+        return job.progress();
+    }
+
+    public Optional<ReplayProgress> progress(String id) {
+        return Optional.ofNullable(jobs.get(id)).map(ReplayJob::progress);
+    }
+
+    public List<ReplayProgress> replays() {
+        return jobs.values().stream().sorted(Comparator.comparing(job -> job.startedAt)).map(ReplayJob::progress).toList();
+    }
+
+    /**
+     * Ferma il replay: i record già inviati restano ripubblicati.
+     */
+    public Optional<ReplayProgress> cancel(String id) {
+        var job = jobs.get(id);
+        if (job == null) {
+            return Optional.empty();
+        }
+        job.cancel();
+        return Optional.of(job.progress());
+    }
+
+    /**
+     * @throws IllegalArgumentException se l'intervallo di tempo è vuoto
+     */
+    public void validate(DeadLetterFilter filter) {
+        if (filter.from() != null && filter.to() != null && !filter.from().isBefore(filter.to())) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+    }
+
+    private void run(ReplayJob job, List<List<Integer>> groups) {
+        var limiter = new RateLimiter(job.rate);
+        var inFlight = new Semaphore(properties.getReplayMaxInFlight());
+        var sourceTopics = Set.of(topics.getUsers().getName(), topics.getOrders().getName(),
+                topics.getNotifications().getName(), topics.getEvents().getName());
+        try {
+            var readers = groups.stream()
+                    .map(group -> Thread.ofVirtual().name("dlq-replay-" + job.id + "-" + group).start(() -> {
+                        try {
+                            replayPartitions(job, group, limiter, inFlight, sourceTopics);
+                        } catch (RuntimeException e) {
+                            logger.error("DLQ replay {} failed reading partitions {}: {}", job.id, group, e.getMessage(), e);
+                            job.abort(e);
+                        }
+                    }))
+                    .toList();
+            for (var thread : readers) {
+                thread.join();
+            }
+            // attende le conferme degli invii ancora in volo
+            inFlight.acquire(properties.getReplayMaxInFlight());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.abort(e);
+        }
+        job.finish();
+        var progress = job.progress();
+        logger.info("DLQ replay {} {}: {} replayed, {} failed, {} skipped of {} scanned", job.id, progress.getStatus(),
+                progress.getReplayed(), progress.getFailed(), progress.getSkipped(), progress.getScanned());
+    }
+
+    private void replayPartitions(ReplayJob job, List<Integer> partitions, RateLimiter limiter, Semaphore inFlight,
+                                  Set<String> sourceTopics) {
+        var replayId = job.id.getBytes(StandardCharsets.UTF_8);
+        reader.scan(partitions, Map.of(), job.filter.from(), deadLetter -> {
+            if (job.isStopping()) {
+                return false;
+            }
+            job.scanned.incrementAndGet();
+            if (!job.filter.matches(deadLetter)) {
+                return true;
+            }
+            job.matched.incrementAndGet();
+            var record = deadLetter.record();
+            if (!sourceTopics.contains(deadLetter.originalTopic()) || record.value() == null) {
+                job.skipped.incrementAndGet();
+                return true;
+            }
+            if (!limiter.acquire()) {
+                return false;
+            }
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            var out = new ProducerRecord<>(deadLetter.originalTopic(), null, record.key(), record.value());
+            out.headers().add(REPLAY_HEADER, replayId);
+            try {
+                template.send(out).whenComplete((result, error) -> {
+                    inFlight.release();
+                    if (error == null) {
+                        job.replayed.incrementAndGet();
+                    } else {
+                        job.sendFailed(error);
+                    }
+                });
+            } catch (RuntimeException e) {
+                inFlight.release();
+                job.sendFailed(e);
+            }
+            return true;
+        }, job::isStopping);
+    }
+
+    private static String cursor(Map<Integer, Long> positions) {
+        var value = positions.entrySet().stream()
+                .map(e -> e.getKey() + ":" + e.getValue())
+                .collect(Collectors.joining(","));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Map<Integer, Long> decodeCursor(String cursor) {
+        try {
+            var positions = new HashMap<Integer, Long>();
+            for (var position : new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(",")) {
+                int separator = position.indexOf(':');
+                positions.put(Integer.parseInt(position.substring(0, separator)), Long.parseLong(position.substring(separator + 1)));
+            }
+            return positions;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("invalid cursor");
+        }
+    }
+
+    @Override
+    public void destroy() {
+        jobs.values().forEach(ReplayJob::cancel);
+        producerFactory.destroy();
+    }
+}
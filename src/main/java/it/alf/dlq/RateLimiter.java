@@ -0,0 +1,41 @@
+package it.alf.dlq;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Limita il numero di permessi al secondo condiviso tra più thread: ogni {@link #acquire()} prenota il primo intervallo
+ * libero ({@code 1s / rate} dopo il precedente) e attende fino al suo inizio. Dopo una pausa non si accumulano
+ * permessi arretrati, quindi non ci sono raffiche oltre il rate.
+ */
+class RateLimiter {
+    private final long intervalNanos;
+    private long next = System.nanoTime();
+
+    RateLimiter(int permitsPerSecond) {
+        if (permitsPerSecond < 1) {
+            throw new IllegalArgumentException("rate must be >= 1");
+        }
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+    }
+
+    /**
+     * Attende il proprio turno; restituisce false se il thread viene interrotto durante l'attesa.
+     */
+    boolean acquire() {
+        long slot;
+        synchronized (this) {
+            long now = System.nanoTime();
+            slot = Math.max(next, now);
+            next = slot + intervalNanos;
+        }
+        long wait;
+        while ((wait = slot - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+            if (Thread.interrupted()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
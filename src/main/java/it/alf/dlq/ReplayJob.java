@@ -0,0 +1,74 @@
+package it.alf.dlq;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+import it.alf.dto.ReplayProgress;
+
+/**
+ * Stato di un replay in corso o terminato, aggiornato dai thread che leggono la DLQ e dalle conferme degli invii.
+ */
+class ReplayJob {
+    enum Status {
+        RUNNING, COMPLETED, CANCELLED, FAILED
+    }
+
+    final String id;
+    final DeadLetterFilter filter;
+    final int rate;
+    final int parallelism;
+    final Instant startedAt = Instant.now();
+    final AtomicLong scanned = new AtomicLong();
+    final AtomicLong matched = new AtomicLong();
+    final AtomicLong replayed = new AtomicLong();
+    final AtomicLong failed = new AtomicLong();
+    final AtomicLong skipped = new AtomicLong();
+    private volatile Status status = Status.RUNNING;
+    private volatile Instant finishedAt;
+    private volatile String lastError;
+    /** annullamento richiesto o errore di lettura: i lettori si fermano al prossimo record */
+    private volatile boolean stopping;
+    private volatile boolean broken;
+
+    ReplayJob(String id, DeadLetterFilter filter, int rate, int parallelism) {
+        this.id = id;
+        this.filter = filter;
+        this.rate = rate;
+        this.parallelism = parallelism;
+    }
+
+    boolean isStopping() {
+        return stopping;
+    }
+
+    void cancel() {
+        stopping = true;
+    }
+
+    void sendFailed(Throwable error) {
+        failed.incrementAndGet();
+        lastError = error.getMessage();
+    }
+
+    /**
+     * Errore che impedisce di continuare (ad esempio la DLQ non è leggibile): ferma anche gli altri lettori.
+     */
+    void abort(Throwable error) {
+        lastError = error.getMessage();
+        broken = true;
+        stopping = true;
+    }
+
+    void finish() {
+        finishedAt = Instant.now();
+        status = broken ? Status.FAILED : stopping ? Status.CANCELLED : Status.COMPLETED;
+    }
+
+    ReplayProgress progress() {
+        var end = finishedAt != null ? finishedAt : Instant.now();
+        double seconds = Math.max(Duration.between(startedAt, end).toMillis(), 1) / 1000.0;
+        return new ReplayProgress(id, status.name(), rate, parallelism, scanned.get(), matched.get(), replayed.get(),
+                failed.get(), skipped.get(), Math.round(replayed.get() / seconds * 10) / 10.0, startedAt, finishedAt, lastError);
+    }
+}
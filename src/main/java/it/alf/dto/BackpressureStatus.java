@@ -0,0 +1,31 @@
+package it.alf.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Stato di backpressure di un consumer group restituito da {@code /actuator/backpressure}.
+ *
+ * - {@code paused}: i container del gruppo sono in pausa
+ * - {@code reasons}: chi li ha messi in pausa ({@code saturation} per le soglie, {@code write-behind} per il buffer pieno)
+ * - {@code cause}: la soglia superata che ha messo in pausa il gruppo, {@code pausedSince} da quando
+ * - {@code poolWaitMillis}, {@code persistLatencyMillis}, {@code inFlight}: i segnali dell'ultimo campione
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BackpressureStatus {
+    private String groupId;
+    private boolean paused;
+    private List<String> reasons;
+    private String cause;
+    private Instant pausedSince;
+    private double poolWaitMillis;
+    private double persistLatencyMillis;
+    private int inFlight;
+    private Instant sampledAt;
+}
@@ -0,0 +1,35 @@
+package it.alf.dto;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Record della DLQ restituito da {@code GET /api/dlq}: posizione sulla DLQ, istante di pubblicazione, topic, partizione
+ * e offset di origine ({@code originalTopic} è il topic principale anche se il record ha esaurito i topic di ritardo)
+ * ed eccezione dell'ultimo tentativo, letti dagli header del {@code DeadLetterPublishingRecoverer}.
+ * {@code exception} è la classe della causa se presente, altrimenti quella dell'eccezione.
+ * Con {@code encoding: json} il payload è il valore JSON del record, scritto così com'è; con {@code encoding: binary}
+ * (topic con {@code codec: binary} o valori non JSON) è una stringa con i byte del record in base64.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeadLetter {
+    private int partition;
+    private long offset;
+    private Instant timestamp;
+    private String key;
+    private String originalTopic;
+    private Integer originalPartition;
+    private Long originalOffset;
+    private String exception;
+    private String exceptionMessage;
+    private String encoding;
+    @JsonRawValue
+    private String payload;
+}
@@ -0,0 +1,21 @@
+package it.alf.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Pagina di record della DLQ restituita da {@code GET /api/dlq}. {@code scanned} è il numero di record letti per
+ * trovare quelli restituiti; {@code nextCursor} va passato come {@code after}, con gli stessi filtri, per continuare
+ * la lettura ed è null quando la DLQ è stata letta fino in fondo.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeadLetterPage {
+    private List<DeadLetter> items;
+    private long scanned;
+    private String nextCursor;
+}
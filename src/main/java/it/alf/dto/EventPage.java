@@ -0,0 +1,20 @@
+package it.alf.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Pagina di eventi restituita da {@code GET /api/events}, in ordine di salvataggio.
+ * {@code nextCursor} identifica l'ultimo evento della pagina e va passato come {@code after}, con gli stessi filtri,
+ * per la pagina successiva; è null quando non ci sono altri eventi.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventPage {
+    private List<StoredEvent> items;
+    private String nextCursor;
+}
@@ -0,0 +1,36 @@
+package it.alf.dto;
+
+import java.time.Instant;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Stato di un replay della DLQ restituito da {@code /api/dlq/replay}.
+ *
+ * - {@code scanned}: record letti dalla DLQ
+ * - {@code matched}: record che soddisfano i filtri
+ * - {@code replayed}: record ripubblicati e confermati dal broker
+ * - {@code failed}: invii falliti ({@code lastError} riporta l'ultimo errore)
+ * - {@code skipped}: record senza un topic di origine noto, non ripubblicati
+ * - {@code recordsPerSecond}: record ripubblicati al secondo dall'avvio
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplayProgress {
+    private String id;
+    private String status;
+    private int rate;
+    private int parallelism;
+    private long scanned;
+    private long matched;
+    private long replayed;
+    private long failed;
+    private long skipped;
+    private double recordsPerSecond;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String lastError;
+}
@@ -0,0 +1,24 @@
+package it.alf.dto;
+
+import java.time.Instant;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Richiesta di {@code POST /api/dlq/replay}: i filtri di {@code GET /api/dlq} (tutti facoltativi), i record al secondo
+ * ({@code rate}) e il numero di lettori in parallelo ({@code parallelism}); se assenti valgono i default di
+ * {@code app.kafka.dlq}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplayRequest {
+    private String topic;
+    private String exception;
+    private Instant from;
+    private Instant to;
+    private Integer rate;
+    private Integer parallelism;
+}
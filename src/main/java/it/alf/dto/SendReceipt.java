@@ -0,0 +1,34 @@
+package it.alf.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Esito di un invio su Kafka restituito dagli endpoint REST.
+ * In caso di successo contiene topic, partizione e offset assegnati dal broker,
+ * in caso di errore solo l'id del messaggio, un codice di errore stabile e il relativo messaggio.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SendReceipt {
+    private String id;
+    private String topic;
+    private Integer partition;
+    private Long offset;
+    /** codice di errore, ad esempio {@code SEND_TIMEOUT} */
+    private String error;
+    private String message;
+
+    public static SendReceipt success(String id, String topic, int partition, long offset) {
+        return new SendReceipt(id, topic, partition, offset, null, null);
+    }
+
+    public static SendReceipt failure(String id, String error, String message) {
+        return new SendReceipt(id, null, null, null, error, message);
+    }
+}
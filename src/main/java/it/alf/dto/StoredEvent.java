@@ -0,0 +1,38 @@
+package it.alf.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+import it.alf.codec.PayloadEncoding;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Evento persistito restituito da {@code GET /api/events}: oltre a id, tipo e payload contiene l'istante di
+ * salvataggio e la posizione del record sul topic. Il payload è scritto nella risposta così come è memorizzato
+ * (JSON, decompresso se necessario), senza passare da una mappa.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredEvent {
+    private String id;
+    private String type;
+    private Instant ingestedAt;
+    private int partition;
+    private long offset;
+    @JsonRawValue
+    private String payload;
+
+    /**
+     * Costruttore usato dalla proiezione JPQL, che legge il payload nella forma memorizzata.
+     */
+    public StoredEvent(String id, String type, Instant ingestedAt, int partition, long offset,
+                       byte[] payload, PayloadEncoding encoding) {
+        this(id, type, ingestedAt, partition, offset,
+                payload == null ? null : new String(encoding.decode(payload), StandardCharsets.UTF_8));
+    }
+}
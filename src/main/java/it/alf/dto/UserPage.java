@@ -0,0 +1,20 @@
+package it.alf.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Pagina di utenti restituita da {@code GET /api/users}.
+ * {@code nextCursor} è l'id dell'ultimo utente della pagina, da passare come {@code after} per la pagina
+ * successiva; è null quando non ci sono altri utenti.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserPage {
+    private List<User> items;
+    private String nextCursor;
+}
@@ -1,27 +1,82 @@
 package it.alf.entity;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import it.alf.codec.PayloadEncoding;
+import jakarta.persistence.CollectionTable;
 import jakarta.persistence.Column;
+import jakarta.persistence.ElementCollection;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
 import jakarta.persistence.Id;
-import jakarta.persistence.Lob;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.MapKeyColumn;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+/**
+ * Evento generico persistito: il payload è memorizzato come byte (JSON ricevuto, eventualmente compresso secondo
+ * {@link #payloadEncoding}), le chiavi del payload configurate in {@code app.events.storage.indexed-keys} sono copiate
+ * nella tabella {@code event_keys}, indicizzata per nome e valore.
+ *
+ * Ogni evento registra l'istante di salvataggio e la posizione del record sul topic (partizione e offset).
+ * Le letture di {@code GET /api/events} ordinano per {@code (ingestedAt, id)}: i due indici su quelle colonne,
+ * uno preceduto da {@code type}, permettono di servire ogni pagina filtrata per tipo e/o intervallo di tempo
+ * con una range scan, senza ordinare la tabella.
+ */
 @Entity
-@Table(name = "events")
+@Table(name = "events", indexes = {
+        @Index(name = "idx_events_ingested", columnList = "ingested_at, id"),
+        @Index(name = "idx_events_type_ingested", columnList = "type, ingested_at, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class GenericEventEntity {
+    /** dimensione massima del payload memorizzato, pari al limite di default di un record Kafka */
+    public static final int MAX_PAYLOAD_BYTES = 1_048_576;
+
     @Id
     private String id;
 
     @Column(nullable = false)
     private String type;
 
-    @Lob
-    @Column(nullable = true)
-    private String payloadJson;
+    /** istante di salvataggio, troncato ai microsecondi (precisione della colonna) */
+    @Column(name = "ingested_at", nullable = false)
+    private Instant ingestedAt;
+
+    @Column(name = "kafka_partition", nullable = false)
+    private int kafkaPartition;
+
+    @Column(name = "kafka_offset", nullable = false)
+    private long kafkaOffset;
+
+    @Column(length = MAX_PAYLOAD_BYTES)
+    private byte[] payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private PayloadEncoding payloadEncoding = PayloadEncoding.JSON;
+
+    @ElementCollection
+    @CollectionTable(name = "event_keys", joinColumns = @JoinColumn(name = "event_id"),
+            indexes = @Index(name = "idx_event_keys_name_value", columnList = "key_name, key_value"))
+    @MapKeyColumn(name = "key_name", length = 64)
+    @Column(name = "key_value", length = 255)
+    private Map<String, String> payloadKeys = new HashMap<>();
+
+    /**
+     * Payload in JSON, decompresso se necessario.
+     */
+    public String payloadJson() {
+        return payload == null ? null : new String(payloadEncoding.decode(payload), StandardCharsets.UTF_8);
+    }
 }
@@ -0,0 +1,30 @@
+package it.alf.entity;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Chiave di deduplicazione di un record già elaborato (vedi {@link it.alf.dedupe.DedupeStore}).
+ * La tabella è scritta e letta via JDBC; l'entità serve a crearne lo schema insieme alle altre.
+ */
+@Entity
+@Table(name = "processed_records", indexes = @Index(name = "idx_processed_records_at", columnList = "processed_at"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProcessedRecordEntity {
+    @Id
+    @Column(name = "record_key", length = 512)
+    private String recordKey;
+
+    @Column(name = "processed_at", nullable = false)
+    private Instant processedAt;
+}
@@ -0,0 +1,251 @@
+package it.alf.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Journal append-only degli eventi su file mappati in memoria, diviso in segmenti (vedi {@link JournalSegment}).
+ *
+ * Ogni voce riceve una sequenza crescente, senza buchi, e un timestamp non decrescente; contiene id, tipo,
+ * partizione/offset del record e i byte del payload così come arrivano da Kafka. Quando una voce non sta nel
+ * segmento attivo ne viene creato uno nuovo di {@code segmentBytes} byte che inizia dalla sequenza successiva.
+ *
+ * Le letture ({@link #read}) sono per intervallo di sequenze, concorrenti con gli append: l'indice sparso di ogni
+ * segmento porta alla voce indicizzata precedente, da cui si scorrono al più {@code indexIntervalBytes} byte, e il
+ * payload viene restituito come vista sul file mappato, senza copie. {@link #sequenceAt} traduce un istante nella
+ * prima sequenza da leggere, usando i timestamp dell'indice.
+ *
+ * Le voci sono nella page cache appena scritte (sopravvivono alla fine del processo); {@link #flush} le forza su
+ * disco. All'apertura la coda di ogni segmento viene verificata con il CRC e le voci incomplete scartate.
+ *
+ * La retention ({@link #enforceRetention}, eseguita anche a ogni cambio di segmento) elimina i segmenti chiusi più
+ * vecchi quando la loro ultima voce è più vecchia di {@code retention} oppure quando i file del journal superano
+ * {@code retentionBytes}; il segmento attivo non viene mai eliminato. Un valore 0 disattiva il rispettivo limite.
+ */
+public class EventJournal implements AutoCloseable {
+    private final Logger logger = LoggerFactory.getLogger(EventJournal.class);
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int indexIntervalBytes;
+    private final long retentionMillis;
+    private final long retentionBytes;
+    private final Clock clock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ConcurrentSkipListMap<Long, JournalSegment> segments = new ConcurrentSkipListMap<>();
+    private volatile JournalSegment active;
+    private long lastTimestamp;
+    private boolean closed;
+
+    public EventJournal(Path directory, int segmentBytes, int indexIntervalBytes, Duration retention, long retentionBytes, Clock clock) {
+        if (segmentBytes < JournalSegment.HEADER_BYTES || indexIntervalBytes < 1 || retention.isNegative() || retentionBytes < 0) {
+            throw new IllegalArgumentException("Invalid journal configuration: segmentBytes=" + segmentBytes
+                    + ", indexIntervalBytes=" + indexIntervalBytes + ", retention=" + retention + ", retentionBytes=" + retentionBytes);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.indexIntervalBytes = indexIntervalBytes;
+        this.retentionMillis = retention.toMillis();
+        this.retentionBytes = retentionBytes;
+        this.clock = clock;
+        try {
+            Files.createDirectories(directory);
+            try (var files = Files.list(directory)) {
+                files.filter(JournalSegment::isLogFile).sorted().forEach(this::openSegment);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open event journal in " + directory, e);
+        }
+        if (segments.isEmpty()) {
+            var segment = JournalSegment.create(directory, 0, segmentBytes, indexIntervalBytes);
+            segments.put(segment.baseSequence(), segment);
+        }
+        this.active = segments.lastEntry().getValue();
+        this.lastTimestamp = active.lastTimestamp();
+        logger.info("Opened event journal {}: {} segments, sequences {} to {}", directory, segments.size(),
+                firstSequence(), nextSequence());
+        enforceRetention();
+    }
+
+    private void openSegment(Path logFile) {
+        var segment = JournalSegment.open(logFile, indexIntervalBytes);
+        var previous = segments.lastEntry();
+        if (previous != null && previous.getValue().nextSequence() != segment.baseSequence()) {
+            logger.warn("Event journal segment {} ends at sequence {} but the next one starts at {}: entries were lost",
+                    previous.getValue(), previous.getValue().nextSequence(), segment.baseSequence());
+        }
+        segments.put(segment.baseSequence(), segment);
+    }
+
+    /**
+     * Appende un evento e ne restituisce la sequenza. {@code payload} può essere {@code null} (payload vuoto).
+     *
+     * @throws IllegalArgumentException se la voce non sta in un segmento o id/tipo superano 65535 byte
+     */
+    public long append(String id, String type, int partition, long offset, byte[] payload) {
+        byte[] idBytes = id != null ? id.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        byte[] typeBytes = type != null ? type.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        if (idBytes.length > 0xFFFF || typeBytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Journal entry id and type must be at most 65535 bytes");
+        }
+        long length = (long) JournalSegment.lengthOf(idBytes, typeBytes, 0) + (payload != null ? payload.length : 0);
+        if (length > segmentBytes) {
+            throw new IllegalArgumentException("Journal entry of " + length + " bytes does not fit in a segment of "
+                    + segmentBytes + " bytes");
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Event journal " + directory + " is closed");
+            }
+            if (!active.fits((int) length)) {
+                roll();
+            }
+            // timestamp non decrescenti anche se l'orologio torna indietro: la ricerca per istante resta binaria
+            long timestamp = Math.max(clock.millis(), lastTimestamp);
+            lastTimestamp = timestamp;
+            return active.append(timestamp, partition, offset, idBytes, typeBytes, payload, (int) length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void roll() {
+        var previous = active;
+        previous.flush();
+        if (previous.isEmpty()) {
+            // segmento attivo più piccolo della voce (aperto con una segment size precedente): viene sostituito
+            segments.remove(previous.baseSequence());
+            previous.delete();
+        }
+        var segment = JournalSegment.create(directory, previous.nextSequence(), segmentBytes, indexIntervalBytes);
+        segments.put(segment.baseSequence(), segment);
+        active = segment;
+        logger.debug("Event journal rolled to segment {}", segment);
+        enforceRetention();
+    }
+
+    /**
+     * Forza su disco le voci appese dall'ultima chiamata.
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            active.flush();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Elimina i segmenti chiusi fuori retention, dal più vecchio; restituisce quanti ne ha eliminati.
+     */
+    public int enforceRetention() {
+        lock.lock();
+        try {
+            long now = clock.millis();
+            long total = 0;
+            for (var segment : segments.values()) {
+                total += segment.fileBytes();
+            }
+            int deleted = 0;
+            while (segments.size() > 1) {
+                var oldest = segments.firstEntry().getValue();
+                boolean expired = retentionMillis > 0 && oldest.lastTimestamp() < now - retentionMillis;
+                boolean oversized = retentionBytes > 0 && total > retentionBytes;
+                if (!expired && !oversized) {
+                    break;
+                }
+                segments.remove(oldest.baseSequence());
+                oldest.delete();
+                total -= oldest.fileBytes();
+                deleted++;
+                logger.info("Deleted event journal segment {} (sequences {} to {}) by {} retention", oldest,
+                        oldest.baseSequence(), oldest.nextSequence() - 1, expired ? "time" : "size");
+            }
+            return deleted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Passa a {@code visitor}, in ordine, le voci con sequenza in {@code [from, to)} ancora presenti; restituisce
+     * quante ne ha lette. Le voci appese durante la lettura possono essere incluse o no.
+     */
+    public int read(long from, long to, Consumer<JournalEntry> visitor) {
+        if (from >= to) {
+            return 0;
+        }
+        Long start = segments.floorKey(from);
+        var candidates = start != null ? segments.tailMap(start) : segments;
+        int count = 0;
+        for (var segment : candidates.values()) {
+            if (segment.baseSequence() >= to) {
+                break;
+            }
+            count += segment.read(from, to, visitor);
+        }
+        return count;
+    }
+
+    /**
+     * Sequenza della prima voce presente con timestamp non precedente a {@code time}; {@link #nextSequence()} se
+     * non ce ne sono.
+     */
+    public long sequenceAt(Instant time) {
+        long millis = time.toEpochMilli();
+        for (var segment : segments.values()) {
+            long sequence = segment.sequenceAt(millis);
+            if (sequence >= 0) {
+                return sequence;
+            }
+        }
+        return nextSequence();
+    }
+
+    /** prima sequenza ancora presente (le precedenti sono state eliminate dalla retention) */
+    public long firstSequence() {
+        return segments.firstKey();
+    }
+
+    /** sequenza che riceverà la prossima voce */
+    public long nextSequence() {
+        return active.nextSequence();
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    /** byte occupati su disco dai segmenti, preallocati */
+    public long sizeBytes() {
+        return segments.values().stream().mapToLong(JournalSegment::fileBytes).sum();
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (!closed) {
+                active.flush();
+                closed = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package it.alf.journal;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.List;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.stereotype.Component;
+
+import it.alf.codec.RawEvent;
+import it.alf.config.EventJournalProperties;
+import it.alf.metrics.KafkaMetrics;
+
+@Component
+@ConditionalOnProperty(name = "app.events.journal.enabled", havingValue = "true")
+/**
+ * Destinazione degli eventi alternativa al database, attiva con {@code app.events.journal.enabled=true}: il
+ * {@code EventListener} appende ogni poll a un {@link EventJournal} invece di salvarlo con il repository (oppure
+ * in aggiunta, con {@code keep-database: true}).
+ *
+ * I byte del payload vengono scritti come arrivano da Kafka, senza compressione né chiavi indicizzate: il journal è
+ * una copia locale rileggibile in ordine di arrivo, non un indice per le ricerche. Dopo il poll le voci vengono forzate
+ * su disco ({@code force}) prima che il container committi gli offset. Il journal è append-only: un record consegnato
+ * di nuovo dopo un errore viene appeso un'altra volta, con la stessa partizione e lo stesso offset.
+ *
+ * Un record che non si può appendere (ad esempio più grande di un segmento) lancia una
+ * {@link BatchListenerFailedException}: quelli precedenti restano nel journal e il record va all'error handler.
+ */
+public class EventJournalSink implements DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(EventJournalSink.class);
+    private final EventJournalProperties properties;
+    private final KafkaMetrics kafkaMetrics;
+    private final EventJournal journal;
+
+    public EventJournalSink(EventJournalProperties properties, KafkaMetrics kafkaMetrics) {
+        properties.validate();
+        this.properties = properties;
+        this.kafkaMetrics = kafkaMetrics;
+        this.journal = new EventJournal(Path.of(properties.getDir()), (int) properties.getSegmentSize().toBytes(),
+                (int) properties.getIndexInterval().toBytes(), properties.getRetention(), properties.getRetentionSize().toBytes(),
+                Clock.systemUTC());
+    }
+
+    public void append(List<ConsumerRecord<String, RawEvent>> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            for (var record : records) {
+                var event = record.value();
+                try {
+                    journal.append(event.id(), event.type(), record.partition(), record.offset(), event.payload());
+                } catch (RuntimeException e) {
+                    logger.error("Error appending event {} to the journal: {}", event.id(), e.getMessage(), e);
+                    throw new BatchListenerFailedException("Unable to append event to the journal", e, record);
+                }
+            }
+        } finally {
+            if (properties.isForce()) {
+                journal.flush();
+            }
+        }
+        journal.enforceRetention();
+        kafkaMetrics.recordPersist(records.get(0).topic(), "journal", System.nanoTime() - start);
+        logger.info("Appended {} events to the journal", records.size());
+    }
+
+    /** salva gli eventi anche nel database */
+    public boolean keepsDatabase() {
+        return properties.isKeepDatabase();
+    }
+
+    public EventJournal journal() {
+        return journal;
+    }
+
+    @Override
+    public void destroy() {
+        journal.close();
+    }
+}
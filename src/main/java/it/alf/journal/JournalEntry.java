@@ -0,0 +1,23 @@
+package it.alf.journal;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+/**
+ * Voce letta da un {@link EventJournal}.
+ *
+ * {@code payload} è una vista in sola lettura sul file mappato, senza copia dei byte: resta valida finché il segmento
+ * non viene eliminato dalla retention, quindi chi la conserva oltre la lettura deve copiarla.
+ */
+public record JournalEntry(long sequence, Instant timestamp, int partition, long offset, String id, String type,
+                           ByteBuffer payload) {
+
+    /**
+     * Copia del payload, per chi deve conservarlo.
+     */
+    public byte[] payloadBytes() {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,354 @@
+package it.alf.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Segmento di un {@link EventJournal}: un file di log e il suo indice sparso, entrambi preallocati e mappati in
+ * memoria. I file si chiamano {@code <prima sequenza, 20 cifre>.log} e {@code .index}.
+ *
+ * Una voce del log è un header di {@value #HEADER_BYTES} byte (big endian) seguito da id, tipo e payload:
+ * lunghezza totale (int), CRC32C dei byte dalla sequenza in poi (int), sequenza (long), timestamp in millisecondi
+ * (long), partizione (int), offset (long), lunghezza di id e tipo (short senza segno), lunghezza del payload (int).
+ * Dopo l'ultima voce c'è una lunghezza 0, se il segmento ha spazio.
+ *
+ * L'indice ha una voce di {@value #INDEX_ENTRY_BYTES} byte per la prima voce del log e poi ogni
+ * {@code indexInterval} byte: sequenza relativa (int), posizione (int) e timestamp (long, 0 per una voce libera).
+ * Sequenze e timestamp crescono nel segmento, quindi l'indice si cerca in modo binario per entrambi.
+ *
+ * Le scritture avvengono da un solo thread alla volta (il lock del journal); le letture sono concorrenti e vedono le
+ * voci fino a {@link #end}, aggiornato dopo che la voce è completa.
+ */
+final class JournalSegment {
+    static final int HEADER_BYTES = 44;
+    static final int INDEX_ENTRY_BYTES = 16;
+    static final String LOG_SUFFIX = ".log";
+    static final String INDEX_SUFFIX = ".index";
+
+    private final long baseSequence;
+    private final Path logFile;
+    private final Path indexFile;
+    private final MappedByteBuffer log;
+    private final MappedByteBuffer index;
+    private final int capacity;
+    private final int indexInterval;
+    private int lastIndexedPosition;
+    private int flushedTo;
+    private boolean indexDirty;
+    private long lastTimestamp;
+    private volatile int indexCount;
+    private volatile long nextSequence;
+    private volatile int end;
+
+    private JournalSegment(Path directory, long baseSequence, int capacity, int indexInterval) throws IOException {
+        this.baseSequence = baseSequence;
+        this.logFile = directory.resolve(fileName(baseSequence, LOG_SUFFIX));
+        this.indexFile = directory.resolve(fileName(baseSequence, INDEX_SUFFIX));
+        this.capacity = capacity;
+        this.indexInterval = indexInterval;
+        this.log = map(logFile, capacity);
+        int indexBytes = (int) Math.max(Files.exists(indexFile) ? Files.size(indexFile) : 0,
+                (long) (capacity / indexInterval + 2) * INDEX_ENTRY_BYTES);
+        this.index = map(indexFile, indexBytes - indexBytes % INDEX_ENTRY_BYTES);
+    }
+
+    /**
+     * Crea un segmento vuoto di {@code capacity} byte che inizia da {@code baseSequence}.
+     */
+    static JournalSegment create(Path directory, long baseSequence, int capacity, int indexInterval) {
+        try {
+            var segment = new JournalSegment(directory, baseSequence, capacity, indexInterval);
+            segment.nextSequence = baseSequence;
+            segment.log.putInt(0, 0);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create journal segment " + baseSequence + " in " + directory, e);
+        }
+    }
+
+    /**
+     * Apre un segmento esistente e ne ricostruisce la fine: dall'ultima voce dell'indice vengono riconosciute le voci
+     * complete, con la sequenza attesa e il CRC corretto. Una voce scritta a metà (arresto durante l'append) e tutto
+     * quello che la segue vengono scartati.
+     */
+    static JournalSegment open(Path logFile, int indexInterval) {
+        String name = logFile.getFileName().toString();
+        long baseSequence = Long.parseLong(name.substring(0, name.length() - LOG_SUFFIX.length()));
+        try {
+            long size = Files.size(logFile);
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Journal segment " + logFile + " has an invalid size of " + size + " bytes");
+            }
+            var segment = new JournalSegment(logFile.getParent(), baseSequence, (int) size, indexInterval);
+            segment.recover();
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open journal segment " + logFile, e);
+        }
+    }
+
+    static boolean isLogFile(Path file) {
+        return file.getFileName().toString().matches("\\d{20}\\" + LOG_SUFFIX);
+    }
+
+    private static String fileName(long baseSequence, String suffix) {
+        return String.format("%020d%s", baseSequence, suffix);
+    }
+
+    private static MappedByteBuffer map(Path file, int size) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // la mappatura estende il file alla dimensione richiesta
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private void recover() {
+        int slots = index.capacity() / INDEX_ENTRY_BYTES;
+        int count = 0;
+        while (count < slots && index.getLong(count * INDEX_ENTRY_BYTES + 8) != 0) {
+            count++;
+        }
+        // l'indice può arrivare su disco prima del log: si scartano le voci che puntano a dati non validi
+        while (count > 0 && entryLength(indexPosition(count - 1), baseSequence + indexSequence(count - 1)) == 0) {
+            count--;
+            index.putLong(count * INDEX_ENTRY_BYTES + 8, 0);
+        }
+        int position = count > 0 ? indexPosition(count - 1) : 0;
+        long sequence = count > 0 ? baseSequence + indexSequence(count - 1) : baseSequence;
+        int length;
+        while ((length = entryLength(position, sequence)) > 0) {
+            lastTimestamp = log.getLong(position + 16);
+            position += length;
+            sequence++;
+        }
+        if (position + Integer.BYTES <= capacity) {
+            log.putInt(position, 0);
+        }
+        this.indexCount = count;
+        this.lastIndexedPosition = count > 0 ? indexPosition(count - 1) : 0;
+        this.flushedTo = 0;
+        this.indexDirty = true;
+        this.nextSequence = sequence;
+        this.end = position;
+    }
+
+    /**
+     * Lunghezza della voce valida alla posizione data con la sequenza attesa, 0 se non c'è.
+     */
+    private int entryLength(int position, long sequence) {
+        if (position < 0 || position > capacity - HEADER_BYTES) {
+            return 0;
+        }
+        int length = log.getInt(position);
+        if (length < HEADER_BYTES || length > capacity - position || log.getLong(position + 8) != sequence) {
+            return 0;
+        }
+        long dataLength = (long) Short.toUnsignedInt(log.getShort(position + 36)) + Short.toUnsignedInt(log.getShort(position + 38))
+                + log.getInt(position + 40);
+        if (HEADER_BYTES + dataLength != length) {
+            return 0;
+        }
+        var crc = new CRC32C();
+        crc.update(log.slice(position + 8, length - 8));
+        return (int) crc.getValue() == log.getInt(position + 4) ? length : 0;
+    }
+
+    static int lengthOf(byte[] id, byte[] type, int payloadLength) {
+        return HEADER_BYTES + id.length + type.length + payloadLength;
+    }
+
+    boolean fits(int length) {
+        return end + length <= capacity;
+    }
+
+    /**
+     * Appende una voce di {@code length} byte (vedi {@link #lengthOf}), che deve stare nel segmento.
+     */
+    long append(long timestamp, int partition, long offset, byte[] id, byte[] type, byte[] payload, int length) {
+        int position = end;
+        long sequence = nextSequence;
+        var entry = log.slice(position, length);
+        entry.position(8);
+        entry.putLong(sequence).putLong(timestamp).putInt(partition).putLong(offset)
+                .putShort((short) id.length).putShort((short) type.length).putInt(payload != null ? payload.length : 0)
+                .put(id).put(type);
+        if (payload != null) {
+            entry.put(payload);
+        }
+        var crc = new CRC32C();
+        crc.update(entry.slice(8, length - 8));
+        entry.putInt(4, (int) crc.getValue());
+        entry.putInt(0, length);
+        if (position + length + Integer.BYTES <= capacity) {
+            log.putInt(position + length, 0);
+        }
+        int count = indexCount;
+        if ((count == 0 || position - lastIndexedPosition >= indexInterval) && (count + 1) * INDEX_ENTRY_BYTES <= index.capacity()) {
+            int slot = count * INDEX_ENTRY_BYTES;
+            index.putInt(slot, (int) (sequence - baseSequence));
+            index.putInt(slot + 4, position);
+            index.putLong(slot + 8, timestamp);
+            lastIndexedPosition = position;
+            indexDirty = true;
+            indexCount = count + 1;
+        }
+        lastTimestamp = timestamp;
+        nextSequence = sequence + 1;
+        end = position + length;
+        return sequence;
+    }
+
+    /**
+     * Forza su disco le voci scritte dall'ultima chiamata e l'indice, se cambiato.
+     */
+    void flush() {
+        int written = end;
+        if (written > flushedTo) {
+            log.force(flushedTo, written - flushedTo);
+            flushedTo = written;
+        }
+        if (indexDirty) {
+            index.force();
+            indexDirty = false;
+        }
+    }
+
+    /**
+     * Passa a {@code visitor} le voci con sequenza in {@code [from, to)}, partendo dalla voce dell'indice che le
+     * precede; restituisce quante ne ha lette.
+     */
+    int read(long from, long to, Consumer<JournalEntry> visitor) {
+        int limit = end;
+        int position = floorIndexPosition(from);
+        int count = 0;
+        while (position < limit) {
+            long sequence = log.getLong(position + 8);
+            if (sequence >= to) {
+                break;
+            }
+            if (sequence >= from) {
+                visitor.accept(entry(position));
+                count++;
+            }
+            position += log.getInt(position);
+        }
+        return count;
+    }
+
+    /**
+     * Sequenza della prima voce con timestamp non precedente a {@code millis}, -1 se sono tutte precedenti.
+     */
+    long sequenceAt(long millis) {
+        int limit = end;
+        int count = indexCount;
+        int low = 0;
+        int high = count - 1;
+        int position = 0;
+        // ultima voce dell'indice con timestamp precedente: la voce cercata è dopo di lei
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (index.getLong(mid * INDEX_ENTRY_BYTES + 8) < millis) {
+                position = indexPosition(mid);
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        while (position < limit) {
+            if (log.getLong(position + 16) >= millis) {
+                return log.getLong(position + 8);
+            }
+            position += log.getInt(position);
+        }
+        return -1;
+    }
+
+    private int floorIndexPosition(long sequence) {
+        int count = indexCount;
+        int low = 0;
+        int high = count - 1;
+        int position = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (baseSequence + indexSequence(mid) <= sequence) {
+                position = indexPosition(mid);
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return position;
+    }
+
+    private int indexSequence(int slot) {
+        return index.getInt(slot * INDEX_ENTRY_BYTES);
+    }
+
+    private int indexPosition(int slot) {
+        return index.getInt(slot * INDEX_ENTRY_BYTES + 4);
+    }
+
+    private JournalEntry entry(int position) {
+        int idLength = Short.toUnsignedInt(log.getShort(position + 36));
+        int typeLength = Short.toUnsignedInt(log.getShort(position + 38));
+        int payloadLength = log.getInt(position + 40);
+        int data = position + HEADER_BYTES;
+        return new JournalEntry(log.getLong(position + 8), Instant.ofEpochMilli(log.getLong(position + 16)),
+                log.getInt(position + 24), log.getLong(position + 28), string(data, idLength),
+                string(data + idLength, typeLength),
+                log.slice(data + idLength + typeLength, payloadLength).asReadOnlyBuffer());
+    }
+
+    private String string(int position, int length) {
+        byte[] bytes = new byte[length];
+        log.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    long baseSequence() {
+        return baseSequence;
+    }
+
+    long nextSequence() {
+        return nextSequence;
+    }
+
+    long lastTimestamp() {
+        return lastTimestamp;
+    }
+
+    boolean isEmpty() {
+        return end == 0;
+    }
+
+    /** byte occupati su disco dal segmento, preallocati */
+    long fileBytes() {
+        return (long) capacity + index.capacity();
+    }
+
+    /**
+     * Elimina i file del segmento; le mappature restano valide per le letture in corso fino alla garbage collection.
+     */
+    void delete() {
+        try {
+            Files.deleteIfExists(logFile);
+            Files.deleteIfExists(indexFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot delete journal segment " + logFile, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return logFile.toString();
+    }
+}
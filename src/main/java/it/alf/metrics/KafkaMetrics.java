@@ -0,0 +1,208 @@
+package it.alf.metrics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.BatchInterceptor;
+import org.springframework.kafka.listener.RetryListener;
+import org.springframework.kafka.support.KafkaUtils;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.kafka.KafkaClientMetrics;
+
+@Component
+/**
+ * Metriche Micrometer della pipeline Kafka, pubblicate su {@code /actuator/metrics} e {@code /actuator/prometheus}.
+ *
+ * - {@code kafka.producer.send}: timer dall'invio all'ack del broker, per topic ed esito
+ * - {@code kafka.persist}: timer del salvataggio di un poll nel repository, per topic, gruppo e modalità
+ *   ({@code batch}, {@code one-by-one} dopo un fallimento del batch, {@code virtual-threads})
+ * - {@code kafka.listener.retries}: consegne fallite ritentate dal {@code DefaultErrorHandler}, per topic e gruppo
+ * - {@code kafka.listener.dlq}: record pubblicati su {@code dlq-topic}, per topic di origine e gruppo
+ * - {@code kafka.listener.retry.topic}: record falliti pubblicati su un topic di ritardo, per topic di origine,
+ *   topic di ritardo ({@code retry.topic}) e gruppo
+ * - {@code kafka.dedupe.duplicates}: record già elaborati saltati senza salvarli, per topic e gruppo
+ * - {@code kafka.dedupe.lookups}: chiavi cercate nella tabella {@code processed_records} perché il filtro di Bloom le
+ *   considerava già viste (duplicati e falsi positivi), per topic e gruppo
+ * - {@code kafka.consumer.lag}: record tra la posizione del consumer e la fine della partizione, per topic, partizione
+ *   e gruppo; il gauge viene registrato al primo poll che restituisce record della partizione e legge la metrica
+ *   {@code records-lag} del client, aggiornata a ogni fetch
+ * - {@code kafka.write-behind.buffered}: record consumati e non ancora salvati dal buffer write-behind
+ *   (vedi {@link it.alf.consumer.WriteBehindPersister})
+ * - {@code kafka.backpressure.paused}: 1 se i container del gruppo sono in pausa, per gruppo
+ *   (vedi {@link it.alf.backpressure.BackpressureController})
+ * - le metriche complete dei client consumer ({@code kafka.consumer.*}), con il tag {@code group}; Micrometer
+ *   rileva quelle per partizione a intervalli di un minuto
+ *
+ * Il tempo di esecuzione dei metodi {@code listen} è misurato da Spring Kafka ({@code spring.kafka.listener}),
+ * con i tag {@code topic} e {@code group} aggiunti in {@link it.alf.config.KafkaConfig}.
+ * Il gruppo è quello del consumer che sta eseguendo il listener, {@code none} fuori dal thread del consumer.
+ */
+public class KafkaMetrics {
+    private static final String NO_GROUP = "none";
+
+    private final MeterRegistry registry;
+    /** gauge di lag registrati per consumer, rimossi alla chiusura del consumer */
+    private final Map<Consumer<?, ?>, Map<TopicPartition, Gauge>> lagGauges = new ConcurrentHashMap<>();
+
+    public KafkaMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Registra la latenza di invio al completamento del future, che viene restituito invariato.
+     */
+    public <T> CompletableFuture<T> timeSend(String topic, CompletableFuture<T> send) {
+        var sample = Timer.start(registry);
+        return send.whenComplete((result, error) -> sample.stop(Timer.builder("kafka.producer.send")
+                .description("Latency from send to broker acknowledgement")
+                .tags("topic", topic, "result", error == null ? "success" : "failure")
+                .register(registry)));
+    }
+
+    public void recordPersist(String topic, String mode, long nanos) {
+        Timer.builder("kafka.persist")
+                .description("Time spent saving a poll in the repository")
+                .tags("topic", topic, "group", group(), "mode", mode)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void countDeadLetter(ConsumerRecord<?, ?> record) {
+        Counter.builder("kafka.listener.dlq")
+                .description("Records published to the dead letter topic")
+                .tags("topic", record.topic(), "group", group())
+                .register(registry)
+                .increment();
+    }
+
+    public void countRetryTopic(ConsumerRecord<?, ?> record, String retryTopic) {
+        Counter.builder("kafka.listener.retry.topic")
+                .description("Failed records published to a retry topic")
+                .tags("topic", record.topic(), "retry.topic", retryTopic, "group", group())
+                .register(registry)
+                .increment();
+    }
+
+    public void recordDedupe(String topic, int duplicates, int lookups) {
+        Counter.builder("kafka.dedupe.duplicates")
+                .description("Records skipped because they were already processed")
+                .tags("topic", topic, "group", group())
+                .register(registry)
+                .increment(duplicates);
+        Counter.builder("kafka.dedupe.lookups")
+                .description("Dedupe keys looked up in the database after a Bloom filter hit")
+                .tags("topic", topic, "group", group())
+                .register(registry)
+                .increment(lookups);
+    }
+
+    public void writeBehindGauge(Supplier<Number> buffered) {
+        Gauge.builder("kafka.write-behind.buffered", buffered)
+                .description("Records consumed but not yet written by the write-behind buffer")
+                .register(registry);
+    }
+
+    public void backpressureGauge(String groupId, Supplier<Number> paused) {
+        Gauge.builder("kafka.backpressure.paused", paused)
+                .description("1 while the listener containers of the group are paused")
+                .tags("group", groupId)
+                .register(registry);
+    }
+
+    /**
+     * Listener del {@code DefaultErrorHandler}: conta ogni consegna fallita che verrà ritentata o, a tentativi
+     * esauriti, inoltrata sulla DLQ.
+     */
+    public RetryListener retryListener() {
+        return (record, ex, deliveryAttempt) -> Counter.builder("kafka.listener.retries")
+                .description("Failed deliveries handled by the error handler")
+                .tags("topic", record.topic(), "group", group())
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Listener della ConsumerFactory: collega le metriche di ogni consumer creato e rimuove i suoi meter alla chiusura.
+     */
+    public <K, V> ConsumerFactory.Listener<K, V> consumerListener() {
+        return new ConsumerFactory.Listener<>() {
+            private final Map<String, KafkaClientMetrics> bound = new ConcurrentHashMap<>();
+
+            @Override
+            public void consumerAdded(String id, Consumer<K, V> consumer) {
+                var metrics = new KafkaClientMetrics(consumer, List.of(Tag.of("spring.id", id),
+                        Tag.of("group", consumer.groupMetadata().groupId())));
+                metrics.bindTo(registry);
+                bound.put(id, metrics);
+            }
+
+            @Override
+            public void consumerRemoved(String id, Consumer<K, V> consumer) {
+                var metrics = bound.remove(id);
+                if (metrics != null) {
+                    metrics.close();
+                }
+                var gauges = lagGauges.remove(consumer);
+                if (gauges != null) {
+                    gauges.values().forEach(registry::remove);
+                }
+            }
+        };
+    }
+
+    /**
+     * Interceptor dei listener batch che registra il gauge {@code kafka.consumer.lag} per ogni partizione ricevuta.
+     * Viene eseguito sul thread del consumer, l'unico da cui si può interrogare il consumer.
+     */
+    public <V> BatchInterceptor<String, V> lagInterceptor() {
+        return (records, consumer) -> {
+            var gauges = lagGauges.computeIfAbsent(consumer, c -> new ConcurrentHashMap<>());
+            for (var partition : records.partitions()) {
+                if (!gauges.containsKey(partition)) {
+                    recordsLagMetric(consumer, partition).ifPresent(name -> gauges.put(partition, Gauge
+                            .builder("kafka.consumer.lag", consumer, c -> {
+                                // la metrica sparisce quando la partizione viene revocata
+                                var metric = c.metrics().get(name);
+                                return metric != null ? ((Number) metric.metricValue()).doubleValue() : Double.NaN;
+                            })
+                            .description("Records between the consumer position and the end of the partition")
+                            .tags("topic", partition.topic(), "partition", String.valueOf(partition.partition()),
+                                    "group", consumer.groupMetadata().groupId(), "client.id", name.tags().get("client-id"))
+                            .register(registry)));
+                }
+            }
+            return records;
+        };
+    }
+
+    private static Optional<MetricName> recordsLagMetric(Consumer<?, ?> consumer, TopicPartition partition) {
+        return consumer.metrics().keySet().stream()
+                .filter(name -> "records-lag".equals(name.name())
+                        && "consumer-fetch-manager-metrics".equals(name.group())
+                        && partition.topic().equals(name.tags().get("topic"))
+                        && String.valueOf(partition.partition()).equals(name.tags().get("partition")))
+                .findFirst()
+                .map(MetricName.class::cast);
+    }
+
+    private static String group() {
+        var group = KafkaUtils.getConsumerGroupId();
+        return group != null ? group : NO_GROUP;
+    }
+}
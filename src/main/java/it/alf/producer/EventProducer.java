@@ -1,27 +1,43 @@
 package it.alf.producer;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 
+import it.alf.config.ProducerProfiles;
 import it.alf.dto.GenericEvent;
+import it.alf.metrics.KafkaMetrics;
 
 @Service
 public class EventProducer {
     private final Logger logger = LoggerFactory.getLogger(EventProducer.class);
     private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final KafkaMetrics kafkaMetrics;
 
-    @Value("${app.kafka.topics.events}")
+    @Value("${app.kafka.topics.events.name}")
     private String topic;
 
-    public EventProducer(KafkaTemplate<String, Object> kafkaTemplate) {
-        this.kafkaTemplate = kafkaTemplate;
+    public EventProducer(ProducerProfiles producerProfiles, @Value("${app.kafka.topics.events.producer-profile}") String profile, KafkaMetrics kafkaMetrics) {
+        this.kafkaTemplate = producerProfiles.template(profile);
+        this.kafkaMetrics = kafkaMetrics;
     }
 
-    public void send(GenericEvent event) {
-        logger.info("Sending event to topic {}: {}", topic, event.getId());
-        kafkaTemplate.send(topic, event.getId(), event);
+    /**
+     * Invia il messaggio senza attendere l'ack del broker: il future restituito si completa con partizione/offset
+     * del record oppure con l'errore di invio.
+     */
+    public CompletableFuture<SendResult<String, Object>> send(GenericEvent event) {
+        logger.debug("Sending event to topic {}: {}", topic, event.getId());
+        return ProducerSupport.send(kafkaTemplate, kafkaMetrics, topic, event.getId(), event)
+                .whenComplete((result, error) -> {
+                    if (error != null) {
+                        logger.error("Failed to send event {}: {}", event.getId(), error.getMessage());
+                    }
+                });
     }
 }
@@ -1,26 +1,42 @@
 package it.alf.producer;
 
+import java.util.concurrent.CompletableFuture;
+
+import it.alf.config.ProducerProfiles;
 import it.alf.dto.Notification;
+import it.alf.metrics.KafkaMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 
 @Service
 public class NotificationProducer {
     private final Logger logger = LoggerFactory.getLogger(NotificationProducer.class);
     private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final KafkaMetrics kafkaMetrics;
 
-    @Value("${app.kafka.topics.notifications}")
+    @Value("${app.kafka.topics.notifications.name}")
     private String topic;
 
-    public NotificationProducer(KafkaTemplate<String, Object> kafkaTemplate) {
-        this.kafkaTemplate = kafkaTemplate;
+    public NotificationProducer(ProducerProfiles producerProfiles, @Value("${app.kafka.topics.notifications.producer-profile}") String profile, KafkaMetrics kafkaMetrics) {
+        this.kafkaTemplate = producerProfiles.template(profile);
+        this.kafkaMetrics = kafkaMetrics;
     }
 
-    public void send(Notification notification) {
-        logger.info("Sending notification to topic {}: {}", topic, notification.getId());
-        kafkaTemplate.send(topic, notification.getId(), notification);
+    /**
+     * Invia il messaggio senza attendere l'ack del broker: il future restituito si completa con partizione/offset
+     * del record oppure con l'errore di invio.
+     */
+    public CompletableFuture<SendResult<String, Object>> send(Notification notification) {
+        logger.debug("Sending notification to topic {}: {}", topic, notification.getId());
+        return ProducerSupport.send(kafkaTemplate, kafkaMetrics, topic, notification.getId(), notification)
+                .whenComplete((result, error) -> {
+                    if (error != null) {
+                        logger.error("Failed to send notification {}: {}", notification.getId(), error.getMessage());
+                    }
+                });
     }
 }
@@ -1,27 +1,43 @@
 package it.alf.producer;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 
+import it.alf.config.ProducerProfiles;
 import it.alf.dto.Order;
+import it.alf.metrics.KafkaMetrics;
 
 @Service
 public class OrderProducer {
     private final Logger logger = LoggerFactory.getLogger(OrderProducer.class);
     private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final KafkaMetrics kafkaMetrics;
 
-    @Value("${app.kafka.topics.orders}")
+    @Value("${app.kafka.topics.orders.name}")
     private String topic;
 
-    public OrderProducer(KafkaTemplate<String, Object> kafkaTemplate) {
-        this.kafkaTemplate = kafkaTemplate;
+    public OrderProducer(ProducerProfiles producerProfiles, @Value("${app.kafka.topics.orders.producer-profile}") String profile, KafkaMetrics kafkaMetrics) {
+        this.kafkaTemplate = producerProfiles.template(profile);
+        this.kafkaMetrics = kafkaMetrics;
     }
 
-    public void send(Order order) {
-        logger.info("Sending order to topic {}: {}", topic, order.getId());
-        kafkaTemplate.send(topic, order.getId(), order);
+    /**
+     * Invia il messaggio senza attendere l'ack del broker: il future restituito si completa con partizione/offset
+     * del record oppure con l'errore di invio.
+     */
+    public CompletableFuture<SendResult<String, Object>> send(Order order) {
+        logger.debug("Sending order to topic {}: {}", topic, order.getId());
+        return ProducerSupport.send(kafkaTemplate, kafkaMetrics, topic, order.getId(), order)
+                .whenComplete((result, error) -> {
+                    if (error != null) {
+                        logger.error("Failed to send order {}: {}", order.getId(), error.getMessage());
+                    }
+                });
     }
 }
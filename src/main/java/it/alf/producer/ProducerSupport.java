@@ -0,0 +1,32 @@
+package it.alf.producer;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+
+import it.alf.metrics.KafkaMetrics;
+
+/**
+ * Utility comuni ai producer.
+ *
+ * {@code KafkaTemplate.send} può fallire anche in modo sincrono (serializzazione, metadata non disponibili
+ * entro {@code max.block.ms}): l'eccezione viene convertita in un future fallito, così i chiamanti gestiscono
+ * tutti gli errori di invio in un unico punto. La latenza fino all'ack viene registrata da {@link KafkaMetrics}.
+ */
+final class ProducerSupport {
+
+    private ProducerSupport() {
+    }
+
+    static CompletableFuture<SendResult<String, Object>> send(KafkaTemplate<String, Object> template, KafkaMetrics metrics,
+                                                              String topic, String key, Object value) {
+        CompletableFuture<SendResult<String, Object>> future;
+        try {
+            future = template.send(topic, key, value);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return metrics.timeSend(topic, future);
+    }
+}
@@ -1,27 +1,43 @@
 package it.alf.producer;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 
+import it.alf.config.ProducerProfiles;
 import it.alf.dto.User;
+import it.alf.metrics.KafkaMetrics;
 
 @Service
 public class UserProducer {
     private final Logger logger = LoggerFactory.getLogger(UserProducer.class);
     private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final KafkaMetrics kafkaMetrics;
 
-    @Value("${app.kafka.topics.users}")
+    @Value("${app.kafka.topics.users.name}")
     private String topic;
 
-    public UserProducer(KafkaTemplate<String, Object> kafkaTemplate) {
-        this.kafkaTemplate = kafkaTemplate;
+    public UserProducer(ProducerProfiles producerProfiles, @Value("${app.kafka.topics.users.producer-profile}") String profile, KafkaMetrics kafkaMetrics) {
+        this.kafkaTemplate = producerProfiles.template(profile);
+        this.kafkaMetrics = kafkaMetrics;
     }
 
-    public void send(User user) {
-        logger.info("Sending user to topic {}: {}", topic, user.getId());
-        kafkaTemplate.send(topic, user.getId(), user);
+    /**
+     * Invia il messaggio senza attendere l'ack del broker: il future restituito si completa con partizione/offset
+     * del record oppure con l'errore di invio.
+     */
+    public CompletableFuture<SendResult<String, Object>> send(User user) {
+        logger.debug("Sending user to topic {}: {}", topic, user.getId());
+        return ProducerSupport.send(kafkaTemplate, kafkaMetrics, topic, user.getId(), user)
+                .whenComplete((result, error) -> {
+                    if (error != null) {
+                        logger.error("Failed to send user {}: {}", user.getId(), error.getMessage());
+                    }
+                });
     }
 }
@@ -0,0 +1,19 @@
+package it.alf.repository;
+
+import java.time.Instant;
+
+/**
+ * Filtri della ricerca sugli eventi; i campi null non filtrano.
+ *
+ * @param type       tipo esatto dell'evento
+ * @param from       istante di salvataggio minimo, incluso
+ * @param to         istante di salvataggio massimo, escluso
+ * @param keyName    chiave indicizzata del payload (una di {@code app.events.storage.indexed-keys})
+ * @param keyValue   valore della chiave, obbligatorio se {@code keyName} è presente
+ */
+public record EventFilter(String type, Instant from, Instant to, String keyName, String keyValue) {
+
+    public static EventFilter none() {
+        return new EventFilter(null, null, null, null, null);
+    }
+}
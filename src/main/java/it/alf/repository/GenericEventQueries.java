@@ -0,0 +1,19 @@
+package it.alf.repository;
+
+import java.time.Instant;
+import java.util.List;
+
+import it.alf.dto.StoredEvent;
+
+/**
+ * Ricerca sugli eventi con filtri opzionali, implementata in {@link GenericEventQueriesImpl} e
+ * esposta da {@link GenericEventRepository}.
+ */
+public interface GenericEventQueries {
+
+    /**
+     * Pagina keyset di eventi in ordine di {@code (ingestedAt, id)}: al massimo {@code limit} eventi successivi
+     * alla posizione {@code (afterIngestedAt, afterId)}, o dall'inizio se {@code afterIngestedAt} è null.
+     */
+    List<StoredEvent> findPage(EventFilter filter, Instant afterIngestedAt, String afterId, int limit);
+}
@@ -0,0 +1,72 @@
+package it.alf.repository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import it.alf.dto.StoredEvent;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * La query viene composta con i soli predicati dei filtri presenti, invece di una query fissa con condizioni
+ * {@code :param is null or ...}: così il database vede predicati semplici sulle colonne indicizzate e sceglie
+ * l'indice adatto ({@code type, ingested_at, id} con il filtro per tipo, {@code ingested_at, id} altrimenti),
+ * leggendo le righe già nell'ordine della paginazione.
+ *
+ * La posizione del cursore è espressa come {@code ingestedAt >= :at and (ingestedAt > :at or id > :id)}:
+ * la prima condizione delimita la range scan sull'indice, la seconda scarta solo gli eventi con lo stesso istante
+ * già restituiti.
+ */
+public class GenericEventQueriesImpl implements GenericEventQueries {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<StoredEvent> findPage(EventFilter filter, Instant afterIngestedAt, String afterId, int limit) {
+        var jpql = new StringBuilder("select new it.alf.dto.StoredEvent(e.id, e.type, e.ingestedAt, e.kafkaPartition,"
+                + " e.kafkaOffset, e.payload, e.payloadEncoding) from GenericEventEntity e");
+        List<String> conditions = new ArrayList<>();
+        Map<String, Object> params = new HashMap<>();
+        if (filter.keyName() != null) {
+            // una chiave compare al più una volta per evento: il join non duplica le righe
+            jpql.append(" join e.payloadKeys k");
+            conditions.add("key(k) = :keyName and value(k) = :keyValue");
+            params.put("keyName", filter.keyName());
+            params.put("keyValue", filter.keyValue());
+        }
+        if (filter.type() != null) {
+            conditions.add("e.type = :type");
+            params.put("type", filter.type());
+        }
+        if (filter.from() != null) {
+            conditions.add("e.ingestedAt >= :from");
+            params.put("from", filter.from());
+        }
+        if (filter.to() != null) {
+            conditions.add("e.ingestedAt < :to");
+            params.put("to", filter.to());
+        }
+        if (afterIngestedAt != null) {
+            conditions.add("e.ingestedAt >= :afterAt and (e.ingestedAt > :afterAt or e.id > :afterId)");
+            params.put("afterAt", afterIngestedAt);
+            params.put("afterId", afterId);
+        }
+        if (!conditions.isEmpty()) {
+            jpql.append(" where ").append(String.join(" and ", conditions));
+        }
+        // con il tipo fissato l'ordine non cambia, ma va dichiarato perché il database riconosca che l'indice
+        // (type, ingested_at, id) restituisce già le righe ordinate e si fermi dopo limit righe invece di ordinarle tutte
+        jpql.append(filter.type() != null ? " order by e.type, e.ingestedAt, e.id" : " order by e.ingestedAt, e.id");
+
+        var query = entityManager.createQuery(jpql.toString(), StoredEvent.class).setMaxResults(limit);
+        params.forEach(query::setParameter);
+        return query.getResultList();
+    }
+}
@@ -1,11 +1,21 @@
 package it.alf.repository;
 
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import it.alf.entity.GenericEventEntity;
 
 @Repository
-public interface GenericEventRepository extends JpaRepository<GenericEventEntity, String> {
+public interface GenericEventRepository extends JpaRepository<GenericEventEntity, String>, GenericEventQueries {
 
+    /**
+     * Id degli eventi il cui payload ha la chiave indicizzata {@code name} uguale a {@code value}.
+     * La ricerca usa l'indice di {@code event_keys} e non legge i payload.
+     */
+    @Query("select e.id from GenericEventEntity e join e.payloadKeys k where key(k) = :name and value(k) = :value order by e.id")
+    List<String> findIdsByPayloadKey(@Param("name") String name, @Param("value") String value);
 }
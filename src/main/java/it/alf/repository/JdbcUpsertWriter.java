@@ -0,0 +1,129 @@
+package it.alf.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import it.alf.entity.GenericEventEntity;
+import it.alf.entity.NotificationEntity;
+import it.alf.entity.OrderEntity;
+import it.alf.entity.UserEntity;
+
+@Component
+/**
+ * Scrittura delle entità dei listener con statement {@code MERGE} a batch via JDBC, alternativa ai repository JPA
+ * per i topic con {@code app.kafka.topics.<key>.writer: jdbc} (vedi {@link it.alf.consumer.BatchPersister}).
+ *
+ * Le entità hanno id assegnati, quindi {@code save}/{@code saveAll} di JPA passano da {@code merge}: una select per
+ * entità prima dell'insert o dell'update. Qui ogni entità è una riga di un unico statement
+ * {@code MERGE INTO ... KEY (id)} preparato una volta e rieseguito in batch JDBC da {@value #BATCH_SIZE} righe:
+ * nessuna select, un round trip per batch. La semantica resta quella della {@code save}: riga inserita se l'id è
+ * nuovo, sostituita altrimenti.
+ *
+ * Per gli eventi vengono riscritte anche le chiavi indicizzate ({@code event_keys}): cancellate per gli id del batch
+ * e reinserite, come fa JPA con la collezione di un'entità aggiornata.
+ *
+ * Le scritture di una chiamata avvengono in un'unica transazione (quella in corso, se c'è, ad esempio quella della
+ * deduplicazione). {@code MERGE INTO ... KEY} è la sintassi di H2: con un altro database vanno adattati i soli statement.
+ */
+public class JdbcUpsertWriter {
+    /** righe per batch JDBC, come {@code hibernate.jdbc.batch_size} */
+    static final int BATCH_SIZE = 500;
+
+    private static final String EVENT_KEYS_DELETE = "delete from event_keys where event_id = ?";
+    private static final String EVENT_KEYS_INSERT = "insert into event_keys (event_id, key_name, key_value) values (?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<Class<?>, Upsert<?>> upserts = Map.of(
+            UserEntity.class, new Upsert<UserEntity>("merge into users (id, name, email) key (id) values (?, ?, ?)", (ps, user) -> {
+                ps.setString(1, user.getId());
+                ps.setString(2, user.getName());
+                ps.setString(3, user.getEmail());
+            }),
+            OrderEntity.class, new Upsert<OrderEntity>("merge into orders (id, user_id, product, amount) key (id) values (?, ?, ?, ?)",
+                    (ps, order) -> {
+                        ps.setString(1, order.getId());
+                        ps.setString(2, order.getUserId());
+                        ps.setString(3, order.getProduct());
+                        ps.setDouble(4, order.getAmount());
+                    }),
+            NotificationEntity.class, new Upsert<NotificationEntity>("merge into notifications (id, message, level) key (id) values (?, ?, ?)",
+                    (ps, notification) -> {
+                        ps.setString(1, notification.getId());
+                        ps.setString(2, notification.getMessage());
+                        ps.setString(3, notification.getLevel());
+                    }),
+            GenericEventEntity.class, new Upsert<GenericEventEntity>("merge into events (id, type, ingested_at, kafka_partition, "
+                    + "kafka_offset, payload, payload_encoding) key (id) values (?, ?, ?, ?, ?, ?, ?)", (ps, event) -> {
+                        ps.setString(1, event.getId());
+                        ps.setString(2, event.getType());
+                        ps.setObject(3, event.getIngestedAt() != null ? OffsetDateTime.ofInstant(event.getIngestedAt(), ZoneOffset.UTC) : null);
+                        ps.setInt(4, event.getKafkaPartition());
+                        ps.setLong(5, event.getKafkaOffset());
+                        ps.setBytes(6, event.getPayload());
+                        ps.setString(7, event.getPayloadEncoding() != null ? event.getPayloadEncoding().name() : null);
+                    }));
+
+    public JdbcUpsertWriter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Inserisce o sostituisce le entità, tutte dello stesso tipo; una lista vuota non esegue nulla.
+     */
+    @SuppressWarnings("unchecked")
+    public <E> void upsert(List<E> entities) {
+        if (entities.isEmpty()) {
+            return;
+        }
+        var type = entities.get(0).getClass();
+        var upsert = (Upsert<E>) upserts.get(type);
+        if (upsert == null) {
+            throw new IllegalArgumentException("No JDBC upsert for " + type.getName());
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(upsert.sql(), entities, BATCH_SIZE, upsert.setter());
+            if (type == GenericEventEntity.class) {
+                writeEventKeys((List<GenericEventEntity>) entities);
+            }
+        });
+    }
+
+    private void writeEventKeys(List<GenericEventEntity> events) {
+        // con più versioni dello stesso evento nel batch restano le chiavi dell'ultima, come per la riga
+        var latest = new LinkedHashMap<String, GenericEventEntity>();
+        events.forEach(event -> latest.put(event.getId(), event));
+        jdbcTemplate.batchUpdate(EVENT_KEYS_DELETE, latest.keySet(), BATCH_SIZE, (ps, id) -> ps.setString(1, id));
+        var keys = new ArrayList<Object[]>();
+        for (var event : latest.values()) {
+            if (event.getPayloadKeys() != null) {
+                event.getPayloadKeys().forEach((name, value) -> keys.add(new Object[] {event.getId(), name, value}));
+            }
+        }
+        if (!keys.isEmpty()) {
+            jdbcTemplate.batchUpdate(EVENT_KEYS_INSERT, keys, BATCH_SIZE, JdbcUpsertWriter::setKey);
+        }
+    }
+
+    private static void setKey(PreparedStatement ps, Object[] key) throws SQLException {
+        ps.setString(1, (String) key[0]);
+        ps.setString(2, (String) key[1]);
+        ps.setString(3, (String) key[2]);
+    }
+
+    private record Upsert<E>(String sql, ParameterizedPreparedStatementSetter<E> setter) {
+    }
+}
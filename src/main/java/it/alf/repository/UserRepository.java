@@ -1,11 +1,36 @@
 package it.alf.repository;
 
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import it.alf.dto.User;
 import it.alf.entity.UserEntity;
+import jakarta.persistence.QueryHint;
 
 @Repository
 public interface UserRepository extends JpaRepository<UserEntity, String> {
 
+    /**
+     * Pagina keyset: utenti con id successivo a {@code after} (tutti se null), in ordine di id.
+     * La proiezione sul DTO evita di caricare entità gestite nel persistence context.
+     */
+    @Query("select new it.alf.dto.User(u.id, u.name, u.email) from UserEntity u"
+            + " where (:after is null or u.id > :after) order by u.id")
+    List<User> findPage(@Param("after") String after, Limit limit);
+
+    /**
+     * Tutti gli utenti in ordine di id, letti dal cursore JDBC a blocchi di fetch size righe.
+     * Va consumato dentro una transazione e chiuso al termine.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select new it.alf.dto.User(u.id, u.name, u.email) from UserEntity u order by u.id")
+    Stream<User> streamAllOrderById();
 }
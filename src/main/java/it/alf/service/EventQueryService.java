@@ -0,0 +1,134 @@
+package it.alf.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.function.Consumer;
+
+import org.springframework.stereotype.Service;
+
+import it.alf.config.EventStorageProperties;
+import it.alf.dto.EventPage;
+import it.alf.dto.StoredEvent;
+import it.alf.repository.EventFilter;
+import it.alf.repository.GenericEventRepository;
+
+/**
+ * Letture degli eventi persistiti, filtrate per tipo, intervallo di salvataggio e chiave indicizzata del payload.
+ *
+ * Gli eventi sono ordinati per {@code (ingestedAt, id)} e paginati per keyset: il cursore codifica la posizione
+ * dell'ultimo evento restituito, quindi ogni pagina è una range scan sugli indici di {@code events} con costo
+ * indipendente dalla dimensione della tabella e dalla profondità della pagina.
+ *
+ * Il cursore non è un feed delle novità: {@code ingestedAt} viene assegnato prima del commit, quindi un evento la cui
+ * transazione si chiude dopo quella di un evento successivo può finire prima di un cursore che lo ha già superato.
+ * Chi riparte dall'ultimo cursore per leggere i nuovi eventi può quindi perderne alcuni.
+ *
+ * Il filtro per chiave parte dall'indice di {@code event_keys} e ordina gli eventi trovati: il suo costo cresce con
+ * il numero di eventi che hanno quel valore, non con la dimensione della tabella.
+ */
+@Service
+public class EventQueryService {
+    public static final int MAX_PAGE_SIZE = 1000;
+    /** eventi letti per query durante lo streaming */
+    static final int STREAM_CHUNK = 500;
+
+    private final GenericEventRepository eventRepository;
+    private final EventStorageProperties storage;
+
+    public EventQueryService(GenericEventRepository eventRepository, EventStorageProperties storage) {
+        this.eventRepository = eventRepository;
+        this.storage = storage;
+    }
+
+    /**
+     * @param after cursore della pagina precedente ({@link EventPage#getNextCursor()}), null per la prima
+     * @throws InvalidQueryException se i filtri, il cursore o il limite non sono validi
+     */
+    public EventPage page(EventFilter filter, String after, int limit) {
+        validate(filter);
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new InvalidQueryException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        var position = after == null ? null : decodeCursor(after);
+        // un elemento in più per sapere se esiste una pagina successiva
+        var events = position == null
+                ? eventRepository.findPage(filter, null, null, limit + 1)
+                : eventRepository.findPage(filter, position.ingestedAt(), position.id(), limit + 1);
+        if (events.size() <= limit) {
+            return new EventPage(events, null);
+        }
+        var items = events.subList(0, limit);
+        var last = items.get(limit - 1);
+        return new EventPage(items, cursor(last.getIngestedAt(), last.getId()));
+    }
+
+    /**
+     * Passa al consumer tutti gli eventi che soddisfano il filtro, in ordine, leggendoli a pagine keyset di
+     * {@value #STREAM_CHUNK}: ogni query è breve e nessuna transazione o cursore JDBC resta aperto per tutta
+     * la durata della risposta, per quanto grande sia il risultato.
+     *
+     * @return il numero di eventi letti
+     */
+    public long stream(EventFilter filter, Consumer<StoredEvent> sink) {
+        validate(filter);
+        long count = 0;
+        StoredEvent last = null;
+        while (true) {
+            var events = last == null
+                    ? eventRepository.findPage(filter, null, null, STREAM_CHUNK)
+                    : eventRepository.findPage(filter, last.getIngestedAt(), last.getId(), STREAM_CHUNK);
+            for (var event : events) {
+                sink.accept(event);
+            }
+            count += events.size();
+            if (events.size() < STREAM_CHUNK) {
+                return count;
+            }
+            last = events.get(events.size() - 1);
+        }
+    }
+
+    /**
+     * @throws InvalidQueryException se la chiave non è indicizzata, manca la chiave o il valore,
+     *                                  o l'intervallo di tempo è vuoto
+     */
+    public void validate(EventFilter filter) {
+        if (filter.keyName() != null) {
+            if (!storage.getIndexedKeys().contains(filter.keyName())) {
+                throw new InvalidQueryException("key must be one of the indexed payload keys " + storage.getIndexedKeys());
+            }
+            if (filter.keyValue() == null) {
+                throw new InvalidQueryException("value is required when filtering by key");
+            }
+        } else if (filter.keyValue() != null) {
+            throw new InvalidQueryException("key is required when filtering by value");
+        }
+        if (filter.from() != null && filter.to() != null && !filter.from().isBefore(filter.to())) {
+            throw new InvalidQueryException("from must be before to");
+        }
+    }
+
+    /**
+     * Cursore opaco che identifica la posizione dell'evento {@code (ingestedAt, id)}.
+     */
+    public static String cursor(Instant ingestedAt, String id) {
+        var position = ingestedAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Position decodeCursor(String cursor) {
+        try {
+            var position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.indexOf('|');
+            return new Position(Instant.parse(position.substring(0, separator)), position.substring(separator + 1));
+        } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+            throw new InvalidQueryException("Invalid cursor: " + cursor);
+        }
+    }
+
+    /** posizione di un evento nell'ordine di paginazione */
+    record Position(Instant ingestedAt, String id) {
+    }
+}
@@ -0,0 +1,11 @@
+package it.alf.service;
+
+/**
+ * Filtri, cursore o limite di una lettura paginata non validi: gli endpoint la restituiscono come {@code 400}.
+ */
+public class InvalidQueryException extends IllegalArgumentException {
+
+    public InvalidQueryException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,17 @@
+package it.alf.service;
+
+import java.util.Optional;
+
+import it.alf.dto.User;
+
+/**
+ * Lettura di un utente per id usata da {@code GET /api/users/{id}}.
+ *
+ * L'implementazione di default è {@link UserQueryService} (JPA con cache); con
+ * {@code app.kafka.streams.user-view.enabled=true} diventa {@link it.alf.streams.UserViewLookup},
+ * che interroga la vista materializzata da Kafka Streams.
+ */
+public interface UserLookup {
+
+    Optional<User> findById(String id);
+}
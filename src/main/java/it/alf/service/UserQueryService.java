@@ -0,0 +1,92 @@
+package it.alf.service;
+
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import it.alf.config.CacheConfig;
+import it.alf.dto.User;
+import it.alf.dto.UserPage;
+import it.alf.repository.UserRepository;
+
+/**
+ * Letture degli utenti persistiti.
+ *
+ * La paginazione è keyset (cursore = ultimo id restituito) anziché per offset: ogni pagina è una range scan
+ * sull'indice della chiave primaria, con costo indipendente dalla posizione nella tabella.
+ *
+ * La lettura per id passa dalla cache {@link CacheConfig#USERS_CACHE} (read-through): il database viene letto
+ * solo in caso di miss, anche per gli id inesistenti (memorizzati come assenti). {@code UserListener} aggiorna
+ * la cache con {@link #cache(User)} e {@link #evict(String)} per ogni record consumato, quindi le letture
+ * seguono il topic senza attendere la scadenza del TTL.
+ */
+@Service
+public class UserQueryService implements UserLookup {
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private final UserRepository userRepository;
+    private final Cache usersCache;
+
+    public UserQueryService(UserRepository userRepository, CacheManager cacheManager) {
+        this.userRepository = userRepository;
+        this.usersCache = cacheManager.getCache(CacheConfig.USERS_CACHE);
+        if (usersCache == null) {
+            throw new IllegalStateException("Cache '" + CacheConfig.USERS_CACHE + "' is not configured (spring.cache.cache-names)");
+        }
+    }
+
+    // sync: i miss concorrenti sullo stesso id eseguono una sola query, e un put del listener attende
+    // il caricamento in corso invece di essere sovrascritto da un valore letto prima del salvataggio
+    @Override
+    @Cacheable(cacheNames = CacheConfig.USERS_CACHE, key = "#id", sync = true)
+    public Optional<User> findById(String id) {
+        return userRepository.findById(id).map(e -> new User(e.getId(), e.getName(), e.getEmail()));
+    }
+
+    public void cache(User user) {
+        usersCache.put(user.getId(), user);
+    }
+
+    public void evict(String id) {
+        usersCache.evict(id);
+    }
+
+    @Transactional(readOnly = true)
+    public UserPage page(String after, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        // un elemento in più per sapere se esiste una pagina successiva
+        var users = userRepository.findPage(after, Limit.of(limit + 1));
+        if (users.size() <= limit) {
+            return new UserPage(users, null);
+        }
+        var items = users.subList(0, limit);
+        return new UserPage(items, items.get(limit - 1).getId());
+    }
+
+    /**
+     * Passa al consumer tutti gli utenti in ordine di id man mano che arrivano dal cursore, senza accumularli:
+     * la memoria usata non dipende dalla dimensione della tabella.
+     *
+     * @return il numero di utenti letti
+     */
+    @Transactional(readOnly = true)
+    public long streamAll(Consumer<User> sink) {
+        long count = 0;
+        try (var users = userRepository.streamAllOrderById()) {
+            var iterator = users.iterator();
+            while (iterator.hasNext()) {
+                sink.accept(iterator.next());
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,54 @@
+package it.alf.streams;
+
+import java.util.Optional;
+
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.StoreQueryParameters;
+import org.apache.kafka.streams.errors.InvalidStateStoreException;
+import org.apache.kafka.streams.state.QueryableStoreTypes;
+import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
+import org.springframework.kafka.config.StreamsBuilderFactoryBean;
+
+import it.alf.dto.User;
+import it.alf.service.UserLookup;
+
+/**
+ * Lookup degli utenti tramite interactive query sullo store della vista Kafka Streams.
+ *
+ * Finché lo store non è interrogabile (avvio, ripristino dal topic, ribilanciamento) viene lanciata una
+ * {@link InvalidStateStoreException}, che il controller traduce in 503.
+ */
+public class UserViewLookup implements UserLookup {
+    private final StreamsBuilderFactoryBean streamsBuilderFactoryBean;
+    private final String storeName;
+    private volatile ReadOnlyKeyValueStore<String, User> store;
+
+    public UserViewLookup(StreamsBuilderFactoryBean streamsBuilderFactoryBean, String storeName) {
+        this.streamsBuilderFactoryBean = streamsBuilderFactoryBean;
+        this.storeName = storeName;
+    }
+
+    @Override
+    public Optional<User> findById(String id) {
+        try {
+            return Optional.ofNullable(store().get(id));
+        } catch (InvalidStateStoreException e) {
+            // lo store può cambiare dopo un riavvio dello stream: al prossimo accesso si ottiene quello nuovo
+            store = null;
+            throw e;
+        }
+    }
+
+    private ReadOnlyKeyValueStore<String, User> store() {
+        var current = store;
+        if (current == null) {
+            KafkaStreams streams = streamsBuilderFactoryBean.getKafkaStreams();
+            if (streams == null) {
+                throw new InvalidStateStoreException("Kafka Streams for store " + storeName + " is not started");
+            }
+            current = streams.store(StoreQueryParameters.fromNameAndType(storeName, QueryableStoreTypes.keyValueStore()));
+            store = current;
+        }
+        return current;
+    }
+}
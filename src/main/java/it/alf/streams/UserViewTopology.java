@@ -0,0 +1,61 @@
+package it.alf.streams;
+
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.GlobalKTable;
+import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.state.KeyValueBytesStoreSupplier;
+import org.apache.kafka.streams.state.Stores;
+import org.springframework.kafka.support.serializer.JsonSerde;
+
+import it.alf.codec.BinaryDeserializer;
+import it.alf.codec.BinarySerializer;
+import it.alf.codec.DtoCodecs;
+import it.alf.codec.SchemaRegistry;
+import it.alf.dto.User;
+
+/**
+ * Topologia della vista utenti: una tabella materializzata da {@code users-topic} (chiave = id utente,
+ * l'ultimo valore per chiave vince, un tombstone elimina l'utente).
+ *
+ * È una {@link GlobalKTable}: ogni istanza dell'applicazione materializza tutte le partizioni, quindi una
+ * lookup per id è sempre locale e non va instradata verso l'istanza proprietaria della chiave. Lo store si
+ * ricostruisce all'avvio rileggendo il topic sorgente, che fa da changelog.
+ */
+public final class UserViewTopology {
+
+    private UserViewTopology() {
+    }
+
+    /**
+     * @param valueSerde serde dei valori del topic (JSON o binario, secondo il codec del topic), usato anche per lo store
+     */
+    public static GlobalKTable<String, User> build(StreamsBuilder builder, String topic, String storeName, boolean persistent,
+                                                   Serde<User> valueSerde) {
+        KeyValueBytesStoreSupplier supplier = persistent
+                ? Stores.persistentKeyValueStore(storeName)
+                : Stores.inMemoryKeyValueStore(storeName);
+        return builder.globalTable(topic, Consumed.with(Serdes.String(), valueSerde),
+                Materialized.<String, User>as(supplier)
+                        .withKeySerde(Serdes.String())
+                        .withValueSerde(valueSerde));
+    }
+
+    /**
+     * Serde JSON del {@link User}: ignora l'header di tipo scritto dal {@code JsonSerializer} dei producer
+     * e non lo aggiunge in scrittura sullo store.
+     */
+    public static Serde<User> jsonSerde() {
+        return new JsonSerde<>(User.class).ignoreTypeHeaders().noTypeInfo();
+    }
+
+    /**
+     * Serde binario del {@link User} per i topic con {@code codec: binary}; legge anche i record JSON precedenti.
+     */
+    public static Serde<User> binarySerde(SchemaRegistry registry, String topic) {
+        return Serdes.serdeFrom(new BinarySerializer<>(DtoCodecs.USER, registry, topic),
+                new BinaryDeserializer<>(DtoCodecs.USER, registry, jsonSerde().deserializer()));
+    }
+}
@@ -0,0 +1,223 @@
+package it.alf.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.alf.config.KafkaTopicsProperties;
+import it.alf.consumer.OrderListener;
+import it.alf.dto.Order;
+
+/**
+ * Carico sul database risparmiato dalla deduplicazione, su un flusso di ordini con molti duplicati.
+ *
+ * Per ogni modalità di {@code app.kafka.topics.orders.dedupe} ({@code none}, {@code offset}, {@code id}) vengono
+ * passati a {@link OrderListener} {@code dedupe.records} ordini nuovi in poll da {@value #BATCH_SIZE}; ogni poll viene
+ * poi riconsegnato con gli stessi offset (come dopo un ribilanciamento prima del commit) e metà dei suoi ordini
+ * viene inviata di nuovo con offset nuovi (lo stesso id prodotto due volte): 2,5 consegne per ordine.
+ * Le chiamate JDBC vengono contate da un proxy sul DataSource: {@code round trips} sono le esecuzioni di statement
+ * (un batch JDBC conta una volta), {@code rows} le righe scritte o aggiornate.
+ * Senza deduplicazione ogni duplicato costa la select della merge JPA (e l'update, se il contenuto è cambiato);
+ * in modalità {@code offset} restano solo gli id ripetuti, in modalità {@code id} nessun duplicato arriva al repository.
+ * Si esegue con {@code mvn test -Pbenchmark -Dtest=DedupeBenchmark [-Ddedupe.records=20000]}.
+ */
+@SpringBootTest(properties = {"spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}"})
+@EmbeddedKafka(partitions = 1, topics = {"orders-topic"})
+@DirtiesContext
+public class DedupeBenchmark {
+
+    private static final int RECORDS = Integer.getInteger("dedupe.records", 20_000);
+    private static final int BATCH_SIZE = 500;
+    private static final String TOPIC = "orders-topic";
+
+    private final Logger logger = LoggerFactory.getLogger(DedupeBenchmark.class);
+
+    @Autowired
+    private OrderListener orderListener;
+
+    @Autowired
+    private KafkaTopicsProperties topics;
+
+    @Autowired
+    private JdbcCounter jdbcCounter;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @TestConfiguration
+    static class CountingDataSourceConfig {
+        @Bean
+        JdbcCounter jdbcCounter() {
+            return new JdbcCounter();
+        }
+
+        @Bean
+        static BeanPostProcessor countingDataSource(ObjectProvider<JdbcCounter> counter) {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource dataSource ? counter.getObject().wrap(dataSource) : bean;
+                }
+            };
+        }
+    }
+
+    @Test
+    void databaseLoadByDedupeMode() {
+        // warmup JIT e pool di connessioni, non misurato
+        run("none", "warmup", 1);
+
+        var report = new StringBuilder(String.format("%n%-8s %10s %10s %12s %10s %12s %10s%n",
+                "mode", "deliveries", "skipped", "round trips", "rows", "trips/rec", "ms"));
+        int partition = 2;
+        for (String mode : List.of("none", "offset", "id")) {
+            double skippedBefore = skipped();
+            jdbcCounter.reset();
+            long start = System.nanoTime();
+            int deliveries = run(mode, mode, partition++);
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            long trips = jdbcCounter.roundTrips.get();
+            long skipped = Math.round(skipped() - skippedBefore);
+            report.append(String.format("%-8s %10d %10d %12d %10d %12.3f %10d%n", mode, deliveries, skipped, trips,
+                    jdbcCounter.rows.get(), (double) trips / deliveries, elapsed));
+
+            assertThat(jdbcTemplate.queryForObject("select count(*) from orders where id like ?", Long.class, mode + "-%"))
+                    .isEqualTo(RECORDS);
+        }
+        topics.get("orders").setDedupe("id");
+        logger.info("Dedupe benchmark ({} orders, {} deliveries per order, polls of {}):{}", RECORDS, 2.5, BATCH_SIZE, report);
+    }
+
+    /**
+     * Consegna il flusso con duplicati nella modalità indicata e restituisce il numero di record consegnati.
+     */
+    private int run(String mode, String prefix, int partition) {
+        topics.get("orders").setDedupe(mode);
+        long offset = 0;
+        int deliveries = 0;
+        for (int from = 0; from < RECORDS; from += BATCH_SIZE) {
+            var batch = new ArrayList<ConsumerRecord<String, Order>>(BATCH_SIZE);
+            for (int i = from; i < Math.min(from + BATCH_SIZE, RECORDS); i++) {
+                batch.add(record(partition, offset++, prefix, i));
+            }
+            orderListener.listen(batch, null);
+            // riconsegna degli stessi offset
+            orderListener.listen(batch, null);
+            // metà degli ordini prodotta di nuovo: stessi id, offset nuovi
+            var resent = new ArrayList<ConsumerRecord<String, Order>>(BATCH_SIZE / 2);
+            for (int i = 0; i < batch.size(); i += 2) {
+                resent.add(record(partition, offset++, prefix, from + i));
+            }
+            orderListener.listen(resent, null);
+            deliveries += 2 * batch.size() + resent.size();
+        }
+        return deliveries;
+    }
+
+    private static ConsumerRecord<String, Order> record(int partition, long offset, String prefix, int i) {
+        var id = prefix + "-" + i;
+        return new ConsumerRecord<>(TOPIC, partition, offset, id, new Order(id, "user-" + (i % 100), "product-" + (i % 10), i));
+    }
+
+    private double skipped() {
+        var counter = meterRegistry.find("kafka.dedupe.duplicates").tag("topic", TOPIC).counter();
+        return counter != null ? counter.count() : 0;
+    }
+
+    /**
+     * Conta le esecuzioni di statement e le righe modificate passando da un proxy di DataSource, Connection e Statement.
+     */
+    static class JdbcCounter {
+        final AtomicLong roundTrips = new AtomicLong();
+        final AtomicLong rows = new AtomicLong();
+
+        void reset() {
+            roundTrips.set(0);
+            rows.set(0);
+        }
+
+        DataSource wrap(DataSource dataSource) {
+            return proxy(dataSource, DataSource.class, (method, result) ->
+                    result instanceof Connection connection ? wrapConnection(connection) : result);
+        }
+
+        private Connection wrapConnection(Connection connection) {
+            return proxy(connection, Connection.class, (method, result) ->
+                    result instanceof Statement statement ? wrapStatement(statement) : result);
+        }
+
+        private Statement wrapStatement(Statement statement) {
+            return proxy(statement, interfaceOf(statement),
+                    (method, result) -> {
+                        switch (method) {
+                            case "executeBatch" -> {
+                                roundTrips.incrementAndGet();
+                                for (int count : (int[]) result) {
+                                    rows.addAndGet(Math.max(count, 0));
+                                }
+                            }
+                            case "executeUpdate", "executeLargeUpdate" -> {
+                                roundTrips.incrementAndGet();
+                                rows.addAndGet(((Number) result).longValue());
+                            }
+                            case "execute", "executeQuery" -> roundTrips.incrementAndGet();
+                            default -> {
+                            }
+                        }
+                        return result;
+                    });
+        }
+
+        private static Class<? extends Statement> interfaceOf(Statement statement) {
+            if (statement instanceof CallableStatement) {
+                return CallableStatement.class;
+            }
+            return statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(T target, Class<? extends T> type, ResultHandler handler) {
+            InvocationHandler invocation = (proxy, method, args) -> {
+                try {
+                    return handler.apply(method.getName(), method.invoke(target, args));
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            };
+            return (T) Proxy.newProxyInstance(DedupeBenchmark.class.getClassLoader(), new Class<?>[] {type}, invocation);
+        }
+
+        private interface ResultHandler {
+            Object apply(String method, Object result);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package it.alf.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+import org.HdrHistogram.Histogram;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+
+import it.alf.codec.RawEvent;
+import it.alf.consumer.EventListener;
+import it.alf.entity.GenericEventEntity;
+import it.alf.journal.EventJournal;
+import it.alf.journal.JournalEntry;
+import it.alf.repository.EventFilter;
+import it.alf.repository.GenericEventRepository;
+
+/**
+ * Eventi al secondo scritti e latenza di lettura del journal su file mappati ({@link EventJournal}) contro il
+ * database ({@link GenericEventRepository}).
+ *
+ * Vengono scritti {@code journal.records} eventi (default 100k, payload JSON di circa 80 byte) in poll da
+ * {@value #BATCH_SIZE}, con le entità create da {@link EventListener#toEntity}:
+ * - {@code journal+force}: append e {@code flush} a ogni poll, come {@code EventJournalSink} con {@code force: true}
+ * - {@code journal}: solo append (le voci restano nella page cache)
+ * - {@code saveAll}: una chiamata del repository per poll, come {@code BatchPersister}
+ * - {@code save}: una chiamata del repository (e una transazione) per evento
+ * Poi vengono misurate {@code journal.samples} letture in posizioni casuali, riportando p50/p99/max: un intervallo
+ * di {@value #RANGE} sequenze del journal contro una pagina keyset di {@value #RANGE} eventi ({@code findPage}), un
+ * singolo evento per sequenza contro {@code findById}. Il journal legge i payload senza copiarli.
+ * Si esegue con {@code mvn test -Pbenchmark -Dtest=EventJournalBenchmark [-Djournal.records=100000]}.
+ */
+@SpringBootTest(properties = {"spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}"})
+@EmbeddedKafka(partitions = 1, topics = {"events-topic"})
+@DirtiesContext
+public class EventJournalBenchmark {
+
+    private static final int RECORDS = Integer.getInteger("journal.records", 100_000);
+    private static final int SAMPLES = Integer.getInteger("journal.samples", 5_000);
+    private static final int WARMUP = 1_000;
+    private static final int BATCH_SIZE = 500;
+    private static final int RANGE = 100;
+
+    private final Logger logger = LoggerFactory.getLogger(EventJournalBenchmark.class);
+
+    @TempDir
+    private Path dir;
+
+    @Autowired
+    private EventListener eventListener;
+
+    @Autowired
+    private GenericEventRepository eventRepository;
+
+    @Test
+    void appendsPerSecondAndReadLatency() throws Exception {
+        var report = new StringBuilder(String.format("%n%-14s %8s %10s %12s%n", "sink", "events", "ms", "events/s"));
+        var journal = journal("force");
+        try (var noForce = journal("no-force")) {
+            write(report, "journal+force", poll -> append(journal, poll, true));
+            write(report, "journal", poll -> append(noForce, poll, false));
+        }
+        write(report, "saveAll", poll -> eventRepository.saveAll(poll.stream().map(eventListener::toEntity).toList()));
+        write(report, "save", poll -> poll.forEach(record -> eventRepository.save(eventListener.toEntity(record))));
+
+        var saved = new ArrayList<GenericEventEntity>(RECORDS);
+        eventRepository.findAll().forEach(entity -> {
+            if (entity.getId().startsWith("saveAll-")) {
+                saved.add(entity);
+            }
+        });
+        saved.sort((a, b) -> a.getIngestedAt().equals(b.getIngestedAt()) ? a.getId().compareTo(b.getId())
+                : a.getIngestedAt().compareTo(b.getIngestedAt()));
+        assertThat(saved).hasSize(RECORDS);
+        assertThat(journal.nextSequence()).isEqualTo(RECORDS + BATCH_SIZE);
+
+        report.append(String.format("%n%-20s %10s %10s %10s%n", "read", "p50 (us)", "p99 (us)", "max (us)"));
+        var reads = new LinkedHashMap<String, ToIntFunction<SplittableRandom>>();
+        long first = BATCH_SIZE;
+        reads.put("journal range " + RANGE, random -> {
+            long from = first + random.nextInt(RECORDS - RANGE);
+            return journal.read(from, from + RANGE, EventJournalBenchmark::consume);
+        });
+        reads.put("findPage " + RANGE, random -> {
+            var after = saved.get(random.nextInt(RECORDS - RANGE - 1));
+            return eventRepository.findPage(EventFilter.none(), after.getIngestedAt(), after.getId(), RANGE).size();
+        });
+        reads.put("journal single", random -> {
+            long sequence = first + random.nextInt(RECORDS);
+            return journal.read(sequence, sequence + 1, EventJournalBenchmark::consume);
+        });
+        reads.put("findById", random -> eventRepository.findById(saved.get(random.nextInt(RECORDS)).getId())
+                .map(entity -> entity.getPayload().length > 0 ? 1 : 0).orElse(0));
+        for (var read : reads.entrySet()) {
+            var histogram = measure(read.getValue());
+            report.append(String.format("%-20s %10.1f %10.1f %10.1f%n", read.getKey(), histogram.getValueAtPercentile(50) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0, histogram.getMaxValue() / 1000.0));
+        }
+        journal.close();
+        logger.info("Event journal benchmark ({} events in polls of {}, {} reads):{}", RECORDS, BATCH_SIZE, SAMPLES, report);
+    }
+
+    private EventJournal journal(String name) throws Exception {
+        return new EventJournal(Files.createDirectories(dir.resolve(name)), 64 * 1024 * 1024, 4096, Duration.ZERO, 0,
+                Clock.systemUTC());
+    }
+
+    /**
+     * Scrive un poll di warmup, non misurato, poi {@link #RECORDS} eventi con id {@code <name>-<n>}.
+     */
+    private void write(StringBuilder report, String name, Consumer<List<ConsumerRecord<String, RawEvent>>> sink) {
+        sink.accept(records("warmup-" + name, 0, BATCH_SIZE));
+        long start = System.nanoTime();
+        for (int from = 0; from < RECORDS; from += BATCH_SIZE) {
+            sink.accept(records(name, from, Math.min(from + BATCH_SIZE, RECORDS)));
+        }
+        long nanos = System.nanoTime() - start;
+        report.append(String.format("%-14s %8d %10d %12.0f%n", name, RECORDS, TimeUnit.NANOSECONDS.toMillis(nanos),
+                RECORDS * 1e9 / nanos));
+    }
+
+    private static void append(EventJournal journal, List<ConsumerRecord<String, RawEvent>> poll, boolean force) {
+        for (var record : poll) {
+            var event = record.value();
+            journal.append(event.id(), event.type(), record.partition(), record.offset(), event.payload());
+        }
+        if (force) {
+            journal.flush();
+        }
+    }
+
+    private Histogram measure(ToIntFunction<SplittableRandom> read) {
+        var random = new SplittableRandom(42);
+        var histogram = new Histogram(TimeUnit.SECONDS.toNanos(10), 3);
+        for (int i = 0; i < WARMUP + SAMPLES; i++) {
+            long start = System.nanoTime();
+            int found = read.applyAsInt(random);
+            long elapsed = System.nanoTime() - start;
+            assertThat(found).isPositive();
+            if (i >= WARMUP) {
+                histogram.recordValue(elapsed);
+            }
+        }
+        return histogram;
+    }
+
+    private static void consume(JournalEntry entry) {
+        // il payload resta sul file mappato: si legge un byte per non lasciare la voce inutilizzata
+        if (entry.payload().remaining() > 0 && entry.payload().get(0) != '{') {
+            throw new IllegalStateException("Unexpected payload for " + entry.id());
+        }
+    }
+
+    private static List<ConsumerRecord<String, RawEvent>> records(String prefix, int from, int to) {
+        var records = new ArrayList<ConsumerRecord<String, RawEvent>>(to - from);
+        for (int i = from; i < to; i++) {
+            var userId = "u" + (i / 50);
+            var payload = "{\"userId\":\"" + userId + "\",\"seq\":" + i + ",\"source\":\"benchmark\",\"amount\":" + (i % 1000) + "}";
+            records.add(new ConsumerRecord<>("events-topic", 0, i, prefix + "-" + i, new RawEvent(prefix + "-" + i,
+                    "type-" + (i % 16), payload.getBytes(StandardCharsets.UTF_8), Map.of("userId", userId))));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,149 @@
+package it.alf.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.HdrHistogram.Histogram;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+
+import it.alf.dto.EventPage;
+import it.alf.repository.EventFilter;
+import it.alf.repository.GenericEventRepository;
+import it.alf.service.EventQueryService;
+
+/**
+ * Latenza delle query di {@code GET /api/events} al crescere della tabella {@code events}.
+ *
+ * La tabella viene riempita a passi fino a ogni dimensione di {@code query.sizes} (default 10k, 100k e 1M eventi,
+ * inseriti via JDBC batch: un evento al millisecondo, {@value #TYPES} tipi a rotazione, {@value #EVENTS_PER_USER}
+ * eventi consecutivi per utente). A ogni passo vengono eseguite {@code query.samples} pagine di
+ * {@value #PAGE_SIZE} eventi per ciascuna forma di query, con posizioni casuali, e vengono riportati p50/p99/max:
+ * - {@code first-page}: nessun filtro, prima pagina
+ * - {@code deep-page}: nessun filtro, cursore in un punto casuale della tabella
+ * - {@code type+window}: un tipo e una finestra di un'ora
+ * - {@code payload-key}: gli eventi di un utente ({@code key=userId})
+ * Le query passano da {@link EventQueryService}, senza HTTP. Con gli indici di {@code events} la latenza resta
+ * circa costante tra le dimensioni.
+ * Si esegue con {@code mvn test -Pbenchmark -Dtest=EventQueryBenchmark [-Dquery.sizes=10000,100000,1000000]}.
+ */
+@SpringBootTest(properties = {"spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}"})
+@EmbeddedKafka(partitions = 1, topics = {"events-topic"})
+// il database in memoria viene eliminato con il contesto: più rapido che cancellare milioni di righe
+@DirtiesContext
+public class EventQueryBenchmark {
+
+    private static final int[] SIZES = Arrays.stream(System.getProperty("query.sizes", "10000,100000,1000000").split(","))
+            .mapToInt(Integer::parseInt).toArray();
+    private static final int SAMPLES = Integer.getInteger("query.samples", 2000);
+    private static final int WARMUP = 1000;
+    private static final int PAGE_SIZE = 100;
+    private static final int TYPES = 16;
+    private static final int EVENTS_PER_USER = 50;
+    private static final int INSERT_BATCH = 5_000;
+    private static final Instant START = Instant.parse("2025-01-01T00:00:00Z");
+
+    private final Logger logger = LoggerFactory.getLogger(EventQueryBenchmark.class);
+
+    @Autowired
+    private EventQueryService eventQueryService;
+
+    @Autowired
+    private GenericEventRepository eventRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void queryLatencyByTableSize() {
+        eventRepository.deleteAll();
+        var report = new StringBuilder(String.format("%n%-10s %-12s %10s %10s %10s%n", "rows", "query", "p50 (us)", "p99 (us)", "max (us)"));
+        int loaded = 0;
+        for (int size : SIZES) {
+            long start = System.nanoTime();
+            insert(loaded, size);
+            loaded = size;
+            logger.info("Loaded {} events in {} ms", size, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            for (var shape : shapes(size).entrySet()) {
+                var histogram = measure(shape.getValue());
+                report.append(String.format("%-10d %-12s %10.1f %10.1f %10.1f%n", size, shape.getKey(),
+                        histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(99) / 1000.0,
+                        histogram.getMaxValue() / 1000.0));
+            }
+        }
+        logger.info("Event query benchmark ({} pages of {} events per query and size):{}", SAMPLES, PAGE_SIZE, report);
+    }
+
+    private Map<String, Function<SplittableRandom, EventPage>> shapes(int size) {
+        var shapes = new LinkedHashMap<String, Function<SplittableRandom, EventPage>>();
+        shapes.put("first-page", random -> eventQueryService.page(EventFilter.none(), null, PAGE_SIZE));
+        shapes.put("deep-page", random -> {
+            int i = random.nextInt(size - PAGE_SIZE);
+            return eventQueryService.page(EventFilter.none(), EventQueryService.cursor(at(i), id(i)), PAGE_SIZE);
+        });
+        shapes.put("type+window", random -> {
+            var from = at(random.nextInt(size));
+            return eventQueryService.page(new EventFilter("type-" + random.nextInt(TYPES), from, from.plusSeconds(3600), null, null),
+                    null, PAGE_SIZE);
+        });
+        shapes.put("payload-key", random -> eventQueryService.page(
+                new EventFilter(null, null, null, "userId", "u" + random.nextInt(size / EVENTS_PER_USER)), null, PAGE_SIZE));
+        return shapes;
+    }
+
+    private Histogram measure(Function<SplittableRandom, EventPage> query) {
+        var random = new SplittableRandom(42);
+        var histogram = new Histogram(TimeUnit.SECONDS.toNanos(10), 3);
+        for (int i = 0; i < WARMUP + SAMPLES; i++) {
+            long start = System.nanoTime();
+            var page = query.apply(random);
+            long elapsed = System.nanoTime() - start;
+            assertThat(page.getItems()).isNotEmpty();
+            if (i >= WARMUP) {
+                histogram.recordValue(elapsed);
+            }
+        }
+        return histogram;
+    }
+
+    private void insert(int from, int to) {
+        for (int batchStart = from; batchStart < to; batchStart += INSERT_BATCH) {
+            List<Object[]> events = new ArrayList<>(INSERT_BATCH);
+            List<Object[]> keys = new ArrayList<>(INSERT_BATCH);
+            for (int i = batchStart; i < Math.min(batchStart + INSERT_BATCH, to); i++) {
+                var userId = "u" + (i / EVENTS_PER_USER);
+                var payload = "{\"userId\":\"" + userId + "\",\"seq\":" + i + ",\"source\":\"benchmark\"}";
+                events.add(new Object[] {id(i), "type-" + (i % TYPES), Timestamp.from(at(i)), 0, (long) i,
+                        payload.getBytes(StandardCharsets.UTF_8), "JSON"});
+                keys.add(new Object[] {id(i), "userId", userId});
+            }
+            jdbcTemplate.batchUpdate("insert into events (id, type, ingested_at, kafka_partition, kafka_offset, payload, payload_encoding)"
+                    + " values (?, ?, ?, ?, ?, ?, ?)", events);
+            jdbcTemplate.batchUpdate("insert into event_keys (event_id, key_name, key_value) values (?, ?, ?)", keys);
+        }
+    }
+
+    private static String id(int i) {
+        return String.format("bench-%09d", i);
+    }
+
+    private static Instant at(int i) {
+        return START.plusMillis(i);
+    }
+}
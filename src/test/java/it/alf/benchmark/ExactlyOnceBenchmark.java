@@ -0,0 +1,128 @@
+package it.alf.benchmark;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+
+import it.alf.KafkaSpringBootApplication;
+import it.alf.dto.Order;
+import it.alf.repository.NotificationRepository;
+import it.alf.repository.OrderRepository;
+
+/**
+ * Costo dell'exactly-once sul flusso ordine → notifica ({@code app.kafka.topics.orders.confirmations}).
+ *
+ * Per ogni combinazione di modalità ({@code at-least-once}, {@code exactly-once}) e di {@code max-poll-records}
+ * viene avviata l'applicazione su un broker embedded nuovo e vengono pubblicati {@code eos.records} ordini, che
+ * l'applicazione consuma, salva e trasforma in una notifica ciascuno; le notifiche vengono a loro volta salvate dal
+ * listener delle notifiche (in {@code read_committed}). Il throughput è misurato dal primo ordine salvato all'ultima notifica
+ * salvata: in exactly-once ogni poll costa una transazione (registrazione delle partizioni, invio degli offset, commit
+ * e marker), quindi il costo per record scende al crescere dei record per poll.
+ * Si esegue con {@code mvn test -Pbenchmark -Dtest=ExactlyOnceBenchmark [-Deos.records=20000]}.
+ */
+public class ExactlyOnceBenchmark {
+
+    private static final int RECORDS = Integer.getInteger("eos.records", 20_000);
+    private static final List<Integer> POLL_SIZES = List.of(50, 500);
+
+    private final Logger logger = LoggerFactory.getLogger(ExactlyOnceBenchmark.class);
+
+    @Test
+    void throughputByDeliveryGuarantee() throws Exception {
+        // warmup JIT, non misurato
+        run(false, 500, Math.min(RECORDS, 5_000));
+
+        var report = new StringBuilder(String.format("%n%-14s %10s %10s %12s %12s%n", "mode", "poll size", "records", "ms", "records/s"));
+        for (int pollSize : POLL_SIZES) {
+            for (boolean exactlyOnce : new boolean[] {false, true}) {
+                long elapsed = run(exactlyOnce, pollSize, RECORDS);
+                report.append(String.format("%-14s %10d %10d %12d %12d%n", exactlyOnce ? "exactly-once" : "at-least-once",
+                        pollSize, RECORDS, elapsed, Math.round(RECORDS / (elapsed / 1000.0))));
+            }
+        }
+        logger.info("Exactly-once benchmark (orders -> notifications, {} records per run):{}", RECORDS, report);
+    }
+
+    /**
+     * @return millisecondi dal primo ordine salvato all'ultima notifica salvata
+     */
+    private long run(boolean exactlyOnce, int pollSize, int records) throws Exception {
+        var broker = new EmbeddedKafkaKraftBroker(1, 1, "orders-topic", "notifications-topic", "dlq-topic")
+                // log delle transazioni su un solo broker: con il default (3 repliche) initTransactions() scade
+                .brokerProperties(Map.of(
+                        "transaction.state.log.replication.factor", "1",
+                        "transaction.state.log.min.isr", "1",
+                        "transaction.state.log.num.partitions", "1"));
+        broker.afterPropertiesSet();
+        try {
+            var context = new SpringApplicationBuilder(KafkaSpringBootApplication.class)
+                    .web(WebApplicationType.NONE)
+                    // argomenti da riga di comando: le default properties perderebbero contro application.yml
+                    .run("--spring.kafka.bootstrap-servers=" + broker.getBrokersAsString(),
+                            "--spring.datasource.url=jdbc:h2:mem:eos-" + System.nanoTime(),
+                            "--spring.devtools.restart.enabled=false",
+                            "--app.kafka.consumer.max-poll-records=" + pollSize,
+                            "--app.kafka.topics.orders.confirmations.enabled=true",
+                            "--app.kafka.topics.orders.confirmations.exactly-once=" + exactlyOnce);
+            try {
+                // i consumer partono dalla fine del topic: gli ordini vanno pubblicati dopo l'assegnazione di entrambi i gruppi
+                var registry = context.getBean(KafkaListenerEndpointRegistry.class);
+                for (var group : List.of("orders-group", "notifications-group")) {
+                    ContainerTestUtils.waitForAssignment(registry.getListenerContainers().stream()
+                            .filter(c -> group.equals(c.getContainerProperties().getGroupId())).findFirst().orElseThrow(), 1);
+                }
+                produceOrders(broker.getBrokersAsString(), records);
+                var orders = context.getBean(OrderRepository.class);
+                var notifications = context.getBean(NotificationRepository.class);
+                Instant deadline = Instant.now().plus(Duration.ofMinutes(5));
+                while (orders.count() == 0 && Instant.now().isBefore(deadline)) {
+                    Thread.sleep(5);
+                }
+                long start = System.nanoTime();
+                while (notifications.count() < records && Instant.now().isBefore(deadline)) {
+                    Thread.sleep(5);
+                }
+                long elapsed = Duration.ofNanos(System.nanoTime() - start).toMillis();
+                assertThat(orders.count()).isEqualTo(records);
+                assertThat(notifications.count()).isEqualTo(records);
+                return elapsed;
+            } finally {
+                context.close();
+            }
+        } finally {
+            broker.destroy();
+        }
+    }
+
+    private static void produceOrders(String bootstrapServers, int records) {
+        var factory = new DefaultKafkaProducerFactory<String, Object>(Map.of(
+                ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers,
+                ProducerConfig.LINGER_MS_CONFIG, 20),
+                new StringSerializer(), new JsonSerializer<>());
+        try {
+            var template = new KafkaTemplate<>(factory);
+            for (int i = 0; i < records; i++) {
+                template.send("orders-topic", "eos-o" + i, new Order("eos-o" + i, "user-" + (i % 100), "product-" + (i % 10), i));
+            }
+            template.flush();
+        } finally {
+            factory.destroy();
+        }
+    }
+}
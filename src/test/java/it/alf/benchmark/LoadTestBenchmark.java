@@ -0,0 +1,280 @@
+package it.alf.benchmark;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+
+import it.alf.dto.GenericEvent;
+import it.alf.dto.Notification;
+import it.alf.dto.Order;
+import it.alf.dto.User;
+import it.alf.entity.GenericEventEntity;
+import it.alf.entity.NotificationEntity;
+import it.alf.entity.OrderEntity;
+import it.alf.entity.UserEntity;
+import it.alf.producer.EventProducer;
+import it.alf.producer.NotificationProducer;
+import it.alf.producer.OrderProducer;
+import it.alf.producer.UserProducer;
+import it.alf.repository.GenericEventRepository;
+import it.alf.repository.NotificationRepository;
+import it.alf.repository.OrderRepository;
+import it.alf.repository.UserRepository;
+
+/**
+ * Load test end-to-end contro il broker embedded: producer → Kafka → listener → database, per ogni pipeline.
+ *
+ * Un generatore per pipeline invia record tramite i producer dell'applicazione a frequenza costante
+ * ({@code load.rate} record/s per pipeline, per {@code load.duration} secondi dopo {@code load.warmup} secondi
+ * di riscaldamento). La latenza produce→persist viene misurata dall'istante in cui il record <em>doveva</em> essere
+ * inviato secondo la frequenza impostata fino al ritorno di {@code save}/{@code saveAll} del repository: un generatore
+ * in ritardo non nasconde così le attese (coordinated omission). Le latenze sono raccolte con HdrHistogram.
+ *
+ * Per ogni pipeline vengono riportati throughput (record persistiti/s) e p50/p99/p999/max, e la distribuzione
+ * completa viene scritta in {@code target/load-test/<pipeline>.hgrm} (formato HistogramLogAnalyzer/plotter).
+ * I topic vengono creati dall'applicazione con partizioni e concorrenza di {@code app.kafka.topics.*}, quindi
+ * sono sovrascrivibili da riga di comando:
+ * {@code mvn test -Pbenchmark -Dtest=LoadTestBenchmark -Dload.rate=5000 -Dload.pipelines=orders}.
+ */
+@SpringBootTest(properties = {"spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}"})
+@EmbeddedKafka
+public class LoadTestBenchmark {
+
+    private static final int RATE = Integer.getInteger("load.rate", 1000);
+    private static final int DURATION_SECONDS = Integer.getInteger("load.duration", 20);
+    private static final int WARMUP_SECONDS = Integer.getInteger("load.warmup", 5);
+    private static final List<String> PIPELINES = Arrays.asList(System.getProperty("load.pipelines", "users,orders,notifications,events").split(","));
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final Path REPORT_DIR = Path.of("target", "load-test");
+
+    /** pipeline in esecuzione per nome, notificate da {@link PersistProbe} */
+    private static final Map<String, Pipeline> ACTIVE = new ConcurrentHashMap<>();
+
+    private final Logger logger = LoggerFactory.getLogger(LoadTestBenchmark.class);
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    private UserProducer userProducer;
+
+    @Autowired
+    private OrderProducer orderProducer;
+
+    @Autowired
+    private NotificationProducer notificationProducer;
+
+    @Autowired
+    private EventProducer eventProducer;
+
+    /**
+     * Registra l'istante di persistenza di ogni entità: avvolge i repository in un proxy che, dopo il ritorno
+     * di {@code save}/{@code saveAll}, notifica la pipeline corrispondente con gli id salvati.
+     */
+    @TestConfiguration
+    static class PersistProbeConfig {
+        @Bean
+        static BeanPostProcessor persistProbe() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    for (var type : List.of(UserRepository.class, OrderRepository.class, NotificationRepository.class, GenericEventRepository.class)) {
+                        if (type.isInstance(bean)) {
+                            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new PersistProbe(bean)));
+                        }
+                    }
+                    return bean;
+                }
+            };
+        }
+    }
+
+    private record PersistProbe(Object target) implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            switch (method.getName()) {
+                case "save" -> persisted(args[0]);
+                case "saveAll" -> ((Iterable<?>) args[0]).forEach(LoadTestBenchmark::persisted);
+                default -> { }
+            }
+            return result;
+        }
+    }
+
+    private static void persisted(Object entity) {
+        long now = System.nanoTime();
+        String id = switch (entity) {
+            case UserEntity e -> e.getId();
+            case OrderEntity e -> e.getId();
+            case NotificationEntity e -> e.getId();
+            case GenericEventEntity e -> e.getId();
+            default -> null;
+        };
+        // id nel formato load-<pipeline>-<fase>-<n>
+        if (id == null || !id.startsWith("load-")) {
+            return;
+        }
+        var pipeline = ACTIVE.get(id.substring(5, id.indexOf('-', 5)));
+        if (pipeline != null) {
+            pipeline.persisted(id, now);
+        }
+    }
+
+    private static final class Pipeline {
+        final String name;
+        final Function<String, CompletableFuture<?>> sender;
+        /** record inviati e non ancora persistiti: id → istante di invio previsto (nanoTime) */
+        final Map<String, Long> pending = new ConcurrentHashMap<>();
+        // da 1 µs a 60 s con 3 cifre significative
+        final ConcurrentHistogram latencies = new ConcurrentHistogram(1_000, TimeUnit.SECONDS.toNanos(60), 3);
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong lastPersist = new AtomicLong();
+        volatile long start;
+
+        Pipeline(String name, Function<String, CompletableFuture<?>> sender) {
+            this.name = name;
+            this.sender = sender;
+        }
+
+        void persisted(String id, long now) {
+            Long intended = pending.remove(id);
+            if (intended != null) {
+                latencies.recordValue(Math.min(Math.max(now - intended, 1_000), latencies.getHighestTrackableValue()));
+                lastPersist.accumulateAndGet(now, Math::max);
+            }
+        }
+
+        void reset() {
+            latencies.reset();
+            failures.set(0);
+        }
+
+        /**
+         * Invia {@code RATE * seconds} record a intervalli regolari e attende che siano tutti persistiti.
+         */
+        void run(String phase, int seconds) {
+            long interval = TimeUnit.SECONDS.toNanos(1) / RATE;
+            int count = RATE * seconds;
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                long intended = start + i * interval;
+                long now;
+                while ((now = System.nanoTime()) < intended) {
+                    LockSupport.parkNanos(intended - now);
+                }
+                String id = "load-" + name + "-" + phase + "-" + i;
+                pending.put(id, intended);
+                sender.apply(id).whenComplete((result, error) -> {
+                    if (error != null && pending.remove(id) != null) {
+                        failures.incrementAndGet();
+                    }
+                });
+            }
+            long deadline = System.nanoTime() + DRAIN_TIMEOUT_NANOS;
+            while (!pending.isEmpty() && System.nanoTime() < deadline) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+            }
+        }
+    }
+
+    @Test
+    void sustainedLoad() throws Exception {
+        registry.getListenerContainers().forEach(c -> ContainerTestUtils.waitForAssignment(c,
+                c instanceof ConcurrentMessageListenerContainer<?, ?> cc ? cc.getConcurrency() : 1));
+
+        var pipelines = new LinkedHashMap<String, Pipeline>();
+        for (var name : PIPELINES) {
+            var pipeline = new Pipeline(name, sender(name.trim()));
+            pipelines.put(pipeline.name, pipeline);
+            ACTIVE.put(pipeline.name, pipeline);
+        }
+
+        runAll(pipelines.values(), "warmup", WARMUP_SECONDS);
+        pipelines.values().forEach(Pipeline::reset);
+        runAll(pipelines.values(), "run", DURATION_SECONDS);
+
+        Files.createDirectories(REPORT_DIR);
+        var report = new StringBuilder(String.format("%n%-14s %10s %10s %12s %10s %10s %10s %10s%n",
+                "pipeline", "persisted", "failed", "records/s", "p50 (ms)", "p99 (ms)", "p999 (ms)", "max (ms)"));
+        for (var p : pipelines.values()) {
+            var h = p.latencies;
+            double seconds = (p.lastPersist.get() - p.start) / 1_000_000_000.0;
+            report.append(String.format("%-14s %10d %10d %12d %10.2f %10.2f %10.2f %10.2f%n", p.name,
+                    h.getTotalCount(), p.failures.get(), Math.round(h.getTotalCount() / seconds),
+                    ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(99)), ms(h.getValueAtPercentile(99.9)), ms(h.getMaxValue())));
+            try (var out = new PrintStream(Files.newOutputStream(REPORT_DIR.resolve(p.name + ".hgrm")))) {
+                h.outputPercentileDistribution(out, 1_000_000.0);
+            }
+        }
+        logger.info("Load test: {} records/s per pipeline for {}s (latency from scheduled send to persist):{}",
+                RATE, DURATION_SECONDS, report);
+        ACTIVE.clear();
+
+        for (var p : pipelines.values()) {
+            assertThat(p.pending).as("%s records not persisted within timeout", p.name).isEmpty();
+            assertThat(p.failures.get()).as("%s send failures", p.name).isZero();
+            assertThat(p.latencies.getTotalCount()).isEqualTo((long) RATE * DURATION_SECONDS);
+        }
+    }
+
+    private static void runAll(Iterable<Pipeline> pipelines, String phase, int seconds) throws InterruptedException {
+        var threads = new ArrayList<Thread>();
+        for (var p : pipelines) {
+            threads.add(Thread.ofPlatform().name("load-" + p.name).start(() -> p.run(phase, seconds)));
+        }
+        for (var t : threads) {
+            t.join();
+        }
+    }
+
+    private Function<String, CompletableFuture<?>> sender(String pipeline) {
+        return switch (pipeline) {
+            case "users" -> id -> userProducer.send(new User(id, "Load User", id + "@example.com"));
+            case "orders" -> id -> orderProducer.send(new Order(id, "load-user", "Mechanical keyboard", 129.90));
+            case "notifications" -> id -> notificationProducer.send(new Notification(id, "Your order has been shipped", "INFO"));
+            case "events" -> id -> eventProducer.send(new GenericEvent(id, "user.signup", Map.of("userId", id, "plan", "pro", "seats", 5)));
+            default -> throw new IllegalArgumentException("Unknown pipeline: " + pipeline);
+        };
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
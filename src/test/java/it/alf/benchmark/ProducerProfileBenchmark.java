@@ -0,0 +1,73 @@
+package it.alf.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+
+import it.alf.config.ProducerProfiles;
+import it.alf.dto.User;
+
+/**
+ * Benchmark dei profili del producer contro il broker embedded.
+ *
+ * Per ogni profilo invia {@link #RECORDS} record in modo asincrono e misura il throughput (record/s fino
+ * all'ack dell'ultimo) e la latenza di ogni invio (da {@code send} al completamento del future), riportando p50/p99.
+ * Non fa parte della suite di default: si esegue con {@code mvn test -Pbenchmark -Dtest=ProducerProfileBenchmark}.
+ */
+@SpringBootTest(properties = {"spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}"})
+@EmbeddedKafka(partitions = 3, topics = {ProducerProfileBenchmark.TOPIC})
+public class ProducerProfileBenchmark {
+
+    static final String TOPIC = "producer-benchmark-topic";
+    private static final int WARMUP = 2_000;
+    private static final int RECORDS = 50_000;
+
+    private final Logger logger = LoggerFactory.getLogger(ProducerProfileBenchmark.class);
+
+    @Autowired
+    private ProducerProfiles producerProfiles;
+
+    @Test
+    void compareProducerProfiles() {
+        var report = new StringBuilder(String.format("%n%-16s %12s %12s %12s%n", "profile", "records/s", "p50 (ms)", "p99 (ms)"));
+        producerProfiles.templates().forEach((profile, template) -> {
+            run(template, WARMUP, "warmup-" + profile);
+            var latencies = run(template, RECORDS, profile);
+            long elapsed = latencies[RECORDS];
+            Arrays.sort(latencies, 0, RECORDS);
+            report.append(String.format("%-16s %12d %12.2f %12.2f%n", profile,
+                    Math.round(RECORDS / (elapsed / 1_000_000_000.0)),
+                    latencies[(int) (RECORDS * 0.50)] / 1_000_000.0,
+                    latencies[(int) (RECORDS * 0.99)] / 1_000_000.0));
+        });
+        logger.info("Producer profile benchmark ({} records each):{}", RECORDS, report);
+    }
+
+    /**
+     * @return le latenze in nanosecondi dei singoli invii; l'ultimo elemento contiene la durata totale
+     */
+    private long[] run(KafkaTemplate<String, Object> template, int count, String prefix) {
+        var latencies = new long[count + 1];
+        var futures = new CompletableFuture<?>[count];
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            var user = new User(prefix + "-" + i, "User " + i, "user" + i + "@example.com");
+            long sentAt = System.nanoTime();
+            futures[i] = template.send(TOPIC, user.getId(), user)
+                    .whenComplete((result, error) -> latencies[index] = System.nanoTime() - sentAt);
+        }
+        CompletableFuture.allOf(futures).join();
+        latencies[count] = System.nanoTime() - start;
+        assertThat(futures).allMatch(f -> !f.isCompletedExceptionally());
+        return latencies;
+    }
+}
@@ -0,0 +1,152 @@
+package it.alf.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+
+import it.alf.codec.RawEvent;
+import it.alf.config.KafkaTopicsProperties;
+import it.alf.consumer.BatchPersister;
+import it.alf.consumer.EventListener;
+import it.alf.consumer.NotificationListener;
+import it.alf.consumer.OrderListener;
+import it.alf.consumer.UserListener;
+import it.alf.dto.Notification;
+import it.alf.dto.Order;
+import it.alf.dto.User;
+import it.alf.repository.GenericEventRepository;
+import it.alf.repository.NotificationRepository;
+import it.alf.repository.OrderRepository;
+import it.alf.repository.UserRepository;
+
+/**
+ * Righe al secondo scritte da {@link BatchPersister} con {@code writer: jpa} ({@code saveAll}, cioè una merge JPA
+ * per entità) e con {@code writer: jdbc} ({@code MERGE} a batch di {@link it.alf.repository.JdbcUpsertWriter}).
+ *
+ * Per ogni pipeline e writer vengono scritte {@code upsert.records} entità nuove in poll da {@value #BATCH_SIZE}
+ * ({@code insert}), poi le stesse entità con valori cambiati ({@code update}). La deduplicazione è disattivata, così
+ * ogni record arriva al writer. Le chiamate JDBC vengono contate dal proxy sul DataSource di {@link DedupeBenchmark}:
+ * con JPA ogni entità costa la select della merge, con il {@code MERGE} resta un round trip per batch.
+ * Si esegue con {@code mvn test -Pbenchmark -Dtest=UpsertBenchmark [-Dupsert.records=20000]}.
+ */
+@SpringBootTest(properties = {"spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}"})
+@EmbeddedKafka(partitions = 1, topics = {"users-topic"})
+@Import(DedupeBenchmark.CountingDataSourceConfig.class)
+@DirtiesContext
+public class UpsertBenchmark {
+
+    private static final int RECORDS = Integer.getInteger("upsert.records", 20_000);
+    private static final int BATCH_SIZE = 500;
+    private static final List<String> PIPELINES = List.of("users", "orders", "notifications", "events");
+
+    private final Logger logger = LoggerFactory.getLogger(UpsertBenchmark.class);
+
+    @Autowired
+    private BatchPersister batchPersister;
+
+    @Autowired
+    private KafkaTopicsProperties topics;
+
+    @Autowired
+    private EventListener eventListener;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private NotificationRepository notificationRepository;
+
+    @Autowired
+    private GenericEventRepository eventRepository;
+
+    @Autowired
+    private DedupeBenchmark.JdbcCounter jdbcCounter;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void rowsPerSecondByWriter() {
+        var report = new StringBuilder(String.format("%n%-14s %-6s %-7s %8s %10s %12s %10s%n",
+                "pipeline", "writer", "phase", "rows", "ms", "rows/s", "trips/row"));
+        for (String pipeline : PIPELINES) {
+            var topic = topics.get(pipeline);
+            String dedupe = topic.getDedupe();
+            String writer = topic.getWriter();
+            topic.setDedupe("none");
+            for (String mode : List.of("jpa", "jdbc")) {
+                topic.setWriter(mode);
+                // warmup JIT e pool di connessioni, non misurato
+                write(pipeline, "warmup-" + mode, 0);
+                write(pipeline, "warmup-" + mode, 1);
+                for (int version = 0; version < 2; version++) {
+                    jdbcCounter.reset();
+                    long start = System.nanoTime();
+                    write(pipeline, mode, version);
+                    long nanos = System.nanoTime() - start;
+                    report.append(String.format("%-14s %-6s %-7s %8d %10d %12.0f %10.3f%n", pipeline, mode,
+                            version == 0 ? "insert" : "update", RECORDS, TimeUnit.NANOSECONDS.toMillis(nanos),
+                            RECORDS * 1e9 / nanos, (double) jdbcCounter.roundTrips.get() / RECORDS));
+                }
+                assertThat(jdbcTemplate.queryForObject("select count(*) from " + pipeline + " where id like ?", Long.class,
+                        mode + "-%")).isEqualTo(RECORDS);
+            }
+            topic.setDedupe(dedupe);
+            topic.setWriter(writer);
+        }
+        logger.info("Upsert benchmark ({} rows per run, polls of {}):{}", RECORDS, BATCH_SIZE, report);
+    }
+
+    /**
+     * Scrive {@link #RECORDS} entità con id {@code prefix-<n>}; {@code version} cambia i valori delle colonne.
+     */
+    private void write(String pipeline, String prefix, int version) {
+        for (int from = 0; from < RECORDS; from += BATCH_SIZE) {
+            int to = Math.min(from + BATCH_SIZE, RECORDS);
+            switch (pipeline) {
+                case "users" -> batchPersister.persist("users", records(pipeline, from, to,
+                        i -> new User(prefix + "-" + i, "User " + i + " v" + version, "u" + i + "@example.com")),
+                        UserListener::toEntity, userRepository);
+                case "orders" -> batchPersister.persist("orders", records(pipeline, from, to,
+                        i -> new Order(prefix + "-" + i, "user-" + (i % 100), "product-" + (i % 10), i + version)),
+                        OrderListener::toEntity, orderRepository);
+                case "notifications" -> batchPersister.persist("notifications", records(pipeline, from, to,
+                        i -> new Notification(prefix + "-" + i, "Message " + i + " v" + version, version == 0 ? "INFO" : "WARN")),
+                        NotificationListener::toEntity, notificationRepository);
+                case "events" -> batchPersister.persistRecords("events", records(pipeline, from, to,
+                        i -> new RawEvent(prefix + "-" + i, "type-" + (i % 5),
+                                ("{\"userId\":\"user-" + (i % 100) + "\",\"version\":" + version + "}").getBytes(StandardCharsets.UTF_8),
+                                Map.of("userId", "user-" + (i % 100)))),
+                        eventListener::toEntity, eventRepository);
+                default -> throw new IllegalArgumentException(pipeline);
+            }
+        }
+    }
+
+    private <V> List<ConsumerRecord<String, V>> records(String pipeline, int from, int to, IntFunction<V> value) {
+        var records = new ArrayList<ConsumerRecord<String, V>>(to - from);
+        for (int i = from; i < to; i++) {
+            var record = value.apply(i);
+            records.add(new ConsumerRecord<>(topics.get(pipeline).getName(), 0, i, String.valueOf(i), record));
+        }
+        return records;
+    }
+}
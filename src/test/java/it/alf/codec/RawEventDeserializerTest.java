@@ -0,0 +1,85 @@
+package it.alf.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import it.alf.dto.GenericEvent;
+
+class RawEventDeserializerTest {
+    private final InMemorySchemaRegistry registry = new InMemorySchemaRegistry();
+    private final RawEventDeserializer deserializer = new RawEventDeserializer(List.of("userId", "orderId", "tags"), registry);
+
+    @Test
+    void jsonPayloadIsCopiedByteForByteAndKeysAreExtracted() {
+        var json = """
+                {"id":"e1","type":"order.created","payload":{"userId":"u1", "orderId":42,"meta":{"userId":"nested"},"tags":["a"],"note":"x"},"extra":true}""";
+
+        var event = deserializer.deserialize("events-topic", json.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(event.id()).isEqualTo("e1");
+        assertThat(event.type()).isEqualTo("order.created");
+        assertThat(new String(event.payload(), StandardCharsets.UTF_8))
+                .isEqualTo("{\"userId\":\"u1\", \"orderId\":42,\"meta\":{\"userId\":\"nested\"},\"tags\":[\"a\"],\"note\":\"x\"}");
+        // solo valori scalari di primo livello: la lista "tags" e la chiave annidata non vengono estratte
+        assertThat(event.keys()).containsExactlyInAnyOrderEntriesOf(Map.of("userId", "u1", "orderId", "42"));
+    }
+
+    @Test
+    void nullPayloadAndUnknownFieldsAreTolerated() {
+        var event = deserializer.deserialize("events-topic", "{\"type\":\"ping\",\"payload\":null,\"id\":\"e2\"}".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(event.id()).isEqualTo("e2");
+        assertThat(event.payload()).isNull();
+        assertThat(event.keys()).isEmpty();
+    }
+
+    @Test
+    void binaryEventsAreConvertedToJson() {
+        var event = new GenericEvent("e3", "user.signup", Map.of("userId", "u3", "seats", 5));
+        byte[] binary;
+        try (var serializer = new BinarySerializer<>(DtoCodecs.EVENT, registry, "events-topic")) {
+            binary = serializer.serialize("events-topic", event);
+        }
+
+        var raw = deserializer.deserialize("events-topic", binary);
+
+        assertThat(raw.id()).isEqualTo("e3");
+        assertThat(raw.keys()).containsExactlyEntriesOf(Map.of("userId", "u3"));
+        assertThat(raw.payloadJson()).contains("\"seats\":5");
+    }
+
+    @Test
+    void serializesWithTheGenericEventShape() {
+        var json = "{\"id\":\"e4\",\"type\":\"t\",\"payload\":{\"userId\":\"u4\",\"n\":[1,2]}}";
+        var raw = deserializer.deserialize("events-topic", json.getBytes(StandardCharsets.UTF_8));
+
+        try (var serializer = new JsonSerializer<RawEvent>(); var jsonDeserializer = new JsonDeserializer<>(GenericEvent.class, false)) {
+            byte[] written = serializer.serialize("dlq-topic", raw);
+            assertThat(new String(written, StandardCharsets.UTF_8)).isEqualTo(json);
+            assertThat(jsonDeserializer.deserialize("dlq-topic", written).getPayload()).containsEntry("userId", "u4");
+        }
+    }
+
+    @Test
+    void malformedJsonIsRejected() {
+        assertThatThrownBy(() -> deserializer.deserialize("events-topic", "{\"id\":".getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(SerializationException.class);
+    }
+
+    @Test
+    void deflateRoundTrip() {
+        var json = "{\"userId\":\"u1\",\"text\":\"" + "abc".repeat(200) + "\"}";
+        var compressed = PayloadEncoding.DEFLATE.encode(json.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(compressed.length).isLessThan(json.length() / 4);
+        assertThat(new String(PayloadEncoding.DEFLATE.decode(compressed), StandardCharsets.UTF_8)).isEqualTo(json);
+    }
+}
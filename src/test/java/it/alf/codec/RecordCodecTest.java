@@ -0,0 +1,120 @@
+package it.alf.codec;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import it.alf.dto.GenericEvent;
+import it.alf.dto.Order;
+import it.alf.dto.User;
+import lombok.Data;
+
+class RecordCodecTest {
+
+    @Test
+    void dtosRoundTrip() {
+        var registry = new InMemorySchemaRegistry();
+        var user = new User("u1", "Alice", null);
+        var order = new Order("o1", "u1", "Book", 12.5);
+        var event = new GenericEvent("e1", "user.signup",
+                Map.of("userId", "u1", "attempts", 3L, "score", 0.5, "vip", true, "tags", List.of("a", "b"), "meta", Map.of("k", "v")));
+
+        assertThat(DtoCodecs.USER.decode(DtoCodecs.USER.encode(user), registry)).isEqualTo(user);
+        assertThat(DtoCodecs.ORDER.decode(DtoCodecs.ORDER.encode(order), registry)).isEqualTo(order);
+        assertThat(DtoCodecs.EVENT.decode(DtoCodecs.EVENT.encode(event), registry)).isEqualTo(event);
+    }
+
+    @Test
+    void binaryRecordIsSmallerThanJson() {
+        var user = new User("user-000123", "Alice Smith", "alice.smith@example.com");
+        try (var json = new JsonSerializer<User>()) {
+            assertThat(DtoCodecs.USER.encode(user).length).isLessThan(json.serialize("users-topic", user).length);
+        }
+    }
+
+    @Test
+    void readerResolvesFieldsOfOlderAndNewerWriterSchemas() {
+        var registry = new InMemorySchemaRegistry();
+        // v2 aggiunge "country" e rimuove "email"
+        var v1 = RecordCodec.builder(Customer.class, 1, Customer::new)
+                .string("id", Customer::getId, Customer::setId)
+                .string("email", Customer::getEmail, Customer::setEmail)
+                .build();
+        var v2 = RecordCodec.builder(Customer.class, 2, Customer::new)
+                .string("id", Customer::getId, Customer::setId)
+                .string("country", Customer::getCountry, Customer::setCountry)
+                .build();
+        registry.register("customers-value", v1.schema());
+        registry.register("customers-value", v2.schema());
+
+        var old = new Customer();
+        old.setId("c1");
+        old.setEmail("c1@example.com");
+        var decodedByNew = v2.decode(v1.encode(old), registry);
+        assertThat(decodedByNew.getId()).isEqualTo("c1");
+        assertThat(decodedByNew.getEmail()).isNull();
+
+        var recent = new Customer();
+        recent.setId("c2");
+        recent.setCountry("IT");
+        var decodedByOld = v1.decode(v2.encode(recent), registry);
+        assertThat(decodedByOld.getId()).isEqualTo("c2");
+        assertThat(decodedByOld.getCountry()).isNull();
+    }
+
+    @Test
+    void changingFieldTypeIsRejected(@TempDir Path dir) {
+        var v1 = RecordCodec.builder(Customer.class, 1, Customer::new)
+                .string("id", Customer::getId, Customer::setId)
+                .doubleField("score", Customer::getScore, Customer::setScore)
+                .build();
+        var v2 = RecordCodec.builder(Customer.class, 2, Customer::new)
+                .string("id", Customer::getId, Customer::setId)
+                .string("score", c -> String.valueOf(c.getScore()), (c, v) -> c.setScore(Double.parseDouble(v)))
+                .build();
+        for (SchemaRegistry registry : List.of(new InMemorySchemaRegistry(), new FileSchemaRegistry(dir))) {
+            registry.register("customers-value", v1.schema());
+            assertThatThrownBy(() -> registry.register("customers-value", v2.schema()))
+                    .isInstanceOf(IncompatibleSchemaException.class)
+                    .hasMessageContaining("score");
+        }
+    }
+
+    @Test
+    void fileRegistryIsSharedAcrossInstances(@TempDir Path dir) {
+        var writerSide = new FileSchemaRegistry(dir);
+        long id = writerSide.register("users-topic-value", DtoCodecs.USER.schema());
+
+        var readerSide = new FileSchemaRegistry(dir);
+        assertThat(readerSide.lookup(id)).isEqualTo(DtoCodecs.USER.schema());
+        assertThat(readerSide.lookup(id + 1)).isNull();
+    }
+
+    @Test
+    void deserializerFallsBackToJsonForLegacyRecords() {
+        var registry = new InMemorySchemaRegistry();
+        var user = new User("u1", "Alice", "alice@example.com");
+        try (var serializer = new BinarySerializer<>(DtoCodecs.USER, registry, "users-topic");
+             var deserializer = new BinaryDeserializer<>(DtoCodecs.USER, registry, new JsonDeserializer<>(User.class, false));
+             var json = new JsonSerializer<User>()) {
+            assertThat(deserializer.deserialize("users-topic", serializer.serialize("users-topic", user))).isEqualTo(user);
+            assertThat(deserializer.deserialize("users-topic", json.serialize("users-topic", user))).isEqualTo(user);
+            assertThat(deserializer.deserialize("users-topic", null)).isNull();
+        }
+    }
+
+    @Data
+    static class Customer {
+        private String id;
+        private String email;
+        private String country;
+        private double score;
+    }
+}
@@ -0,0 +1,74 @@
+package it.alf.consumer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+
+public class VirtualThreadDispatcherTest {
+
+    private final VirtualThreadDispatcher dispatcher = new VirtualThreadDispatcher(256);
+
+    @AfterEach
+    void shutdown() {
+        dispatcher.destroy();
+    }
+
+    @Test
+    void slowRecordsWithDifferentKeysRunConcurrentlyAndKeepPerKeyOrder() {
+        var records = new ArrayList<ConsumerRecord<String, Integer>>();
+        for (int i = 0; i < 400; i++) {
+            records.add(new ConsumerRecord<>("notifications-topic", 0, i, "key-" + (i % 100), i));
+        }
+        Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+
+        long start = System.nanoTime();
+        dispatcher.dispatch("notifications", records, record -> {
+            sleep(50);
+            seen.computeIfAbsent(record.key(), k -> new CopyOnWriteArrayList<>()).add(record.value());
+        });
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // 400 record da 50ms in sequenza richiederebbero 20s: 100 chiavi in parallelo ne richiedono circa 4 x 50ms
+        assertThat(elapsedMillis).isLessThan(5_000);
+        assertThat(seen).hasSize(100);
+        seen.values().forEach(values -> assertThat(values).isSorted().hasSize(4));
+    }
+
+    @Test
+    void failureReportsLowestFailedRecordAndStopsItsKey() {
+        var records = List.of(
+                new ConsumerRecord<>("users-topic", 0, 0L, "a", "ok"),
+                new ConsumerRecord<>("users-topic", 0, 1L, "b", "fail"),
+                new ConsumerRecord<>("users-topic", 0, 2L, "a", "fail"),
+                new ConsumerRecord<>("users-topic", 0, 3L, "b", "after-failure"));
+        var processed = new CopyOnWriteArrayList<Long>();
+
+        assertThatThrownBy(() -> dispatcher.dispatch("users", records, record -> {
+            if ("fail".equals(record.value())) {
+                throw new IllegalStateException("boom " + record.offset());
+            }
+            processed.add(record.offset());
+        }))
+                .isInstanceOf(BatchListenerFailedException.class)
+                .satisfies(e -> assertThat(((BatchListenerFailedException) e).getRecord()).isSameAs(records.get(1)));
+
+        assertThat(processed).containsExactly(0L);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
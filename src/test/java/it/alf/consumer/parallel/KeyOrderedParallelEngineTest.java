@@ -0,0 +1,181 @@
+package it.alf.consumer.parallel;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+@EmbeddedKafka(partitions = 1, topics = {KeyOrderedParallelEngineTest.TOPIC})
+public class KeyOrderedParallelEngineTest {
+
+    static final String TOPIC = "orders-parallel-topic";
+    private static final int RECORDS = 5000;
+    private static final int KEYS = 50;
+    private static final int MAX_IN_FLIGHT = 200;
+
+    @Test
+    void recordsWithSameKeyStayOrderedWhileDifferentKeysRunInParallel(EmbeddedKafkaBroker broker) throws Exception {
+        var producerProps = KafkaTestUtils.producerProps(broker);
+        var template = new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(producerProps, new StringSerializer(), new StringSerializer()));
+        for (int i = 0; i < RECORDS; i++) {
+            // valore = numero di sequenza all'interno della chiave
+            template.send(TOPIC, "user-" + (i % KEYS), String.valueOf(i / KEYS));
+        }
+        template.flush();
+
+        Map<String, List<Integer>> processed = new ConcurrentHashMap<>();
+        Set<String> activeKeys = ConcurrentHashMap.newKeySet();
+        var concurrent = new AtomicInteger();
+        var maxConcurrent = new AtomicInteger();
+        var sameKeyOverlap = new AtomicInteger();
+        var maxInFlight = new AtomicInteger();
+
+        var engine = new KeyOrderedParallelEngine<String, String>("orders-test", MAX_IN_FLIGHT, 16, 1, Duration.ZERO,
+                record -> {
+                    if (!activeKeys.add(record.key())) {
+                        sameKeyOverlap.incrementAndGet();
+                    }
+                    maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(ThreadLocalRandom.current().nextInt(2));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    processed.computeIfAbsent(record.key(), k -> new CopyOnWriteArrayList<>()).add(Integer.valueOf(record.value()));
+                    concurrent.decrementAndGet();
+                    activeKeys.remove(record.key());
+                },
+                (record, e) -> { });
+
+        var consumerProps = KafkaTestUtils.consumerProps("parallel-engine-test", "false", broker);
+        consumerProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        consumerProps.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 500);
+        var partition = new TopicPartition(TOPIC, 0);
+        try (engine; var consumer = new DefaultKafkaConsumerFactory<>(consumerProps, new StringDeserializer(), new StringDeserializer()).createConsumer()) {
+            broker.consumeFromAnEmbeddedTopic(consumer, TOPIC);
+            int received = 0;
+            Instant deadline = Instant.now().plus(Duration.ofSeconds(60));
+            while (Instant.now().isBefore(deadline)) {
+                for (ConsumerRecord<String, String> record : consumer.poll(Duration.ofMillis(100))) {
+                    engine.submit(record);
+                    maxInFlight.accumulateAndGet(engine.inFlight(), Math::max);
+                    received++;
+                }
+                engine.commitOffsets(consumer);
+                var committed = consumer.committed(Set.of(partition)).get(partition);
+                if (received == RECORDS && committed != null && committed.offset() == RECORDS) {
+                    break;
+                }
+            }
+
+            assertThat(received).isEqualTo(RECORDS);
+            assertThat(engine.committableOffset(partition)).isEqualTo(RECORDS);
+            assertThat(consumer.committed(Set.of(partition)).get(partition).offset()).isEqualTo(RECORDS);
+        }
+
+        assertThat(processed).hasSize(KEYS);
+        processed.values().forEach(sequence -> assertThat(sequence).hasSize(RECORDS / KEYS).isSorted());
+        assertThat(sameKeyOverlap).hasValue(0);
+        // chiavi diverse della stessa partizione sono state elaborate contemporaneamente
+        assertThat(maxConcurrent.get()).isGreaterThan(1);
+        assertThat(maxInFlight.get()).isLessThanOrEqualTo(MAX_IN_FLIGHT);
+    }
+
+    @Test
+    void recordInterruptedWhileRetryingIsNotCompleted() throws Exception {
+        var failing = new AtomicReference<Thread>();
+        var recovered = new AtomicInteger();
+        var partition = new TopicPartition(TOPIC, 0);
+        var engine = new KeyOrderedParallelEngine<String, String>("orders-test", 10, 2, 3, Duration.ofSeconds(30),
+                record -> {
+                    if ("fails".equals(record.key())) {
+                        failing.set(Thread.currentThread());
+                        throw new IllegalStateException("boom");
+                    }
+                },
+                (record, e) -> recovered.incrementAndGet());
+        try (engine) {
+            engine.submit(new ConsumerRecord<>(TOPIC, 0, 0, "fails", "v0"));
+            engine.submit(new ConsumerRecord<>(TOPIC, 0, 1, "works", "v1"));
+            Instant deadline = Instant.now().plus(Duration.ofSeconds(10));
+            while (Instant.now().isBefore(deadline)
+                    && (failing.get() == null || failing.get().getState() != Thread.State.TIMED_WAITING || engine.inFlight() > 1)) {
+                Thread.sleep(10);
+            }
+            failing.get().interrupt();
+            while (Instant.now().isBefore(deadline) && engine.inFlight() > 0) {
+                Thread.sleep(10);
+            }
+
+            assertThat(engine.inFlight()).isZero();
+            assertThat(recovered).hasValue(0);
+            // il record interrotto non è stato né elaborato né recuperato: l'offset resta da riconsegnare
+            assertThat(engine.committableOffset(partition)).isEqualTo(0L);
+        }
+    }
+
+    @Test
+    void consumerCommitsOnlyItsAssignedPartitions() throws Exception {
+        var mine = new TopicPartition(TOPIC, 0);
+        var sibling = new TopicPartition(TOPIC, 1);
+        var consumer = new MockConsumer<String, String>(OffsetResetStrategy.EARLIEST);
+        consumer.assign(List.of(mine));
+        var engine = new KeyOrderedParallelEngine<String, String>("orders-test", 10, 2, 1, Duration.ZERO,
+                record -> { }, (record, e) -> { });
+        try (engine) {
+            // il motore è condiviso: i record della partizione 1 arrivano da un altro consumer dello stesso container
+            engine.submit(new ConsumerRecord<>(TOPIC, 0, 0, "a", "v0"));
+            engine.submit(new ConsumerRecord<>(TOPIC, 1, 0, "b", "v1"));
+            Instant deadline = Instant.now().plus(Duration.ofSeconds(10));
+            while (Instant.now().isBefore(deadline) && engine.inFlight() > 0) {
+                Thread.sleep(10);
+            }
+
+            engine.commitOffsets(consumer);
+
+            var committed = consumer.committed(Set.of(mine, sibling));
+            assertThat(committed.get(mine).offset()).isEqualTo(1L);
+            assertThat(committed.get(sibling)).isNull();
+            assertThat(engine.committableOffset(sibling)).isEqualTo(1L);
+        }
+    }
+
+    @Test
+    void committableOffsetStopsAtLowestIncompleteRecord() {
+        var tracker = new PartitionOffsetTracker();
+        assertThat(tracker.committableOffset()).isEqualTo(-1L);
+        for (long offset = 10; offset < 15; offset++) {
+            tracker.register(offset);
+        }
+        tracker.complete(10);
+        tracker.complete(12);
+        tracker.complete(13);
+        assertThat(tracker.committableOffset()).isEqualTo(11L);
+        tracker.complete(11);
+        assertThat(tracker.committableOffset()).isEqualTo(14L);
+        tracker.complete(14);
+        assertThat(tracker.committableOffset()).isEqualTo(15L);
+    }
+}
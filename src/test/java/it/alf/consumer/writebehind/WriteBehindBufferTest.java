@@ -0,0 +1,224 @@
+package it.alf.consumer.writebehind;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+
+public class WriteBehindBufferTest {
+    private static final String TOPIC = "orders-topic";
+    private static final TopicPartition PARTITION = new TopicPartition(TOPIC, 0);
+
+    @Test
+    void offsetsAreCommittedOnlyAfterTheFlushThatHoldsThem() throws Exception {
+        var release = new CountDownLatch(1);
+        var written = new CopyOnWriteArrayList<Long>();
+        var consumer = consumer();
+        try (var buffer = new WriteBehindBuffer("test", 1000, 100, Duration.ofMillis(50), Duration.ofMillis(10), (r, e) -> { }, () -> { }, () -> { })) {
+            var channel = buffer.<String>channel(TOPIC, records -> {
+                await(release);
+                records.forEach(r -> written.add(r.offset()));
+            });
+            channel.submit(records(0, 30));
+            channel.submit(records(30, 30));
+
+            Thread.sleep(200);
+            buffer.commitFlushed(consumer);
+            assertThat(consumer.committed(Set.of(PARTITION))).isEmpty();
+
+            release.countDown();
+            waitUntil(() -> buffer.buffered() == 0);
+            buffer.commitFlushed(consumer);
+            assertThat(written).hasSize(60).isSorted();
+            assertThat(consumer.committed(Set.of(PARTITION))).containsEntry(PARTITION, new OffsetAndMetadata(60));
+        }
+    }
+
+    @Test
+    void chunksAreWrittenBySizeBeforeTheFlushInterval() throws Exception {
+        var chunks = new CopyOnWriteArrayList<Integer>();
+        try (var buffer = new WriteBehindBuffer("test", 10_000, 500, Duration.ofSeconds(30), Duration.ofMillis(10), (r, e) -> { }, () -> { }, () -> { })) {
+            var channel = buffer.<String>channel(TOPIC, records -> chunks.add(records.size()));
+            for (int i = 0; i < 10; i++) {
+                channel.submit(records(i * 100, 100));
+            }
+            // 1000 record in blocchi di al massimo 500, senza attendere i 30 s dell'intervallo
+            waitUntil(() -> buffer.buffered() == 0);
+            assertThat(chunks).allMatch(size -> size <= 500);
+            assertThat(chunks.stream().mapToInt(Integer::intValue).sum()).isEqualTo(1000);
+        }
+    }
+
+    @Test
+    void fullBufferPausesUntilHalfIsWritten() throws Exception {
+        var release = new CountDownLatch(1);
+        var paused = new AtomicInteger();
+        var resumed = new AtomicInteger();
+        try (var buffer = new WriteBehindBuffer("test", 100, 50, Duration.ofMillis(10), Duration.ofMillis(10), (r, e) -> { },
+                paused::incrementAndGet, resumed::incrementAndGet)) {
+            var channel = buffer.<String>channel(TOPIC, records -> await(release));
+            channel.submit(records(0, 60));
+            assertThat(paused).hasValue(0);
+            channel.submit(records(60, 60));
+            assertThat(paused).hasValue(1);
+            assertThat(buffer.isFull()).isTrue();
+
+            release.countDown();
+            waitUntil(() -> !buffer.isFull());
+            assertThat(resumed).hasValue(1);
+        }
+    }
+
+    @Test
+    void failedRecordIsRecoveredAndTheRestOfTheChunkIsWritten() throws Exception {
+        var written = new CopyOnWriteArrayList<Long>();
+        var recovered = new CopyOnWriteArrayList<Long>();
+        var attempts = new AtomicInteger();
+        var consumer = consumer();
+        try (var buffer = new WriteBehindBuffer("test", 1000, 100, Duration.ofMillis(10), Duration.ofMillis(10),
+                (r, e) -> recovered.add(r.offset()), () -> { }, () -> { })) {
+            var channel = buffer.<String>channel(TOPIC, records -> {
+                // primo tentativo: database non raggiungibile, il blocco viene ritentato
+                if (attempts.getAndIncrement() == 0) {
+                    throw new IllegalStateException("connection refused");
+                }
+                for (var record : records) {
+                    if (record.offset() == 5) {
+                        throw new BatchListenerFailedException("bad record", record);
+                    }
+                    written.add(record.offset());
+                }
+            });
+            channel.submit(records(0, 10));
+            waitUntil(() -> buffer.buffered() == 0);
+            buffer.commitFlushed(consumer);
+        }
+        assertThat(recovered).containsExactly(5L);
+        assertThat(written).containsExactly(0L, 1L, 2L, 3L, 4L, 6L, 7L, 8L, 9L);
+        assertThat(consumer.committed(Set.of(PARTITION))).containsEntry(PARTITION, new OffsetAndMetadata(10));
+    }
+
+    @Test
+    void failureWithoutAKnownRecordFallsBackToOneByOne() throws Exception {
+        var written = new CopyOnWriteArrayList<Long>();
+        var recovered = new CopyOnWriteArrayList<Long>();
+        var consumer = consumer();
+        try (var buffer = new WriteBehindBuffer("test", 1000, 100, Duration.ofMillis(10), Duration.ofMillis(10),
+                (r, e) -> recovered.add(r.offset()), () -> { }, () -> { })) {
+            var channel = buffer.<String>channel(TOPIC, records -> {
+                if (records.size() > 1) {
+                    // indice fuori dal blocco: il record fallito non è individuabile
+                    throw new BatchListenerFailedException("bad chunk", 99);
+                }
+                if (records.get(0).offset() == 3) {
+                    throw new BatchListenerFailedException("bad record", records.get(0));
+                }
+                written.add(records.get(0).offset());
+            });
+            channel.submit(records(0, 10));
+            waitUntil(() -> buffer.buffered() == 0);
+            buffer.commitFlushed(consumer);
+        }
+        assertThat(recovered).containsExactly(3L);
+        assertThat(written).containsExactly(0L, 1L, 2L, 4L, 5L, 6L, 7L, 8L, 9L);
+        assertThat(consumer.committed(Set.of(PARTITION))).containsEntry(PARTITION, new OffsetAndMetadata(10));
+    }
+
+    @Test
+    void recordsStillBufferedAfterRevocationNeverMoveTheOffsetBack() throws Exception {
+        var writing = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var written = new CopyOnWriteArrayList<Long>();
+        var consumer = consumer();
+        try (var buffer = new WriteBehindBuffer("test", 1000, 10, Duration.ofMillis(10), Duration.ofMillis(10), (r, e) -> { }, () -> { }, () -> { })) {
+            var channel = buffer.<String>channel(TOPIC, records -> {
+                writing.countDown();
+                await(release);
+                records.forEach(r -> written.add(r.offset()));
+            });
+            channel.submit(records(0, 10));
+            assertThat(writing.await(10, TimeUnit.SECONDS)).isTrue();
+            channel.submit(records(10, 10));
+
+            // timeout scaduto: i record in coda vengono scartati, il blocco in scrittura resta solo da completare
+            buffer.onPartitionsRevoked(consumer, List.of(PARTITION), Duration.ofMillis(100));
+            assertThat(buffer.buffered()).isEqualTo(10);
+            assertThat(consumer.committed(Set.of(PARTITION))).isEmpty();
+
+            // il nuovo assegnatario va avanti, poi la partizione torna a questo consumer
+            consumer.commitSync(Map.of(PARTITION, new OffsetAndMetadata(500)));
+            release.countDown();
+            waitUntil(() -> buffer.buffered() == 0);
+            buffer.commitFlushed(consumer);
+        }
+        assertThat(written).containsExactly(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L);
+        assertThat(consumer.committed(Set.of(PARTITION))).containsEntry(PARTITION, new OffsetAndMetadata(500));
+    }
+
+    @Test
+    void revocationWaitsForBufferedRecordsOfThePartition() throws Exception {
+        var consumer = consumer();
+        try (var buffer = new WriteBehindBuffer("test", 1000, 100, Duration.ofMillis(100), Duration.ofMillis(10), (r, e) -> { }, () -> { }, () -> { })) {
+            var channel = buffer.<String>channel(TOPIC, records -> sleep(200));
+            channel.submit(records(0, 20));
+            buffer.onPartitionsRevoked(consumer, List.of(PARTITION), Duration.ofSeconds(10));
+            assertThat(buffer.buffered()).isZero();
+            assertThat(consumer.committed(Set.of(PARTITION))).containsEntry(PARTITION, new OffsetAndMetadata(20));
+        }
+    }
+
+    private static MockConsumer<String, String> consumer() {
+        var consumer = new MockConsumer<String, String>(OffsetResetStrategy.EARLIEST);
+        consumer.assign(List.of(PARTITION));
+        consumer.updateBeginningOffsets(Map.of(PARTITION, 0L));
+        return consumer;
+    }
+
+    private static List<ConsumerRecord<String, String>> records(long from, int count) {
+        var records = new ArrayList<ConsumerRecord<String, String>>(count);
+        for (long offset = from; offset < from + count; offset++) {
+            records.add(new ConsumerRecord<>(TOPIC, 0, offset, "k" + offset, "v" + offset));
+        }
+        return records;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        Instant deadline = Instant.now().plus(Duration.ofSeconds(10));
+        while (!condition.getAsBoolean() && Instant.now().isBefore(deadline)) {
+            Thread.sleep(5);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
@@ -0,0 +1,33 @@
+package it.alf.dedupe;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.jupiter.api.Test;
+
+public class BloomFilterTest {
+
+    @Test
+    void addedKeysAreAlwaysFound() {
+        var filter = new BloomFilter(10_000, 0.01);
+        IntStream.range(0, 10_000).forEach(i -> filter.put("orders-topic:o" + i));
+
+        assertThat(IntStream.range(0, 10_000)).allMatch(i -> filter.mightContain("orders-topic:o" + i));
+        assertThat(filter.insertions()).isEqualTo(10_000);
+        assertThat(filter.isSaturated()).isFalse();
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTheConfiguredRateUpToCapacity() {
+        var filter = new BloomFilter(100_000, 0.01);
+        IntStream.range(0, 100_000).forEach(i -> filter.put("users-topic/0/" + i));
+
+        long falsePositives = IntStream.range(0, 100_000).filter(i -> filter.mightContain("users-topic/1/" + i)).count();
+
+        // 1% atteso: margine per la varianza del campione
+        assertThat(falsePositives).isLessThan(1_500);
+        // 100k chiavi all'1%: circa 958 Kbit e 7 funzioni di hash
+        assertThat(filter.sizeInBytes()).isBetween(115_000L, 125_000L);
+        assertThat(filter.hashCount()).isEqualTo(7);
+    }
+}
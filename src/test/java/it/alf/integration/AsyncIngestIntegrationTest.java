@@ -0,0 +1,78 @@
+package it.alf.integration;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.alf.dto.Order;
+
+@SpringBootTest(properties = {"spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}"})
+@AutoConfigureMockMvc
+@EmbeddedKafka(partitions = 1, topics = {"orders-topic"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class AsyncIngestIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void whenBrokerAcksOrder_thenResponseCarriesPartitionAndOffset() throws Exception {
+        var order = new Order("async-o1", "u1", "Book", 12.5);
+
+        var result = mockMvc.perform(post("/api/orders")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(order)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value("async-o1"))
+                .andExpect(jsonPath("$.topic").value("orders-topic"))
+                .andExpect(jsonPath("$.partition").value(0))
+                .andExpect(jsonPath("$.offset").value(greaterThanOrEqualTo(0)));
+    }
+
+    @Test
+    void whenSendFails_thenErrorStatusIsReturned() throws Exception {
+        // record oltre max.request.size (1 MB): il producer rifiuta l'invio con RecordTooLargeException
+        var product = new StringBuilder();
+        while (product.length() < 2_000_000) {
+            product.append(UUID.randomUUID());
+        }
+        var order = new Order("async-too-large", "u1", product.toString(), 1.0);
+
+        var result = mockMvc.perform(post("/api/orders")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(order)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPayloadTooLarge())
+                .andExpect(jsonPath("$.id").value("async-too-large"))
+                .andExpect(jsonPath("$.error").value("RECORD_TOO_LARGE"))
+                .andExpect(jsonPath("$.message").value(not(containsString("RecordTooLargeException"))));
+    }
+}
@@ -0,0 +1,115 @@
+package it.alf.integration;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.alf.backpressure.BackpressureController;
+import it.alf.backpressure.BackpressureEndpoint;
+import it.alf.dto.User;
+import it.alf.repository.UserRepository;
+
+/**
+ * Con una soglia di latenza che ogni salvataggio supera, il gruppo degli utenti va in pausa dopo ogni poll e riprende
+ * dopo {@code min-pause}, finché tutti i record sono salvati; gli altri gruppi usano le soglie di default e non vanno
+ * mai in pausa.
+ */
+@SpringBootTest(properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "app.kafka.consumer.max-poll-records=200",
+        "app.kafka.backpressure.enabled=true",
+        "app.kafka.backpressure.interval=50ms",
+        "app.kafka.backpressure.min-pause=500ms",
+        "app.kafka.backpressure.groups.users-group.persist-latency-pause=1ns",
+        "app.kafka.backpressure.groups.users-group.persist-latency-resume=0s"
+})
+@EmbeddedKafka(partitions = 1, topics = {"users-topic", "orders-topic", "dlq-topic"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class BackpressureIntegrationTest {
+    private static final int RECORDS = 1000;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Autowired
+    private BackpressureController controller;
+
+    @Autowired
+    private BackpressureEndpoint endpoint;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void whenSavesExceedTheGroupThreshold_thenTheGroupIsPausedUntilItsSignalsSettle() throws Exception {
+        var users = container("users-group");
+        ContainerTestUtils.waitForAssignment(users, 1);
+
+        for (int i = 0; i < RECORDS; i++) {
+            kafkaTemplate.send("users-topic", "bp-u" + i, new User("bp-u" + i, "User " + i, "u" + i + "@example.com"));
+        }
+        kafkaTemplate.flush();
+
+        waitUntil(() -> controller.isPaused("users-group"), Duration.ofSeconds(30));
+        assertThat(users.isPauseRequested()).isTrue();
+        var status = endpoint.groups().stream().filter(s -> "users-group".equals(s.getGroupId())).findFirst().orElseThrow();
+        assertThat(status.isPaused()).isTrue();
+        assertThat(status.getReasons()).containsExactly(BackpressureController.SATURATION);
+        assertThat(status.getCause()).startsWith("persist latency");
+        assertThat(meterRegistry.get("kafka.backpressure.paused").tag("group", "users-group").gauge().value()).isEqualTo(1.0);
+
+        // una pausa per poll, ognuna lunga almeno min-pause: il consumo rallenta ma prosegue
+        waitUntil(() -> userRepository.count() == RECORDS, Duration.ofSeconds(60));
+        waitUntil(() -> !controller.isPaused("users-group"), Duration.ofSeconds(10));
+        assertThat(users.isPauseRequested()).isFalse();
+        assertThat(controller.isPaused("orders-group")).isFalse();
+        assertThat(meterRegistry.find("hikaricp.connections.acquire").timer()).isNotNull();
+    }
+
+    @Test
+    void containersResumeOnlyWhenNoReasonIsLeft() throws Exception {
+        var orders = container("orders-group");
+        controller.pause(List.of("orders-group"), "maintenance");
+        controller.pause(List.of("orders-group"), "write-behind");
+        assertThat(orders.isPauseRequested()).isTrue();
+
+        controller.resume(List.of("orders-group"), "maintenance");
+        assertThat(orders.isPauseRequested()).isTrue();
+
+        controller.resume(List.of("orders-group"), "write-behind");
+        assertThat(orders.isPauseRequested()).isFalse();
+        assertThat(controller.isPaused("orders-group")).isFalse();
+    }
+
+    private MessageListenerContainer container(String group) {
+        return registry.getListenerContainers().stream()
+                .filter(c -> group.equals(c.getContainerProperties().getGroupId())).findFirst().orElseThrow();
+    }
+
+    private static void waitUntil(BooleanSupplier condition, Duration timeout) throws InterruptedException {
+        Instant deadline = Instant.now().plus(timeout);
+        while (!condition.getAsBoolean() && Instant.now().isBefore(deadline)) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
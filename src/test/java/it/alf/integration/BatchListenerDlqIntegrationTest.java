@@ -0,0 +1,79 @@
+package it.alf.integration;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+
+import it.alf.dto.User;
+import it.alf.repository.UserRepository;
+
+@SpringBootTest(properties = {"spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}"})
+@EmbeddedKafka(partitions = 1, topics = {"users-topic", "dlq-topic"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class BatchListenerDlqIntegrationTest {
+
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @AfterEach
+    void cleanup() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void whenBatchContainsInvalidUser_thenOnlyThatRecordGoesToDlq() throws Exception {
+        for (MessageListenerContainer container : registry.getListenerContainers()) {
+            if ("users-group".equals(container.getContainerProperties().getGroupId())) {
+                ContainerTestUtils.waitForAssignment(container, embeddedKafkaBroker.getPartitionsPerTopic());
+                break;
+            }
+        }
+
+        // email null viola il vincolo NOT NULL di UserEntity: il batch fallisce e il record va isolato
+        kafkaTemplate.send("users-topic", "batch-u1", new User("batch-u1", "First", "first@example.com"));
+        kafkaTemplate.send("users-topic", "batch-bad", new User("batch-bad", "Broken", null));
+        kafkaTemplate.send("users-topic", "batch-u2", new User("batch-u2", "Second", "second@example.com")).get();
+
+        var props = KafkaTestUtils.consumerProps("dlq-checker", "false", embeddedKafkaBroker);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        try (var consumer = new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new StringDeserializer()).createConsumer()) {
+            embeddedKafkaBroker.consumeFromAnEmbeddedTopic(consumer, "dlq-topic");
+            var deadLetter = KafkaTestUtils.getSingleRecord(consumer, "dlq-topic", Duration.ofSeconds(20));
+            assertThat(deadLetter.key()).isEqualTo("batch-bad");
+        }
+
+        Instant deadline = Instant.now().plus(Duration.ofSeconds(10));
+        while (Instant.now().isBefore(deadline) && userRepository.count() < 2) {
+            Thread.sleep(200);
+        }
+
+        assertThat(userRepository.findById("batch-u1")).isPresent();
+        assertThat(userRepository.findById("batch-u2")).isPresent();
+        assertThat(userRepository.findById("batch-bad")).isEmpty();
+    }
+}
@@ -0,0 +1,139 @@
+package it.alf.integration;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.alf.dto.Order;
+import it.alf.dto.SendReceipt;
+import it.alf.dto.User;
+import it.alf.repository.OrderRepository;
+import it.alf.repository.UserRepository;
+
+@SpringBootTest(properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        // finestra piccola: la lettura del corpo deve fermarsi e riprendere più volte
+        "app.ingest.batch.max-in-flight=50"
+})
+@AutoConfigureMockMvc
+@EmbeddedKafka(partitions = 1, topics = {"users-topic", "orders-topic"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class BulkIngestIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @AfterEach
+    void cleanup() {
+        orderRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void whenNdjsonOrdersArePosted_thenEachRecordGetsItsOwnResult() throws Exception {
+        int count = 1000;
+        var body = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i == 500) {
+                // record non mappabile: produce un esito di errore senza interrompere il resto del flusso
+                body.append("{\"id\":\"bulk-bad\",\"amount\":\"not-a-number\"}\n");
+            }
+            body.append(objectMapper.writeValueAsString(new Order("bulk-o" + i, "u" + (i % 10), "Book", i))).append('\n');
+        }
+
+        var response = mockMvc.perform(post("/api/orders/batch")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(body.toString()))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        List<SendReceipt> receipts = new ArrayList<>();
+        objectMapper.readerFor(SendReceipt.class).<SendReceipt>readValues(response).forEachRemaining(receipts::add);
+        assertThat(receipts).hasSize(count + 1);
+        assertThat(receipts.get(500).getError()).isEqualTo("INVALID_RECORD");
+        assertThat(receipts.get(500).getMessage()).doesNotContain("not-a-number");
+        assertThat(receipts.get(500).getOffset()).isNull();
+
+        var sent = new ArrayList<>(receipts);
+        sent.remove(500);
+        for (int i = 0; i < count; i++) {
+            // stesso ordine dell'input, offset crescenti sulla singola partizione
+            assertThat(sent.get(i).getId()).isEqualTo("bulk-o" + i);
+            assertThat(sent.get(i).getTopic()).isEqualTo("orders-topic");
+            if (i > 0) {
+                assertThat(sent.get(i).getOffset()).isGreaterThan(sent.get(i - 1).getOffset());
+            }
+        }
+
+        Instant deadline = Instant.now().plus(Duration.ofSeconds(30));
+        while (Instant.now().isBefore(deadline) && orderRepository.count() < count) {
+            Thread.sleep(100);
+        }
+        assertThat(orderRepository.count()).isEqualTo(count);
+    }
+
+    @Test
+    void whenJsonArrayIsPosted_thenResultsAreReturnedAsArray() throws Exception {
+        var users = List.of(
+                new User("bulk-u1", "Alice", "alice@example.com"),
+                new User("bulk-u2", "Bob", "bob@example.com"));
+
+        var response = mockMvc.perform(post("/api/users/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(users)))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getContentAsString();
+
+        SendReceipt[] receipts = objectMapper.readValue(response, SendReceipt[].class);
+        assertThat(receipts).extracting(SendReceipt::getId).containsExactly("bulk-u1", "bulk-u2");
+        assertThat(receipts).allSatisfy(r -> {
+            assertThat(r.getError()).isNull();
+            assertThat(r.getPartition()).isZero();
+        });
+    }
+
+    @Test
+    void whenBodyIsMalformed_thenReadingStopsWithAnErrorResult() throws Exception {
+        var body = objectMapper.writeValueAsString(new User("bulk-u3", "Carol", "carol@example.com")) + "\n{\"id\":\"bulk-u4\",\n";
+
+        var response = mockMvc.perform(post("/api/users/batch")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        List<SendReceipt> receipts = new ArrayList<>();
+        objectMapper.readerFor(SendReceipt.class).<SendReceipt>readValues(response).forEachRemaining(receipts::add);
+        assertThat(receipts).hasSize(2);
+        assertThat(receipts.get(0).getOffset()).isNotNull();
+        assertThat(receipts.get(1).getError()).isEqualTo("MALFORMED_JSON");
+    }
+}
@@ -0,0 +1,193 @@
+package it.alf.integration;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.IntFunction;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+
+import it.alf.dto.Order;
+import it.alf.dto.User;
+import it.alf.repository.OrderRepository;
+import it.alf.repository.UserRepository;
+
+/**
+ * Throughput delle pipeline users e orders su 4 partizioni con concorrenza 1 e 4: con 4 consumer il throughput deve
+ * essere almeno {@value #MIN_SPEEDUP} volte quello di un consumer solo.
+ *
+ * Ogni statement JDBC attende {@value #ROUND_TRIP_MILLIS} ms, come il round trip verso un database remoto: il costo
+ * di un poll è soprattutto attesa, come in produzione, e i consumer lo sovrappongono anche quando la macchina di test
+ * ha una sola CPU (con H2 in memoria il poll sarebbe solo CPU e il confronto misurerebbe i core disponibili).
+ */
+@SpringBootTest(properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "app.kafka.topics.users.partitions=4",
+        "app.kafka.topics.users.concurrency=4",
+        "app.kafka.topics.orders.partitions=4",
+        "app.kafka.topics.orders.concurrency=4",
+        "app.kafka.topics.deadletter.partitions=4"
+})
+@EmbeddedKafka(partitions = 4, topics = {"users-topic", "orders-topic", "dlq-topic"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ConcurrencyScalingIntegrationTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyScalingIntegrationTest.class);
+    private static final int PARTITIONS = 4;
+    private static final int RECORDS = 2000;
+    private static final long ROUND_TRIP_MILLIS = 1;
+    private static final double MIN_SPEEDUP = 1.5;
+
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @AfterEach
+    void cleanup() {
+        userRepository.deleteAll();
+        orderRepository.deleteAll();
+    }
+
+    @Test
+    void usersThroughputScalesWithConcurrency() throws Exception {
+        double single = measure("users-group", "users-topic", 1, userRepository,
+                i -> new User("scale-c1-u" + i, "User " + i, "u" + i + "@example.com"));
+        double concurrent = measure("users-group", "users-topic", PARTITIONS, userRepository,
+                i -> new User("scale-c4-u" + i, "User " + i, "u" + i + "@example.com"));
+        logger.info("users pipeline: concurrency=1 -> {} records/s, concurrency={} -> {} records/s",
+                Math.round(single), PARTITIONS, Math.round(concurrent));
+        assertThat(userRepository.count()).isEqualTo(2L * RECORDS);
+        assertThat(concurrent).isGreaterThan(MIN_SPEEDUP * single);
+    }
+
+    @Test
+    void ordersThroughputScalesWithConcurrency() throws Exception {
+        double single = measure("orders-group", "orders-topic", 1, orderRepository,
+                i -> new Order("scale-c1-o" + i, "u" + (i % 50), "Book", i));
+        double concurrent = measure("orders-group", "orders-topic", PARTITIONS, orderRepository,
+                i -> new Order("scale-c4-o" + i, "u" + (i % 50), "Book", i));
+        logger.info("orders pipeline: concurrency=1 -> {} records/s, concurrency={} -> {} records/s",
+                Math.round(single), PARTITIONS, Math.round(concurrent));
+        assertThat(orderRepository.count()).isEqualTo(2L * RECORDS);
+        assertThat(concurrent).isGreaterThan(MIN_SPEEDUP * single);
+    }
+
+    /**
+     * Riavvia il container del gruppo con la concorrenza indicata, invia {@link #RECORDS} messaggi con chiavi
+     * distinte (quindi distribuiti su tutte le partizioni) e restituisce i record/s fino alla persistenza dell'ultimo.
+     */
+    private <T> double measure(String groupId, String topic, int concurrency, CrudRepository<?, String> repository,
+                               IntFunction<T> factory) throws Exception {
+        var container = (ConcurrentMessageListenerContainer<?, ?>) registry.getListenerContainers().stream()
+                .filter(c -> groupId.equals(c.getContainerProperties().getGroupId()))
+                .findFirst()
+                .orElseThrow();
+        container.stop();
+        container.setConcurrency(concurrency);
+        container.start();
+        ContainerTestUtils.waitForAssignment(container, PARTITIONS);
+
+        // ogni consumer del gruppo deve ricevere una quota delle partizioni (attende la fine del ribilanciamento:
+        // il primo consumer che entra nel gruppo può ricevere temporaneamente tutte le partizioni)
+        assertThat(container.getContainers()).hasSize(concurrency);
+        Instant assignmentDeadline = Instant.now().plus(Duration.ofSeconds(30));
+        while (Instant.now().isBefore(assignmentDeadline) && !container.getContainers().stream()
+                .allMatch(child -> child.getAssignedPartitions() != null && child.getAssignedPartitions().size() == PARTITIONS / concurrency)) {
+            Thread.sleep(100);
+        }
+        container.getContainers().forEach(child -> assertThat(child.getAssignedPartitions()).hasSize(PARTITIONS / concurrency));
+
+        long expected = repository.count() + RECORDS;
+        var start = System.nanoTime();
+        for (int i = 0; i < RECORDS; i++) {
+            var value = factory.apply(i);
+            kafkaTemplate.send(topic, topic + "-" + concurrency + "-" + i, value);
+        }
+        kafkaTemplate.flush();
+
+        Instant deadline = Instant.now().plus(Duration.ofSeconds(60));
+        while (Instant.now().isBefore(deadline) && repository.count() < expected) {
+            Thread.sleep(50);
+        }
+        assertThat(repository.count()).isEqualTo(expected);
+        return RECORDS / ((System.nanoTime() - start) / 1_000_000_000.0);
+    }
+
+    @TestConfiguration
+    static class DatabaseLatencyConfig {
+        @Bean
+        static BeanPostProcessor databaseLatency() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource dataSource ? delayed(dataSource, DataSource.class) : bean;
+                }
+            };
+        }
+
+        /**
+         * Proxy che restituisce connessioni e statement a loro volta con proxy e ritarda ogni esecuzione di statement.
+         */
+        @SuppressWarnings("unchecked")
+        private static <T> T delayed(T target, Class<? extends T> type) {
+            InvocationHandler invocation = (proxy, method, args) -> {
+                if (target instanceof Statement && method.getName().startsWith("execute")) {
+                    Thread.sleep(ROUND_TRIP_MILLIS);
+                }
+                Object result;
+                try {
+                    result = method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                if (result instanceof Connection connection) {
+                    return delayed(connection, Connection.class);
+                }
+                if (result instanceof CallableStatement statement) {
+                    return delayed(statement, CallableStatement.class);
+                }
+                if (result instanceof PreparedStatement statement) {
+                    return delayed(statement, PreparedStatement.class);
+                }
+                return result instanceof Statement statement ? delayed(statement, Statement.class) : result;
+            };
+            return (T) Proxy.newProxyInstance(ConcurrencyScalingIntegrationTest.class.getClassLoader(), new Class<?>[] {type}, invocation);
+        }
+    }
+}
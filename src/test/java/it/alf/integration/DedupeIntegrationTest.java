@@ -0,0 +1,95 @@
+package it.alf.integration;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.alf.consumer.OrderListener;
+import it.alf.consumer.UserListener;
+import it.alf.dto.Order;
+import it.alf.dto.User;
+import it.alf.repository.OrderRepository;
+import it.alf.repository.UserRepository;
+
+/**
+ * Riconsegne e id ripetuti passati direttamente ai listener: users è in modalità {@code offset}, orders in
+ * modalità {@code id} (in application.yml la deduplicazione è disattivata per tutti i topic).
+ */
+@SpringBootTest(properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "app.kafka.topics.users.dedupe=offset",
+        "app.kafka.topics.orders.dedupe=id"
+})
+@EmbeddedKafka(partitions = 1)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class DedupeIntegrationTest {
+
+    @Autowired
+    private UserListener userListener;
+
+    @Autowired
+    private OrderListener orderListener;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void whenBatchIsRedelivered_thenOffsetsAlreadyProcessedAreSkipped() {
+        userListener.listen(List.of(
+                new ConsumerRecord<>("users-topic", 0, 10, "dd-u1", new User("dd-u1", "Alice", "alice@example.com")),
+                new ConsumerRecord<>("users-topic", 0, 11, "dd-u2", new User("dd-u2", "Bob", "bob@example.com"))));
+
+        // riconsegna degli stessi offset (es. commit perso dopo un ribilanciamento) più un record nuovo
+        userListener.listen(List.of(
+                new ConsumerRecord<>("users-topic", 0, 10, "dd-u1", new User("dd-u1", "Changed", "changed@example.com")),
+                new ConsumerRecord<>("users-topic", 0, 11, "dd-u2", new User("dd-u2", "Changed", "changed@example.com")),
+                new ConsumerRecord<>("users-topic", 0, 12, "dd-u3", new User("dd-u3", "Carol", "carol@example.com"))));
+
+        assertThat(userRepository.findById("dd-u1")).hasValueSatisfying(u -> assertThat(u.getName()).isEqualTo("Alice"));
+        assertThat(userRepository.findById("dd-u3")).isPresent();
+        assertThat(processedKeys("users-topic/0/%")).isEqualTo(3);
+        assertThat(counter("kafka.dedupe.duplicates", "users-topic")).isEqualTo(2);
+        assertThat(counter("kafka.dedupe.lookups", "users-topic")).isGreaterThanOrEqualTo(2);
+    }
+
+    @Test
+    void whenSameOrderIdArrivesAgain_thenOnlyTheFirstIsSaved() {
+        orderListener.listen(List.of(
+                new ConsumerRecord<>("orders-topic", 0, 0, "dd-o1", new Order("dd-o1", "u1", "Book", 10.0)),
+                // stesso id nello stesso poll: duplicato dalla seconda occorrenza
+                new ConsumerRecord<>("orders-topic", 0, 1, "dd-o1", new Order("dd-o1", "u1", "Book", 99.0))), null);
+        orderListener.listen(List.of(
+                new ConsumerRecord<>("orders-topic", 0, 2, "dd-o1", new Order("dd-o1", "u1", "Book", 42.0)),
+                new ConsumerRecord<>("orders-topic", 0, 3, "dd-o2", new Order("dd-o2", "u2", "Pen", 2.0))), null);
+
+        assertThat(orderRepository.findById("dd-o1")).hasValueSatisfying(o -> assertThat(o.getAmount()).isEqualTo(10.0));
+        assertThat(orderRepository.count()).isEqualTo(2);
+        assertThat(processedKeys("orders-topic:%")).isEqualTo(2);
+        assertThat(counter("kafka.dedupe.duplicates", "orders-topic")).isEqualTo(2);
+    }
+
+    private long processedKeys(String pattern) {
+        return jdbcTemplate.queryForObject("select count(*) from processed_records where record_key like ?", Long.class, pattern);
+    }
+
+    private double counter(String name, String topic) {
+        return meterRegistry.get(name).tag("topic", topic).counter().count();
+    }
+}
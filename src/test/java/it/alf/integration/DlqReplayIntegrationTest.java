@@ -0,0 +1,226 @@
+package it.alf.integration;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.alf.dlq.DeadLetterService;
+import it.alf.dto.User;
+import it.alf.repository.UserRepository;
+
+@SpringBootTest(properties = {"spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}"})
+@AutoConfigureMockMvc
+@EmbeddedKafka(partitions = 2, topics = {"users-topic", "orders-topic", "dlq-topic"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class DlqReplayIntegrationTest {
+    private static final int DEAD_LETTERS = 100;
+    private static final int RATE = 50;
+    private static final String TEST_EXCEPTION = "it.alf.test.ReplayTestException";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @AfterEach
+    void cleanup() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void whenListenerFails_thenDeadLetterIsListedWithOriginAndException() throws Exception {
+        waitForUsersListener();
+        // email null viola il vincolo NOT NULL di UserEntity
+        kafkaTemplate.send("users-topic", "dlq-bad", new User("dlq-bad", "Broken", null)).get();
+
+        JsonNode page = null;
+        Instant deadline = Instant.now().plus(Duration.ofSeconds(20));
+        while (Instant.now().isBefore(deadline)) {
+            page = getJson(get("/api/dlq"));
+            if (page.get("items").size() > 0) {
+                break;
+            }
+            Thread.sleep(200);
+        }
+
+        assertThat(page.get("items")).hasSize(1);
+        var deadLetter = page.get("items").get(0);
+        assertThat(deadLetter.get("key").asText()).isEqualTo("dlq-bad");
+        assertThat(deadLetter.get("originalTopic").asText()).isEqualTo("users-topic");
+        assertThat(deadLetter.get("originalOffset").asLong()).isZero();
+        // il KafkaTemplate del test scrive JSON: il payload è il record originale
+        assertThat(deadLetter.get("encoding").asText()).isEqualTo("json");
+        assertThat(deadLetter.get("payload").get("id").asText()).isEqualTo("dlq-bad");
+        assertThat(page.get("nextCursor").isNull()).isTrue();
+
+        var exception = deadLetter.get("exception").asText();
+        assertThat(exception).isNotBlank();
+        var simpleName = exception.substring(exception.lastIndexOf('.') + 1);
+        assertThat(getJson(get("/api/dlq").param("exception", simpleName)).get("items")).hasSize(1);
+        assertThat(getJson(get("/api/dlq").param("exception", "NoSuchException")).get("items")).isEmpty();
+        assertThat(getJson(get("/api/dlq").param("topic", "users-topic")).get("items")).hasSize(1);
+        assertThat(getJson(get("/api/dlq").param("topic", "orders-topic")).get("items")).isEmpty();
+        var published = Instant.parse(deadLetter.get("timestamp").asText());
+        assertThat(getJson(get("/api/dlq").param("from", published.plusSeconds(1).toString())).get("items")).isEmpty();
+        assertThat(getJson(get("/api/dlq").param("to", published.plusSeconds(1).toString())).get("items")).hasSize(1);
+    }
+
+    @Test
+    void whenPagingWithCursor_thenEveryDeadLetterIsReturnedOnce() throws Exception {
+        publishDeadLetters(30, "users-topic");
+
+        int total = 0;
+        String cursor = null;
+        do {
+            var request = get("/api/dlq").param("limit", "7");
+            if (cursor != null) {
+                request.param("after", cursor);
+            }
+            var page = getJson(request);
+            total += page.get("items").size();
+            cursor = page.get("nextCursor").isNull() ? null : page.get("nextCursor").asText();
+        } while (cursor != null);
+
+        assertThat(total).isEqualTo(30);
+    }
+
+    @Test
+    void whenReplaying_thenMatchingDeadLettersReachTheListenerAtTheRequestedRate() throws Exception {
+        waitForUsersListener();
+        publishDeadLetters(DEAD_LETTERS, "users-topic");
+        // non soddisfano il filtro sul topic
+        publishDeadLetters(10, "orders-topic");
+
+        var started = getJson(post("/api/dlq/replay").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"topic\":\"users-topic\",\"exception\":\"ReplayTestException\",\"rate\":" + RATE + ",\"parallelism\":2}"), 202);
+        var id = started.get("id").asText();
+        assertThat(started.get("status").asText()).isEqualTo("RUNNING");
+        assertThat(started.get("parallelism").asInt()).isEqualTo(2);
+
+        JsonNode progress = started;
+        Instant deadline = Instant.now().plus(Duration.ofSeconds(30));
+        while (Instant.now().isBefore(deadline) && "RUNNING".equals(progress.get("status").asText())) {
+            Thread.sleep(200);
+            progress = getJson(get("/api/dlq/replay/" + id));
+        }
+
+        assertThat(progress.get("status").asText()).isEqualTo("COMPLETED");
+        assertThat(progress.get("scanned").asLong()).isEqualTo(DEAD_LETTERS + 10);
+        assertThat(progress.get("matched").asLong()).isEqualTo(DEAD_LETTERS);
+        assertThat(progress.get("replayed").asLong()).isEqualTo(DEAD_LETTERS);
+        assertThat(progress.get("failed").asLong()).isZero();
+        // 100 record a 50/s: il primo parte subito, gli altri a intervalli di 20 ms
+        var elapsed = Duration.between(Instant.parse(progress.get("startedAt").asText()), Instant.parse(progress.get("finishedAt").asText()));
+        assertThat(elapsed).isGreaterThanOrEqualTo(Duration.ofMillis((DEAD_LETTERS - 1) * 1000L / RATE));
+
+        deadline = Instant.now().plus(Duration.ofSeconds(20));
+        while (Instant.now().isBefore(deadline) && userRepository.count() < DEAD_LETTERS) {
+            Thread.sleep(200);
+        }
+        assertThat(userRepository.count()).isEqualTo(DEAD_LETTERS);
+        assertThat(getJson(get("/api/dlq/replay")).findValuesAsText("id")).containsExactly(id);
+    }
+
+    @Test
+    void whenRequestIsInvalid_thenBadRequestOrNotFound() throws Exception {
+        mockMvc.perform(post("/api/dlq/replay").contentType(MediaType.APPLICATION_JSON).content("{\"rate\":1000000}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/api/dlq/replay").contentType(MediaType.APPLICATION_JSON).content("{\"parallelism\":0}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/dlq").param("limit", String.valueOf(DeadLetterService.MAX_PAGE_SIZE + 1)))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/dlq").param("after", "not a cursor"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/dlq").param("from", "2025-01-02T00:00:00Z").param("to", "2025-01-01T00:00:00Z"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/dlq/replay/missing")).andExpect(status().isNotFound());
+    }
+
+    private void waitForUsersListener() throws Exception {
+        ContainerTestUtils.waitForAssignment(registry.getListenerContainers().stream()
+                .filter(c -> "users-group".equals(c.getContainerProperties().getGroupId())).findFirst().orElseThrow(), 2);
+    }
+
+    /**
+     * Utenti JSON pubblicati direttamente sulla DLQ con gli header del {@code DeadLetterPublishingRecoverer}.
+     */
+    private void publishDeadLetters(int count, String originalTopic) throws Exception {
+        var props = new HashMap<>(KafkaTestUtils.producerProps(embeddedKafkaBroker));
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        var factory = new DefaultKafkaProducerFactory<String, byte[]>(props);
+        try {
+            var template = new KafkaTemplate<>(factory);
+            for (int i = 0; i < count; i++) {
+                var id = originalTopic + "-replay-u" + i;
+                var value = objectMapper.writeValueAsBytes(new User(id, "Replay " + i, id + "@example.com"));
+                var record = new ProducerRecord<String, byte[]>("dlq-topic", i % 2, id, value);
+                record.headers()
+                        .add(KafkaHeaders.DLT_ORIGINAL_TOPIC, originalTopic.getBytes(StandardCharsets.UTF_8))
+                        .add(KafkaHeaders.DLT_ORIGINAL_PARTITION, ByteBuffer.allocate(4).putInt(i % 2).array())
+                        .add(KafkaHeaders.DLT_ORIGINAL_OFFSET, ByteBuffer.allocate(8).putLong(i).array())
+                        .add(KafkaHeaders.DLT_EXCEPTION_FQCN, TEST_EXCEPTION.getBytes(StandardCharsets.UTF_8))
+                        .add(KafkaHeaders.DLT_EXCEPTION_MESSAGE, "test".getBytes(StandardCharsets.UTF_8));
+                template.send(record);
+            }
+            template.flush();
+        } finally {
+            factory.destroy();
+        }
+    }
+
+    private JsonNode getJson(MockHttpServletRequestBuilder request) throws Exception {
+        return getJson(request, 200);
+    }
+
+    private JsonNode getJson(MockHttpServletRequestBuilder request, int expectedStatus) throws Exception {
+        var body = mockMvc.perform(request)
+                .andExpect(status().is(expectedStatus))
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body);
+    }
+}
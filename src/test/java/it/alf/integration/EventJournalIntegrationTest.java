@@ -0,0 +1,106 @@
+package it.alf.integration;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.alf.dto.GenericEvent;
+import it.alf.journal.EventJournalSink;
+import it.alf.journal.JournalEntry;
+import it.alf.repository.GenericEventRepository;
+
+/**
+ * Con il journal attivo gli eventi consumati vengono appesi ai segmenti su file, nell'ordine degli offset e con i byte
+ * JSON ricevuti, e non vengono salvati nel database.
+ */
+@SpringBootTest(properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "app.events.journal.enabled=true",
+        "app.events.journal.segment-size=16KB",
+        "app.events.journal.index-interval=1KB"
+})
+@EmbeddedKafka(partitions = 1, topics = {"events-topic"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class EventJournalIntegrationTest {
+    private static final int EVENTS = 500;
+
+    @TempDir
+    static Path journalDir;
+
+    @DynamicPropertySource
+    static void journalProperties(DynamicPropertyRegistry registry) {
+        registry.add("app.events.journal.dir", journalDir::toString);
+    }
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Autowired
+    private EventJournalSink sink;
+
+    @Autowired
+    private GenericEventRepository eventRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void whenJournalIsEnabled_thenEventsAreAppendedInsteadOfSaved() throws Exception {
+        ContainerTestUtils.waitForAssignment(registry.getListenerContainers().stream()
+                .filter(c -> "events-group".equals(c.getContainerProperties().getGroupId())).findFirst().orElseThrow(), 1);
+        var journal = sink.journal();
+        long first = journal.nextSequence();
+        Instant before = Instant.now();
+
+        for (int i = 0; i < EVENTS; i++) {
+            kafkaTemplate.send("events-topic", "j-" + i, new GenericEvent("j-" + i, "signup", Map.of("userId", "j-user-" + i)));
+        }
+        kafkaTemplate.flush();
+
+        waitUntil(() -> journal.nextSequence() == first + EVENTS);
+        assertThat(journal.segmentCount()).isGreaterThan(1);
+
+        var entries = new ArrayList<JournalEntry>();
+        assertThat(journal.read(journal.sequenceAt(before), first + EVENTS, entries::add)).isEqualTo(EVENTS);
+        for (int i = 0; i < EVENTS; i++) {
+            var entry = entries.get(i);
+            assertThat(entry.id()).isEqualTo("j-" + i);
+            assertThat(entry.offset()).isEqualTo(i);
+            assertThat(entry.type()).isEqualTo("signup");
+        }
+        assertThat(new String(entries.get(42).payloadBytes(), StandardCharsets.UTF_8)).contains("\"userId\":\"j-user-42\"");
+
+        assertThat(eventRepository.count()).isZero();
+        assertThat(meterRegistry.get("kafka.persist").tag("topic", "events-topic").tag("mode", "journal").timer().count())
+                .isPositive();
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        Instant deadline = Instant.now().plus(Duration.ofSeconds(30));
+        while (!condition.getAsBoolean() && Instant.now().isBefore(deadline)) {
+            Thread.sleep(100);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
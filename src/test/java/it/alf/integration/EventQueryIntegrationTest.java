@@ -0,0 +1,148 @@
+package it.alf.integration;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.alf.codec.PayloadEncoding;
+import it.alf.entity.GenericEventEntity;
+import it.alf.repository.GenericEventRepository;
+
+@SpringBootTest(properties = {"spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}"})
+@AutoConfigureMockMvc
+@EmbeddedKafka(partitions = 1, topics = {"events-topic"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class EventQueryIntegrationTest {
+    private static final int EVENTS = 1234;
+    private static final Instant START = Instant.parse("2025-01-01T00:00:00Z");
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private GenericEventRepository eventRepository;
+
+    /**
+     * Un evento al secondo, tipi alternati {@code type-0}/{@code type-1}/{@code type-2}, dieci utenti.
+     * Gli eventi a coppie condividono l'istante, per verificare che il cursore non perda né ripeta eventi.
+     * I payload degli eventi dispari sono compressi.
+     */
+    @BeforeEach
+    void setup() {
+        eventRepository.saveAll(IntStream.range(0, EVENTS).mapToObj(i -> {
+            var json = ("{\"userId\":\"u" + (i % 10) + "\",\"n\":" + i + "}").getBytes(StandardCharsets.UTF_8);
+            var encoding = i % 2 == 0 ? PayloadEncoding.JSON : PayloadEncoding.DEFLATE;
+            return new GenericEventEntity(String.format("q-e%05d", i), "type-" + (i % 3), START.plusSeconds(i / 2),
+                    0, i, encoding.encode(json), encoding, Map.of("userId", "u" + (i % 10)));
+        }).toList());
+    }
+
+    @AfterEach
+    void cleanup() {
+        eventRepository.deleteAll();
+    }
+
+    @Test
+    void whenFollowingCursors_thenEveryEventIsReturnedOnceInIngestionOrder() throws Exception {
+        var ids = readAll(Map.of(), 100);
+
+        assertThat(ids).hasSize(EVENTS).doesNotHaveDuplicates().isSorted();
+    }
+
+    @Test
+    void whenFilteringByTypeAndTime_thenOnlyMatchingEventsAreReturned() throws Exception {
+        var from = START.plusSeconds(100);
+        var to = START.plusSeconds(200);
+        var ids = readAll(Map.of("type", "type-1", "from", from.toString(), "to", to.toString()), 7);
+
+        var expected = IntStream.range(200, 400).filter(i -> i % 3 == 1).mapToObj(i -> String.format("q-e%05d", i)).toList();
+        assertThat(ids).isEqualTo(expected);
+    }
+
+    @Test
+    void whenFilteringByPayloadKey_thenPayloadIsReturnedAsJson() throws Exception {
+        var page = readPage(get("/api/events").param("key", "userId").param("value", "u3").param("limit", "1000"));
+
+        assertThat(page.get("items")).hasSize(EVENTS / 10 + 1);
+        assertThat(page.get("nextCursor").isNull()).isTrue();
+        var first = page.get("items").get(0);
+        assertThat(first.get("id").asText()).isEqualTo("q-e00003");
+        assertThat(first.get("offset").asLong()).isEqualTo(3);
+        assertThat(first.get("ingestedAt").asText()).isEqualTo(START.plusSeconds(1).toString());
+        // evento dispari: il payload compresso viene restituito come JSON
+        assertThat(first.get("payload").get("n").asInt()).isEqualTo(3);
+    }
+
+    @Test
+    void whenStreaming_thenAllMatchingEventsAreWrittenAsNdjson() throws Exception {
+        var body = mockMvc.perform(get("/api/events/stream").param("type", "type-0").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        var lines = body.split("\n");
+        assertThat(lines).hasSize((EVENTS + 2) / 3);
+        assertThat(objectMapper.readTree(lines[lines.length - 1]).get("id").asText()).isEqualTo("q-e01233");
+    }
+
+    @Test
+    void whenQueryIsInvalid_thenBadRequest() throws Exception {
+        mockMvc.perform(get("/api/events").param("limit", "0")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/events").param("key", "notIndexed").param("value", "x")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/events").param("key", "userId")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/events").param("after", "not-a-cursor")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/events").param("from", "yesterday")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/events/stream").param("from", START.toString()).param("to", START.toString()))
+                .andExpect(status().isBadRequest());
+    }
+
+    private List<String> readAll(Map<String, String> filters, int limit) throws Exception {
+        List<String> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            var request = get("/api/events").param("limit", String.valueOf(limit));
+            filters.forEach(request::param);
+            if (cursor != null) {
+                request.param("after", cursor);
+            }
+            var page = readPage(request);
+            assertThat(page.get("items").size()).isLessThanOrEqualTo(limit);
+            page.get("items").forEach(e -> ids.add(e.get("id").asText()));
+            cursor = page.get("nextCursor").isNull() ? null : page.get("nextCursor").asText();
+        } while (cursor != null);
+        return ids;
+    }
+
+    private JsonNode readPage(MockHttpServletRequestBuilder request) throws Exception {
+        var body = mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body);
+    }
+}
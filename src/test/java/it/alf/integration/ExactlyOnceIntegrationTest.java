@@ -0,0 +1,156 @@
+package it.alf.integration;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+
+import it.alf.config.KafkaTransactions;
+import it.alf.dto.Notification;
+import it.alf.dto.Order;
+import it.alf.repository.NotificationRepository;
+import it.alf.repository.OrderRepository;
+
+/**
+ * Ordini trasformati in notifiche in modalità exactly-once: ogni poll degli ordini è una transazione con le notifiche,
+ * l'ordine fallito inoltrato al topic di ritardo e gli offset.
+ */
+@SpringBootTest(properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "app.kafka.topics.orders.confirmations.enabled=true",
+        "app.kafka.topics.orders.confirmations.exactly-once=true",
+        "app.kafka.topics.orders.retry.mode=topics",
+        "app.kafka.topics.orders.retry.attempts=1",
+        "app.kafka.topics.orders.retry.initial-delay=1s"
+})
+@EmbeddedKafka(partitions = 1, topics = {"orders-topic", "notifications-topic", "dlq-topic"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class ExactlyOnceIntegrationTest {
+    private static final int ORDERS = 50;
+
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Autowired
+    private KafkaTransactions orderTransactions;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private NotificationRepository notificationRepository;
+
+    @AfterEach
+    void cleanup() {
+        orderRepository.deleteAll();
+        notificationRepository.deleteAll();
+    }
+
+    @Test
+    void whenOrdersAreConsumed_thenEachProducesOneCommittedNotificationAndFailuresMoveOnInTheSameTransaction() throws Exception {
+        waitForAssignment("orders-group");
+        waitForAssignment("notifications-group");
+        ContainerTestUtils.waitForAssignment(registry.getListenerContainer("orders-retry-1"), 1);
+
+        for (int i = 0; i < ORDERS; i++) {
+            kafkaTemplate.send("orders-topic", "eos-o" + i, new Order("eos-o" + i, "u1", "Book", i));
+            if (i == ORDERS / 2) {
+                // product null viola il vincolo NOT NULL: inoltrato a orders-topic-retry-1 e poi alla DLQ
+                kafkaTemplate.send("orders-topic", "eos-bad", new Order("eos-bad", "u1", null, 1.0));
+            }
+        }
+        kafkaTemplate.flush();
+
+        Instant deadline = Instant.now().plus(Duration.ofSeconds(30));
+        while (Instant.now().isBefore(deadline) && notificationRepository.count() < ORDERS) {
+            Thread.sleep(100);
+        }
+        assertThat(orderRepository.count()).isEqualTo(ORDERS);
+        assertThat(notificationRepository.count()).isEqualTo(ORDERS);
+        assertThat(notificationRepository.findById("order-eos-o0")).isPresent();
+        assertThat(notificationRepository.findById("order-eos-bad")).isEmpty();
+
+        var committed = readAll("notifications-topic", "read_committed", ORDERS);
+        assertThat(committed).extracting(ConsumerRecord::key).filteredOn(key -> key.startsWith("order-"))
+                .hasSize(ORDERS).doesNotHaveDuplicates();
+
+        var deadLetters = readAll("dlq-topic", "read_committed", 1);
+        assertThat(deadLetters).extracting(ConsumerRecord::key).containsExactly("eos-bad");
+    }
+
+    @Test
+    void whenTransactionIsAborted_thenItsNotificationsAreNeverConsumed() throws Exception {
+        waitForAssignment("notifications-group");
+
+        assertThatThrownBy(() -> orderTransactions.template().executeInTransaction(template -> {
+            template.send("notifications-topic", "aborted", new Notification("aborted", "never visible", "INFO"));
+            template.flush();
+            throw new IllegalStateException("rollback");
+        })).isInstanceOf(IllegalStateException.class);
+        orderTransactions.template().executeInTransaction(template ->
+                template.send("notifications-topic", "committed", new Notification("committed", "visible", "INFO")));
+
+        Instant deadline = Instant.now().plus(Duration.ofSeconds(20));
+        while (Instant.now().isBefore(deadline) && notificationRepository.findById("committed").isEmpty()) {
+            Thread.sleep(100);
+        }
+        assertThat(notificationRepository.findById("committed")).isPresent();
+        assertThat(notificationRepository.findById("aborted")).isEmpty();
+
+        // il record annullato è nel log: solo un consumer read_uncommitted lo vede
+        assertThat(readAll("notifications-topic", "read_uncommitted", 2)).extracting(ConsumerRecord::key).contains("aborted");
+        assertThat(readAll("notifications-topic", "read_committed", 1)).extracting(ConsumerRecord::key)
+                .contains("committed").doesNotContain("aborted");
+    }
+
+    private void waitForAssignment(String group) throws Exception {
+        ContainerTestUtils.waitForAssignment(registry.getListenerContainers().stream()
+                .filter(c -> group.equals(c.getContainerProperties().getGroupId())).findFirst().orElseThrow(), 1);
+    }
+
+    /**
+     * Legge il topic dall'inizio finché arrivano record (almeno {@code expected}) con il livello di isolamento indicato.
+     */
+    private List<ConsumerRecord<String, String>> readAll(String topic, String isolation, int expected) {
+        var props = KafkaTestUtils.consumerProps("eos-checker-" + isolation + "-" + System.nanoTime(), "false", embeddedKafkaBroker);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, isolation);
+        var records = new ArrayList<ConsumerRecord<String, String>>();
+        try (var consumer = new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new StringDeserializer()).createConsumer()) {
+            embeddedKafkaBroker.consumeFromAnEmbeddedTopic(consumer, topic);
+            Instant deadline = Instant.now().plus(Duration.ofSeconds(15));
+            while (Instant.now().isBefore(deadline)) {
+                var polled = consumer.poll(Duration.ofMillis(500));
+                polled.forEach(records::add);
+                if (polled.isEmpty() && records.size() >= expected) {
+                    break;
+                }
+            }
+        }
+        return records;
+    }
+}
@@ -46,7 +46,7 @@ public class GenericEventKafkaIntegrationTest {
 
     @Test
     void whenSendGenericEvent_thenShouldBePersisted() throws Exception {
-        var payload = Map.<String, Object>of("key", "value");
+        var payload = Map.<String, Object>of("key", "value", "userId", "evt-user-1");
         var event = new GenericEvent("evt-1", "test-type", payload);
 
         // wait for events listener to be assigned to partitions
@@ -69,6 +69,11 @@ public class GenericEventKafkaIntegrationTest {
 
         assertThat(found).isPresent();
         assertThat(found.get().getType()).isEqualTo(event.getType());
-        assertThat(found.get().getPayloadJson()).contains("\"key\":\"value\"");
+        assertThat(found.get().payloadJson()).contains("\"key\":\"value\"");
+        assertThat(found.get().getIngestedAt()).isNotNull();
+        assertThat(found.get().getKafkaPartition()).isZero();
+        assertThat(found.get().getKafkaOffset()).isGreaterThanOrEqualTo(0);
+        // la chiave indicizzata di default (userId) permette di trovare l'evento senza leggere il payload
+        assertThat(genericEventRepository.findIdsByPayloadKey("userId", "evt-user-1")).containsExactly(event.getId());
     }
 }
@@ -0,0 +1,113 @@
+package it.alf.integration;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.alf.dto.GenericEvent;
+import it.alf.dto.Order;
+import it.alf.dto.User;
+import it.alf.repository.GenericEventRepository;
+import it.alf.repository.OrderRepository;
+import it.alf.repository.UserRepository;
+
+/**
+ * Con {@code writer: jdbc} le entità scritte con {@code MERGE} si rileggono con JPA come quelle salvate dal repository:
+ * un id ripetuto sostituisce la riga, le chiavi indicizzate degli eventi vengono riscritte e un ordine che viola un
+ * vincolo viene isolato dal ripiego record per record e inoltrato sulla DLQ.
+ */
+@SpringBootTest(properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "app.kafka.topics.users.writer=jdbc",
+        "app.kafka.topics.orders.writer=jdbc",
+        "app.kafka.topics.events.writer=jdbc",
+        "app.kafka.topics.events.dedupe=none"
+})
+@EmbeddedKafka(partitions = 1, topics = {"users-topic", "orders-topic", "events-topic", "dlq-topic"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class JdbcUpsertIntegrationTest {
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private GenericEventRepository eventRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void whenWriterIsJdbc_thenRecordsAreUpsertedAndReadableWithJpa() throws Exception {
+        for (var group : new String[] {"users-group", "orders-group", "events-group"}) {
+            ContainerTestUtils.waitForAssignment(registry.getListenerContainers().stream()
+                    .filter(c -> group.equals(c.getContainerProperties().getGroupId())).findFirst().orElseThrow(), 1);
+        }
+        Instant before = Instant.now();
+
+        for (int i = 0; i < 100; i++) {
+            kafkaTemplate.send("users-topic", "up-u" + i, new User("up-u" + i, "User " + i, "u" + i + "@example.com"));
+            kafkaTemplate.send("orders-topic", "up-o" + i, new Order("up-o" + i, "up-u" + i, "Book", i));
+        }
+        // stesso id: la seconda versione sostituisce la prima
+        kafkaTemplate.send("users-topic", "up-u0", new User("up-u0", "Renamed", "renamed@example.com"));
+        kafkaTemplate.send("orders-topic", "up-bad", new Order("up-bad", "up-u1", null, 1.0));
+        kafkaTemplate.send("events-topic", "up-e1", new GenericEvent("up-e1", "signup", Map.of("userId", "up-u1")));
+        kafkaTemplate.send("events-topic", "up-e1", new GenericEvent("up-e1", "signup", Map.of("userId", "up-u2")));
+        kafkaTemplate.flush();
+
+        waitUntil(() -> userRepository.count() == 100 && orderRepository.count() == 100 && deadLetters() == 1
+                && eventRepository.findIdsByPayloadKey("userId", "up-u2").contains("up-e1"));
+
+        assertThat(userRepository.findById("up-u0")).hasValueSatisfying(user -> {
+            assertThat(user.getName()).isEqualTo("Renamed");
+            assertThat(user.getEmail()).isEqualTo("renamed@example.com");
+        });
+        assertThat(orderRepository.findById("up-o42")).hasValueSatisfying(order -> {
+            assertThat(order.getUserId()).isEqualTo("up-u42");
+            assertThat(order.getAmount()).isEqualTo(42.0);
+        });
+        assertThat(orderRepository.findById("up-bad")).isEmpty();
+
+        assertThat(eventRepository.findIdsByPayloadKey("userId", "up-u1")).isEmpty();
+        assertThat(eventRepository.findById("up-e1")).hasValueSatisfying(event -> {
+            assertThat(event.getType()).isEqualTo("signup");
+            assertThat(event.payloadJson()).contains("\"userId\":\"up-u2\"");
+            assertThat(event.getIngestedAt()).isBetween(before, Instant.now());
+            assertThat(event.getKafkaOffset()).isEqualTo(1);
+        });
+    }
+
+    private double deadLetters() {
+        var counter = meterRegistry.find("kafka.listener.dlq").tag("topic", "orders-topic").counter();
+        return counter != null ? counter.count() : 0;
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        Instant deadline = Instant.now().plus(Duration.ofSeconds(30));
+        while (!condition.getAsBoolean() && Instant.now().isBefore(deadline)) {
+            Thread.sleep(100);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
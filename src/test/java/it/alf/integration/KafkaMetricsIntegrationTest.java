@@ -0,0 +1,91 @@
+package it.alf.integration;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.alf.dto.User;
+import it.alf.producer.UserProducer;
+import it.alf.repository.UserRepository;
+
+@SpringBootTest(properties = {"spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}"})
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+@EmbeddedKafka(partitions = 1, topics = {"users-topic", "dlq-topic"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class KafkaMetricsIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserProducer userProducer;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @AfterEach
+    void cleanup() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void whenRecordsAreProcessedAndDeadLettered_thenMetricsAreTaggedByTopicAndGroup() throws Exception {
+        registry.getListenerContainers().stream()
+                .filter(c -> "users-group".equals(c.getContainerProperties().getGroupId()))
+                .forEach(c -> ContainerTestUtils.waitForAssignment(c, 1));
+
+        userProducer.send(new User("metrics-u1", "Alice", "alice@example.com")).get();
+        // email null viola il vincolo NOT NULL: retry e poi DLQ
+        userProducer.send(new User("metrics-bad", "Broken", null)).get();
+
+        Instant deadline = Instant.now().plus(Duration.ofSeconds(30));
+        while (Instant.now().isBefore(deadline) && meterRegistry.find("kafka.listener.dlq").counter() == null) {
+            Thread.sleep(200);
+        }
+
+        assertThat(meterRegistry.get("kafka.listener.dlq").tag("topic", "users-topic").tag("group", "users-group").counter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("kafka.listener.retries").tag("topic", "users-topic").tag("group", "users-group").counter().count())
+                .isGreaterThanOrEqualTo(3);
+        assertThat(meterRegistry.get("kafka.producer.send").tag("topic", "users-topic").tag("result", "success").timer().count())
+                .isEqualTo(2);
+        assertThat(meterRegistry.get("kafka.persist").tag("topic", "users-topic").tag("group", "users-group").timers())
+                .isNotEmpty();
+        assertThat(meterRegistry.get("spring.kafka.listener").tag("topic", "users-topic").tag("group", "users-group").timers())
+                .anyMatch(t -> t.count() > 0);
+        assertThat(meterRegistry.get("kafka.consumer.lag")
+                .tag("topic", "users-topic").tag("partition", "0").tag("group", "users-group").gauge().value())
+                .isGreaterThanOrEqualTo(0);
+
+        var scrape = mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(scrape)
+                .contains("kafka_persist_seconds_bucket")
+                .contains("kafka_listener_dlq_total")
+                .contains("kafka_producer_send_seconds_bucket")
+                .contains("kafka_consumer_lag{");
+    }
+}
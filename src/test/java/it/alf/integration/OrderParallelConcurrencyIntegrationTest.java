@@ -0,0 +1,114 @@
+package it.alf.integration;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+
+import it.alf.consumer.OrderParallelProcessor;
+import it.alf.dto.Order;
+import it.alf.repository.OrderRepository;
+
+/**
+ * {@link OrderParallelProcessor} condiviso dai due consumer di orders-group su 4 partizioni: ogni consumer committa
+ * solo le partizioni che gli sono assegnate e, allo stop, ciascuno committa le proprie, per cui gli offset committati
+ * arrivano alla fine di tutte e 4 le partizioni.
+ */
+@SpringBootTest(properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "app.kafka.topics.orders.partitions=4",
+        "app.kafka.topics.orders.concurrency=2",
+        "app.kafka.topics.deadletter.partitions=4",
+        "app.kafka.topics.orders.parallel.enabled=true"
+})
+@EmbeddedKafka(partitions = 4, topics = {"orders-topic", "dlq-topic"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class OrderParallelConcurrencyIntegrationTest {
+    private static final int PARTITIONS = 4;
+    private static final int CONCURRENCY = 2;
+    private static final int RECORDS = 400;
+    private static final int KEYS = 40;
+
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Autowired
+    private OrderParallelProcessor parallelProcessor;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Test
+    void whenTwoConsumersShareTheProcessor_thenEveryPartitionIsCommittedToItsEnd() throws Exception {
+        var container = (ConcurrentMessageListenerContainer<?, ?>) registry.getListenerContainers().stream()
+                .filter(c -> "orders-group".equals(c.getContainerProperties().getGroupId())).findFirst().orElseThrow();
+        assertThat(container.getContainers()).hasSize(CONCURRENCY);
+        // il primo consumer che entra nel gruppo può ricevere temporaneamente tutte le partizioni
+        Instant deadline = Instant.now().plus(Duration.ofSeconds(30));
+        while (Instant.now().isBefore(deadline) && !container.getContainers().stream()
+                .allMatch(child -> child.getAssignedPartitions() != null && child.getAssignedPartitions().size() == PARTITIONS / CONCURRENCY)) {
+            Thread.sleep(100);
+        }
+        container.getContainers().forEach(child -> assertThat(child.getAssignedPartitions()).hasSize(PARTITIONS / CONCURRENCY));
+
+        long[] endOffsets = new long[PARTITIONS];
+        for (int i = 0; i < RECORDS; i++) {
+            var result = kafkaTemplate.send("orders-topic", "pc-k" + (i % KEYS), new Order("pc-" + i, "u" + i, "Book", i)).get();
+            endOffsets[result.getRecordMetadata().partition()]++;
+        }
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            assertThat(endOffsets[partition]).as("records on partition %d", partition).isPositive();
+        }
+
+        // i commit arrivano dai poll e, a ordini finiti, dagli eventi di inattività di ciascun consumer
+        deadline = Instant.now().plus(Duration.ofSeconds(30));
+        while (Instant.now().isBefore(deadline) && (savedOrders() < RECORDS || !committedToEnd(endOffsets))) {
+            Thread.sleep(50);
+        }
+        assertThat(savedOrders()).isEqualTo(RECORDS);
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            assertThat(committed(partition)).as("committed offset of partition %d", partition).isEqualTo(endOffsets[partition]);
+        }
+
+        // lo stop revoca le partizioni di entrambi i consumer: nessun ordine resta in volo, gli offset non arretrano
+        container.stop();
+        assertThat(parallelProcessor.inFlight()).isZero();
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            assertThat(committed(partition)).as("committed offset of partition %d", partition).isEqualTo(endOffsets[partition]);
+        }
+    }
+
+    private boolean committedToEnd(long[] endOffsets) throws Exception {
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            if (committed(partition) != endOffsets[partition]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long savedOrders() {
+        return orderRepository.findAll().stream().filter(order -> order.getId().startsWith("pc-")).count();
+    }
+
+    private long committed(int partition) throws Exception {
+        var offset = KafkaTestUtils.getCurrentOffset(embeddedKafkaBroker.getBrokersAsString(), "orders-group", "orders-topic", partition);
+        return offset != null ? offset.offset() : 0L;
+    }
+}
@@ -0,0 +1,116 @@
+package it.alf.integration;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+
+import it.alf.consumer.OrderParallelProcessor;
+import it.alf.dto.Order;
+import it.alf.repository.OrderRepository;
+
+/**
+ * Ordini elaborati dal container di orders-group con {@link OrderParallelProcessor}: in {@code AckMode.MANUAL} gli
+ * offset committati non superano l'ordine ancora in retry, e alla revoca delle partizioni (stop del container) il
+ * rebalance listener attende gli ordini in volo e committa tutto quanto completato, così il riavvio non riconsegna nulla.
+ */
+@SpringBootTest(properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "app.kafka.topics.orders.parallel.enabled=true",
+        "app.kafka.topics.orders.parallel.max-attempts=4",
+        "app.kafka.topics.orders.parallel.retry-backoff=1s"
+})
+@EmbeddedKafka(partitions = 1, topics = {"orders-topic", "dlq-topic"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class OrderParallelIntegrationTest {
+    private static final int RECORDS = 200;
+    private static final int KEYS = 20;
+    /** offset dell'ordine non salvabile, inviato a metà */
+    private static final long BAD_OFFSET = RECORDS / 2;
+
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Autowired
+    private OrderParallelProcessor parallelProcessor;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Test
+    void whenOrdersRunInParallel_thenCommitsStopAtTheFirstUnfinishedOrderAndRevocationCommitsTheRest() throws Exception {
+        var container = ordersContainer();
+        assertThat(container.getContainerProperties().getAckMode()).isEqualTo(ContainerProperties.AckMode.MANUAL);
+        assertThat(container.getContainerProperties().getConsumerRebalanceListener()).isSameAs(parallelProcessor);
+        ContainerTestUtils.waitForAssignment(container, 1);
+
+        for (int i = 0; i < RECORDS; i++) {
+            if (i == BAD_OFFSET) {
+                // product null viola il vincolo NOT NULL: 4 tentativi a 1s di distanza, poi la DLQ
+                kafkaTemplate.send("orders-topic", "po-bad", new Order("po-bad", "u1", null, 1.0));
+            }
+            kafkaTemplate.send("orders-topic", "po-k" + (i % KEYS), new Order("po-" + i, "u" + i, "Book", i));
+        }
+        kafkaTemplate.flush();
+
+        // gli ordini successivi vengono salvati, ma l'offset committato resta fermo all'ordine in retry
+        Instant deadline = Instant.now().plus(Duration.ofSeconds(30));
+        while (Instant.now().isBefore(deadline) && savedOrders() < RECORDS) {
+            assertThat(committed()).isLessThanOrEqualTo(BAD_OFFSET);
+            Thread.sleep(20);
+        }
+        assertThat(savedOrders()).isEqualTo(RECORDS);
+        assertThat(committed()).isLessThanOrEqualTo(BAD_OFFSET);
+        assertThat(parallelProcessor.inFlight()).isPositive();
+
+        // lo stop revoca le partizioni: il rebalance listener attende l'ordine in retry e committa tutti i record
+        container.stop();
+        assertThat(parallelProcessor.inFlight()).isZero();
+        assertThat(committed()).isEqualTo(RECORDS + 1);
+        assertThat(orderRepository.findById("po-bad")).isEmpty();
+
+        // al riavvio si riparte dall'offset committato: nessun ordine riconsegnato, il nuovo viene committato da inattivo
+        container.start();
+        ContainerTestUtils.waitForAssignment(container, 1);
+        kafkaTemplate.send("orders-topic", "po-last", new Order("po-last", "u1", "Book", 1.0)).get();
+        deadline = Instant.now().plus(Duration.ofSeconds(20));
+        while (Instant.now().isBefore(deadline) && committed() < RECORDS + 2) {
+            Thread.sleep(50);
+        }
+        assertThat(committed()).isEqualTo(RECORDS + 2);
+        assertThat(orderRepository.existsById("po-last")).isTrue();
+        assertThat(savedOrders()).isEqualTo(RECORDS + 1);
+    }
+
+    private MessageListenerContainer ordersContainer() {
+        return registry.getListenerContainers().stream()
+                .filter(c -> "orders-group".equals(c.getContainerProperties().getGroupId())).findFirst().orElseThrow();
+    }
+
+    private long savedOrders() {
+        return orderRepository.findAll().stream().filter(order -> order.getId().startsWith("po-")).count();
+    }
+
+    private long committed() throws Exception {
+        var offset = KafkaTestUtils.getCurrentOffset(embeddedKafkaBroker.getBrokersAsString(), "orders-group", "orders-topic", 0);
+        return offset != null ? offset.offset() : 0L;
+    }
+}
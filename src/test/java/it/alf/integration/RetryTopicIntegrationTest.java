@@ -0,0 +1,106 @@
+package it.alf.integration;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.alf.dto.Order;
+import it.alf.repository.OrderRepository;
+
+/**
+ * Un ordine che fallisce sempre, seguito da ordini validi sulla stessa partizione: con {@code retry.mode: topics}
+ * gli ordini validi vengono salvati prima del primo tentativo (nessun blocco in testa alla partizione) e l'ordine
+ * fallito arriva sulla DLQ dopo i due topic di ritardo (5s e 10s).
+ */
+@SpringBootTest(properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "app.kafka.topics.orders.retry.mode=topics",
+        "app.kafka.topics.orders.retry.attempts=2",
+        "app.kafka.topics.orders.retry.initial-delay=5s",
+        "app.kafka.topics.orders.retry.multiplier=2"
+})
+@EmbeddedKafka(partitions = 1, topics = {"orders-topic", "dlq-topic"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class RetryTopicIntegrationTest {
+    private static final int VALID_ORDERS = 20;
+
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @AfterEach
+    void cleanup() {
+        orderRepository.deleteAll();
+    }
+
+    @Test
+    void whenOrderKeepsFailing_thenLaterOrdersAreNotBlockedAndItEndsOnDlq() throws Exception {
+        ContainerTestUtils.waitForAssignment(registry.getListenerContainers().stream()
+                .filter(c -> "orders-group".equals(c.getContainerProperties().getGroupId())).findFirst().orElseThrow(), 1);
+        for (var id : new String[] {"orders-retry-1", "orders-retry-2"}) {
+            ContainerTestUtils.waitForAssignment(registry.getListenerContainer(id), 1);
+        }
+
+        // product null viola il vincolo NOT NULL: ogni tentativo fallisce
+        var sent = Instant.now();
+        kafkaTemplate.send("orders-topic", "retry-bad", new Order("retry-bad", "u1", null, 1.0));
+        for (int i = 0; i < VALID_ORDERS; i++) {
+            kafkaTemplate.send("orders-topic", "retry-o" + i, new Order("retry-o" + i, "u1", "Book", i));
+        }
+        kafkaTemplate.flush();
+
+        Instant deadline = Instant.now().plus(Duration.ofSeconds(20));
+        while (Instant.now().isBefore(deadline) && orderRepository.count() < VALID_ORDERS) {
+            Thread.sleep(50);
+        }
+        var persisted = Duration.between(sent, Instant.now());
+
+        // in-place il FixedBackOff terrebbe ferma la partizione per 3s; qui il primo retry non è ancora partito
+        assertThat(orderRepository.count()).isEqualTo(VALID_ORDERS);
+        assertThat(persisted).isLessThan(Duration.ofSeconds(5));
+        assertThat(meterRegistry.find("kafka.listener.dlq").counter()).isNull();
+
+        var props = KafkaTestUtils.consumerProps("retry-dlq-checker", "false", embeddedKafkaBroker);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        try (var consumer = new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new StringDeserializer()).createConsumer()) {
+            embeddedKafkaBroker.consumeFromAnEmbeddedTopic(consumer, "dlq-topic");
+            var deadLetter = KafkaTestUtils.getSingleRecord(consumer, "dlq-topic", Duration.ofSeconds(45));
+            assertThat(deadLetter.key()).isEqualTo("retry-bad");
+            // 5s sul primo topic di ritardo e 10s sul secondo
+            assertThat(Duration.between(sent, Instant.ofEpochMilli(deadLetter.timestamp()))).isGreaterThanOrEqualTo(Duration.ofSeconds(15));
+        }
+
+        for (var retryTopic : new String[] {"orders-topic-retry-1", "orders-topic-retry-2"}) {
+            assertThat(meterRegistry.get("kafka.listener.retry.topic").tag("retry.topic", retryTopic).counter().count()).isEqualTo(1);
+        }
+        assertThat(meterRegistry.get("kafka.listener.dlq").tag("topic", "orders-topic-retry-2").counter().count()).isEqualTo(1);
+        assertThat(orderRepository.findById("retry-bad")).isEmpty();
+    }
+}
@@ -0,0 +1,121 @@
+package it.alf.integration;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+
+import it.alf.KafkaSpringBootApplication;
+import it.alf.dto.User;
+import it.alf.repository.UserRepository;
+
+/**
+ * Tempo di avvio dell'applicazione e tempo fino al primo record consumato per ogni valore di
+ * {@code app.kafka.topics.provisioning}.
+ *
+ * Un primo avvio non misurato carica le classi, scalda il JIT e lascia un offset committato per {@code users-group},
+ * come dopo un riavvio durante un rolling deploy. Per ogni modalità un utente viene poi pubblicato su
+ * {@code users-topic} prima dell'avvio; il contesto viene avviato con {@link SpringApplication} nella JVM del test e
+ * si misura, dall'inizio di {@code run}, quando il contesto è pronto e quando l'utente è salvato. Ogni modalità usa
+ * una DLQ con un nome proprio e 2 partizioni, per verificare chi la crea: con {@code startup} esiste ad avvio
+ * concluso, con {@code deferred} compare poco dopo, con {@code none} non viene creata.
+ */
+@EmbeddedKafka(partitions = 1, topics = {"users-topic"})
+public class StartupTimeIntegrationTest {
+    private static final List<String> MODES = List.of("startup", "deferred", "none");
+
+    private final Logger logger = LoggerFactory.getLogger(StartupTimeIntegrationTest.class);
+
+    @Test
+    void reportsTimeToFirstConsumedRecord(EmbeddedKafkaBroker broker) throws Exception {
+        var report = new StringBuilder(String.format("%n%-10s %12s %18s%n", "mode", "ready (ms)", "first record (ms)"));
+        try (var admin = AdminClient.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString()));
+             var producer = new KafkaProducer<String, Object>(Map.of("bootstrap.servers", broker.getBrokersAsString()),
+                     new StringSerializer(), new JsonSerializer<>())) {
+            try (var context = start(broker, "warmup", "startup")) {
+                ContainerTestUtils.waitForAssignment(context.getBean(KafkaListenerEndpointRegistry.class).getListenerContainers()
+                        .stream().filter(c -> "users-group".equals(c.getContainerProperties().getGroupId())).findFirst().orElseThrow(), 1);
+                send(producer, "warmup");
+                var users = context.getBean(UserRepository.class);
+                waitUntil(() -> users.existsById("startup-warmup"), Duration.ofSeconds(30), Duration.ofMillis(5));
+            }
+            for (var mode : MODES) {
+                var dlq = "dlq-" + mode;
+                send(producer, mode);
+                long start = System.nanoTime();
+                try (var context = start(broker, mode, mode)) {
+                    long ready = System.nanoTime() - start;
+                    var users = context.getBean(UserRepository.class);
+                    waitUntil(() -> users.existsById("startup-" + mode), Duration.ofSeconds(60), Duration.ofMillis(5));
+                    long firstRecord = System.nanoTime() - start;
+                    report.append(String.format("%-10s %12d %18d%n", mode, TimeUnit.NANOSECONDS.toMillis(ready),
+                            TimeUnit.NANOSECONDS.toMillis(firstRecord)));
+
+                    switch (mode) {
+                        case "startup" -> assertThat(partitions(admin, dlq)).isEqualTo(2);
+                        case "deferred" -> waitUntil(() -> partitions(admin, dlq) == 2, Duration.ofSeconds(30), Duration.ofMillis(100));
+                        default -> assertThat(admin.listTopics().names().get()).doesNotContain(dlq);
+                    }
+                }
+            }
+        }
+        logger.info("Startup benchmark (embedded broker, same JVM after one warmup start):{}", report);
+    }
+
+    private static void send(KafkaProducer<String, Object> producer, String id) throws Exception {
+        producer.send(new ProducerRecord<>("users-topic", "startup-" + id,
+                new User("startup-" + id, "Startup " + id, id + "@example.com"))).get();
+    }
+
+    /**
+     * Avvia l'applicazione con la modalità di provisioning indicata e una DLQ {@code dlq-<id>}.
+     */
+    private static ConfigurableApplicationContext start(EmbeddedKafkaBroker broker, String id, String mode) {
+        return new SpringApplication(KafkaSpringBootApplication.class).run(
+                "--spring.kafka.bootstrap-servers=" + broker.getBrokersAsString(),
+                "--server.port=0",
+                "--spring.devtools.restart.enabled=false",
+                "--app.kafka.topics.provisioning=" + mode,
+                "--app.kafka.topics.deadletter.name=dlq-" + id,
+                "--app.kafka.topics.deadletter.partitions=2");
+    }
+
+    private static int partitions(AdminClient admin, String topic) {
+        try {
+            if (!admin.listTopics().names().get().contains(topic)) {
+                return 0;
+            }
+            return admin.describeTopics(Set.of(topic)).allTopicNames().get().get(topic).partitions().size();
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition, Duration timeout, Duration interval) throws InterruptedException {
+        Instant deadline = Instant.now().plus(timeout);
+        while (!condition.getAsBoolean() && Instant.now().isBefore(deadline)) {
+            Thread.sleep(interval.toMillis());
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
@@ -0,0 +1,91 @@
+package it.alf.integration;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.alf.dto.User;
+import it.alf.repository.UserRepository;
+
+@SpringBootTest(properties = {"spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}"})
+@AutoConfigureMockMvc
+@EmbeddedKafka(partitions = 1, topics = {"users-topic"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class UserCacheIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @AfterEach
+    void cleanup() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void whenUsersAreConsumed_thenLookupsAreServedFromTheCache() throws Exception {
+        registry.getListenerContainers().stream()
+                .filter(c -> "users-group".equals(c.getContainerProperties().getGroupId()))
+                .forEach(c -> ContainerTestUtils.waitForAssignment(c, 1));
+
+        // miss: l'assenza viene memorizzata, il listener la sostituisce quando arriva l'utente
+        mockMvc.perform(get("/api/users/cache-u1")).andExpect(status().isNotFound());
+
+        kafkaTemplate.send("users-topic", "cache-u1", new User("cache-u1", "Alice", "alice@example.com")).get();
+        awaitName("cache-u1", "Alice");
+
+        // la riga viene rimossa direttamente dal database: la lettura continua a essere servita dalla cache
+        userRepository.deleteAll();
+        mockMvc.perform(get("/api/users/cache-u1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Alice"));
+
+        // un aggiornamento sul topic è visibile senza attendere la scadenza del TTL
+        kafkaTemplate.send("users-topic", "cache-u1", new User("cache-u1", "Alice Smith", "alice@example.com")).get();
+        awaitName("cache-u1", "Alice Smith");
+
+        double hits = meterRegistry.get("cache.gets").tag("cache", "users").tag("result", "hit").functionCounter().count();
+        double misses = meterRegistry.get("cache.gets").tag("cache", "users").tag("result", "miss").functionCounter().count();
+        assertThat(hits).isGreaterThanOrEqualTo(2);
+        assertThat(misses).isEqualTo(1);
+    }
+
+    private void awaitName(String id, String name) throws Exception {
+        Instant deadline = Instant.now().plus(Duration.ofSeconds(30));
+        while (Instant.now().isBefore(deadline)) {
+            var response = mockMvc.perform(get("/api/users/" + id)).andReturn().getResponse();
+            if (response.getStatus() == 200 && response.getContentAsString().contains("\"name\":\"" + name + "\"")) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError("user " + id + " with name " + name + " not visible within timeout");
+    }
+}
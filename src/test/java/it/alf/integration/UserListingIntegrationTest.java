@@ -0,0 +1,99 @@
+package it.alf.integration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.alf.dto.User;
+import it.alf.dto.UserPage;
+import it.alf.entity.UserEntity;
+import it.alf.repository.UserRepository;
+
+@SpringBootTest(properties = {"spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}"})
+@AutoConfigureMockMvc
+@EmbeddedKafka(partitions = 1, topics = {"users-topic"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class UserListingIntegrationTest {
+    private static final int USERS = 2345;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @BeforeEach
+    void setup() {
+        userRepository.saveAll(IntStream.range(0, USERS)
+                .mapToObj(i -> new UserEntity(String.format("list-u%05d", i), "User " + i, "u" + i + "@example.com"))
+                .toList());
+    }
+
+    @AfterEach
+    void cleanup() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void whenFollowingCursors_thenEveryUserIsReturnedOnceInIdOrder() throws Exception {
+        List<String> ids = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            var request = get("/api/users").param("limit", "500");
+            if (cursor != null) {
+                request.param("after", cursor);
+            }
+            var body = mockMvc.perform(request)
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            var page = objectMapper.readValue(body, UserPage.class);
+            assertThat(page.getItems()).hasSizeLessThanOrEqualTo(500);
+            page.getItems().forEach(u -> ids.add(u.getId()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertThat(pages).isEqualTo(5);
+        assertThat(ids).hasSize(USERS).doesNotHaveDuplicates().isSorted();
+    }
+
+    @Test
+    void whenLimitIsOutOfRange_thenBadRequest() throws Exception {
+        mockMvc.perform(get("/api/users").param("limit", "0")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/users").param("limit", "100000")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void whenStreaming_thenAllUsersAreWrittenAsNdjson() throws Exception {
+        var body = mockMvc.perform(get("/api/users/stream").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        var lines = body.split("\n");
+        assertThat(lines).hasSize(USERS);
+        var first = objectMapper.readValue(lines[0], User.class);
+        assertThat(first).isEqualTo(new User("list-u00000", "User 0", "u0@example.com"));
+    }
+}
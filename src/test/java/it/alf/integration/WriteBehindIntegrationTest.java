@@ -0,0 +1,121 @@
+package it.alf.integration;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.alf.consumer.WriteBehindPersister;
+import it.alf.dto.Order;
+import it.alf.dto.User;
+import it.alf.repository.OrderRepository;
+import it.alf.repository.UserRepository;
+
+/**
+ * Utenti e ordini salvati dal buffer write-behind: gli offset committati non superano mai i record salvati, il buffer
+ * resta entro la capacità più i poll già consegnati e l'ordine non salvabile passa dal topic di ritardo alla DLQ.
+ */
+@SpringBootTest(properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "app.kafka.consumer.max-poll-records=100",
+        "app.kafka.write-behind.enabled=true",
+        "app.kafka.write-behind.capacity=300",
+        "app.kafka.write-behind.flush-size=100",
+        "app.kafka.write-behind.flush-interval=50ms",
+        "app.kafka.topics.orders.retry.mode=topics",
+        "app.kafka.topics.orders.retry.attempts=1",
+        "app.kafka.topics.orders.retry.initial-delay=1s"
+})
+@EmbeddedKafka(partitions = 1, topics = {"users-topic", "orders-topic", "dlq-topic"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class WriteBehindIntegrationTest {
+    private static final int RECORDS = 3000;
+    /** capacità più un poll per ciascuno dei quattro container che accodano nel buffer */
+    private static final int MAX_BUFFERED = 300 + 4 * 100;
+
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Autowired
+    private WriteBehindPersister writeBehind;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void whenRecordsAreBuffered_thenOffsetsAreCommittedOnlyAfterTheyAreSaved() throws Exception {
+        for (var group : new String[] {"users-group", "orders-group"}) {
+            ContainerTestUtils.waitForAssignment(registry.getListenerContainers().stream()
+                    .filter(c -> group.equals(c.getContainerProperties().getGroupId())).findFirst().orElseThrow(), 1);
+        }
+        ContainerTestUtils.waitForAssignment(registry.getListenerContainer("orders-retry-1"), 1);
+
+        for (int i = 0; i < RECORDS; i++) {
+            kafkaTemplate.send("users-topic", "wb-u" + i, new User("wb-u" + i, "User " + i, "u" + i + "@example.com"));
+            kafkaTemplate.send("orders-topic", "wb-o" + i, new Order("wb-o" + i, "wb-u" + i, "Book", i));
+            if (i == RECORDS / 2) {
+                // product null viola il vincolo NOT NULL: inoltrato a orders-topic-retry-1 e poi alla DLQ
+                kafkaTemplate.send("orders-topic", "wb-bad", new Order("wb-bad", "u1", null, 1.0));
+            }
+        }
+        kafkaTemplate.flush();
+
+        int maxBuffered = 0;
+        Instant deadline = Instant.now().plus(Duration.ofSeconds(60));
+        while (Instant.now().isBefore(deadline) && (committed("users-group", "users-topic") < RECORDS
+                || committed("orders-group", "orders-topic") < RECORDS + 1)) {
+            // l'offset letto prima del conteggio non può superare i record salvati
+            long usersCommitted = committed("users-group", "users-topic");
+            assertThat(usersCommitted).isLessThanOrEqualTo(userRepository.count());
+            maxBuffered = Math.max(maxBuffered, writeBehind.buffered());
+            Thread.sleep(20);
+        }
+
+        assertThat(userRepository.count()).isEqualTo(RECORDS);
+        assertThat(orderRepository.count()).isEqualTo(RECORDS);
+        assertThat(orderRepository.findById("wb-bad")).isEmpty();
+        assertThat(committed("users-group", "users-topic")).isEqualTo(RECORDS);
+        assertThat(committed("orders-group", "orders-topic")).isEqualTo(RECORDS + 1);
+        assertThat(maxBuffered).isLessThanOrEqualTo(MAX_BUFFERED);
+
+        deadline = Instant.now().plus(Duration.ofSeconds(20));
+        while (Instant.now().isBefore(deadline) && deadLetters() < 1) {
+            Thread.sleep(100);
+        }
+        assertThat(deadLetters()).isEqualTo(1.0);
+        assertThat(writeBehind.buffered()).isZero();
+    }
+
+    private long committed(String group, String topic) throws Exception {
+        var offset = KafkaTestUtils.getCurrentOffset(embeddedKafkaBroker.getBrokersAsString(), group, topic, 0);
+        return offset != null ? offset.offset() : 0L;
+    }
+
+    private double deadLetters() {
+        var counter = meterRegistry.find("kafka.listener.dlq").tag("topic", "orders-topic-retry-1").counter();
+        return counter != null ? counter.count() : 0;
+    }
+}
@@ -0,0 +1,185 @@
+package it.alf.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class EventJournalTest {
+    /** id di 5 byte, tipo di 1 byte e payload di 20 byte: voci da 70 byte */
+    private static final int ENTRY_BYTES = JournalSegment.HEADER_BYTES + 26;
+
+    @TempDir
+    private Path dir;
+
+    private final ManualClock clock = new ManualClock();
+
+    @Test
+    void entriesAreReadBackByRangeAcrossSegments() {
+        try (var journal = journal(1024, 128, Duration.ZERO, 0)) {
+            for (int i = 0; i < 100; i++) {
+                assertThat(journal.append(id(i), "t", 0, i, payload(i))).isEqualTo(i);
+            }
+            assertThat(journal.segmentCount()).isEqualTo(8);
+            assertThat(journal.nextSequence()).isEqualTo(100);
+
+            var entries = read(journal, 10, 60);
+            assertThat(entries).extracting(JournalEntry::sequence).containsExactlyElementsOf(range(10, 60));
+            var entry = entries.get(37);
+            assertThat(entry.id()).isEqualTo(id(47));
+            assertThat(entry.type()).isEqualTo("t");
+            assertThat(entry.offset()).isEqualTo(47);
+            assertThat(entry.payload().isReadOnly()).isTrue();
+            assertThat(entry.payloadBytes()).isEqualTo(payload(47));
+
+            assertThat(read(journal, 95, 1000)).hasSize(5);
+            assertThat(read(journal, 100, 1000)).isEmpty();
+        }
+    }
+
+    @Test
+    void reopeningRecoversCompleteEntriesAndDropsATornTail() throws Exception {
+        try (var journal = journal(64 * 1024, 256, Duration.ZERO, 0)) {
+            for (int i = 0; i < 20; i++) {
+                journal.append(id(i), "t", 0, i, payload(i));
+            }
+        }
+        // ultima voce scritta a metà: il CRC non corrisponde più
+        try (var channel = FileChannel.open(dir.resolve(String.format("%020d.log", 0)), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {42}), 19L * ENTRY_BYTES + 60);
+        }
+
+        try (var journal = journal(64 * 1024, 256, Duration.ZERO, 0)) {
+            assertThat(journal.nextSequence()).isEqualTo(19);
+            assertThat(read(journal, 0, 100)).extracting(JournalEntry::id).containsExactlyElementsOf(range(0, 19).stream()
+                    .map(i -> id(i.intValue())).toList());
+            assertThat(journal.append(id(19), "t", 0, 19, payload(19))).isEqualTo(19);
+            assertThat(read(journal, 19, 20)).singleElement().satisfies(entry ->
+                    assertThat(entry.payloadBytes()).isEqualTo(payload(19)));
+        }
+        try (var journal = journal(64 * 1024, 256, Duration.ZERO, 0)) {
+            assertThat(journal.nextSequence()).isEqualTo(20);
+        }
+    }
+
+    @Test
+    void sequenceAtFindsTheFirstEntryNotBeforeTheInstant() {
+        try (var journal = journal(1024, 64, Duration.ZERO, 0)) {
+            for (int i = 0; i < 50; i++) {
+                clock.millis = 1_000 + i * 100L;
+                journal.append(id(i), "t", 0, i, payload(i));
+            }
+            // orologio indietro: il timestamp resta quello dell'ultima voce
+            clock.millis = 0;
+            journal.append(id(50), "t", 0, 50, payload(50));
+
+            assertThat(journal.sequenceAt(Instant.ofEpochMilli(0))).isZero();
+            assertThat(journal.sequenceAt(Instant.ofEpochMilli(1_350))).isEqualTo(4);
+            assertThat(journal.sequenceAt(Instant.ofEpochMilli(4_000))).isEqualTo(30);
+            assertThat(read(journal, 50, 51)).singleElement().satisfies(entry ->
+                    assertThat(entry.timestamp()).isEqualTo(Instant.ofEpochMilli(5_900)));
+            assertThat(journal.sequenceAt(Instant.ofEpochMilli(10_000))).isEqualTo(51);
+        }
+    }
+
+    @Test
+    void retentionDeletesOnlySealedSegments() throws Exception {
+        try (var journal = journal(1024, 128, Duration.ofHours(1), 0)) {
+            for (int i = 0; i < 100; i++) {
+                journal.append(id(i), "t", 0, i, payload(i));
+            }
+            assertThat(journal.enforceRetention()).isZero();
+
+            clock.millis += Duration.ofHours(2).toMillis();
+            assertThat(journal.enforceRetention()).isEqualTo(7);
+            assertThat(journal.segmentCount()).isEqualTo(1);
+            assertThat(journal.firstSequence()).isEqualTo(98);
+            assertThat(read(journal, 0, 100)).extracting(JournalEntry::sequence).containsExactly(98L, 99L);
+            try (var files = Files.list(dir)) {
+                assertThat(files.count()).isEqualTo(2);
+            }
+        }
+        try (var journal = journal(1024, 128, Duration.ZERO, 3 * 1200)) {
+            for (int i = 100; i < 300; i++) {
+                journal.append(id(i), "t", 0, i, payload(i));
+            }
+            assertThat(journal.sizeBytes()).isLessThanOrEqualTo(3 * 1200);
+            assertThat(journal.nextSequence()).isEqualTo(300);
+            assertThat(read(journal, 0, 300)).hasSize((int) (300 - journal.firstSequence()));
+        }
+    }
+
+    @Test
+    void entriesLargerThanASegmentAreRejected() {
+        try (var journal = journal(1024, 128, Duration.ZERO, 0)) {
+            assertThatThrownBy(() -> journal.append("big", "t", 0, 0, new byte[1024]))
+                    .isInstanceOf(IllegalArgumentException.class);
+            assertThat(journal.append("small", "t", 0, 0, null)).isZero();
+            assertThat(read(journal, 0, 1)).singleElement().satisfies(entry -> assertThat(entry.payload().remaining()).isZero());
+        }
+    }
+
+    private EventJournal journal(int segmentBytes, int indexInterval, Duration retention, long retentionBytes) {
+        return new EventJournal(dir, segmentBytes, indexInterval, retention, retentionBytes, clock);
+    }
+
+    private static List<JournalEntry> read(EventJournal journal, long from, long to) {
+        var entries = new ArrayList<JournalEntry>();
+        journal.read(from, to, entries::add);
+        return entries;
+    }
+
+    private static List<Long> range(long from, long to) {
+        var sequences = new ArrayList<Long>();
+        for (long i = from; i < to; i++) {
+            sequences.add(i);
+        }
+        return sequences;
+    }
+
+    private static String id(int i) {
+        return String.format("e-%03d", i);
+    }
+
+    private static byte[] payload(int i) {
+        return String.format("{\"userId\":\"u-%05d\"}", i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class ManualClock extends Clock {
+        private long millis = 1_000;
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package it.alf.streams;
+
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import it.alf.dto.User;
+
+/**
+ * Verifica la topologia della vista utenti con {@link TopologyTestDriver}, senza broker.
+ */
+class UserViewTopologyTest {
+    private static final String TOPIC = "users-topic";
+    private static final String STORE = "users-view";
+
+    private TopologyTestDriver driver;
+    private TestInputTopic<String, User> users;
+    private KeyValueStore<String, User> store;
+
+    @BeforeEach
+    void setup() {
+        var builder = new StreamsBuilder();
+        UserViewTopology.build(builder, TOPIC, STORE, false, UserViewTopology.jsonSerde());
+
+        var props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "user-view-test");
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        driver = new TopologyTestDriver(builder.build(), props);
+        // stesso serializer dei producer applicativi, header di tipo compresi
+        users = driver.createInputTopic(TOPIC, new StringSerializer(), new JsonSerializer<User>());
+        store = driver.getKeyValueStore(STORE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        driver.close();
+    }
+
+    @Test
+    void latestValuePerKeyIsMaterialized() {
+        users.pipeInput("u1", new User("u1", "Alice", "alice@example.com"));
+        users.pipeInput("u2", new User("u2", "Bob", "bob@example.com"));
+        users.pipeInput("u1", new User("u1", "Alice Smith", "alice@example.com"));
+
+        assertThat(store.get("u1")).isEqualTo(new User("u1", "Alice Smith", "alice@example.com"));
+        assertThat(store.get("u2")).isEqualTo(new User("u2", "Bob", "bob@example.com"));
+        assertThat(store.approximateNumEntries()).isEqualTo(2);
+    }
+
+    @Test
+    void tombstoneRemovesUser() {
+        users.pipeInput("u1", new User("u1", "Alice", "alice@example.com"));
+        users.pipeInput("u1", (User) null);
+
+        assertThat(store.get("u1")).isNull();
+    }
+}